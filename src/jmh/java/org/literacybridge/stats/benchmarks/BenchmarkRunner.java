@@ -0,0 +1,28 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the parser benchmarks with the GC profiler attached, so every run reports allocation rates next to
+ * throughput and latency.  Takes the normal JMH command line options, for example a regex to select benchmarks.
+ */
+public class BenchmarkRunner {
+
+  public static void main(String[] args) throws Exception {
+    final CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+
+    final OptionsBuilder builder = new OptionsBuilder();
+    builder.parent(commandLineOptions);
+    builder.addProfiler(GCProfiler.class);
+    if (commandLineOptions.getIncludes().isEmpty()) {
+      builder.include(BenchmarkRunner.class.getPackage().getName() + ".*");
+    }
+
+    final Options options = builder.build();
+    new Runner(options).run();
+  }
+}
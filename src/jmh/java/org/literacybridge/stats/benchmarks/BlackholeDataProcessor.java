@@ -0,0 +1,144 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * A TalkingBookDataProcessor that hands everything it is given to a JMH Blackhole, so the JIT can not optimize away
+ * the work done to produce the callbacks.
+ */
+public class BlackholeDataProcessor implements TalkingBookDataProcessor {
+
+  private final Blackhole blackhole;
+
+  public BlackholeDataProcessor(Blackhole blackhole) {
+    this.blackhole = blackhole;
+  }
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+    blackhole.consume(context);
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+    blackhole.consume(context);
+  }
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) {
+    blackhole.consume(flashData);
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+    blackhole.consume(errorMessage);
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+    blackhole.consume(volume);
+    blackhole.consume(voltage);
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+    blackhole.consume(secondsPlayed);
+    blackhole.consume(secondsSomething);
+    blackhole.consume(volume);
+    blackhole.consume(voltage);
+    blackhole.consume(ended);
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+    blackhole.consume(context);
+    blackhole.consume(categoryId);
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+    blackhole.consume(unknownNumber);
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    blackhole.consume(context);
+    blackhole.consume(secondsRecorded);
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    blackhole.consume(context);
+    blackhole.consume(contentId);
+    blackhole.consume(useful);
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+    blackhole.consume(context);
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+    blackhole.consume(context);
+    blackhole.consume(voltageDropped);
+    blackhole.consume(time);
+  }
+
+  @Override
+  public void onLogFileStart(String fileName) {
+    blackhole.consume(fileName);
+  }
+
+  @Override
+  public void onLogFileEnd() {
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+    blackhole.consume(statsFile);
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+    blackhole.consume(errorMessage);
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+    blackhole.consume(tbDataLine);
+  }
+}
@@ -0,0 +1,40 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a 6708 byte flashData.bin image.  Scores are per image.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FlashDataBenchmark {
+
+  @Param({"5", "40"})
+  public int messages;
+
+  private byte[] image;
+
+  @Setup
+  public void setup() {
+    image = SyntheticData.flashData(messages, 3, 42);
+  }
+
+  @Benchmark
+  public FlashData parseFromStream() throws IOException {
+    return FlashData.parseFromStream(new ByteArrayInputStream(image));
+  }
+
+  @Benchmark
+  public Object allStats() throws IOException {
+    return FlashData.parseFromStream(new ByteArrayInputStream(image)).allStats();
+  }
+}
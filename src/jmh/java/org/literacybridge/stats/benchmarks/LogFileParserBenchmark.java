@@ -0,0 +1,49 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a ~4MB synthetic log file.  Scores are per line.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class LogFileParserBenchmark {
+
+  public static final int LINES = 50000;
+
+  private static final SyncProcessingContext CONTEXT = new SyncProcessingContext("10m1d16h37m35s", "TB0002FE",
+    "Baazu-Jirapa", "2014-1-dga", "2014-1", "device1");
+
+  @Param({"regex", "scanning"})
+  public String parser;
+
+  private byte[] logFile;
+
+  @Setup
+  public void setup() {
+    logFile = SyntheticData.logFile(LINES, 42);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(LINES)
+  public void parse(Blackhole blackhole) throws IOException {
+    final BlackholeDataProcessor callbacks = new BlackholeDataProcessor(blackhole);
+    final LogFileParser logFileParser = "scanning".equals(parser)
+      ? new ScanningLogFileParser(callbacks, CONTEXT, DirectoryProcessor.CATEGORY_MAP)
+      : new LogFileParser(callbacks, CONTEXT, DirectoryProcessor.CATEGORY_MAP);
+    logFileParser.parse("log.txt", new ByteArrayInputStream(logFile));
+  }
+}
@@ -0,0 +1,32 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses .stat files.  Scores are per file.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StatsFileBenchmark {
+
+  private byte[] statsFile;
+
+  @Setup
+  public void setup() throws IOException {
+    statsFile = SyntheticData.statsFile(42);
+  }
+
+  @Benchmark
+  public StatsFile read() throws IOException {
+    return StatsFile.read(new ByteArrayInputStream(statsFile));
+  }
+}
@@ -0,0 +1,38 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.literacybridge.stats.model.DeploymentId;
+import org.literacybridge.stats.model.SyncDirId;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses a mix of V1 and V2 sync directory names.  Scores are per name.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SyncDirIdBenchmark {
+
+  public static final int NAMES = 1000;
+
+  private final DeploymentId deploymentId = DeploymentId.parseContentUpdate("2014-1");
+  private String[] syncDirNames;
+
+  @Setup
+  public void setup() {
+    syncDirNames = SyntheticData.syncDirNames(NAMES, 42);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(NAMES)
+  public void parseSyncDir(Blackhole blackhole) {
+    for (String syncDirName : syncDirNames) {
+      blackhole.consume(SyncDirId.parseSyncDir(deploymentId, syncDirName));
+    }
+  }
+}
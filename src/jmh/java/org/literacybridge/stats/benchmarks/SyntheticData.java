@@ -0,0 +1,289 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang.StringUtils;
+import org.literacybridge.stats.formats.FirmwareConstants;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.formats.tbData.TbDataParser;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Generators for synthetic, but structurally realistic, instances of each of the file formats the stats package
+ * parses.  Everything is driven off a seeded Random, so two runs of a benchmark see exactly the same data.
+ */
+public class SyntheticData {
+
+  public static final int FLASH_DATA_SIZE = FlashData.FLASH_DATA_SIZE;
+
+  private static final String[] CONTENT_IDS = {
+    "TB0003a2_2156B516", "H_0172_FC0929CA", "TB000248_AA94FE16", "00037a_9_3DCBA2D0", "A-0004A1E3",
+    "M_0015_A3F5C2D1", "TB0005b1_8821C3A0", "LB-2_0ndjc5ca5v_3",
+  };
+
+  private static final String[] CATEGORIES = {"1", "1-2", "2", "9", "0", "$0-1"};
+
+  private static final String TB_DATA_DATE = "Mon Aug 19 00:00:00 GMT 2013";
+
+  /**
+   * Generates a log file in the format written by the Talking Book firmware.  The mix of actions roughly follows
+   * what we see in the field:  mostly PLAY/PLAYED pairs, with a sprinkling of the rarer actions.
+   *
+   * @param lines number of lines to generate
+   * @param seed  seed for the generator
+   * @return the log file, encoded as UTF-8
+   */
+  public static byte[] logFile(int lines, long seed) {
+    final Random random = new Random(seed);
+    final StringBuilder builder = new StringBuilder(lines * 96);
+
+    int cycle = 1;
+    int period = 1;
+    int day = 0;
+    int seconds = 0;
+    for (int i = 0; i < lines; i++) {
+      seconds += random.nextInt(120);
+      if (seconds >= 24 * 3600) {
+        seconds -= 24 * 3600;
+        day++;
+      }
+      if (random.nextInt(200) == 0) {
+        cycle++;
+      }
+
+      final int voltage = 200 + random.nextInt(200);
+      builder.append(String.format("%dr%04dc%03dp%03dd%02dh%02dm%02ds%03d/%03d/%03dV:",
+        random.nextInt(4), cycle, period, day, seconds / 3600, (seconds / 60) % 60, seconds % 60,
+        voltage + 20, voltage, voltage - 5));
+
+      final String contentId = CONTENT_IDS[random.nextInt(CONTENT_IDS.length)];
+      final int action = random.nextInt(100);
+      if (action < 35) {
+        builder.append(String.format("PLAY %s @VOL=%02d @Volt=%d", contentId, random.nextInt(16), voltage));
+      } else if (action < 70) {
+        final int length = 10 + random.nextInt(900);
+        final boolean ended = random.nextBoolean();
+        builder.append(String.format("PLAYED %s %04d/%04dsec @VOL=%02d @Volt=%d%s", contentId,
+          ended ? length : random.nextInt(length), length, random.nextInt(16), voltage, ended ? "-Ended" : ""));
+      } else if (action < 78) {
+        builder.append("Category: ").append(CATEGORIES[random.nextInt(CATEGORIES.length)]);
+      } else if (action < 83) {
+        builder.append("PAUSED");
+      } else if (action < 88) {
+        builder.append("UNPAUSED");
+      } else if (action < 91) {
+        builder.append(String.format("RECORD %s -> %d", contentId, random.nextInt(10)));
+      } else if (action < 93) {
+        builder.append(String.format("TIME RECORDED (secs): %04d", random.nextInt(120)));
+      } else if (action < 95) {
+        builder.append(random.nextBoolean() ? "SURVEY:taken" : "SURVEY:apply");
+      } else if (action < 97) {
+        builder.append(String.format("VOLTAGE DROP: %d.%02dv in %d sec", random.nextInt(2), random.nextInt(100),
+          random.nextInt(60)));
+      } else if (action < 98) {
+        builder.append("SHUTTING DOWN");
+      } else {
+        builder.append("USB MODE");
+      }
+      builder.append('\n');
+    }
+
+    return builder.toString().getBytes(Charset.forName("UTF-8"));
+  }
+
+  /**
+   * Generates a flashData.bin image, laid out exactly like the NOR flash structures on the device.
+   *
+   * @param messages  number of messages in the message map (at most MAX_TRACKED_MESSAGES)
+   * @param rotations number of rotations tracked (at most MAX_ROTATIONS)
+   * @param seed      seed for the generator
+   * @return the image, which is always FLASH_DATA_SIZE bytes
+   */
+  public static byte[] flashData(int messages, int rotations, long seed) {
+    final Random random = new Random(seed);
+    final ByteBuffer buffer = ByteBuffer.allocate(FLASH_DATA_SIZE);
+    buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+    //SystemData
+    buffer.putShort(FirmwareConstants.SYSTEM_DATA_ID);
+    buffer.putShort((short) random.nextInt(10));
+    putString(buffer, "srn.a01b" + random.nextInt(10), FirmwareConstants.FIXED_SERIAL_NUMBER_SIZE);
+    putString(buffer, "2014-1", FirmwareConstants.FIXED_UPDATE_NUMBER_SIZE);
+    putString(buffer, "Baazu-Jirapa", FirmwareConstants.FIXED_LOCATION_SIZE);
+    putString(buffer, "2014-1-dga", FirmwareConstants.FIXED_IMAGE_NAME_SIZE);
+    buffer.putShort((short) (1 + random.nextInt(28)));
+    buffer.putShort((short) (1 + random.nextInt(12)));
+    buffer.putShort((short) 2014);
+
+    //SystemCounts
+    buffer.putShort(FirmwareConstants.NOR_STRUCT_ID_COUNTS);
+    buffer.putShort((short) rotations);
+    buffer.putShort((short) random.nextInt(400));
+    buffer.putShort((short) 0);
+    buffer.putShort((short) random.nextInt(1000));
+    buffer.putShort((short) (200 + random.nextInt(200)));
+    for (int i = 0; i < FirmwareConstants.MAX_ROTATIONS; i++) {
+      buffer.putShort(i < rotations ? FirmwareConstants.NOR_STRUCT_ID_ROTATION : (short) -1);
+      buffer.putShort((short) i);
+      buffer.putShort((short) i);
+      buffer.putShort((short) random.nextInt(2000));
+      buffer.putShort((short) (200 + random.nextInt(200)));
+    }
+
+    //NORmsgMap
+    buffer.putShort(FirmwareConstants.NOR_STRUCT_ID_MSG_MAP);
+    buffer.putShort((short) messages);
+    for (int i = 0; i < FirmwareConstants.MAX_TRACKED_MESSAGES; i++) {
+      putString(buffer, i < messages ? CONTENT_IDS[i % CONTENT_IDS.length] + i : "",
+        FirmwareConstants.MAX_MESSAGE_ID_LENGTH);
+    }
+
+    //NORallMsgStats
+    buffer.putShort(FirmwareConstants.NOR_STRUCT_ID_ALL_MSGS);
+    buffer.putShort((short) 0);
+    putString(buffer, "DEFAULT", FirmwareConstants.MAX_PROFILE_NAME_LENGTH);
+    buffer.putShort((short) messages);
+    buffer.putShort((short) rotations);
+    for (int i = 0; i < FirmwareConstants.MAX_TRACKED_MESSAGES; i++) {
+      for (int j = 0; j < FirmwareConstants.MAX_ROTATIONS; j++) {
+        final boolean used = i < messages && j < rotations;
+        buffer.putShort(used ? FirmwareConstants.NOR_STRUCT_ID_MESSAGE_STATS : FirmwareConstants.NOR_STRUCT_ID_NO_MESSAGE_STATS);
+        buffer.putShort((short) i);
+        buffer.putShort((short) 0);
+        buffer.putShort((short) j);
+        for (int count = 0; count < 7; count++) {
+          buffer.putShort(used ? (short) random.nextInt(50) : 0);
+        }
+        buffer.putShort(used ? (short) random.nextInt(60000) : 0);
+      }
+    }
+
+    return buffer.array();
+  }
+
+  /**
+   * Generates a .stat file, using StatsFile.write.
+   */
+  public static byte[] statsFile(long seed) throws IOException {
+    final Random random = new Random(seed);
+    final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    StatsFile.write(new StatsFile("srn.a01b" + random.nextInt(10), CONTENT_IDS[random.nextInt(CONTENT_IDS.length)],
+      random.nextInt(200), random.nextInt(200), random.nextInt(10), random.nextInt(50), random.nextInt(50),
+      random.nextInt(50)), outputStream);
+    return outputStream.toByteArray();
+  }
+
+  /**
+   * Writes a tbData CSV file into a directory.  The version is encoded in the file name, the same way the TB-Loader
+   * does it, since that is how TbDataParser decides which column layout to use.
+   * <p/>
+   * <ul>
+   * <li>V0 files have a header line, like the ones in our test packages.</li>
+   * <li>V1 files have no header line, so they are parsed with the fixed V1 column positions.</li>
+   * <li>V3 files have the full V3 header.</li>
+   * </ul>
+   *
+   * @param dir     directory to write the file into
+   * @param version 0, 1 or 3
+   * @param rows    number of data rows
+   * @param seed    seed for the generator
+   * @return the file written
+   */
+  public static File tbDataFile(File dir, int version, int rows, long seed) throws IOException {
+    final Random random = new Random(seed);
+    final List<String> lines = new ArrayList<>(rows + 1);
+    final String[] header;
+
+    if (version == 0) {
+      header = new String[]{"UPDATE_DATE_TIME", "LOCATION", "OUT-SN", "ACTION", "OUT-DEPLOYMENT", "OUT-COMMUNITY",
+        "OUT-IMAGE", "OUT-FW-REV", "IN-SN", "IN-DEPLOYMENT", "IN-COMMUNITY", "IN-LAST-UPDATED"};
+      lines.add(StringUtils.join(header, ','));
+    } else if (version == 1) {
+      header = new String[]{"UPDATE_DATE_TIME", "LOCATION", "IN-SN", "ACTION", "IN-DEPLOYMENT", "IN-COMMUNITY",
+        "IN-IMAGE", "IN-FW-REV", "OUT-SN", "OUT-DEPLOYMENT", "OUT-COMMUNITY"};
+    } else if (version == 3) {
+      header = V3FieldNames.get();
+      lines.add(StringUtils.join(header, ','));
+    } else {
+      throw new IllegalArgumentException("Unsupported tbData version " + version);
+    }
+
+    final String[] row = new String[header.length];
+    for (int i = 0; i < rows; i++) {
+      for (int column = 0; column < header.length; column++) {
+        row[column] = tbDataValue(header[column], i, random);
+      }
+      lines.add(StringUtils.join(row, ','));
+    }
+
+    final File file = new File(dir, String.format("tbData-v%02d-2014y01m01d-bench%d.csv", version, seed));
+    FileUtils.writeLines(file, "UTF-8", lines);
+    return file;
+  }
+
+  /**
+   * Generates sync directory names.  Half are in the V1 format (10m1d16h37m35s), half in the V2 format
+   * (2014y10m01d16h37m35s-device).
+   */
+  public static String[] syncDirNames(int count, long seed) {
+    final Random random = new Random(seed);
+    final String[] names = new String[count];
+    for (int i = 0; i < count; i++) {
+      final int month = 1 + random.nextInt(12);
+      final int day = 1 + random.nextInt(28);
+      final int hour = random.nextInt(24);
+      final int minute = random.nextInt(60);
+      final int second = random.nextInt(60);
+      if (random.nextBoolean()) {
+        names[i] = String.format("%dm%dd%dh%dm%ds", month, day, hour, minute, second);
+      } else {
+        names[i] = String.format("2014y%02dm%02dd%02dh%02dm%02ds-device%d", month, day, hour, minute, second,
+          random.nextInt(5));
+      }
+    }
+    return names;
+  }
+
+  private static String tbDataValue(String column, int row, Random random) {
+    if (column.equals("UPDATE_DATE_TIME")) {
+      return String.format("2014y01m%02dd%02dh%02dm%02ds", 1 + row % 28, row % 24, row % 60, random.nextInt(60));
+    } else if (column.endsWith("-DATE") || column.endsWith("-UPDATED")) {
+      return TB_DATA_DATE;
+    } else if (column.endsWith("-SN")) {
+      return "srn.a" + random.nextInt(10000);
+    } else if (column.endsWith("DEPLOYMENT")) {
+      return "2014-1";
+    } else if (column.endsWith("COMMUNITY")) {
+      return "village" + random.nextInt(100);
+    } else if (column.equals("ACTION")) {
+      return random.nextBoolean() ? "update" : "collect-data";
+    } else if (column.startsWith("FLASH-") || column.equals("DURATION_SEC")) {
+      return Integer.toString(random.nextInt(1000));
+    }
+    return "r" + random.nextInt(2000);
+  }
+
+  private static void putString(ByteBuffer buffer, String value, int chars) {
+    final byte[] encoded = Arrays.copyOf(FirmwareConstants.encodeString(value), chars * FirmwareConstants.SizeOfChar);
+    buffer.put(encoded);
+  }
+
+  /**
+   * The V3 column names are only visible to TbDataParser and its subclasses.
+   */
+  private static class V3FieldNames extends TbDataParser {
+    static String[] get() {
+      return V3_FIELD_NAMES.clone();
+    }
+  }
+}
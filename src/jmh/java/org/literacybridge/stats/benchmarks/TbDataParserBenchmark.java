@@ -0,0 +1,50 @@
+package org.literacybridge.stats.benchmarks;
+
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.stats.formats.tbData.TbDataParser;
+import org.literacybridge.stats.model.TbDataLine;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parses V0, V1 and V3 tbData CSV files.  TbDataParser only reads from files, so these are written to a temp
+ * directory during setup; they are small enough to stay in the page cache.  Scores are per row.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TbDataParserBenchmark {
+
+  public static final int ROWS = 1000;
+
+  @Param({"0", "1", "3"})
+  public int version;
+
+  private File dir;
+  private File tbDataFile;
+
+  @Setup
+  public void setup() throws IOException {
+    dir = Files.createTempDirectory("tbData-bench").toFile();
+    tbDataFile = SyntheticData.tbDataFile(dir, version, ROWS, 42);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(dir);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(ROWS)
+  public List<TbDataLine> parseTbDataFile() throws IOException {
+    return new TbDataParser().parseTbDataFile(tbDataFile, true);
+  }
+}
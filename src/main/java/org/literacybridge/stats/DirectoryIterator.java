@@ -1,14 +1,22 @@
 package org.literacybridge.stats;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.filefilter.DirectoryFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.codehaus.jackson.map.ObjectMapper;
 import org.literacybridge.stats.api.DirectoryCallbacks;
+import org.literacybridge.stats.api.ParallelDirectoryCallbacks;
+import org.literacybridge.stats.api.PrefetchingSyncDirectoryCallbacks;
+import org.literacybridge.stats.api.ProgressListener;
+import org.literacybridge.stats.api.SyncDirectoryCallbacks;
+import org.literacybridge.stats.formats.syncDirectory.FileSyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.ZipSyncDirectory;
+import org.literacybridge.stats.metrics.PipelineMetrics;
 import org.literacybridge.stats.model.*;
 import org.literacybridge.stats.processors.ManifestCreationCallbacks;
+import org.literacybridge.utils.DirectoryTreeSnapshot;
 import org.literacybridge.utils.FsUtils;
+import org.literacybridge.utils.ParallelUnzipper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -16,9 +24,27 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.io.File;
 import java.io.FileFilter;
-import java.io.FilenameFilter;
 import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 import java.util.zip.ZipException;
 
@@ -42,14 +68,71 @@ public class DirectoryIterator {
   public static final String TALKING_BOOK_ROOT_V2 = "TalkingBookData";
   public static final ObjectMapper mapper = new ObjectMapper();
   protected static final Logger logger = LoggerFactory.getLogger(DirectoryIterator.class);
+
+  //Sync directories are visited in name order, whether they are zipped or not
+  private static final Comparator<File> FILE_NAME_ORDER = new Comparator<File>() {
+    @Override
+    public int compare(File o1, File o2) {
+      return o1.getName().compareTo(o2.getName());
+    }
+  };
+  private static final Comparator<SyncDirSource> SYNC_DIR_SOURCE_ORDER = new Comparator<SyncDirSource>() {
+    @Override
+    public int compare(SyncDirSource o1, SyncDirSource o2) {
+      return o1.name.compareTo(o2.name);
+    }
+  };
+  /**
+   * How many talking books per worker thread can be waiting to be joined in a parallel deployment.  Two keeps every
+   * thread busy while the oldest talking book is joined.
+   */
+  public static final int TALKING_BOOKS_IN_FLIGHT_PER_THREAD = 2;
+
   public final boolean strict;
   public final File[] rootFiles;
+  public final int parallelism;
   public DirectoryFormat format;
+  private ForkJoinPool pool;
+
+  //Directory listings made while generating a manifest, kept so the processing pass does not have to list again
+  private Map<File, DirectoryListing> cachedListings;
+  private boolean useTreeSnapshot = false;
+  private DirectoryTreeSnapshot snapshot;
+
+  private final ProcessingProgress progress = new ProcessingProgress();
+  private ProgressListener progressListener;
+  private long progressIntervalMillis;
+  private final AtomicLong lastProgressReport = new AtomicLong();
+  private PipelineMetrics metrics;
+  private int readAhead = 0;
+  private ExecutorService prefetchExecutor;
+  private SyncDirPrefetcher prefetcher;
+  private int unzipThreads = 1;
+  private ParallelUnzipper unzipper;
 
   public DirectoryIterator(File root, DirectoryFormat format, boolean strict) {
+    this(root, format, strict, 1);
+  }
+
+  /**
+   * Creates an iterator that can process talking books in parallel.  Talking book subtrees are only dispatched to
+   * worker threads for callbacks that implement {@link ParallelDirectoryCallbacks}, all other callbacks are processed
+   * serially on the calling thread, exactly as with a parallelism of 1.
+   *
+   * @param root        root of the stats package
+   * @param format      directory format, or null if it should come from the manifest
+   * @param strict      whether format problems should throw instead of being logged
+   * @param parallelism number of worker threads to use for talking books.  1 means everything runs on the calling thread.
+   */
+  public DirectoryIterator(File root, DirectoryFormat format, boolean strict, int parallelism) {
+    if (parallelism < 1) {
+      throw new IllegalArgumentException("Parallelism must be at least 1, but was " + parallelism);
+    }
+
     this.rootFiles = rootInFunnyZip(root);
     this.strict = strict;
     this.format = format;
+    this.parallelism = parallelism;
   }
 
   /**
@@ -98,10 +181,10 @@ public class DirectoryIterator {
             }
           }
           if (project != null && project.exists()) {
-            System.out.println("   project directory listed");
+            logger.debug("project directory listed");
             root = project;
           } else {
-            System.out.println("   OLD-no project directory listed");
+            logger.debug("OLD-no project directory listed");
             root = altCollectedDataFile;
           }
         }
@@ -123,7 +206,6 @@ public class DirectoryIterator {
         }
       });
     }
-    System.out.println("   Size:" + (int) (FileUtils.sizeOfDirectory(root) >> 20) + "MB" + "  Start Time:" + System.currentTimeMillis() / 1000);
     return processingRoots;
   }
 
@@ -132,24 +214,34 @@ public class DirectoryIterator {
   }
 
   public static File getTbDataDir(File root, String device, DirectoryFormat format) {
+    return getTbDataDir(root, device, format, null);
+  }
+
+  public static File getTbDataDir(File root, String device, DirectoryFormat format,
+                                  @Nullable DirectoryTreeSnapshot snapshot) {
     File retVal;
 
     if (format == DirectoryFormat.Sync) {
-      retVal = FsUtils.FileIgnoreCase(root, device, UPDATE_ROOT_V1);
+      retVal = FsUtils.FileIgnoreCase(snapshot, root, device, UPDATE_ROOT_V1);
     } else {
-      retVal = FsUtils.FileIgnoreCase(root, DEVICE_OPERATIONS_DIR_ARCHIVE_V2, device, TBDATA_DIR_V2);
+      retVal = FsUtils.FileIgnoreCase(snapshot, root, DEVICE_OPERATIONS_DIR_ARCHIVE_V2, device, TBDATA_DIR_V2);
     }
 
     return retVal;
   }
 
   public static File getTbLoaderLogFileDir(File root, String device, DirectoryFormat format) {
+    return getTbLoaderLogFileDir(root, device, format, null);
+  }
+
+  public static File getTbLoaderLogFileDir(File root, String device, DirectoryFormat format,
+                                           @Nullable DirectoryTreeSnapshot snapshot) {
     File retVal;
 
     if (format == DirectoryFormat.Sync) {
-      retVal = FsUtils.FileIgnoreCase(root, device, UPDATE_ROOT_V1, TBLOADER_LOG_DIR);
+      retVal = FsUtils.FileIgnoreCase(snapshot, root, device, UPDATE_ROOT_V1, TBLOADER_LOG_DIR);
     } else {
-      retVal = FsUtils.FileIgnoreCase(root, DEVICE_OPERATIONS_DIR_ARCHIVE_V2, device, TBLOADER_LOG_DIR);
+      retVal = FsUtils.FileIgnoreCase(snapshot, root, DEVICE_OPERATIONS_DIR_ARCHIVE_V2, device, TBLOADER_LOG_DIR);
     }
 
     return retVal;
@@ -174,41 +266,327 @@ public class DirectoryIterator {
   }
 
   public void process(DirectoryCallbacks callbacks) throws Exception {
-    for (File currRoot : rootFiles) {
-      process(currRoot, callbacks);
+    progress.start();
+    lastProgressReport.set(System.currentTimeMillis());
+    try {
+      for (File currRoot : rootFiles) {
+        process(currRoot, callbacks);
+      }
+    } finally {
+      if (progressListener != null) {
+        synchronized (progressListener) {
+          progressListener.onFinished(progress);
+        }
+      }
+    }
+  }
+
+  /**
+   * Gets the progress counters for the current (or last) call to {@link #process(DirectoryCallbacks)}.  The iterator
+   * counts talking books and sync directories.  Callbacks that read files can add log lines and bytes read, for
+   * example with {@link org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor#setProgress}.
+   *
+   * @return the counters, which are shared and updated live
+   */
+  public ProcessingProgress getProgress() {
+    return progress;
+  }
+
+  /**
+   * Sets a listener to be told about progress while processing.
+   *
+   * @param progressListener       the listener, or null for none
+   * @param progressIntervalMillis the minimum time between reports
+   */
+  public void setProgressListener(@Nullable ProgressListener progressListener, long progressIntervalMillis) {
+    this.progressListener = progressListener;
+    this.progressIntervalMillis = progressIntervalMillis;
+  }
+
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Turns on timing the {@link PipelineMetrics#SYNC_DIR} and {@link PipelineMetrics#UNZIP} stages.  Usually the same
+   * metrics are also given to the callbacks, see
+   * {@link org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor#setMetrics}.
+   *
+   * @param metrics where to record the timings, or null to not time anything
+   */
+  public void setMetrics(@Nullable PipelineMetrics metrics) {
+    this.metrics = metrics;
+  }
+
+  public int getReadAhead() {
+    return readAhead;
+  }
+
+  /**
+   * Sets how many sync directories to load ahead of the one being processed, for callbacks that implement
+   * {@link PrefetchingSyncDirectoryCallbacks}.  Loading is done on a single I/O thread, and never reaches past the end
+   * of the current device deployment.  This only applies when talking books are processed serially:  in parallel, the
+   * pool threads already overlap their reads.
+   *
+   * @param readAhead the number of sync directories, or 0 to not prefetch
+   */
+  public void setReadAhead(int readAhead) {
+    if (readAhead < 0) {
+      throw new IllegalArgumentException("Read-ahead can not be negative: " + readAhead);
+    }
+    this.readAhead = readAhead;
+  }
+
+  public int getUnzipThreads() {
+    return unzipThreads;
+  }
+
+  /**
+   * Sets how many threads extract sync zips, for callbacks that can not read them in place.  With more than one, all
+   * the zips of a talking book are extracted at once, and large log files within a zip are extracted concurrently.
+   * The threads are shared by all talking books, so this bounds the extraction across the whole run.
+   *
+   * @param unzipThreads the number of threads, or 1 to extract the zips one by one on the processing thread
+   */
+  public void setUnzipThreads(int unzipThreads) {
+    if (unzipThreads < 1) {
+      throw new IllegalArgumentException("Unzip threads must be at least 1, but was " + unzipThreads);
+    }
+    this.unzipThreads = unzipThreads;
+  }
+
+  /**
+   * Counts a finished sync directory, and reports progress if the interval has passed.  Only the thread that wins the
+   * compare-and-set reports, so reports are never made concurrently or more often than the interval.
+   */
+  private void syncDirDone(long startNanos, File syncDir) {
+    progress.addSyncDir();
+    if (metrics != null) {
+      metrics.record(PipelineMetrics.SYNC_DIR, startNanos, 0, 0, syncDir.getPath());
+    }
+
+    final ProgressListener listener = progressListener;
+    if (listener != null) {
+      final long now = System.currentTimeMillis();
+      final long last = lastProgressReport.get();
+      if (now - last >= progressIntervalMillis && lastProgressReport.compareAndSet(last, now)) {
+        synchronized (listener) {
+          listener.onProgress(progress);
+        }
+      }
     }
   }
 
   protected void process(final File root, DirectoryCallbacks callbacks) throws Exception {
-    StatsPackageManifest manifest = null;
-    File manifestFile = getManifestFile(root);
-    if (manifestFile.exists()) {
-      manifest = readInManifest(manifestFile, format, strict);
-      format = DirectoryFormat.fromVersion(manifest.formatVersion);
-    } else {
-      if (format == null) {
-        if (strict) {
-          throw new IllegalArgumentException("No Manifest is set, and no directory format is set.");
+    final boolean tookSnapshot = takeSnapshot(root);
+    try {
+      StatsPackageManifest manifest = null;
+      File manifestFile = getManifestFile(root);
+      if (exists(manifestFile)) {
+        manifest = readInManifest(manifestFile, format, strict);
+        format = DirectoryFormat.fromVersion(manifest.formatVersion);
+      } else {
+        if (format == null) {
+          if (strict) {
+            throw new IllegalArgumentException("No Manifest is set, and no directory format is set.");
+          }
+
+          format = DirectoryFormat.Sync;
         }
 
-        format = DirectoryFormat.Sync;
+        cachedListings = new ConcurrentHashMap<>();
+        manifest = generateManifest(root, format, cachedListings);
       }
 
-      manifest = generateManifest(root, format);
+      process(root, manifest, callbacks);
+    } finally {
+      cachedListings = null;
+      if (tookSnapshot) {
+        snapshot = null;
+      }
     }
-
-    process(root, manifest, callbacks);
   }
 
   public StatsPackageManifest generateManifest(File root, DirectoryFormat format) throws Exception {
+    final boolean tookSnapshot = takeSnapshot(root);
+    try {
+      return generateManifest(root, format, null);
+    } finally {
+      if (tookSnapshot) {
+        snapshot = null;
+      }
+    }
+  }
+
+  /**
+   * Generates a manifest from the names of the sync directories alone.  This only lists directories:  no sync
+   * directory is opened, and no zip is read or extracted.
+   *
+   * @param root     root of the stats package
+   * @param format   directory format of the stats package
+   * @param listings if not null, every directory listing that was made is added to this, keyed by directory
+   * @return the manifest
+   */
+  protected StatsPackageManifest generateManifest(File root, DirectoryFormat format,
+                                                  @Nullable Map<File, DirectoryListing> listings) throws Exception {
     this.format = format;
+    if (!root.exists()) {
+      throw new IllegalArgumentException("Root directory does not exist: " + root.getCanonicalPath());
+    }
 
     ManifestCreationCallbacks manifestCreationCallbacks = new ManifestCreationCallbacks();
-    process(root, null, manifestCreationCallbacks);
+    for (DeploymentPerDevice deploymentPerDevice : loadDeviceDeployments(root)) {
+      final DeploymentId deploymentId = DeploymentId.parseContentUpdate(deploymentPerDevice.deployment);
+      manifestCreationCallbacks.startDeviceDeployment(deploymentPerDevice);
+
+      long syncDirCount = 0;
+      for (File village : list(deploymentPerDevice.getRoot(root, format, snapshot), listings).directories) {
+        for (File talkingBook : list(village, listings).directories) {
+          for (String syncDirName : list(talkingBook, listings).syncDirNames()) {
+            final SyncDirId syncDirId = SyncDirId.parseSyncDir(deploymentId, syncDirName.trim());
+            manifestCreationCallbacks.processSyncDir(syncDirId, null);
+            if (syncDirId.dateTime != null) {
+              syncDirCount++;
+            }
+          }
+        }
+      }
+      //The listing pass already knows how much work there is, so this is where the progress total comes from
+      progress.addExpectedSyncDirs(syncDirCount);
+      manifestCreationCallbacks.endDeviceDeployment();
+    }
     return manifestCreationCallbacks.generateManifest(format);
   }
 
+  private DirectoryListing list(File dir, @Nullable Map<File, DirectoryListing> listings) {
+    final DirectoryListing listing = DirectoryListing.of(dir, snapshot);
+    if (listings != null) {
+      listings.put(dir, listing);
+    }
+    return listing;
+  }
+
+  /**
+   * Gets the listing of a directory, using the one made while generating the manifest if there is one.  Cached
+   * listings are only used once.
+   */
+  protected DirectoryListing listing(File dir) {
+    final Map<File, DirectoryListing> listings = cachedListings;
+    final DirectoryListing listing = listings != null ? listings.remove(dir) : null;
+    return listing != null ? listing : DirectoryListing.of(dir, snapshot);
+  }
+
+  /**
+   * Gets the listing of a directory like {@link #listing(File)}, but leaves it cached for the walk to use.
+   */
+  private DirectoryListing peekListing(File dir) {
+    final Map<File, DirectoryListing> listings = cachedListings;
+    DirectoryListing listing = listings != null ? listings.get(dir) : null;
+    if (listing == null) {
+      listing = list(dir, listings);
+    }
+    return listing;
+  }
+
+  public boolean isUseTreeSnapshot() {
+    return useTreeSnapshot;
+  }
+
+  /**
+   * Turns on answering directory listings and existence checks from a {@link DirectoryTreeSnapshot}.  A snapshot of
+   * the whole root is taken with one walk at the start of processing, and dropped at the end.  This is much faster on
+   * network storage, but the callbacks must not add or remove anything the iterator has yet to visit.  Talking books
+   * whose zips get extracted are listed again from the file system.
+   *
+   * @param useTreeSnapshot true to use a snapshot
+   */
+  public void setUseTreeSnapshot(boolean useTreeSnapshot) {
+    this.useTreeSnapshot = useTreeSnapshot;
+  }
+
+  /**
+   * Takes a snapshot of root, if snapshots are turned on and there is not one already.
+   *
+   * @return true if this call took the snapshot, and so should drop it when done
+   */
+  private boolean takeSnapshot(File root) throws IOException {
+    if (!useTreeSnapshot || snapshot != null || !root.exists()) {
+      return false;
+    }
+    snapshot = DirectoryTreeSnapshot.walk(root);
+    return true;
+  }
+
+  private boolean exists(File file) {
+    return snapshot != null ? snapshot.exists(file) : file.exists();
+  }
+
+  private File[] listDirectories(File dir) {
+    return DirectoryListing.of(dir, snapshot).directories;
+  }
+
+  private List<File> listFiles(File dir, Pattern namePattern) {
+    final File[] files = snapshot != null ? snapshot.listFiles(dir) : dir.listFiles();
+    final List<File> retVal = new ArrayList<>();
+    if (files != null) {
+      for (File file : files) {
+        if (namePattern.matcher(file.getName()).matches()) {
+          retVal.add(file);
+        }
+      }
+    }
+    return retVal;
+  }
+
   public void process(@Nonnull File root, @Nullable StatsPackageManifest manifest, @Nonnull DirectoryCallbacks callbacks) throws Exception {
+    final boolean tookSnapshot = takeSnapshot(root);
+    //Listings are kept while prefetching, so working out what to prefetch does not list the tree a second time
+    final boolean ownsListings = cachedListings == null;
+    if (ownsListings) {
+      cachedListings = new ConcurrentHashMap<>();
+    }
+    final boolean ownsPrefetchExecutor = readAhead > 0 && prefetchExecutor == null;
+    if (ownsPrefetchExecutor) {
+      prefetchExecutor = Executors.newSingleThreadExecutor(
+        new ThreadFactoryBuilder().setNameFormat("sync-dir-prefetch-%d").setDaemon(true).build());
+    }
+    final boolean ownsUnzipper = unzipThreads > 1 && unzipper == null;
+    if (ownsUnzipper) {
+      unzipper = new ParallelUnzipper(unzipThreads);
+    }
+    try {
+      //Only the outermost call owns the pool, so nested calls (such as generating a manifest) share it.
+      if (parallelism == 1 || pool != null) {
+        walk(root, manifest, callbacks);
+        return;
+      }
+
+      pool = new ForkJoinPool(parallelism);
+      try {
+        walk(root, manifest, callbacks);
+      } finally {
+        pool.shutdownNow();
+        pool = null;
+      }
+    } finally {
+      if (ownsPrefetchExecutor) {
+        prefetchExecutor.shutdown();
+        prefetchExecutor = null;
+      }
+      if (ownsUnzipper) {
+        unzipper.close();
+        unzipper = null;
+      }
+      if (ownsListings) {
+        cachedListings = null;
+      }
+      if (tookSnapshot) {
+        snapshot = null;
+      }
+    }
+  }
+
+  protected void walk(@Nonnull File root, @Nullable StatsPackageManifest manifest, @Nonnull DirectoryCallbacks callbacks) throws Exception {
 
     if (!root.exists()) {
       throw new IllegalArgumentException("Root directory does not exist: " + root.getCanonicalPath());
@@ -236,9 +614,9 @@ public class DirectoryIterator {
           }
 
           if (processDevice) {
-            File tbdataDir = getTbDataDir(root, currDevice, format);
+            File tbdataDir = getTbDataDir(root, currDevice, format, snapshot);
             // 
-            if (!deviceAlreadyProcessed && tbdataDir.exists()) {
+            if (!deviceAlreadyProcessed && exists(tbdataDir)) {
               // commenting out lines below and only procssing if tdbdir exists since
               // there has been a case of know operationaldata directory and yet still good
               // stats to process.  TODO: need a good warning system for these issues.
@@ -247,14 +625,14 @@ public class DirectoryIterator {
 //              }
 
               if (format == DirectoryFormat.Sync) {
-                for (File potential : tbdataDir.listFiles((FilenameFilter) new RegexFileFilter(TBDATA_PATTERN))) {
+                for (File potential : listFiles(tbdataDir, TBDATA_PATTERN)) {
                   callbacks.processTbDataFile(potential, false);
                 }
-                for (File potential : tbdataDir.listFiles((FilenameFilter) new RegexFileFilter(TBDATA_PATTERN_V2))) {
+                for (File potential : listFiles(tbdataDir, TBDATA_PATTERN_V2)) {
                   callbacks.processTbDataFile(potential, false);
                 }
               } else {
-                for (File potential : tbdataDir.listFiles((FilenameFilter) new RegexFileFilter(TBDATA_PATTERN_V2))) {
+                for (File potential : listFiles(tbdataDir, TBDATA_PATTERN_V2)) {
                   callbacks.processTbDataFile(potential, true);
                 }
               }
@@ -277,7 +655,12 @@ public class DirectoryIterator {
         }
 
         if (callbacks.startDeviceDeployment(deploymentPerDevice)) {
-          processDeviceDeployment(deploymentId, deploymentPerDevice.getRoot(root, format), callbacks);
+          if (pool != null && callbacks instanceof ParallelDirectoryCallbacks) {
+            processDeviceDeploymentInParallel(deploymentPerDevice, deploymentId, deploymentPerDevice.getRoot(root, format, snapshot),
+              (ParallelDirectoryCallbacks) callbacks);
+          } else {
+            processDeviceDeployment(deploymentId, deploymentPerDevice.getRoot(root, format, snapshot), callbacks);
+          }
           callbacks.endDeviceDeployment();
         }
       }
@@ -286,20 +669,112 @@ public class DirectoryIterator {
   }
 
   public void processDeviceDeployment(DeploymentId deploymentId, File deviceDeploymentDir, DirectoryCallbacks callbacks) throws Exception {
-    System.out.println(" " + deploymentId.toString());
-    for (File village : deviceDeploymentDir.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
-      if (callbacks.startVillage(village.getName().trim())) {
-        System.out.println("   " + village.getName());
-        processVillage(deploymentId, village, callbacks);
-        callbacks.endVillage();
+    logger.info("Processing deployment " + deploymentId);
+    prefetcher = createPrefetcher(deploymentId, deviceDeploymentDir, callbacks);
+    try {
+      for (File village : listing(deviceDeploymentDir).directories) {
+        if (callbacks.startVillage(village.getName().trim())) {
+          logger.debug("Processing village " + village.getName());
+          processVillage(deploymentId, village, callbacks);
+          callbacks.endVillage();
+        }
+      }
+    } finally {
+      if (prefetcher != null) {
+        prefetcher.close();
+        prefetcher = null;
+      }
+    }
+  }
+
+  /**
+   * Creates a prefetcher over every sync directory in a device deployment, if read-ahead is on and the callbacks
+   * support it.
+   *
+   * @return the prefetcher, or null if not prefetching
+   */
+  @Nullable
+  private SyncDirPrefetcher createPrefetcher(DeploymentId deploymentId, File deviceDeploymentDir,
+                                             DirectoryCallbacks callbacks) {
+    if (prefetchExecutor == null || !(callbacks instanceof PrefetchingSyncDirectoryCallbacks)) {
+      return null;
+    }
+
+    final List<SyncDirSource> sources = new ArrayList<>();
+    for (File village : peekListing(deviceDeploymentDir).directories) {
+      for (File talkingBook : peekListing(village).directories) {
+        sources.addAll(syncDirSources(deploymentId, peekListing(talkingBook)));
       }
     }
+    return new SyncDirPrefetcher(prefetchExecutor, (PrefetchingSyncDirectoryCallbacks) callbacks, snapshot, readAhead,
+      sources);
+  }
+
+  /**
+   * Parallel version of {@link #processDeviceDeployment}.  The village level calls are still made on {@code callbacks}
+   * from this thread, but each talking book is processed by its own fork on the pool.  Forks are joined back in the
+   * order the talking books were visited, so the result does not depend on scheduling.
+   * <p/>
+   * At most {@link #TALKING_BOOKS_IN_FLIGHT_PER_THREAD} talking books per thread are submitted before the oldest one
+   * is joined, so the events waiting to be joined, and the sync dirs they hold on to, stay bounded however big the
+   * deployment is.
+   */
+  public void processDeviceDeploymentInParallel(DeploymentPerDevice deploymentPerDevice, DeploymentId deploymentId,
+                                                File deviceDeploymentDir, ParallelDirectoryCallbacks callbacks) throws Exception {
+    logger.info("Processing deployment " + deploymentId);
+    final int maxInFlight = parallelism * TALKING_BOOKS_IN_FLIGHT_PER_THREAD;
+    final Deque<DirectoryCallbacks> forks = new ArrayDeque<>();
+    final Deque<Future<Void>> results = new ArrayDeque<>();
+
+    try {
+      for (File village : listing(deviceDeploymentDir).directories) {
+        final String villageName = village.getName().trim();
+        if (callbacks.startVillage(villageName)) {
+          logger.debug("Processing village " + village.getName());
+          for (File talkingBook : listing(village).directories) {
+            if (forks.size() >= maxInFlight) {
+              joinOldest(forks, results, callbacks);
+            }
+            final DirectoryCallbacks fork = callbacks.fork();
+            forks.add(fork);
+            results.add(pool.submit(new TalkingBookTask(deploymentPerDevice, deploymentId, villageName, talkingBook, fork)));
+          }
+          callbacks.endVillage();
+        }
+      }
+
+      while (!forks.isEmpty()) {
+        joinOldest(forks, results, callbacks);
+      }
+    } finally {
+      for (Future<Void> result : results) {
+        result.cancel(false);
+      }
+    }
+  }
+
+  /**
+   * Waits for the oldest talking book still in flight, and joins its fork back into the callbacks.
+   */
+  private static void joinOldest(Deque<DirectoryCallbacks> forks, Deque<Future<Void>> results,
+                                 ParallelDirectoryCallbacks callbacks) throws Exception {
+    try {
+      results.peek().get();
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof Exception) {
+        throw (Exception) e.getCause();
+      }
+      throw e;
+    }
+    results.remove();
+    callbacks.join(forks.remove());
   }
 
   public void processVillage(DeploymentId deploymentId, File villageDir, DirectoryCallbacks callbacks) throws Exception {
-    for (File talkingBook : villageDir.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
+    for (File talkingBook : listing(villageDir).directories) {
       if (callbacks.startTalkingBook(talkingBook.getName().trim())) {
-        System.out.println("     " + talkingBook.getName().trim());
+        logger.debug("Processing talking book " + talkingBook.getName().trim());
+        progress.addTalkingBook();
         processTalkingBook(deploymentId, talkingBook, callbacks);
         callbacks.endTalkingBook();
       }
@@ -308,32 +783,137 @@ public class DirectoryIterator {
 
   public void processTalkingBook(DeploymentId deploymentId, File talkingBookDir, DirectoryCallbacks callbacks) throws Exception {
 
-    FileFilter fileFilter = new WildcardFileFilter("*.zip");
-    File[] files = talkingBookDir.listFiles(fileFilter);
-    for (File syncZip : files) {
+    if (callbacks instanceof SyncDirectoryCallbacks) {
+      processTalkingBookInPlace(deploymentId, talkingBookDir, (SyncDirectoryCallbacks) callbacks);
+      return;
+    }
+
+    final DirectoryListing listing = listing(talkingBookDir);
+    for (File syncZip : listing.zips) {
       String filename = syncZip.getName().substring(0, syncZip.getName().length() - 4);
       File folder = new File(talkingBookDir, filename);
       if (folder.exists() && folder.isDirectory()) {
         FileUtils.deleteDirectory(folder);
       }
-      try {
-        FsUtils.unzip(syncZip, talkingBookDir);
-      } catch (ZipException e) {
-        logger.error("Couldn't unzip synchdir " + syncZip.getName() + "(" + e.getMessage() + ")");
+    }
+    if (unzipper != null && listing.zips.length > 0) {
+      unzipInParallel(talkingBookDir, listing.zips);
+    } else {
+      for (File syncZip : listing.zips) {
+        final long start = System.nanoTime();
+        try {
+          FsUtils.unzip(syncZip, talkingBookDir);
+        } catch (ZipException e) {
+          logger.error("Couldn't unzip synchdir " + syncZip.getName() + "(" + e.getMessage() + ")");
+        }
+        if (metrics != null) {
+          metrics.record(PipelineMetrics.UNZIP, start, syncZip.length(), 0, syncZip.getPath());
+        }
+        syncZip.delete();
       }
-      syncZip.delete();
     }
-    for (File syncDir : talkingBookDir.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
+
+    //Extracting zips adds directories, so the listing is only still good if there were none
+    final File[] syncDirs = (listing.zips.length == 0 ? listing.directories : DirectoryListing.of(talkingBookDir, null).directories).clone();
+    Arrays.sort(syncDirs, FILE_NAME_ORDER);
+    for (File syncDir : syncDirs) {
 
       SyncDirId syncDirId = SyncDirId.parseSyncDir(deploymentId, syncDir.getName().trim());
       if (syncDirId.dateTime != null) {
-        if (format == DirectoryFormat.Archive && syncDirId.version == 1 && strict) {
-          throw new IllegalArgumentException("Directory structure is the newer 'Archive' structure, but the sync directory is using the old format : " + syncDir.getName());
+        checkSyncDirVersion(syncDirId, syncDir.getName());
+        final long start = System.nanoTime();
+        callbacks.processSyncDir(syncDirId, syncDir);
+        syncDirDone(start, syncDir);
+      }
+    }
+  }
+
+  /**
+   * Extracts all the sync zips of a talking book on the {@link ParallelUnzipper}, treating failures the same way as
+   * the serial extraction in {@link #processTalkingBook}.
+   */
+  private void unzipInParallel(File talkingBookDir, File[] syncZips) throws IOException, InterruptedException {
+    for (ParallelUnzipper.Extraction extraction : unzipper.unzip(Arrays.asList(syncZips), talkingBookDir)) {
+      final File syncZip = extraction.zipFile;
+      final IOException failure = extraction.getFailure();
+      if (failure instanceof ZipException) {
+        logger.error("Couldn't unzip synchdir " + syncZip.getName() + "(" + failure.getMessage() + ")");
+      } else if (failure != null) {
+        throw failure;
+      }
+      if (metrics != null) {
+        metrics.stage(PipelineMetrics.UNZIP).record(extraction.getNanos(), syncZip.length(), 0, syncZip.getPath());
+      }
+      syncZip.delete();
+    }
+  }
+
+  /**
+   * Version of {@link #processTalkingBook} for {@link SyncDirectoryCallbacks}.  Zipped sync directories are read in
+   * place rather than being extracted, so the talking book directory is never modified.
+   */
+  public void processTalkingBookInPlace(DeploymentId deploymentId, File talkingBookDir,
+                                        SyncDirectoryCallbacks callbacks) throws Exception {
+
+    for (SyncDirSource source : syncDirSources(deploymentId, listing(talkingBookDir))) {
+      checkSyncDirVersion(source.syncDirId, source.name);
+
+      final long start = System.nanoTime();
+      SyncDirectory syncDir;
+      try {
+        syncDir = prefetcher != null ? prefetcher.take(source) : null;
+        if (syncDir == null) {
+          syncDir = source.open(snapshot);
         }
+      } catch (ZipException e) {
+        logger.error("Couldn't read synchdir " + source.file.getName() + "(" + e.getMessage() + ")");
+        continue;
+      }
 
-        callbacks.processSyncDir(syncDirId, syncDir);
+      try {
+        callbacks.processSyncDir(source.syncDirId, syncDir);
+      } finally {
+        syncDir.close();
+      }
+      syncDirDone(start, source.file);
+    }
+  }
+
+  /**
+   * Finds the sync directories in a talking book directory, in the order they are processed:  by name, whether they
+   * are zipped or not, just as {@link #processTalkingBook} visits them once the zips are extracted.  Extracted
+   * directories that have a zip of the same name, and directories that are not named like sync directories, are left
+   * out.
+   */
+  private List<SyncDirSource> syncDirSources(DeploymentId deploymentId, DirectoryListing listing) {
+    final List<SyncDirSource> retVal = new ArrayList<>();
+    final Set<String> zippedSyncDirs = new HashSet<>();
+    for (File syncZip : listing.zips) {
+      final String syncDirName = ZipSyncDirectory.syncDirName(syncZip);
+      zippedSyncDirs.add(syncDirName);
+
+      final SyncDirId syncDirId = SyncDirId.parseSyncDir(deploymentId, syncDirName.trim());
+      if (syncDirId.dateTime != null) {
+        retVal.add(new SyncDirSource(syncDirId, syncDirName, syncZip, true));
+      }
+    }
+
+    for (File syncDir : listing.directories) {
+      if (!zippedSyncDirs.contains(syncDir.getName())) {
+        final SyncDirId syncDirId = SyncDirId.parseSyncDir(deploymentId, syncDir.getName().trim());
+        if (syncDirId.dateTime != null) {
+          retVal.add(new SyncDirSource(syncDirId, syncDir.getName(), syncDir, false));
+        }
       }
     }
+    Collections.sort(retVal, SYNC_DIR_SOURCE_ORDER);
+    return retVal;
+  }
+
+  private void checkSyncDirVersion(SyncDirId syncDirId, String syncDirName) {
+    if (format == DirectoryFormat.Archive && syncDirId.version == 1 && strict) {
+      throw new IllegalArgumentException("Directory structure is the newer 'Archive' structure, but the sync directory is using the old format : " + syncDirName);
+    }
   }
 
   public TreeSet<DeploymentPerDevice> loadDeviceDeployments(final File root) {
@@ -341,10 +921,10 @@ public class DirectoryIterator {
     TreeSet<DeploymentPerDevice> retVal = new TreeSet<DeploymentPerDevice>(DeploymentPerDevice.ORDER_BY_DEVICE);
 
     if (format == DirectoryFormat.Sync) {
-      for (File candidateDevice : root.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
+      for (File candidateDevice : listDirectories(root)) {
         File collectedData = new File(candidateDevice, UPDATE_ROOT_V1);
-        if (collectedData.exists() && collectedData.isDirectory()) {
-          for (File deploymentDir : collectedData.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
+        if (snapshot != null ? snapshot.isDirectory(collectedData) : collectedData.isDirectory()) {
+          for (File deploymentDir : listDirectories(collectedData)) {
             if (UPDATE_PATTERN.matcher(deploymentDir.getName()).matches()) {
               retVal.add(new DeploymentPerDevice(deploymentDir.getName(), candidateDevice.getName()));
             }
@@ -352,12 +932,12 @@ public class DirectoryIterator {
         }
       }
     } else {
-      File talkingBookData = FsUtils.FileIgnoreCase(root, TALKING_BOOK_ROOT_V2);
-      if (talkingBookData.exists()) {  // in some cases, there may just be an OperationalData dir but no TalkingBookData
-        for (File deploymentDir : talkingBookData.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
+      File talkingBookData = FsUtils.FileIgnoreCase(snapshot, root, TALKING_BOOK_ROOT_V2);
+      if (exists(talkingBookData)) {  // in some cases, there may just be an OperationalData dir but no TalkingBookData
+        for (File deploymentDir : listDirectories(talkingBookData)) {
           if (UPDATE_PATTERN.matcher(deploymentDir.getName()).matches() ||
             "UNKNOWN".equalsIgnoreCase(deploymentDir.getName())) {
-            for (File device : deploymentDir.listFiles((FileFilter) DirectoryFileFilter.DIRECTORY)) {
+            for (File device : listDirectories(deploymentDir)) {
               retVal.add(new DeploymentPerDevice(deploymentDir.getName(), device.getName()));
             }
           }
@@ -368,6 +948,112 @@ public class DirectoryIterator {
     return retVal;
   }
 
+  /**
+   * Runs a single talking book subtree on a forked set of callbacks, recreating the deployment and village nesting
+   * around it so the fork sees the same sequence of calls it would get from a serial walk.
+   */
+  private class TalkingBookTask implements Callable<Void> {
+    final DeploymentPerDevice deploymentPerDevice;
+    final DeploymentId deploymentId;
+    final String village;
+    final File talkingBookDir;
+    final DirectoryCallbacks callbacks;
+
+    TalkingBookTask(DeploymentPerDevice deploymentPerDevice, DeploymentId deploymentId, String village,
+                    File talkingBookDir, DirectoryCallbacks callbacks) {
+      this.deploymentPerDevice = deploymentPerDevice;
+      this.deploymentId = deploymentId;
+      this.village = village;
+      this.talkingBookDir = talkingBookDir;
+      this.callbacks = callbacks;
+    }
+
+    @Override
+    public Void call() throws Exception {
+      if (callbacks.startDeviceDeployment(deploymentPerDevice)) {
+        if (callbacks.startVillage(village)) {
+          if (callbacks.startTalkingBook(talkingBookDir.getName().trim())) {
+            logger.debug("Processing talking book " + talkingBookDir.getName().trim());
+            progress.addTalkingBook();
+            processTalkingBook(deploymentId, talkingBookDir, callbacks);
+            callbacks.endTalkingBook();
+          }
+          callbacks.endVillage();
+        }
+        callbacks.endDeviceDeployment();
+      }
+      return null;
+    }
+  }
+
+  /**
+   * A sync directory found in a talking book directory, zipped or extracted, that has not been opened yet.
+   */
+  protected static class SyncDirSource {
+    final SyncDirId syncDirId;
+    final String name;
+    final File file;
+    final boolean zipped;
+
+    SyncDirSource(SyncDirId syncDirId, String name, File file, boolean zipped) {
+      this.syncDirId = syncDirId;
+      this.name = name;
+      this.file = file;
+      this.zipped = zipped;
+    }
+
+    SyncDirectory open(@Nullable DirectoryTreeSnapshot snapshot) throws IOException {
+      return zipped ? new ZipSyncDirectory(file) : new FileSyncDirectory(file, snapshot);
+    }
+  }
+
+  /**
+   * The sub-directories and zip files directly within a directory, in the order the file system listed them.
+   */
+  protected static class DirectoryListing {
+    static final File[] NO_FILES = new File[0];
+
+    final File[] directories;
+    final File[] zips;
+
+    DirectoryListing(File[] directories, File[] zips) {
+      this.directories = directories;
+      this.zips = zips;
+    }
+
+    static DirectoryListing of(File dir, @Nullable DirectoryTreeSnapshot snapshot) {
+      final File[] files = snapshot != null ? snapshot.listFiles(dir) : dir.listFiles();
+      if (files == null) {
+        return new DirectoryListing(NO_FILES, NO_FILES);
+      }
+
+      final List<File> directories = new ArrayList<>();
+      final List<File> zips = new ArrayList<>();
+      for (File file : files) {
+        if (snapshot != null ? snapshot.isDirectory(file) : file.isDirectory()) {
+          directories.add(file);
+        } else if (file.getName().endsWith(".zip")) {
+          zips.add(file);
+        }
+      }
+      return new DirectoryListing(directories.toArray(new File[directories.size()]), zips.toArray(new File[zips.size()]));
+    }
+
+    /**
+     * @return the names of all the sync directories, whether zipped or not
+     */
+    Set<String> syncDirNames() {
+      final Set<String> names = new LinkedHashSet<>();
+      for (File zip : zips) {
+        names.add(ZipSyncDirectory.syncDirName(zip));
+      }
+      for (File directory : directories) {
+        names.add(directory.getName());
+      }
+      return names;
+    }
+  }
+
   public DirectoryFormat getFormat() {
     return format;
   }
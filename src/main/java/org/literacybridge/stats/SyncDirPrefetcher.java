@@ -0,0 +1,177 @@
+package org.literacybridge.stats;
+
+import org.literacybridge.stats.api.PrefetchingSyncDirectoryCallbacks;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+import org.literacybridge.utils.DirectoryTreeSnapshot;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Opens and prefetches the sync directories of one device deployment ahead of the walk.
+ * <p/>
+ * It is given every sync directory of the deployment, in the order the walk will visit them, and keeps up to
+ * {@code depth} of them loading on the I/O executor ahead of the one being processed.  The walk may skip sync
+ * directories (when the callbacks filter out a village or talking book), so anything queued ahead of the one asked
+ * for is dropped, and any it skips that were not queued yet are never loaded.
+ * <p/>
+ * The executor must run tasks one at a time in submission order, so closing a dropped directory always happens after
+ * it has finished loading.
+ */
+class SyncDirPrefetcher implements Closeable {
+  protected static final Logger logger = LoggerFactory.getLogger(SyncDirPrefetcher.class);
+
+  private final ExecutorService executor;
+  private final PrefetchingSyncDirectoryCallbacks callbacks;
+  private final DirectoryTreeSnapshot snapshot;
+  private final int depth;
+  private final Iterator<DirectoryIterator.SyncDirSource> upcoming;
+  private final Set<File> remaining = new HashSet<>();
+  private final Deque<Pending> pending = new ArrayDeque<>();
+
+  SyncDirPrefetcher(ExecutorService executor, PrefetchingSyncDirectoryCallbacks callbacks,
+                    @Nullable DirectoryTreeSnapshot snapshot, int depth, List<DirectoryIterator.SyncDirSource> sources) {
+    this.executor = executor;
+    this.callbacks = callbacks;
+    this.snapshot = snapshot;
+    this.depth = depth;
+    this.upcoming = sources.iterator();
+    for (DirectoryIterator.SyncDirSource source : sources) {
+      remaining.add(source.file);
+    }
+    fill();
+  }
+
+  /**
+   * Gets a sync directory, waiting for it to finish loading if need be.
+   *
+   * @param source the sync directory to get
+   * @return the prefetched directory, which the caller must close, or null if source was not one of the sync
+   * directories given to this prefetcher
+   * @throws IOException if opening or prefetching the directory failed
+   */
+  @Nullable
+  SyncDirectory take(DirectoryIterator.SyncDirSource source) throws IOException {
+    if (!remaining.contains(source.file)) {
+      return null;
+    }
+
+    fill();
+    while (!pending.isEmpty()) {
+      final Pending next = pending.poll();
+      remaining.remove(next.source.file);
+      if (next.source.file.equals(source.file)) {
+        //Start the next load before waiting, so the I/O thread never idles
+        fill();
+        return next.get();
+      }
+      discard(next);
+    }
+
+    //Skipped past everything that was loading, so move on to the source without loading the ones in between
+    while (upcoming.hasNext()) {
+      final DirectoryIterator.SyncDirSource next = upcoming.next();
+      remaining.remove(next.file);
+      if (next.file.equals(source.file)) {
+        final Pending loading = new Pending(next, executor.submit(new Load(next)));
+        fill();
+        return loading.get();
+      }
+    }
+    return null;
+  }
+
+  /**
+   * Drops everything still queued.
+   */
+  @Override
+  public void close() {
+    for (Pending next : pending) {
+      discard(next);
+    }
+    pending.clear();
+  }
+
+  private void fill() {
+    while (pending.size() < depth && upcoming.hasNext()) {
+      final DirectoryIterator.SyncDirSource source = upcoming.next();
+      pending.add(new Pending(source, executor.submit(new Load(source))));
+    }
+  }
+
+  private void discard(final Pending dropped) {
+    executor.submit(new Callable<Void>() {
+      @Override
+      public Void call() throws Exception {
+        try {
+          dropped.get().close();
+        } catch (IOException | RuntimeException e) {
+          logger.debug("Dropped sync directory " + dropped.source.file + " could not be loaded", e);
+        }
+        return null;
+      }
+    });
+  }
+
+  private class Load implements Callable<SyncDirectory> {
+    final DirectoryIterator.SyncDirSource source;
+
+    Load(DirectoryIterator.SyncDirSource source) {
+      this.source = source;
+    }
+
+    @Override
+    public SyncDirectory call() throws IOException {
+      final SyncDirectory syncDir = source.open(snapshot);
+      try {
+        return callbacks.prefetch(syncDir);
+      } catch (IOException | RuntimeException e) {
+        syncDir.close();
+        throw e;
+      }
+    }
+  }
+
+  private static class Pending {
+    final DirectoryIterator.SyncDirSource source;
+    final Future<SyncDirectory> result;
+
+    Pending(DirectoryIterator.SyncDirSource source, Future<SyncDirectory> result) {
+      this.source = source;
+      this.result = result;
+    }
+
+    SyncDirectory get() throws IOException {
+      try {
+        return result.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while waiting for " + source.file, e);
+      } catch (ExecutionException e) {
+        final Throwable cause = e.getCause();
+        if (cause instanceof IOException) {
+          throw (IOException) cause;
+        } else if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IOException(cause);
+      }
+    }
+  }
+}
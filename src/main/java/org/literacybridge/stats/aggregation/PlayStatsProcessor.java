@@ -0,0 +1,169 @@
+package org.literacybridge.stats.aggregation;
+
+import org.literacybridge.stats.api.ParallelTalkingBookDataProcessor;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.io.IOException;
+
+/**
+ * Rolls the play, survey and recording events in the log files up into a {@link PlayStatsTable}, per talking book,
+ * village, deployment and content id.
+ * <p/>
+ * Consecutive events almost always come from the same sync directory, so the ids for the talking book, village and
+ * deployment are only looked up again when the context changes.  After that, each event is one content id lookup and
+ * a few increments of primitive columns.
+ * <p/>
+ * Recorded seconds are added to the content of the last RECORD event in the same log file.  Flash data, stats files
+ * and tbData are ignored.
+ * <p/>
+ * When run in parallel, each talking book is aggregated into its own table, which is merged into this one when it is
+ * joined.
+ */
+public class PlayStatsProcessor implements ParallelTalkingBookDataProcessor {
+
+  private final PlayStatsTable table;
+
+  private SyncProcessingContext lastContext;
+  private int talkingBookId;
+  private int villageId;
+  private int deploymentId;
+  private int recordingRow = -1;
+
+  public PlayStatsProcessor() {
+    this(new PlayStatsTable());
+  }
+
+  public PlayStatsProcessor(PlayStatsTable table) {
+    this.table = table;
+  }
+
+  public PlayStatsTable getTable() {
+    return table;
+  }
+
+  private int row(LogLineContext context, String contentId) {
+    final SyncProcessingContext syncContext = context.context;
+    if (syncContext != lastContext || lastContext == null) {
+      lastContext = syncContext;
+      talkingBookId = table.internString(syncContext != null ? syncContext.talkingBookId : null);
+      villageId = table.internString(syncContext != null ? syncContext.village : null);
+      deploymentId = table.internDeployment(syncContext != null ? syncContext.deploymentId : null);
+    }
+    return table.row(talkingBookId, villageId, deploymentId, table.internString(contentId));
+  }
+
+  //+++++++++++++++Parallel Processing ++++++++++++++++++//
+
+  @Override
+  public TalkingBookDataProcessor fork() {
+    return new PlayStatsProcessor();
+  }
+
+  @Override
+  public void join(TalkingBookDataProcessor forked) {
+    table.merge(((PlayStatsProcessor) forked).table);
+  }
+
+  //+++++++++++++++Processing Log Files ++++++++++++++++++//
+
+  @Override
+  public void onLogFileStart(String fileName) {
+    recordingRow = -1;
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    recordingRow = -1;
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+    table.addPlay(row(context, contentId));
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    table.addPlayed(row(context, contentId), secondsPlayed, ended);
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    table.addSurvey(row(context, contentId));
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    table.addSurveyCompleted(row(context, contentId), useful);
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    recordingRow = row(context, contentId);
+    table.addRecording(recordingRow);
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    if (recordingRow >= 0) {
+      table.addSecondsRecorded(recordingRow, secondsRecorded);
+    }
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+  }
+
+  //+++++++++++++++Not aggregated ++++++++++++++++++//
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+  }
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) throws IOException {
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+  }
+}
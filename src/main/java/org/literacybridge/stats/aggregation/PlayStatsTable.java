@@ -0,0 +1,381 @@
+package org.literacybridge.stats.aggregation;
+
+import au.com.bytecode.opencsv.CSVWriter;
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.literacybridge.stats.model.DeploymentId;
+import org.literacybridge.utils.SymbolTable;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Play, survey and recording totals per (talking book, village, deployment, content id).
+ * <p/>
+ * Keys are interned to ints, strings through a {@link SymbolTable} of the table's own, and each total is kept in its own primitive column, indexed by row.  Rows are found
+ * through an open addressing table over the four key ids, so adding to an existing row allocates nothing, and
+ * scanning a column is a walk over a single array.
+ * <p/>
+ * Tables built on different threads are combined with {@link #merge(PlayStatsTable)}.  Like the processors, a table
+ * is not thread-safe on its own.
+ */
+public class PlayStatsTable {
+  public static final String[] COLUMNS = {"talkingBook", "village", "deployment", "contentId", "plays", "played",
+    "completions", "secondsPlayed", "surveys", "surveysUseful", "surveysNotUseful", "recordings", "secondsRecorded"};
+
+  private static final int EMPTY = -1;
+
+  //The id of a null key.  Symbol ids start at 0, and -1 means not found.
+  private static final int NULL_ID = -2;
+  private static final JsonFactory jsonFactory = new JsonFactory();
+
+  private final SymbolTable strings = new SymbolTable();
+
+  //There are only ever a handful of deployments
+  private final Map<DeploymentId, Integer> deploymentIdMap = new HashMap<>();
+  private final List<DeploymentId> deployments = new ArrayList<>();
+
+  private int[] slots;
+  private int size = 0;
+
+  //Keys
+  private int[] talkingBookIds;
+  private int[] villageIds;
+  private int[] deploymentIds;
+  private int[] contentIds;
+  private int[] rowHashes;
+
+  //Totals
+  private int[] plays;
+  private int[] played;
+  private int[] completions;
+  private long[] secondsPlayed;
+  private int[] surveys;
+  private int[] surveysUseful;
+  private int[] surveysNotUseful;
+  private int[] recordings;
+  private long[] secondsRecorded;
+
+  public PlayStatsTable() {
+    this(64);
+  }
+
+  /**
+   * @param expectedRows how many rows are expected, so the table does not need to grow
+   */
+  public PlayStatsTable(int expectedRows) {
+    allocate(Math.max(16, expectedRows));
+    slots = new int[Integer.highestOneBit(talkingBookIds.length - 1) << 2];
+    Arrays.fill(slots, EMPTY);
+  }
+
+  public int internString(@Nullable String value) {
+    return value != null ? strings.id(value) : NULL_ID;
+  }
+
+  public int internDeployment(@Nullable DeploymentId value) {
+    Integer id = deploymentIdMap.get(value);
+    if (id == null) {
+      id = deployments.size();
+      deployments.add(value);
+      deploymentIdMap.put(value, id);
+    }
+    return id;
+  }
+
+  /**
+   * Gets the row for a key, adding an empty one if there is none.
+   */
+  public int row(@Nullable String talkingBook, @Nullable String village, @Nullable DeploymentId deployment,
+                 @Nullable String contentId) {
+    return row(internString(talkingBook), internString(village), internDeployment(deployment), internString(contentId));
+  }
+
+  /**
+   * Gets the row for a key made of ids from {@link #internString(String)} and {@link #internDeployment(DeploymentId)},
+   * adding an empty one if there is none.
+   */
+  public int row(int talkingBookId, int villageId, int deploymentId, int contentId) {
+    final int hash = hash(talkingBookId, villageId, deploymentId, contentId);
+    int slot = hash & (slots.length - 1);
+    for (int row = slots[slot]; row != EMPTY; row = slots[slot]) {
+      if (rowHashes[row] == hash && talkingBookIds[row] == talkingBookId && villageIds[row] == villageId &&
+        deploymentIds[row] == deploymentId && contentIds[row] == contentId) {
+        return row;
+      }
+      slot = (slot + 1) & (slots.length - 1);
+    }
+
+    if (size == talkingBookIds.length) {
+      allocate(size * 2);
+    }
+    final int row = size++;
+    talkingBookIds[row] = talkingBookId;
+    villageIds[row] = villageId;
+    deploymentIds[row] = deploymentId;
+    contentIds[row] = contentId;
+    rowHashes[row] = hash;
+    slots[slot] = row;
+    if (size * 2 > slots.length) {
+      rehash();
+    }
+    return row;
+  }
+
+  /**
+   * @return the row for a key, or -1 if there is none
+   */
+  public int find(@Nullable String talkingBook, @Nullable String village, @Nullable DeploymentId deployment,
+                  @Nullable String contentId) {
+    final int talkingBookId = findString(talkingBook);
+    final int villageId = findString(village);
+    final Integer deploymentId = deploymentIdMap.get(deployment);
+    final int contentIdId = findString(contentId);
+    if (talkingBookId == EMPTY || villageId == EMPTY || deploymentId == null || contentIdId == EMPTY) {
+      return -1;
+    }
+
+    final int hash = hash(talkingBookId, villageId, deploymentId, contentIdId);
+    int slot = hash & (slots.length - 1);
+    for (int row = slots[slot]; row != EMPTY; row = slots[slot]) {
+      if (rowHashes[row] == hash && talkingBookIds[row] == talkingBookId && villageIds[row] == villageId &&
+        deploymentIds[row] == deploymentId && contentIds[row] == contentIdId) {
+        return row;
+      }
+      slot = (slot + 1) & (slots.length - 1);
+    }
+    return -1;
+  }
+
+  public void addPlay(int row) {
+    plays[row]++;
+  }
+
+  public void addPlayed(int row, int seconds, boolean ended) {
+    played[row]++;
+    secondsPlayed[row] += seconds;
+    if (ended) {
+      completions[row]++;
+    }
+  }
+
+  public void addSurvey(int row) {
+    surveys[row]++;
+  }
+
+  public void addSurveyCompleted(int row, boolean useful) {
+    if (useful) {
+      surveysUseful[row]++;
+    } else {
+      surveysNotUseful[row]++;
+    }
+  }
+
+  public void addRecording(int row) {
+    recordings[row]++;
+  }
+
+  public void addSecondsRecorded(int row, int seconds) {
+    secondsRecorded[row] += seconds;
+  }
+
+  /**
+   * Adds all the totals in another table to this one.  The tables do not need to share their interned ids.
+   */
+  public void merge(PlayStatsTable other) {
+    for (int from = 0; from < other.size; from++) {
+      final int to = row(other.getTalkingBook(from), other.getVillage(from), other.getDeployment(from),
+        other.getContentId(from));
+      plays[to] += other.plays[from];
+      played[to] += other.played[from];
+      completions[to] += other.completions[from];
+      secondsPlayed[to] += other.secondsPlayed[from];
+      surveys[to] += other.surveys[from];
+      surveysUseful[to] += other.surveysUseful[from];
+      surveysNotUseful[to] += other.surveysNotUseful[from];
+      recordings[to] += other.recordings[from];
+      secondsRecorded[to] += other.secondsRecorded[from];
+    }
+  }
+
+  /**
+   * @return the number of rows.  Rows are numbered from 0, in the order they were added.
+   */
+  public int size() {
+    return size;
+  }
+
+  public String getTalkingBook(int row) {
+    return string(talkingBookIds[checkRow(row)]);
+  }
+
+  public String getVillage(int row) {
+    return string(villageIds[checkRow(row)]);
+  }
+
+  public DeploymentId getDeployment(int row) {
+    return deployments.get(deploymentIds[checkRow(row)]);
+  }
+
+  public String getContentId(int row) {
+    return string(contentIds[checkRow(row)]);
+  }
+
+  public int getPlays(int row) {
+    return plays[checkRow(row)];
+  }
+
+  public int getPlayed(int row) {
+    return played[checkRow(row)];
+  }
+
+  public int getCompletions(int row) {
+    return completions[checkRow(row)];
+  }
+
+  public long getSecondsPlayed(int row) {
+    return secondsPlayed[checkRow(row)];
+  }
+
+  public int getSurveys(int row) {
+    return surveys[checkRow(row)];
+  }
+
+  public int getSurveysUseful(int row) {
+    return surveysUseful[checkRow(row)];
+  }
+
+  public int getSurveysNotUseful(int row) {
+    return surveysNotUseful[checkRow(row)];
+  }
+
+  public int getRecordings(int row) {
+    return recordings[checkRow(row)];
+  }
+
+  public long getSecondsRecorded(int row) {
+    return secondsRecorded[checkRow(row)];
+  }
+
+  /**
+   * Writes the table as CSV, with a header line of {@link #COLUMNS}.
+   */
+  public void writeCsv(Writer writer) throws IOException {
+    final CSVWriter csvWriter = new CSVWriter(writer);
+    csvWriter.writeNext(COLUMNS);
+    final String[] line = new String[COLUMNS.length];
+    for (int row = 0; row < size; row++) {
+      line[0] = getTalkingBook(row);
+      line[1] = getVillage(row);
+      line[2] = String.valueOf(getDeployment(row));
+      line[3] = getContentId(row);
+      line[4] = String.valueOf(plays[row]);
+      line[5] = String.valueOf(played[row]);
+      line[6] = String.valueOf(completions[row]);
+      line[7] = String.valueOf(secondsPlayed[row]);
+      line[8] = String.valueOf(surveys[row]);
+      line[9] = String.valueOf(surveysUseful[row]);
+      line[10] = String.valueOf(surveysNotUseful[row]);
+      line[11] = String.valueOf(recordings[row]);
+      line[12] = String.valueOf(secondsRecorded[row]);
+      csvWriter.writeNext(line);
+    }
+    csvWriter.flush();
+  }
+
+  /**
+   * Writes the table as a JSON array with one object per row, using the names in {@link #COLUMNS}.  Rows are streamed
+   * out, rather than built up as a tree first.
+   */
+  public void writeJson(Writer writer) throws IOException {
+    final JsonGenerator generator = jsonFactory.createJsonGenerator(writer);
+    generator.useDefaultPrettyPrinter();
+    generator.writeStartArray();
+    for (int row = 0; row < size; row++) {
+      generator.writeStartObject();
+      generator.writeStringField(COLUMNS[0], getTalkingBook(row));
+      generator.writeStringField(COLUMNS[1], getVillage(row));
+      generator.writeStringField(COLUMNS[2], String.valueOf(getDeployment(row)));
+      generator.writeStringField(COLUMNS[3], getContentId(row));
+      generator.writeNumberField(COLUMNS[4], plays[row]);
+      generator.writeNumberField(COLUMNS[5], played[row]);
+      generator.writeNumberField(COLUMNS[6], completions[row]);
+      generator.writeNumberField(COLUMNS[7], secondsPlayed[row]);
+      generator.writeNumberField(COLUMNS[8], surveys[row]);
+      generator.writeNumberField(COLUMNS[9], surveysUseful[row]);
+      generator.writeNumberField(COLUMNS[10], surveysNotUseful[row]);
+      generator.writeNumberField(COLUMNS[11], recordings[row]);
+      generator.writeNumberField(COLUMNS[12], secondsRecorded[row]);
+      generator.writeEndObject();
+    }
+    generator.writeEndArray();
+    generator.flush();
+  }
+
+  private int findString(@Nullable String value) {
+    return value != null ? strings.find(value) : NULL_ID;
+  }
+
+  private String string(int id) {
+    return id != NULL_ID ? strings.get(id) : null;
+  }
+
+  private int checkRow(int row) {
+    if (row < 0 || row >= size) {
+      throw new IndexOutOfBoundsException("No row " + row);
+    }
+    return row;
+  }
+
+  private void allocate(int capacity) {
+    talkingBookIds = grow(talkingBookIds, capacity);
+    villageIds = grow(villageIds, capacity);
+    deploymentIds = grow(deploymentIds, capacity);
+    contentIds = grow(contentIds, capacity);
+    rowHashes = grow(rowHashes, capacity);
+    plays = grow(plays, capacity);
+    played = grow(played, capacity);
+    completions = grow(completions, capacity);
+    secondsPlayed = grow(secondsPlayed, capacity);
+    surveys = grow(surveys, capacity);
+    surveysUseful = grow(surveysUseful, capacity);
+    surveysNotUseful = grow(surveysNotUseful, capacity);
+    recordings = grow(recordings, capacity);
+    secondsRecorded = grow(secondsRecorded, capacity);
+  }
+
+  private void rehash() {
+    slots = new int[slots.length * 2];
+    Arrays.fill(slots, EMPTY);
+    for (int row = 0; row < size; row++) {
+      int slot = rowHashes[row] & (slots.length - 1);
+      while (slots[slot] != EMPTY) {
+        slot = (slot + 1) & (slots.length - 1);
+      }
+      slots[slot] = row;
+    }
+  }
+
+  private static int[] grow(@Nullable int[] column, int capacity) {
+    return column == null ? new int[capacity] : Arrays.copyOf(column, capacity);
+  }
+
+  private static long[] grow(@Nullable long[] column, int capacity) {
+    return column == null ? new long[capacity] : Arrays.copyOf(column, capacity);
+  }
+
+  private static int hash(int talkingBookId, int villageId, int deploymentId, int contentId) {
+    int h = talkingBookId;
+    h = 31 * h + villageId;
+    h = 31 * h + deploymentId;
+    h = 31 * h + contentId;
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
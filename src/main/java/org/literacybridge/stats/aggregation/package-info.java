@@ -0,0 +1,6 @@
+package org.literacybridge.stats.aggregation;
+
+/**
+ * Built-in aggregation of log events into compact tables of primitive counters, which can be merged across threads
+ * and exported as CSV or JSON.
+ **/
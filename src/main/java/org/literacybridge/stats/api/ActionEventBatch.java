@@ -0,0 +1,55 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+
+import java.util.Arrays;
+
+/**
+ * A batch of the low volume events that carry at most an id: CATEGORY, PAUSED, UNPAUSED, SURVEY and SHUTTING DOWN.
+ * <p/>
+ * The action column says which event each row is, and ids holds the category id for {@link LogAction#category}
+ * rows, the content id for {@link LogAction#paused}, {@link LogAction#unpaused} and {@link LogAction#survey} rows,
+ * and null for {@link LogAction#shuttingDown} rows.
+ * <p/>
+ * Survey rows use the remaining columns.  A row from {@link TalkingBookDataProcessor#onSurvey} has completed set
+ * to false, while one from {@link TalkingBookDataProcessor#onSurveyCompleted} has it set to true, with useful
+ * holding the answer.
+ */
+public class ActionEventBatch extends LogEventBatch {
+
+  public final LogAction[] actions;
+  public final String[] ids;
+  public final boolean[] completed;
+  public final boolean[] useful;
+
+  public ActionEventBatch(int capacity) {
+    super(capacity);
+    actions = new LogAction[capacity];
+    ids = new String[capacity];
+    completed = new boolean[capacity];
+    useful = new boolean[capacity];
+  }
+
+  public void add(LogLineContext context, LogAction action, String id) {
+    addRow(context, action, id, false, false);
+  }
+
+  public void addSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    addRow(context, LogAction.survey, contentId, true, useful);
+  }
+
+  private void addRow(LogLineContext context, LogAction action, String id, boolean completed, boolean useful) {
+    final int row = nextRow(context);
+    this.actions[row] = action;
+    this.ids[row] = id;
+    this.completed[row] = completed;
+    this.useful[row] = useful;
+  }
+
+  @Override
+  protected void clearColumns(int rows) {
+    Arrays.fill(actions, 0, rows, null);
+    Arrays.fill(ids, 0, rows, null);
+  }
+}
@@ -0,0 +1,75 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+
+import java.util.Arrays;
+
+/**
+ * Base class for the columnar batches handed to a {@link LogEventBatchProcessor}.
+ * <p/>
+ * A batch holds up to {@link #capacity()} events of a single kind, stored column by column in parallel arrays.  Row i
+ * of every column describes the same event, and only the first {@link #size()} rows are valid.  Rows are in the order
+ * the events appeared in the log file, and each keeps its {@link LogLineContext}, so the position of an event within
+ * the file is never lost.
+ * <p/>
+ * Batches are reused.  A processor must copy anything it wants to keep before its batch callback returns.
+ */
+public abstract class LogEventBatch {
+
+  public final LogLineContext[] contexts;
+  protected int size;
+
+  protected LogEventBatch(int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("Batch capacity must be positive.  Was " + capacity);
+    }
+    contexts = new LogLineContext[capacity];
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public int capacity() {
+    return contexts.length;
+  }
+
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  public boolean isFull() {
+    return size == contexts.length;
+  }
+
+  /**
+   * Empties the batch, dropping its references so the events can be garbage collected.
+   */
+  public void clear() {
+    Arrays.fill(contexts, 0, size, null);
+    clearColumns(size);
+    size = 0;
+  }
+
+  /**
+   * Claims the next row of the batch.
+   *
+   * @param context the context of the log line the event came from
+   * @return the index of the row the event's columns should be written to
+   */
+  protected int nextRow(LogLineContext context) {
+    if (isFull()) {
+      throw new IllegalStateException("Batch is full.  Capacity is " + contexts.length);
+    }
+    contexts[size] = context;
+    return size++;
+  }
+
+  /**
+   * Drops any object references held in the first rows of the subclass's columns.  Primitive columns do not need to
+   * be touched.
+   *
+   * @param rows the number of rows in use
+   */
+  protected abstract void clearColumns(int rows);
+}
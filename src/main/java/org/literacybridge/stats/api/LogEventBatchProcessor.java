@@ -0,0 +1,33 @@
+package org.literacybridge.stats.api;
+
+/**
+ * An opt-in, batched alternative to the log file callbacks of {@link TalkingBookDataProcessor}.
+ * <p/>
+ * Rather than one call per log line, a processor implementing this interface gets columnar batches of events, which
+ * suits sinks that bulk insert or aggregate in tight loops.  To use one, wrap it in a
+ * {@link org.literacybridge.stats.processors.BatchingDataProcessor} and register that alongside any other
+ * TalkingBookDataProcessors.
+ * <p/>
+ * Each batch callback is made when a batch fills up, and any partly filled batches are flushed before
+ * {@link #onLogFileEnd()}, so a batch never spans two log files.  Within a batch rows are in log order, but batches
+ * of different kinds are flushed independently, so use the {@link LogEventBatch#contexts} to recover the relative
+ * order of different kinds of events if it matters.
+ * <p/>
+ * Batches are cleared and reused once the callback returns.
+ */
+public interface LogEventBatchProcessor {
+
+  void onLogFileStart(String fileName);
+
+  void onPlayBatch(PlayEventBatch batch);
+
+  void onPlayedBatch(PlayedEventBatch batch);
+
+  void onRecordBatch(RecordEventBatch batch);
+
+  void onActionBatch(ActionEventBatch batch);
+
+  void onVoltageDropBatch(VoltageDropEventBatch batch);
+
+  void onLogFileEnd();
+}
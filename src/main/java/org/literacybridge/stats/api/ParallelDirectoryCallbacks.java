@@ -0,0 +1,43 @@
+package org.literacybridge.stats.api;
+
+/**
+ * Optional extension of {@link DirectoryCallbacks} for callbacks that can process talking books concurrently.
+ * <p/>
+ * When a DirectoryIterator is created with a parallelism greater than one, it will hand each talking book subtree
+ * to a worker thread.  Each subtree is given its own instance created by {@link #fork()}, and that instance sees
+ * the normal nesting on the worker thread:
+ * <p/>
+ * startDeviceDeployment, startVillage, startTalkingBook, processSyncDir*, endTalkingBook, endVillage, endDeviceDeployment
+ * <p/>
+ * The instance the iterator was given still gets the startDeviceDeployment/startVillage calls (and their ends) on the
+ * iterating thread, so it can filter which villages get visited, but it never sees the talking book level calls.
+ * <p/>
+ * Once the subtree is done, the fork is handed back to {@link #join(DirectoryCallbacks)} on the iterating thread.
+ * Joins always happen in the same order as the sequential traversal, so the merged result is deterministic no matter
+ * how the work was scheduled.  Only a few talking books per thread are in flight at once, so joins can come between
+ * the startVillage and endVillage calls of later villages.
+ * <p/>
+ * Callbacks that do NOT implement this interface are treated as not thread-safe.  They always get their calls
+ * delivered serially, on the iterating thread, in traversal order.
+ */
+public interface ParallelDirectoryCallbacks extends DirectoryCallbacks {
+
+  /**
+   * Creates an independent set of callbacks for processing a single talking book.  This is always called on the
+   * iterating thread, so it does not need to be thread-safe, but the returned instance must not share mutable
+   * state with this one.
+   *
+   * @return the callbacks to use for one talking book subtree
+   * @throws Exception
+   */
+  DirectoryCallbacks fork() throws Exception;
+
+  /**
+   * Merges the results of a forked instance back into this one.  Called on the iterating thread, in traversal order,
+   * before the endDeviceDeployment for the deployment the talking book belongs to.
+   *
+   * @param forked an instance previously returned by {@link #fork()}
+   * @throws Exception
+   */
+  void join(DirectoryCallbacks forked) throws Exception;
+}
@@ -0,0 +1,33 @@
+package org.literacybridge.stats.api;
+
+/**
+ * Optional extension of {@link TalkingBookDataProcessor} for processors that can take events for several talking
+ * books at once.
+ * <p/>
+ * When a DirectoryProcessor is run in parallel, each talking book is processed by a fork of it on a worker thread.
+ * A processor implementing this interface is given its own instance, created by {@link #fork()}, for each talking
+ * book, and that instance sees the talking book's events as they happen, on the worker thread.  Once the talking
+ * book is done, the fork is handed back to {@link #join(TalkingBookDataProcessor)} on the iterating thread, in the
+ * same order as a serial walk.
+ * <p/>
+ * Processors that do NOT implement this interface are treated as not thread-safe.  The events for each talking book
+ * are recorded on the worker thread, and then replayed to them on the iterating thread, one whole talking book
+ * (onTalkingBookStart to onTalkingBookEnd) at a time, in the same order as a serial walk.
+ */
+public interface ParallelTalkingBookDataProcessor extends TalkingBookDataProcessor {
+
+  /**
+   * Creates an independent processor for the events of a single talking book.  This is always called on the
+   * iterating thread, but the returned instance must not share mutable state with this one.
+   *
+   * @return the processor to use for one talking book
+   */
+  TalkingBookDataProcessor fork();
+
+  /**
+   * Merges the results of a forked instance back into this one.  Called on the iterating thread, in traversal order.
+   *
+   * @param forked an instance previously returned by {@link #fork()}
+   */
+  void join(TalkingBookDataProcessor forked);
+}
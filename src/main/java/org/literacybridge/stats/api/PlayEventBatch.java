@@ -0,0 +1,34 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+
+import java.util.Arrays;
+
+/**
+ * A batch of PLAY events.  See {@link TalkingBookDataProcessor#onPlay}.
+ */
+public class PlayEventBatch extends LogEventBatch {
+
+  public final String[] contentIds;
+  public final int[] volumes;
+  public final double[] voltages;
+
+  public PlayEventBatch(int capacity) {
+    super(capacity);
+    contentIds = new String[capacity];
+    volumes = new int[capacity];
+    voltages = new double[capacity];
+  }
+
+  public void add(LogLineContext context, String contentId, int volume, double voltage) {
+    final int row = nextRow(context);
+    contentIds[row] = contentId;
+    volumes[row] = volume;
+    voltages[row] = voltage;
+  }
+
+  @Override
+  protected void clearColumns(int rows) {
+    Arrays.fill(contentIds, 0, rows, null);
+  }
+}
@@ -0,0 +1,44 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+
+import java.util.Arrays;
+
+/**
+ * A batch of PLAYED events.  See {@link TalkingBookDataProcessor#onPlayed}.
+ */
+public class PlayedEventBatch extends LogEventBatch {
+
+  public final String[] contentIds;
+  public final short[] secondsPlayed;
+  public final short[] secondsSomething;
+  public final int[] volumes;
+  public final double[] voltages;
+  public final boolean[] ended;
+
+  public PlayedEventBatch(int capacity) {
+    super(capacity);
+    contentIds = new String[capacity];
+    secondsPlayed = new short[capacity];
+    secondsSomething = new short[capacity];
+    volumes = new int[capacity];
+    voltages = new double[capacity];
+    ended = new boolean[capacity];
+  }
+
+  public void add(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething, int volume,
+                  double voltage, boolean ended) {
+    final int row = nextRow(context);
+    this.contentIds[row] = contentId;
+    this.secondsPlayed[row] = secondsPlayed;
+    this.secondsSomething[row] = secondsSomething;
+    this.volumes[row] = volume;
+    this.voltages[row] = voltage;
+    this.ended[row] = ended;
+  }
+
+  @Override
+  protected void clearColumns(int rows) {
+    Arrays.fill(contentIds, 0, rows, null);
+  }
+}
@@ -0,0 +1,28 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+
+import java.io.IOException;
+
+/**
+ * Optional extension of {@link SyncDirectoryCallbacks} for callbacks that know ahead of time what they will read from
+ * a sync directory.
+ * <p/>
+ * When a DirectoryIterator has a read-ahead set, it calls {@link #prefetch(SyncDirectory)} on an I/O thread for the
+ * next few sync directories, while the current one is still being processed.  The directory later handed to
+ * {@link #processSyncDir(org.literacybridge.stats.model.SyncDirId, SyncDirectory)} is the one prefetch returned, so
+ * its reads come from memory and the processing thread does not wait on the disk.
+ */
+public interface PrefetchingSyncDirectoryCallbacks extends SyncDirectoryCallbacks {
+
+  /**
+   * Reads whatever will be needed from a sync directory into memory.  This is called on an I/O thread, so must not
+   * touch any state of the callbacks.
+   *
+   * @param syncDir the sync directory.  Ownership passes to the returned directory, which must close it.
+   * @return a directory to use in place of syncDir, usually a
+   * {@link org.literacybridge.stats.formats.syncDirectory.BufferedSyncDirectory}
+   * @throws IOException
+   */
+  SyncDirectory prefetch(SyncDirectory syncDir) throws IOException;
+}
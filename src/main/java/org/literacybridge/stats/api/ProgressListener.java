@@ -0,0 +1,27 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.model.ProcessingProgress;
+
+/**
+ * Receives progress reports from a DirectoryIterator.
+ * <p/>
+ * Reports are made as sync directories finish, but no more often than the interval the listener was registered with.
+ * When talking books are processed in parallel, reports come from the worker threads, so implementations must be
+ * thread-safe.  Reports are never made concurrently, though.
+ */
+public interface ProgressListener {
+
+  /**
+   * Called periodically while processing.
+   *
+   * @param progress the counters so far.  This is live, so should not be held on to.
+   */
+  void onProgress(ProcessingProgress progress);
+
+  /**
+   * Called once processing is done, whether it succeeded or not.
+   *
+   * @param progress the final counters
+   */
+  void onFinished(ProcessingProgress progress);
+}
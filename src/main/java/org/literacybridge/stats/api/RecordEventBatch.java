@@ -0,0 +1,48 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+
+import java.util.Arrays;
+
+/**
+ * A batch of RECORD and TIME RECORDED events.  See {@link TalkingBookDataProcessor#onRecord} and
+ * {@link TalkingBookDataProcessor#onRecorded}.
+ * <p/>
+ * The action column says which of the two each row is.  For {@link LogAction#record} rows, numbers holds the
+ * unknown number that follows the content id.  For {@link LogAction#time_recorded} rows, numbers holds the seconds
+ * recorded and the content id is null.
+ */
+public class RecordEventBatch extends LogEventBatch {
+
+  public final LogAction[] actions;
+  public final String[] contentIds;
+  public final int[] numbers;
+
+  public RecordEventBatch(int capacity) {
+    super(capacity);
+    actions = new LogAction[capacity];
+    contentIds = new String[capacity];
+    numbers = new int[capacity];
+  }
+
+  public void addRecord(LogLineContext context, String contentId, int unknownNumber) {
+    final int row = nextRow(context);
+    actions[row] = LogAction.record;
+    contentIds[row] = contentId;
+    numbers[row] = unknownNumber;
+  }
+
+  public void addRecorded(LogLineContext context, int secondsRecorded) {
+    final int row = nextRow(context);
+    actions[row] = LogAction.time_recorded;
+    contentIds[row] = null;
+    numbers[row] = secondsRecorded;
+  }
+
+  @Override
+  protected void clearColumns(int rows) {
+    Arrays.fill(actions, 0, rows, null);
+    Arrays.fill(contentIds, 0, rows, null);
+  }
+}
@@ -0,0 +1,30 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+import org.literacybridge.stats.model.SyncDirId;
+
+/**
+ * Optional extension of {@link DirectoryCallbacks} for callbacks that can read a sync directory through the
+ * {@link SyncDirectory} abstraction.
+ * <p/>
+ * Talking book directories hold a mix of extracted sync directories and zipped ones.  For plain DirectoryCallbacks,
+ * the DirectoryIterator extracts every zip next to itself and deletes the zip, so it can hand over a File.  Callbacks
+ * implementing this interface instead get every sync directory through
+ * {@link #processSyncDir(SyncDirId, SyncDirectory)}, and zips are read in place.  Nothing is extracted or deleted,
+ * so the input tree is left untouched and can be read-only.
+ * <p/>
+ * If a talking book has both a zip and an extracted directory with the same name, only the zip is processed, just
+ * as the extraction would have replaced the directory.
+ */
+public interface SyncDirectoryCallbacks extends DirectoryCallbacks {
+
+  /**
+   * Called to process a sync directory within a talking book directory.  Used in place of
+   * {@link #processSyncDir(SyncDirId, java.io.File)}.
+   *
+   * @param syncDirId parsed sync directory ID
+   * @param syncDir   contents of the sync directory.  This is closed by the caller once this returns.
+   * @throws Exception
+   */
+  void processSyncDir(SyncDirId syncDirId, SyncDirectory syncDir) throws Exception;
+}
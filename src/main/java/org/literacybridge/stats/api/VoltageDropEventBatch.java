@@ -0,0 +1,35 @@
+package org.literacybridge.stats.api;
+
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+
+import java.util.Arrays;
+
+/**
+ * A batch of VOLTAGE DROP events.  See {@link TalkingBookDataProcessor#onVoltageDrop}.
+ */
+public class VoltageDropEventBatch extends LogEventBatch {
+
+  public final LogAction[] actions;
+  public final double[] voltagesDropped;
+  public final int[] times;
+
+  public VoltageDropEventBatch(int capacity) {
+    super(capacity);
+    actions = new LogAction[capacity];
+    voltagesDropped = new double[capacity];
+    times = new int[capacity];
+  }
+
+  public void add(LogLineContext context, LogAction action, double voltageDropped, int time) {
+    final int row = nextRow(context);
+    actions[row] = action;
+    voltagesDropped[row] = voltageDropped;
+    times[row] = time;
+  }
+
+  @Override
+  protected void clearColumns(int rows) {
+    Arrays.fill(actions, 0, rows, null);
+  }
+}
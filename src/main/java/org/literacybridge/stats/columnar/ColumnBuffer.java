@@ -0,0 +1,151 @@
+package org.literacybridge.stats.columnar;
+
+import javax.annotation.Nullable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The rows of one column that have not been written out yet, held in a primitive array of the column's type.  String
+ * columns hold dictionary codes, and keep the dictionary for the life of the column.
+ * <p/>
+ * The array starts small and doubles as rows are added, up to the most rows the column is ever asked to hold.
+ */
+class ColumnBuffer {
+  private static final int INITIAL_CAPACITY = 256;
+
+  final String name;
+  final ColumnType type;
+  private final int maxCapacity;
+
+  private int[] ints;
+  private long[] longs;
+  private double[] doubles;
+  private boolean[] booleans;
+  private int capacity = 0;
+  private int size = 0;
+
+  private final Map<String, Integer> codes;
+  private final List<String> dictionary;
+
+  /**
+   * @param maxCapacity the most rows that will be added between two writes
+   */
+  ColumnBuffer(String name, ColumnType type, int maxCapacity) {
+    this.name = name;
+    this.type = type;
+    this.maxCapacity = maxCapacity;
+
+    if (type == ColumnType.STRING) {
+      codes = new HashMap<>();
+      dictionary = new ArrayList<>();
+    } else {
+      codes = null;
+      dictionary = null;
+    }
+  }
+
+  void addInt(int value) {
+    ensureCapacity();
+    ints[size++] = value;
+  }
+
+  void addLong(long value) {
+    ensureCapacity();
+    longs[size++] = value;
+  }
+
+  void addDouble(double value) {
+    ensureCapacity();
+    doubles[size++] = value;
+  }
+
+  void addBoolean(boolean value) {
+    ensureCapacity();
+    booleans[size++] = value;
+  }
+
+  void addString(@Nullable String value) {
+    int code = -1;
+    if (value != null) {
+      final Integer existing = codes.get(value);
+      if (existing != null) {
+        code = existing;
+      } else {
+        code = dictionary.size();
+        codes.put(value, code);
+        dictionary.add(value);
+      }
+    }
+    ensureCapacity();
+    ints[size++] = code;
+  }
+
+  private void ensureCapacity() {
+    if (size < capacity) {
+      return;
+    }
+    capacity = Math.min(Math.max(capacity * 2, INITIAL_CAPACITY), Math.max(maxCapacity, size + 1));
+    switch (type) {
+      case LONG:
+        longs = longs != null ? Arrays.copyOf(longs, capacity) : new long[capacity];
+        break;
+      case DOUBLE:
+        doubles = doubles != null ? Arrays.copyOf(doubles, capacity) : new double[capacity];
+        break;
+      case BOOLEAN:
+        booleans = booleans != null ? Arrays.copyOf(booleans, capacity) : new boolean[capacity];
+        break;
+      default:
+        ints = ints != null ? Arrays.copyOf(ints, capacity) : new int[capacity];
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  List<String> getDictionary() {
+    return dictionary;
+  }
+
+  /**
+   * Writes out the buffered rows and empties the buffer.
+   */
+  void writeTo(DataOutputStream out) throws IOException {
+    for (int i = 0; i < size; i++) {
+      switch (type) {
+        case LONG:
+          out.writeLong(longs[i]);
+          break;
+        case DOUBLE:
+          out.writeDouble(doubles[i]);
+          break;
+        case BOOLEAN:
+          out.writeBoolean(booleans[i]);
+          break;
+        default:
+          out.writeInt(ints[i]);
+      }
+    }
+    size = 0;
+  }
+
+  /**
+   * Drops the array, once the buffered rows have been written out.  It is allocated again by the next row.
+   */
+  void release() {
+    if (size != 0) {
+      throw new IllegalStateException("Releasing " + size + " unwritten rows of " + name);
+    }
+    ints = null;
+    longs = null;
+    doubles = null;
+    booleans = null;
+    capacity = 0;
+  }
+}
@@ -0,0 +1,13 @@
+package org.literacybridge.stats.columnar;
+
+/**
+ * The types a column can hold.  Strings are dictionary encoded:  the column holds an int code per row, which indexes
+ * the column's dictionary, with -1 for null.
+ */
+public enum ColumnType {
+  INT,
+  LONG,
+  DOUBLE,
+  BOOLEAN,
+  STRING
+}
@@ -0,0 +1,39 @@
+package org.literacybridge.stats.columnar;
+
+import org.literacybridge.stats.model.TbDataLine;
+import org.literacybridge.stats.processors.BatchingDataProcessor;
+
+import javax.annotation.Nonnull;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A TalkingBookDataProcessor that exports the log events and tbData lines it is given to a {@link ColumnarExporter}.
+ * <p/>
+ * Call {@link #close()} once processing is done, to write out the dictionaries and schemas.
+ */
+public class ColumnarExportProcessor extends BatchingDataProcessor implements Closeable {
+
+  public final ColumnarExporter exporter;
+
+  public ColumnarExportProcessor(@Nonnull File root) {
+    this(new ColumnarExporter(root));
+  }
+
+  public ColumnarExportProcessor(@Nonnull ColumnarExporter exporter) {
+    super(exporter);
+    this.exporter = exporter;
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+    exporter.addTbDataLine(tbDataLine);
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    exporter.close();
+  }
+}
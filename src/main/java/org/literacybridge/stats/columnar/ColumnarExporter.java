@@ -0,0 +1,441 @@
+package org.literacybridge.stats.columnar;
+
+import org.literacybridge.stats.api.*;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.logFile.LogLineInfo;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Writes batches of log events, and tbData lines, to a compressed columnar export.
+ * <p/>
+ * The export is partitioned by deployment and by the device the talking book was synced from:
+ * <pre>
+ *   root/deployment=2014-02/device=tbcd1234/played/_schema.json
+ *                                               /contentId.bin.gz
+ *                                               /contentId.dict.gz
+ *                                               /secondsPlayed.bin.gz
+ *                                               ...
+ * </pre>
+ * There is a table for each kind of batch ({@link #PLAY_TABLE}, {@link #PLAYED_TABLE}, {@link #RECORD_TABLE},
+ * {@link #ACTION_TABLE} and {@link #VOLTAGE_DROP_TABLE}), with survey events in the action table, and a
+ * {@link #TB_DATA_TABLE} with a column for every field of {@link TbDataLine}.  tbData lines are partitioned by their
+ * out deployment and location instead, as {@code root/deployment=2014-02/location=Wa_office/tbData}.
+ * <p/>
+ * Each column is a big-endian array of its {@link ColumnType}, gzipped in row groups.  String columns are dictionary
+ * encoded, so talking book ids, villages, content ids and the like are stored once per partition.  Use
+ * {@link ColumnarReader} to read a table back.
+ * <p/>
+ * Nothing is complete on disk until {@link #close()} is called.  A partition that already exists under the root is
+ * replaced the first time this exporter writes to it.
+ * <p/>
+ * Log events arrive a talking book at a time, so when they move on to another partition, the buffered rows of the
+ * last one are written out and its buffers freed.  Only the dictionaries of the other partitions stay in memory.
+ * <p/>
+ * Like the processors, this is not thread-safe.
+ */
+public class ColumnarExporter implements LogEventBatchProcessor, Closeable {
+  protected static final Logger logger = LoggerFactory.getLogger(ColumnarExporter.class);
+
+  public static final int DEFAULT_ROW_GROUP_SIZE = 64 * 1024;
+  public static final String UNKNOWN = "unknown";
+
+  public static final String PLAY_TABLE = "play";
+  public static final String PLAYED_TABLE = "played";
+  public static final String RECORD_TABLE = "record";
+  public static final String ACTION_TABLE = "action";
+  public static final String VOLTAGE_DROP_TABLE = "voltageDrop";
+  public static final String TB_DATA_TABLE = "tbData";
+
+  static final String DEVICE_PARTITION = "device";
+  static final String LOCATION_PARTITION = "location";
+
+  private static final String[] COMMON_COLUMNS = {"talkingBook", "village", "contentPackage", "syncTime", "logFile",
+    "lineNumber", "rotation", "cycle", "period", "dayOfPeriod", "secondOfDay", "steadyStateVolts"};
+  private static final ColumnType[] COMMON_TYPES = {ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+    ColumnType.STRING, ColumnType.STRING, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT,
+    ColumnType.INT, ColumnType.INT, ColumnType.DOUBLE};
+  private static final int FIRST_EVENT_COLUMN = COMMON_COLUMNS.length;
+
+  private static final String[] PLAY_COLUMNS = concat(COMMON_COLUMNS, "contentId", "volume", "voltage");
+  private static final ColumnType[] PLAY_TYPES = concat(COMMON_TYPES,
+    ColumnType.STRING, ColumnType.INT, ColumnType.DOUBLE);
+
+  private static final String[] PLAYED_COLUMNS = concat(COMMON_COLUMNS,
+    "contentId", "secondsPlayed", "secondsSomething", "volume", "voltage", "ended");
+  private static final ColumnType[] PLAYED_TYPES = concat(COMMON_TYPES,
+    ColumnType.STRING, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.DOUBLE, ColumnType.BOOLEAN);
+
+  private static final String[] RECORD_COLUMNS = concat(COMMON_COLUMNS, "action", "contentId", "number");
+  private static final ColumnType[] RECORD_TYPES = concat(COMMON_TYPES,
+    ColumnType.STRING, ColumnType.STRING, ColumnType.INT);
+
+  private static final String[] ACTION_COLUMNS = concat(COMMON_COLUMNS, "action", "id", "completed", "useful");
+  private static final ColumnType[] ACTION_TYPES = concat(COMMON_TYPES,
+    ColumnType.STRING, ColumnType.STRING, ColumnType.BOOLEAN, ColumnType.BOOLEAN);
+
+  private static final String[] VOLTAGE_DROP_COLUMNS = concat(COMMON_COLUMNS, "action", "voltageDropped", "time");
+  private static final ColumnType[] VOLTAGE_DROP_TYPES = concat(COMMON_TYPES,
+    ColumnType.STRING, ColumnType.DOUBLE, ColumnType.INT);
+
+  //Every field of TbDataLine, in declaration order.  addTbDataLine writes them in the same order.
+  private static final String[] TB_DATA_COLUMNS = {"project", "updateDateTime", "outSyncDir", "location", "action",
+    "durationSec", "outSn", "outDeployment", "outImage", "outFwRev", "outCommunity", "outRotationDate", "inSn",
+    "inDeployment", "inImage", "inFwRev", "inCommunity", "inLastUpdated", "inSyncDir", "inDiskLabel",
+    "chkdskCorruption", "flashSn", "flashReflashes", "flashDeployment", "flashImage", "flashCommunity",
+    "flashLastUpdated", "flashCumDays", "flashCorruptionDay", "flashVolt", "flashPowerups", "flashPeriods", "flashMsgs",
+    "flashMinutes", "flashStarts", "flashPartial", "flashHalf", "flashMost", "flashAll", "flashApplied", "flashUseless",
+    "flashMinutesR0", "flashPeriodR0", "flashHrsPostUpdateR0", "flashVoltR0", "flashMinutesR1", "flashPeriodR1",
+    "flashHrsPostUpdateR1", "flashVoltR1", "flashMinutesR2", "flashPeriodR2", "flashHrsPostUpdateR2", "flashVoltR2",
+    "flashMinutesR3", "flashPeriodR3", "flashHrsPostUpdateR3", "flashVoltR3", "flashMinutesR4", "flashPeriodR4",
+    "flashHrsPostUpdateR4", "flashVoltR4"};
+  private static final ColumnType[] TB_DATA_TYPES = {ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+    ColumnType.STRING, ColumnType.STRING, ColumnType.INT, ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+    ColumnType.STRING, ColumnType.STRING, ColumnType.LONG, ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+    ColumnType.STRING, ColumnType.STRING, ColumnType.LONG, ColumnType.STRING, ColumnType.STRING, ColumnType.STRING,
+    ColumnType.STRING, ColumnType.INT, ColumnType.STRING, ColumnType.STRING, ColumnType.STRING, ColumnType.LONG,
+    ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT,
+    ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT,
+    ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT,
+    ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT,
+    ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT, ColumnType.INT};
+
+  public final File root;
+  public final int rowGroupSize;
+
+  private final Map<String, ColumnarTable> tables = new LinkedHashMap<>();
+
+  private SyncProcessingContext lastContext;
+  private File lastPartition;
+
+  public ColumnarExporter(@Nonnull File root) {
+    this(root, DEFAULT_ROW_GROUP_SIZE);
+  }
+
+  public ColumnarExporter(@Nonnull File root, int rowGroupSize) {
+    if (rowGroupSize <= 0) {
+      throw new IllegalArgumentException("Row group size must be positive: " + rowGroupSize);
+    }
+    this.root = root;
+    this.rowGroupSize = rowGroupSize;
+  }
+
+  /**
+   * @return the directory the given table of a partition is written to
+   */
+  static public File tableDir(File root, @Nullable String deployment, @Nullable String device, String table) {
+    return new File(partitionDir(root, deployment, DEVICE_PARTITION, device), table);
+  }
+
+  /**
+   * @return the directory the tbData lines of a deployment and location are written to
+   */
+  static public File tbDataTableDir(File root, @Nullable String deployment, @Nullable String location) {
+    return new File(partitionDir(root, deployment, LOCATION_PARTITION, location), TB_DATA_TABLE);
+  }
+
+  static File partitionDir(File root, @Nullable String deployment, String partitionName, @Nullable String value) {
+    return new File(new File(root, "deployment=" + sanitize(deployment)), partitionName + "=" + sanitize(value));
+  }
+
+  /**
+   * Makes a value safe to use as a directory name.
+   */
+  static String sanitize(@Nullable String value) {
+    if (value == null || value.isEmpty()) {
+      return UNKNOWN;
+    }
+    final StringBuilder builder = new StringBuilder(value.length());
+    for (int i = 0; i < value.length(); i++) {
+      final char c = value.charAt(i);
+      final boolean safe = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '.' ||
+        c == '_' || c == '-';
+      builder.append(safe ? c : '_');
+    }
+    return builder.toString();
+  }
+
+  /**
+   * Writes out any buffered rows, and the dictionaries and schema of every table.
+   */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (ColumnarTable table : tables.values()) {
+      try {
+        table.close();
+      } catch (IOException e) {
+        logger.error("Could not close " + table.dir, e);
+        if (failure == null) {
+          failure = e;
+        }
+      }
+    }
+    tables.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  public void addTbDataLine(TbDataLine tbDataLine) {
+    final File partition = partitionDir(root, tbDataLine.getOutDeployment(), LOCATION_PARTITION,
+      tbDataLine.getLocation());
+    final ColumnarTable table = table(partition, TB_DATA_TABLE, TB_DATA_COLUMNS, TB_DATA_TYPES);
+    final ColumnBuffer[] columns = table.columns;
+    int i = 0;
+    columns[i++].addString(tbDataLine.getProject());
+    columns[i++].addString(tbDataLine.getUpdateDateTime());
+    columns[i++].addString(tbDataLine.getOutSyncDir());
+    columns[i++].addString(tbDataLine.getLocation());
+    columns[i++].addString(tbDataLine.getAction());
+    columns[i++].addInt(tbDataLine.getDurationSec());
+    columns[i++].addString(tbDataLine.getOutSn());
+    columns[i++].addString(tbDataLine.getOutDeployment());
+    columns[i++].addString(tbDataLine.getOutImage());
+    columns[i++].addString(tbDataLine.getOutFwRev());
+    columns[i++].addString(tbDataLine.getOutCommunity());
+    columns[i++].addLong(dateMillis(tbDataLine.getOutRotationDate()));
+    columns[i++].addString(tbDataLine.getInSn());
+    columns[i++].addString(tbDataLine.getInDeployment());
+    columns[i++].addString(tbDataLine.getInImage());
+    columns[i++].addString(tbDataLine.getInFwRev());
+    columns[i++].addString(tbDataLine.getInCommunity());
+    columns[i++].addLong(dateMillis(tbDataLine.getInLastUpdated()));
+    columns[i++].addString(tbDataLine.getInSyncDir());
+    columns[i++].addString(tbDataLine.getInDiskLabel());
+    columns[i++].addString(tbDataLine.getChkdskCorruption());
+    columns[i++].addString(tbDataLine.getFlashSn());
+    columns[i++].addInt(tbDataLine.getFlashReflashes());
+    columns[i++].addString(tbDataLine.getFlashDeployment());
+    columns[i++].addString(tbDataLine.getFlashImage());
+    columns[i++].addString(tbDataLine.getFlashCommunity());
+    columns[i++].addLong(dateMillis(tbDataLine.getFlashLastUpdated()));
+    columns[i++].addInt(tbDataLine.getFlashCumDays());
+    columns[i++].addInt(tbDataLine.getFlashCorruptionDay());
+    columns[i++].addInt(tbDataLine.getFlashVolt());
+    columns[i++].addInt(tbDataLine.getFlashPowerups());
+    columns[i++].addInt(tbDataLine.getFlashPeriods());
+    columns[i++].addInt(tbDataLine.getFlashMsgs());
+    columns[i++].addInt(tbDataLine.getFlashMinutes());
+    columns[i++].addInt(tbDataLine.getFlashStarts());
+    columns[i++].addInt(tbDataLine.getFlashPartial());
+    columns[i++].addInt(tbDataLine.getFlashHalf());
+    columns[i++].addInt(tbDataLine.getFlashMost());
+    columns[i++].addInt(tbDataLine.getFlashAll());
+    columns[i++].addInt(tbDataLine.getFlashApplied());
+    columns[i++].addInt(tbDataLine.getFlashUseless());
+    columns[i++].addInt(tbDataLine.getFlashMinutesR0());
+    columns[i++].addInt(tbDataLine.getFlashPeriodR0());
+    columns[i++].addInt(tbDataLine.getFlashHrsPostUpdateR0());
+    columns[i++].addInt(tbDataLine.getFlashVoltR0());
+    columns[i++].addInt(tbDataLine.getFlashMinutesR1());
+    columns[i++].addInt(tbDataLine.getFlashPeriodR1());
+    columns[i++].addInt(tbDataLine.getFlashHrsPostUpdateR1());
+    columns[i++].addInt(tbDataLine.getFlashVoltR1());
+    columns[i++].addInt(tbDataLine.getFlashMinutesR2());
+    columns[i++].addInt(tbDataLine.getFlashPeriodR2());
+    columns[i++].addInt(tbDataLine.getFlashHrsPostUpdateR2());
+    columns[i++].addInt(tbDataLine.getFlashVoltR2());
+    columns[i++].addInt(tbDataLine.getFlashMinutesR3());
+    columns[i++].addInt(tbDataLine.getFlashPeriodR3());
+    columns[i++].addInt(tbDataLine.getFlashHrsPostUpdateR3());
+    columns[i++].addInt(tbDataLine.getFlashVoltR3());
+    columns[i++].addInt(tbDataLine.getFlashMinutesR4());
+    columns[i++].addInt(tbDataLine.getFlashPeriodR4());
+    columns[i++].addInt(tbDataLine.getFlashHrsPostUpdateR4());
+    columns[i++].addInt(tbDataLine.getFlashVoltR4());
+    endRow(table);
+  }
+
+  /**
+   * @return the time of a date, or Long.MIN_VALUE if it is not set
+   */
+  private static long dateMillis(@Nullable Date date) {
+    return date != null ? date.getTime() : Long.MIN_VALUE;
+  }
+
+  //+++++++++++++++Batches ++++++++++++++++++//
+
+  @Override
+  public void onLogFileStart(String fileName) {
+  }
+
+  @Override
+  public void onLogFileEnd() {
+  }
+
+  @Override
+  public void onPlayBatch(PlayEventBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      final ColumnarTable table = startRow(batch.contexts[i], PLAY_TABLE, PLAY_COLUMNS, PLAY_TYPES);
+      final ColumnBuffer[] columns = table.columns;
+      columns[FIRST_EVENT_COLUMN].addString(batch.contentIds[i]);
+      columns[FIRST_EVENT_COLUMN + 1].addInt(batch.volumes[i]);
+      columns[FIRST_EVENT_COLUMN + 2].addDouble(batch.voltages[i]);
+      endRow(table);
+    }
+  }
+
+  @Override
+  public void onPlayedBatch(PlayedEventBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      final ColumnarTable table = startRow(batch.contexts[i], PLAYED_TABLE, PLAYED_COLUMNS, PLAYED_TYPES);
+      final ColumnBuffer[] columns = table.columns;
+      columns[FIRST_EVENT_COLUMN].addString(batch.contentIds[i]);
+      columns[FIRST_EVENT_COLUMN + 1].addInt(batch.secondsPlayed[i]);
+      columns[FIRST_EVENT_COLUMN + 2].addInt(batch.secondsSomething[i]);
+      columns[FIRST_EVENT_COLUMN + 3].addInt(batch.volumes[i]);
+      columns[FIRST_EVENT_COLUMN + 4].addDouble(batch.voltages[i]);
+      columns[FIRST_EVENT_COLUMN + 5].addBoolean(batch.ended[i]);
+      endRow(table);
+    }
+  }
+
+  @Override
+  public void onRecordBatch(RecordEventBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      final ColumnarTable table = startRow(batch.contexts[i], RECORD_TABLE, RECORD_COLUMNS, RECORD_TYPES);
+      final ColumnBuffer[] columns = table.columns;
+      columns[FIRST_EVENT_COLUMN].addString(batch.actions[i].name());
+      columns[FIRST_EVENT_COLUMN + 1].addString(batch.contentIds[i]);
+      columns[FIRST_EVENT_COLUMN + 2].addInt(batch.numbers[i]);
+      endRow(table);
+    }
+  }
+
+  @Override
+  public void onActionBatch(ActionEventBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      final ColumnarTable table = startRow(batch.contexts[i], ACTION_TABLE, ACTION_COLUMNS, ACTION_TYPES);
+      final ColumnBuffer[] columns = table.columns;
+      columns[FIRST_EVENT_COLUMN].addString(batch.actions[i].name());
+      columns[FIRST_EVENT_COLUMN + 1].addString(batch.ids[i]);
+      columns[FIRST_EVENT_COLUMN + 2].addBoolean(batch.completed[i]);
+      columns[FIRST_EVENT_COLUMN + 3].addBoolean(batch.useful[i]);
+      endRow(table);
+    }
+  }
+
+  @Override
+  public void onVoltageDropBatch(VoltageDropEventBatch batch) {
+    for (int i = 0; i < batch.size(); i++) {
+      final ColumnarTable table = startRow(batch.contexts[i], VOLTAGE_DROP_TABLE, VOLTAGE_DROP_COLUMNS,
+        VOLTAGE_DROP_TYPES);
+      final ColumnBuffer[] columns = table.columns;
+      columns[FIRST_EVENT_COLUMN].addString(batch.actions[i].name());
+      columns[FIRST_EVENT_COLUMN + 1].addDouble(batch.voltagesDropped[i]);
+      columns[FIRST_EVENT_COLUMN + 2].addInt(batch.times[i]);
+      endRow(table);
+    }
+  }
+
+  //+++++++++++++++Tables ++++++++++++++++++//
+
+  /**
+   * Finds the table for an event's partition, and fills in the columns common to all log events.
+   */
+  private ColumnarTable startRow(LogLineContext lineContext, String name, String[] columnNames,
+                                 ColumnType[] columnTypes) {
+    final SyncProcessingContext context = lineContext.context;
+    if (context != lastContext) {
+      final File partition = partitionDir(root, context.deploymentId != null ? context.deploymentId.id : null,
+        DEVICE_PARTITION, context.deviceSyncedFrom);
+      if (lastPartition != null && !lastPartition.equals(partition)) {
+        release(lastPartition);
+      }
+      lastPartition = partition;
+      lastContext = context;
+    }
+
+    final ColumnarTable table = table(lastPartition, name, columnNames, columnTypes);
+    final ColumnBuffer[] columns = table.columns;
+    columns[0].addString(context.talkingBookId);
+    columns[1].addString(context.village);
+    columns[2].addString(context.contentPackage);
+    columns[3].addString(context.syncTime != null ? context.syncTime.toString() : null);
+    columns[4].addString(lineContext.logFilePosition != null ? lineContext.logFilePosition.fileName : null);
+    columns[5].addInt(lineContext.logFilePosition != null ? lineContext.logFilePosition.lineNumber : -1);
+
+    final LogLineInfo info = lineContext.logLineInfo;
+    if (info != null) {
+      columns[6].addInt(info.householdRotation);
+      columns[7].addInt(info.cycle);
+      columns[8].addInt(info.period);
+      columns[9].addInt(info.dayOfPeriod);
+      columns[10].addInt(info.timeInPeriod != null ? info.timeInPeriod.getMillisOfDay() / 1000 : -1);
+      columns[11].addDouble(info.steadyStateVolts);
+    } else {
+      for (int i = 6; i <= 10; i++) {
+        columns[i].addInt(-1);
+      }
+      columns[11].addDouble(Double.NaN);
+    }
+    return table;
+  }
+
+  private ColumnarTable table(File partition, String name, String[] columnNames, ColumnType[] columnTypes) {
+    final File dir = new File(partition, name);
+    final String key = dir.getPath();
+    ColumnarTable table = tables.get(key);
+    if (table == null) {
+      if (dir.exists()) {
+        logger.info("Replacing existing export in " + dir);
+        for (File file : dir.listFiles()) {
+          if (!file.delete()) {
+            throw new IllegalStateException("Could not delete " + file);
+          }
+        }
+      }
+      table = new ColumnarTable(dir, name, columnNames, columnTypes, rowGroupSize);
+      tables.put(key, table);
+    }
+    return table;
+  }
+
+  /**
+   * Writes out the buffered rows of every table in a partition, and frees their buffers.
+   */
+  private void release(File partition) {
+    for (ColumnarTable table : tables.values()) {
+      if (partition.equals(table.dir.getParentFile())) {
+        try {
+          table.release();
+        } catch (IOException e) {
+          throw new IllegalStateException("Could not write to " + table.dir, e);
+        }
+      }
+    }
+  }
+
+  private static void endRow(ColumnarTable table) {
+    try {
+      table.endRow();
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not write to " + table.dir, e);
+    }
+  }
+
+  private static String[] concat(String[] first, String... rest) {
+    final String[] retVal = Arrays.copyOf(first, first.length + rest.length);
+    System.arraycopy(rest, 0, retVal, first.length, rest.length);
+    return retVal;
+  }
+
+  private static ColumnType[] concat(ColumnType[] first, ColumnType... rest) {
+    final ColumnType[] retVal = Arrays.copyOf(first, first.length + rest.length);
+    System.arraycopy(rest, 0, retVal, first.length, rest.length);
+    return retVal;
+  }
+}
@@ -0,0 +1,164 @@
+package org.literacybridge.stats.columnar;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads the columns of one table of a columnar export, as written by {@link ColumnarExporter}.  Each column is read
+ * on its own, so a scan only pays for the columns it uses.
+ */
+public class ColumnarReader {
+  public static final String SCHEMA_FILE_NAME = "_schema.json";
+  public static final String COLUMN_SUFFIX = ".bin.gz";
+  public static final String DICTIONARY_SUFFIX = ".dict.gz";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  public final File tableDir;
+  public final long rows;
+  private final Map<String, ColumnType> types = new LinkedHashMap<>();
+
+  /**
+   * @param tableDir the directory of one table in one partition
+   */
+  public ColumnarReader(File tableDir) throws IOException {
+    this.tableDir = tableDir;
+    final ColumnarSchema schema = mapper.readValue(new File(tableDir, SCHEMA_FILE_NAME), ColumnarSchema.class);
+    rows = schema.rows;
+    for (ColumnarSchema.Column column : schema.columns) {
+      types.put(column.name, column.type);
+    }
+  }
+
+  /**
+   * @return the column names, in the order they were written, and their types
+   */
+  public Map<String, ColumnType> getColumns() {
+    return types;
+  }
+
+  public int[] readInts(String column) throws IOException {
+    checkType(column, ColumnType.INT);
+    return readIntValues(column);
+  }
+
+  public long[] readLongs(String column) throws IOException {
+    checkType(column, ColumnType.LONG);
+    final long[] retVal = new long[rowCount()];
+    try (DataInputStream in = open(columnFile(tableDir, column))) {
+      for (int i = 0; i < retVal.length; i++) {
+        retVal[i] = in.readLong();
+      }
+    }
+    return retVal;
+  }
+
+  public double[] readDoubles(String column) throws IOException {
+    checkType(column, ColumnType.DOUBLE);
+    final double[] retVal = new double[rowCount()];
+    try (DataInputStream in = open(columnFile(tableDir, column))) {
+      for (int i = 0; i < retVal.length; i++) {
+        retVal[i] = in.readDouble();
+      }
+    }
+    return retVal;
+  }
+
+  public boolean[] readBooleans(String column) throws IOException {
+    checkType(column, ColumnType.BOOLEAN);
+    final boolean[] retVal = new boolean[rowCount()];
+    try (DataInputStream in = open(columnFile(tableDir, column))) {
+      for (int i = 0; i < retVal.length; i++) {
+        retVal[i] = in.readBoolean();
+      }
+    }
+    return retVal;
+  }
+
+  /**
+   * Reads the dictionary codes of a string column, for scans that filter or group without decoding.
+   *
+   * @return a code per row, indexing {@link #readDictionary(String)}, or -1 for null
+   */
+  public int[] readCodes(String column) throws IOException {
+    checkType(column, ColumnType.STRING);
+    return readIntValues(column);
+  }
+
+  public List<String> readDictionary(String column) throws IOException {
+    checkType(column, ColumnType.STRING);
+    try (DataInputStream in = open(dictionaryFile(tableDir, column))) {
+      final int size = in.readInt();
+      final List<String> retVal = new ArrayList<>(size);
+      for (int i = 0; i < size; i++) {
+        retVal.add(in.readUTF());
+      }
+      return retVal;
+    }
+  }
+
+  /**
+   * Reads and decodes a string column.  Every row with the same value gets the same String instance.
+   */
+  public String[] readStrings(String column) throws IOException {
+    final List<String> dictionary = readDictionary(column);
+    final int[] codes = readCodes(column);
+    final String[] retVal = new String[codes.length];
+    for (int i = 0; i < codes.length; i++) {
+      retVal[i] = codes[i] >= 0 ? dictionary.get(codes[i]) : null;
+    }
+    return retVal;
+  }
+
+  private int[] readIntValues(String column) throws IOException {
+    final int[] retVal = new int[rowCount()];
+    try (DataInputStream in = open(columnFile(tableDir, column))) {
+      for (int i = 0; i < retVal.length; i++) {
+        retVal[i] = in.readInt();
+      }
+    }
+    return retVal;
+  }
+
+  private int rowCount() {
+    if (rows > Integer.MAX_VALUE) {
+      throw new IllegalStateException("Too many rows to read into an array: " + rows);
+    }
+    return (int) rows;
+  }
+
+  private void checkType(String column, ColumnType expected) {
+    final ColumnType type = types.get(column);
+    if (type == null) {
+      throw new IllegalArgumentException("No column " + column + " in " + tableDir);
+    }
+    if (type != expected) {
+      throw new IllegalArgumentException("Column " + column + " is " + type + ", not " + expected);
+    }
+  }
+
+  /**
+   * Opens a file of concatenated gzip members as one stream.
+   */
+  private static DataInputStream open(File file) throws IOException {
+    return new DataInputStream(new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))));
+  }
+
+  static File columnFile(File tableDir, String column) {
+    return new File(tableDir, column + COLUMN_SUFFIX);
+  }
+
+  static File dictionaryFile(File tableDir, String column) {
+    return new File(tableDir, column + DICTIONARY_SUFFIX);
+  }
+}
@@ -0,0 +1,48 @@
+package org.literacybridge.stats.columnar;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.annotate.JsonPropertyOrder;
+import org.codehaus.jackson.map.annotate.JsonSerialize;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The {@link ColumnarReader#SCHEMA_FILE_NAME} of one table in one partition:  how many rows it has, and the name and
+ * type of each of its columns, in the order they were written.
+ */
+@JsonPropertyOrder({"table", "rows", "columns"})
+class ColumnarSchema {
+
+  public final String table;
+  public final long rows;
+  public final List<Column> columns;
+
+  @JsonCreator
+  ColumnarSchema(@JsonProperty(value = "table") String table,
+                 @JsonProperty(value = "rows") long rows,
+                 @JsonProperty(value = "columns") List<Column> columns) {
+    this.table = table;
+    this.rows = rows;
+    this.columns = columns != null ? Collections.unmodifiableList(columns) : Collections.<Column>emptyList();
+  }
+
+  @JsonPropertyOrder({"name", "type", "dictionarySize"})
+  @JsonSerialize(include = JsonSerialize.Inclusion.NON_NULL)
+  static class Column {
+    public final String name;
+    public final ColumnType type;
+    //Only for string columns
+    public final Integer dictionarySize;
+
+    @JsonCreator
+    Column(@JsonProperty(value = "name") String name,
+           @JsonProperty(value = "type") ColumnType type,
+           @JsonProperty(value = "dictionarySize") Integer dictionarySize) {
+      this.name = name;
+      this.type = type;
+      this.dictionarySize = dictionarySize;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package org.literacybridge.stats.columnar;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * One table in one partition of a columnar export, being written.
+ * <p/>
+ * Rows are buffered column by column, and every {@code rowGroupSize} rows each column's buffer is appended to its
+ * file as a new gzip member.  Only one file is open at a time, however many partitions there are.  The dictionaries
+ * and the schema are written when the table is closed.
+ * <p/>
+ * The column buffers grow as rows arrive, up to {@code rowGroupSize}, and {@link #release()} gives them back, so a
+ * table that is not being written to only holds on to its dictionaries.
+ */
+class ColumnarTable implements Closeable {
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  final File dir;
+  final String name;
+  final ColumnBuffer[] columns;
+  private final int rowGroupSize;
+  private int bufferedRows = 0;
+  private long rows = 0;
+
+  ColumnarTable(File dir, String name, String[] columnNames, ColumnType[] columnTypes, int rowGroupSize) {
+    this.dir = dir;
+    this.name = name;
+    this.rowGroupSize = rowGroupSize;
+    columns = new ColumnBuffer[columnNames.length];
+    for (int i = 0; i < columns.length; i++) {
+      columns[i] = new ColumnBuffer(columnNames[i], columnTypes[i], rowGroupSize);
+    }
+  }
+
+  /**
+   * Ends the current row, once a value has been added to every column.
+   */
+  void endRow() throws IOException {
+    bufferedRows++;
+    rows++;
+    if (bufferedRows == rowGroupSize) {
+      flush();
+    }
+  }
+
+  /**
+   * Writes out the buffered rows, and frees the buffers until the next row.
+   */
+  void release() throws IOException {
+    flush();
+    for (ColumnBuffer column : columns) {
+      column.release();
+    }
+  }
+
+  void flush() throws IOException {
+    if (bufferedRows == 0) {
+      return;
+    }
+    if (!dir.isDirectory() && !dir.mkdirs()) {
+      throw new IOException("Could not create " + dir);
+    }
+    for (ColumnBuffer column : columns) {
+      try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+        new GZIPOutputStream(new FileOutputStream(ColumnarReader.columnFile(dir, column.name), true))))) {
+        column.writeTo(out);
+      }
+    }
+    bufferedRows = 0;
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+    if (rows == 0) {
+      return;
+    }
+
+    final List<ColumnarSchema.Column> schemaColumns = new ArrayList<>();
+    for (ColumnBuffer column : columns) {
+      Integer dictionarySize = null;
+      if (column.type == ColumnType.STRING) {
+        final List<String> dictionary = column.getDictionary();
+        dictionarySize = dictionary.size();
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+          new GZIPOutputStream(new FileOutputStream(ColumnarReader.dictionaryFile(dir, column.name)))))) {
+          out.writeInt(dictionary.size());
+          for (String value : dictionary) {
+            out.writeUTF(value);
+          }
+        }
+      }
+      schemaColumns.add(new ColumnarSchema.Column(column.name, column.type, dictionarySize));
+    }
+
+    mapper.defaultPrettyPrintingWriter().writeValue(new File(dir, ColumnarReader.SCHEMA_FILE_NAME),
+      new ColumnarSchema(name, rows, schemaColumns));
+  }
+}
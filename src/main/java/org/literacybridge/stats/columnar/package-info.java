@@ -0,0 +1,7 @@
+package org.literacybridge.stats.columnar;
+
+/**
+ * A compressed, columnar on-disk export of parsed log events and tbData lines, partitioned by deployment and device,
+ * so analytics can scan just the columns they need without loading a database first.  See
+ * {@link org.literacybridge.stats.columnar.ColumnarExporter} for the layout.
+ **/
@@ -15,6 +15,7 @@ public class FirmwareConstants {
   //These are the sizes of the basic types on the Talking Book devices.
   public static final int SizeOfInt = 4;
   public static final int SizeOfChar = 2;
+  public static final int SizeOfShort = 2;
 
 
   //Constants for each structure's ID
@@ -2,8 +2,13 @@ package org.literacybridge.stats.formats.flashData;
 
 import com.google.common.collect.ImmutableList;
 import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.apache.commons.lang.builder.ToStringBuilder;
+import org.literacybridge.utils.SymbolTable;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
@@ -11,6 +16,8 @@ import java.nio.ByteOrder;
 import java.util.Collection;
 import java.util.List;
 
+import static org.literacybridge.stats.formats.FirmwareConstants.*;
+
 /**
  * Parses a FlashData.bin file into Java structures.  The names and structures under this class are all meant to mirror the
  * Firmware's C-code, to make mapping between the two easier for humans.
@@ -20,23 +27,102 @@ import java.util.List;
 public class FlashData {
 
   public static final short NO_SINGLE_ROTATION = (short) -1;
+
+  //Offsets of each structure in the NOR flash image.  Everything is fixed size, so these never change.
+  static final int SYSTEM_DATA_OFFSET = 0;
+  static final int SYSTEM_COUNTS_OFFSET = SYSTEM_DATA_OFFSET + 5 * SizeOfShort +
+    (FIXED_SERIAL_NUMBER_SIZE + FIXED_UPDATE_NUMBER_SIZE + FIXED_LOCATION_SIZE + FIXED_IMAGE_NAME_SIZE) * SizeOfChar;
+  static final int NOR_ROTATION_SIZE = 5 * SizeOfShort;
+  static final int MSG_MAP_OFFSET = SYSTEM_COUNTS_OFFSET + 6 * SizeOfShort + MAX_ROTATIONS * NOR_ROTATION_SIZE;
+  static final int MSG_MAP_IDS_OFFSET = MSG_MAP_OFFSET + 2 * SizeOfShort;
+  static final int ALL_MSGS_OFFSET = MSG_MAP_IDS_OFFSET + MAX_TRACKED_MESSAGES * MAX_MESSAGE_ID_LENGTH * SizeOfChar;
+  static final int ALL_MSGS_TOTAL_MESSAGES_OFFSET = ALL_MSGS_OFFSET + 2 * SizeOfShort + MAX_PROFILE_NAME_LENGTH * SizeOfChar;
+  static final int MSG_STATS_OFFSET = ALL_MSGS_TOTAL_MESSAGES_OFFSET + 2 * SizeOfShort;
+  static final int NOR_MSG_STATS_SIZE = 12 * SizeOfShort;
+
+  /**
+   * Size of a complete flashData.bin file.
+   */
+  public static final int FLASH_DATA_SIZE = MSG_STATS_OFFSET + MAX_TRACKED_MESSAGES * MAX_ROTATIONS * NOR_MSG_STATS_SIZE;
+
   private SystemData systemData;
   private SystemCounts systemCounts;
   private NORmsgMap msgMap;
   private NORallMsgStats msgStats;
 
+  //When this was created over a buffer, the structures above are only decoded the first time they are asked for.
+  private ByteBuffer buffer;
+  //The table content IDs are canonicalized through, if any
+  private SymbolTable symbols;
+
   static public FlashData parseFromStream(InputStream is) throws IOException {
     final byte[] fullBuffer = IOUtils.toByteArray(is);
-    final ByteBuffer byteBuffer = ByteBuffer.wrap(fullBuffer);
-    byteBuffer.order(ByteOrder.LITTLE_ENDIAN);
+    return wrap(ByteBuffer.wrap(fullBuffer));
+  }
+
+  /**
+   * Reads a flashData.bin file, and returns a view over it.
+   *
+   * @param file the flashData.bin file
+   * @return a FlashData that decodes from the file's contents on demand
+   * @throws IOException
+   */
+  static public FlashData parseFromFile(File file) throws IOException {
+    final FileInputStream fis = new FileInputStream(file);
+    try {
+      return parseFromStream(fis);
+    } finally {
+      IOUtils.closeQuietly(fis);
+    }
+  }
+
+  /**
+   * Creates a view over the remaining bytes of a buffer.  Nothing is decoded up front:  each structure is decoded
+   * the first time it is asked for, and {@link #allStats()} reads the message stats straight out of the buffer.
+   * <p/>
+   * Heap buffers are not copied, so they must not be changed while the FlashData is in use.  Direct and memory mapped
+   * buffers are copied onto the heap, so a FlashData never keeps a mapping alive after it is loaded.  Buffers that are
+   * too short, or have nonsensical message counts, are parsed eagerly instead so they fail (or succeed) exactly like
+   * {@link #parseFromBuffer(ByteBuffer, FlashData)}.
+   *
+   * @param byteBuffer the flashData image, starting at the buffer's position
+   * @return the view
+   */
+  static public FlashData wrap(ByteBuffer byteBuffer) {
+    return wrap(byteBuffer, null);
+  }
 
-    return parseFromBuffer(byteBuffer, new FlashData());
+  /**
+   * @param byteBuffer the flashData image, starting at the buffer's position
+   * @param symbols    the table to canonicalize content IDs through, or null to leave them as decoded
+   * @return the view
+   */
+  static public FlashData wrap(ByteBuffer byteBuffer, @Nullable SymbolTable symbols) {
+    final ByteBuffer slice;
+    if (byteBuffer.isDirect()) {
+      slice = ByteBuffer.allocate(byteBuffer.remaining());
+      slice.put(byteBuffer.duplicate());
+      slice.flip();
+    } else {
+      slice = byteBuffer.slice();
+    }
+    slice.order(ByteOrder.LITTLE_ENDIAN);
+
+    final FlashData flashData = new FlashData();
+    flashData.symbols = symbols;
+    if (slice.remaining() < FLASH_DATA_SIZE || slice.getShort(MSG_MAP_OFFSET + SizeOfShort) < 0 ||
+      slice.getShort(ALL_MSGS_TOTAL_MESSAGES_OFFSET) < 0) {
+      return parseFromBuffer(slice, flashData);
+    }
+
+    flashData.buffer = slice;
+    return flashData;
   }
 
   static public FlashData parseFromBuffer(ByteBuffer byteBuffer, FlashData flashData) {
     flashData.systemData = SystemData.parseFromBuffer(byteBuffer);
     flashData.systemCounts = SystemCounts.parseFromBuffer(byteBuffer);
-    flashData.msgMap = NORmsgMap.parseFromBuffer(byteBuffer);
+    flashData.msgMap = NORmsgMap.parseFromBuffer(byteBuffer, new NORmsgMap(), flashData.symbols);
     // TODO: create array of msgStats[FirmwareConstants.MAX_PROFILES]
     //      For now, we will only process the first profile since we will
     //		only use one profile in 2014
@@ -52,18 +138,26 @@ public class FlashData {
   }
 
   public boolean isValid(Collection<String> errors) {
+    //A view over a buffer always has every structure, so there is no need to decode them just to check that.
     boolean retVal =
-      doValidate(systemData != null, errors, "systemData is null.") &&
-        doValidate(systemCounts != null, errors, "systemCounts is null.") &&
-        doValidate(msgMap != null, errors, "msgMap is null.") &&
-        doValidate(msgStats != null, errors, "msgStats is null.");
-
-    retVal = retVal & systemData.isValid(errors);
-    retVal = retVal & msgStats.isValid(errors);
+      doValidate(buffer != null || systemData != null, errors, "systemData is null.") &&
+        doValidate(buffer != null || systemCounts != null, errors, "systemCounts is null.") &&
+        doValidate(buffer != null || msgMap != null, errors, "msgMap is null.") &&
+        doValidate(buffer != null || msgStats != null, errors, "msgStats is null.");
+
+    retVal = retVal & getSystemData().isValid(errors);
+    if (msgStats == null && buffer != null) {
+      retVal = retVal & isMsgStatsValidInBuffer(errors);
+    } else {
+      retVal = retVal & msgStats.isValid(errors);
+    }
     return retVal;
   }
 
   public SystemData getSystemData() {
+    if (systemData == null && buffer != null) {
+      systemData = SystemData.parseFromBuffer(region(SYSTEM_DATA_OFFSET));
+    }
     return systemData;
   }
 
@@ -72,6 +166,9 @@ public class FlashData {
   }
 
   public SystemCounts getSystemCounts() {
+    if (systemCounts == null && buffer != null) {
+      systemCounts = SystemCounts.parseFromBuffer(region(SYSTEM_COUNTS_OFFSET));
+    }
     return systemCounts;
   }
 
@@ -80,6 +177,9 @@ public class FlashData {
   }
 
   public NORmsgMap getMsgMap() {
+    if (msgMap == null && buffer != null) {
+      msgMap = NORmsgMap.parseFromBuffer(region(MSG_MAP_OFFSET), new NORmsgMap(), symbols);
+    }
     return msgMap;
   }
 
@@ -88,6 +188,9 @@ public class FlashData {
   }
 
   public NORallMsgStats getMsgStats() {
+    if (msgStats == null && buffer != null) {
+      msgStats = NORallMsgStats.parseFromBuffer(getMsgMap().getMsgIdMap(), region(ALL_MSGS_OFFSET));
+    }
     return msgStats;
   }
 
@@ -101,6 +204,10 @@ public class FlashData {
    * @return
    */
   public List<NORmsgStats> allStats() {
+    if (msgStats == null && buffer != null) {
+      return aggregateStatsFromBuffer();
+    }
+
     final ImmutableList.Builder<NORmsgStats> retValBuilder = new ImmutableList.Builder<>();
 
     for (NORmsgStats[] rotationStats : msgStats.getStats()) {
@@ -150,7 +257,7 @@ public class FlashData {
   public List<NORmsgStats> allStatsPerRotation() {
     final ImmutableList.Builder<NORmsgStats> retValBuilder = new ImmutableList.Builder<>();
 
-    for (NORmsgStats[] rotationStats : msgStats.getStats()) {
+    for (NORmsgStats[] rotationStats : getMsgStats().getStats()) {
       for (NORmsgStats singleRotationStats : rotationStats) {
         retValBuilder.add(singleRotationStats);
       }
@@ -159,24 +266,137 @@ public class FlashData {
     return retValBuilder.build();
   }
 
+  /**
+   * Same as {@link #allStats()}, but reads the counts straight out of the buffer instead of decoding a NORmsgStats
+   * per message and rotation first.  Only the stats that are returned get allocated.
+   */
+  private List<NORmsgStats> aggregateStatsFromBuffer() {
+    final ImmutableList.Builder<NORmsgStats> retValBuilder = new ImmutableList.Builder<>();
+
+    final short totalRotations = buffer.getShort(ALL_MSGS_TOTAL_MESSAGES_OFFSET + SizeOfShort);
+    if (totalRotations <= 0) {
+      return retValBuilder.build();
+    }
+
+    final int messages = Math.min(buffer.getShort(ALL_MSGS_TOTAL_MESSAGES_OFFSET), MAX_TRACKED_MESSAGES);
+    final int rotations = Math.min(totalRotations, MAX_ROTATIONS);
+    final int mappedMessages = Math.min(buffer.getShort(MSG_MAP_OFFSET + SizeOfShort), MAX_TRACKED_MESSAGES);
+
+    for (int i = 0; i < messages; i++) {
+      NORmsgStats msgStats = null;
+
+      for (int j = 0; j < rotations; j++) {
+        final int offset = MSG_STATS_OFFSET + (i * MAX_ROTATIONS + j) * NOR_MSG_STATS_SIZE;
+        final short structId = buffer.getShort(offset);
+        if (structId != NOR_STRUCT_ID_MESSAGE_STATS) {
+          if (structId != NOR_STRUCT_ID_NO_MESSAGE_STATS) {
+            NORmsgStats.logger.error("Invalid struct ID.  Should be " + NOR_STRUCT_ID_MESSAGE_STATS + " but is actually " + structId);
+          }
+          continue;
+        }
+
+        if (msgStats == null) {
+          msgStats = new NORmsgStats();
+          msgStats.setContentId(i < mappedMessages ? contentIdAt(i) : null);
+          msgStats.setEmpty(false);
+          msgStats.setNumberRotation(NO_SINGLE_ROTATION);
+        }
+
+        //Mirrors the aggregation in allStats(), including the counts that take the last value rather than the sum.
+        msgStats.setIndexMsg(buffer.getShort(offset + SizeOfShort));
+        msgStats.addToCountStarted(buffer.getShort(offset + 4 * SizeOfShort));
+        msgStats.addToCountQuarter(buffer.getShort(offset + 5 * SizeOfShort));
+        msgStats.addToCountHalf(buffer.getShort(offset + 6 * SizeOfShort));
+        msgStats.addToCountThreequarters(buffer.getShort(offset + 7 * SizeOfShort));
+        msgStats.addToCountCompleted(buffer.getShort(offset + 8 * SizeOfShort));
+        msgStats.addToCountApplied(buffer.getShort(offset + 9 * SizeOfShort));
+        msgStats.addToCountUseless(buffer.getShort(offset + 10 * SizeOfShort));
+        msgStats.addToTotalSecondsPlayed(decodeUnsignedInt(buffer.getShort(offset + 11 * SizeOfShort)));
+      }
+
+      if (msgStats != null) {
+        retValBuilder.add(msgStats);
+      }
+    }
+
+    return retValBuilder.build();
+  }
+
+  /**
+   * Same check as {@link NORallMsgStats#isValid(Collection)}, but done on the buffer.
+   */
+  private boolean isMsgStatsValidInBuffer(Collection<String> errors) {
+    final short totalRotations = buffer.getShort(ALL_MSGS_TOTAL_MESSAGES_OFFSET + SizeOfShort);
+    final int messages = Math.min(buffer.getShort(ALL_MSGS_TOTAL_MESSAGES_OFFSET), MAX_TRACKED_MESSAGES);
+    final int mappedMessages = Math.min(buffer.getShort(MSG_MAP_OFFSET + SizeOfShort), MAX_TRACKED_MESSAGES);
+    if (totalRotations <= 0) {
+      return true;
+    }
+
+    for (int i = 0; i < messages; i++) {
+      for (int j = 0; j < totalRotations; j++) {
+        //The firmware only has room for MAX_ROTATIONS, so anything past that was never filled in
+        if (j >= MAX_ROTATIONS) {
+          return false;
+        }
+
+        final int offset = MSG_STATS_OFFSET + (i * MAX_ROTATIONS + j) * NOR_MSG_STATS_SIZE;
+        if (buffer.getShort(offset) == NOR_STRUCT_ID_MESSAGE_STATS) {
+          final String contentId = i < mappedMessages ? contentIdAt(i) : null;
+          if (!doValidate(StringUtils.isNotEmpty(contentId), errors, "ContentID is empty in the NORmsgStats")) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  private String contentIdAt(int index) {
+    if (msgMap != null) {
+      return msgMap.getMsgIdMap().get(index);
+    }
+
+    final byte[] contentIdBytes = new byte[MAX_MESSAGE_ID_LENGTH * SizeOfChar];
+    final ByteBuffer contentIdBuffer = region(MSG_MAP_IDS_OFFSET + index * contentIdBytes.length);
+    contentIdBuffer.get(contentIdBytes);
+    final String contentId = decodeString(contentIdBytes);
+    return symbols != null ? symbols.canonical(contentId) : contentId;
+  }
+
+  private ByteBuffer region(int offset) {
+    final ByteBuffer region = buffer.duplicate();
+    region.order(ByteOrder.LITTLE_ENDIAN);
+    region.position(offset);
+    return region;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
     if (!(o instanceof FlashData)) return false;
 
     FlashData flashData = (FlashData) o;
-
-    if (msgMap != null ? !msgMap.equals(flashData.msgMap) : flashData.msgMap != null) return false;
-    if (msgStats != null ? !msgStats.equals(flashData.msgStats) : flashData.msgStats != null) return false;
-    if (systemCounts != null ? !systemCounts.equals(flashData.systemCounts) : flashData.systemCounts != null)
+    final NORmsgMap msgMap = getMsgMap();
+    final NORallMsgStats msgStats = getMsgStats();
+    final SystemCounts systemCounts = getSystemCounts();
+    final SystemData systemData = getSystemData();
+
+    if (msgMap != null ? !msgMap.equals(flashData.getMsgMap()) : flashData.getMsgMap() != null) return false;
+    if (msgStats != null ? !msgStats.equals(flashData.getMsgStats()) : flashData.getMsgStats() != null) return false;
+    if (systemCounts != null ? !systemCounts.equals(flashData.getSystemCounts()) : flashData.getSystemCounts() != null)
       return false;
-    if (systemData != null ? !systemData.equals(flashData.systemData) : flashData.systemData != null) return false;
+    if (systemData != null ? !systemData.equals(flashData.getSystemData()) : flashData.getSystemData() != null) return false;
 
     return true;
   }
 
   @Override
   public int hashCode() {
+    final SystemData systemData = getSystemData();
+    final SystemCounts systemCounts = getSystemCounts();
+    final NORmsgMap msgMap = getMsgMap();
+    final NORallMsgStats msgStats = getMsgStats();
     int result = systemData != null ? systemData.hashCode() : 0;
     result = 31 * result + (systemCounts != null ? systemCounts.hashCode() : 0);
     result = 31 * result + (msgMap != null ? msgMap.hashCode() : 0);
@@ -187,10 +407,10 @@ public class FlashData {
   @Override
   public String toString() {
     return new ToStringBuilder(this)
-      .append("systemData", systemData)
-      .append("systemCounts", systemCounts)
-      .append("msgMap", msgMap)
-      .append("msgStats", msgStats)
+      .append("systemData", getSystemData())
+      .append("systemCounts", getSystemCounts())
+      .append("msgMap", getMsgMap())
+      .append("msgStats", getMsgStats())
       .toString();
   }
 }
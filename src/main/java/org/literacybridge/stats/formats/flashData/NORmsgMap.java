@@ -1,9 +1,11 @@
 package org.literacybridge.stats.formats.flashData;
 
 import org.literacybridge.stats.formats.FirmwareConstants;
+import org.literacybridge.utils.SymbolTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.List;
@@ -27,6 +29,13 @@ public class NORmsgMap {
   }
 
   static public NORmsgMap parseFromBuffer(ByteBuffer byteBuffer, NORmsgMap msgMap) {
+    return parseFromBuffer(byteBuffer, msgMap, null);
+  }
+
+  /**
+   * @param symbols the table to canonicalize content IDs through, or null to leave them as decoded
+   */
+  static public NORmsgMap parseFromBuffer(ByteBuffer byteBuffer, NORmsgMap msgMap, @Nullable SymbolTable symbols) {
 
     short structId = byteBuffer.getShort();
     if (structId != FirmwareConstants.NOR_STRUCT_ID_MSG_MAP) {
@@ -40,7 +49,8 @@ public class NORmsgMap {
     for (int i = 0; i < FirmwareConstants.MAX_TRACKED_MESSAGES; i++) {
       byteBuffer.get(audioContentBuffer);
       if (i < msgMap.totalMessages) {
-        msgMap.msgIdMap.add(FirmwareConstants.decodeString(audioContentBuffer));
+        final String contentId = FirmwareConstants.decodeString(audioContentBuffer);
+        msgMap.msgIdMap.add(symbols != null ? symbols.canonical(contentId) : contentId);
       }
     }
 
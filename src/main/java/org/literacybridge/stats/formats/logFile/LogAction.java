@@ -21,6 +21,22 @@ public enum LogAction {
 
   static protected final Logger logger = LoggerFactory.getLogger(LogAction.class);
 
+  //Open addressed hash table of the actions, keyed on the length and case folded first letter of their names.  Paused
+  //hashes to played's slot and takes the next one, which is survey's, so survey is displaced one further.  Every other
+  //action is in its own slot.  Built once, since values() copies its array on every call.
+  private static final int TABLE_MASK = 31;
+  private static final LogAction[] TABLE = new LogAction[TABLE_MASK + 1];
+
+  static {
+    for (LogAction action : values()) {
+      int slot = hash(action.actionName, 0, action.actionName.length());
+      while (TABLE[slot] != null) {
+        slot = (slot + 1) & TABLE_MASK;
+      }
+      TABLE[slot] = action;
+    }
+  }
+
   final public String actionName;
 
   private LogAction(String actionName) {
@@ -28,15 +44,35 @@ public enum LogAction {
   }
 
   static LogAction lookup(final String actionName) {
+    return lookup(actionName, 0, actionName.length());
+  }
 
-    for (LogAction action : LogAction.values()) {
-      if (action.actionName.equalsIgnoreCase(actionName)) {
-        return action;
+  /**
+   * Finds the action named by s[start, end), ignoring case.  Action names are \w+, so only ASCII letters are folded
+   * for the hash, and the name itself is checked with the usual case insensitive comparison.
+   *
+   * @return the action, or null if there is none by that name
+   */
+  static LogAction lookup(final String s, final int start, final int end) {
+    if (end > start) {
+      final int length = end - start;
+      for (int slot = hash(s, start, end); TABLE[slot] != null; slot = (slot + 1) & TABLE_MASK) {
+        final String name = TABLE[slot].actionName;
+        if (name.length() == length && s.regionMatches(true, start, name, 0, length)) {
+          return TABLE[slot];
+        }
       }
     }
 
-    logger.trace("Tried to find " + actionName + " but did not match.");
+    if (logger.isTraceEnabled()) {
+      logger.trace("Tried to find " + s.substring(start, end) + " but did not match.");
+    }
     return null;
   }
 
+  private static int hash(String s, int start, int end) {
+    final int firstLetter = end > start ? (s.charAt(start) | 0x20) : 0;
+    return ((end - start) * 7 + firstLetter) & TABLE_MASK;
+  }
+
 }
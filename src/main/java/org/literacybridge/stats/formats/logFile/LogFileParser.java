@@ -4,14 +4,18 @@ import com.google.common.collect.Lists;
 import org.joda.time.LocalTime;
 import org.literacybridge.stats.api.TalkingBookDataProcessor;
 import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.utils.SymbolTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
 import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Map;
 import java.util.regex.Matcher;
@@ -111,13 +115,23 @@ public class LogFileParser {
    * VOLTAGE DROP: [0.02]v in [0003] sec
    */
   public static final Pattern VOLTAGE_DROP = Pattern.compile("VOLTAGE DROP:\\s*([0-9.]+)v\\s*in\\s*(\\d+)\\s+sec");
+  static final String VOLTAGE_PREFIX = "VOLTAGE";
+
   static protected final Logger logger = LoggerFactory.getLogger(LogFileParser.class);
-  private final Collection<TalkingBookDataProcessor> eventCallbacks;
-  private final SyncProcessingContext context;
-  private final Map<String, String> categoryMap;
+  protected final Collection<TalkingBookDataProcessor> eventCallbacks;
+  protected final SyncProcessingContext context;
+  protected final Map<String, String> categoryMap;
+  protected SymbolTable symbols = new SymbolTable();
 
   //Last piece of content played
-  private String contentLastPlayed = "";
+  protected String contentLastPlayed = "";
+  protected long linesParsed = 0;
+
+  //The info of the last line, which is very often the same as the next one
+  final LogLineInfoCache infoCache = new LogLineInfoCache();
+
+  //Scratch space for the bytes of one line, when parsing from a ByteBuffer.  Grows to the longest line.
+  private byte[] lineBytes = new byte[256];
 
   public LogFileParser(TalkingBookDataProcessor eventCallbacks, SyncProcessingContext context,
                        Map<String, String> categoryMap) {
@@ -133,8 +147,25 @@ public class LogFileParser {
     this.categoryMap = categoryMap;
   }
 
+  public SymbolTable getSymbolTable() {
+    return symbols;
+  }
+
+  /**
+   * Sets the table content IDs are canonicalized through, so every contentId handed to the callbacks is the same
+   * instance as every other one with the same value.  Defaults to a table of this parser's own;  parsers for the
+   * same run should share the run's table, see {@link org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor}.
+   */
+  public void setSymbolTable(SymbolTable symbols) {
+    this.symbols = symbols;
+  }
+
   static boolean checkForMatch(String action, String args, LogFilePosition filePosition, Matcher matcher) {
-    if (!matcher.matches()) {
+    return checkForMatch(action, args, filePosition, matcher.matches());
+  }
+
+  static boolean checkForMatch(String action, String args, LogFilePosition filePosition, boolean matches) {
+    if (!matches) {
 
       //If this is not a feedback message, mark as being an error
       if (!"Feedback".equalsIgnoreCase(args)) {
@@ -148,6 +179,16 @@ public class LogFileParser {
     return true;
   }
 
+  /**
+   * Creates a parser of the same kind as this one, in the same context, that makes its callbacks to the given
+   * processors.  Used to parse the chunks of a log in parallel, see {@link ParallelLogFileParser}.
+   */
+  protected LogFileParser createChunkParser(Collection<TalkingBookDataProcessor> chunkCallbacks) {
+    final LogFileParser retVal = new LogFileParser(chunkCallbacks, context, categoryMap);
+    retVal.setSymbolTable(symbols);
+    return retVal;
+  }
+
   protected void clearParseState() {
     contentLastPlayed = "";
   }
@@ -156,6 +197,13 @@ public class LogFileParser {
     return contentLastPlayed;
   }
 
+  /**
+   * @return the number of lines read by this parser, over all the files it has parsed
+   */
+  public long getLinesParsed() {
+    return linesParsed;
+  }
+
   public void parse(final String fileName, final InputStream is) throws IOException {
 
     int lineNumber = 1;
@@ -169,19 +217,36 @@ public class LogFileParser {
     try {
       String strLine;
       while ((strLine = br.readLine()) != null) {
+        parseLine(fileName, lineNumber, strLine);
+        lineNumber++;
+        linesParsed++;
+      }
+    } finally {
+      for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+        eventCallback.onLogFileEnd();
+      }
+    }
+  }
 
-        final Matcher fullLineMatcher = LOG_LINE_PATTERN.matcher(strLine);
-        if (fullLineMatcher.matches()) {
-
-          final String preludeString = fullLineMatcher.group(1);
-          final String action = fullLineMatcher.group(2);
-          final String actionParams = fullLineMatcher.group(3);
+  /**
+   * Parses a whole log file that is already in memory, or memory mapped, making the same callbacks as
+   * {@link #parse(String, InputStream)} would for the same bytes.
+   * <p/>
+   * Talking Book logs are ASCII, so the lines are found by scanning the bytes directly rather than decoding the file
+   * through a Reader.  ASCII lines are copied straight into a String; only lines with other bytes are decoded as
+   * UTF-8.  Lines without a ':' can not be log lines, so they are counted but never turned into Strings at all.
+   *
+   * @param contents the whole file, from its position to its limit.  The buffer itself is not modified.
+   */
+  public void parse(final String fileName, final ByteBuffer contents) {
 
-          parseAction(fileName, lineNumber, preludeString, action, actionParams);
-        }
+    clearParseState();
+    for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+      eventCallback.onLogFileStart(fileName);
+    }
 
-        lineNumber++;
-      }
+    try {
+      linesParsed += parseLines(fileName, 1, contents);
     } finally {
       for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
         eventCallback.onLogFileEnd();
@@ -189,23 +254,111 @@ public class LogFileParser {
     }
   }
 
-  public LogLineContext parseLogLineContext(String fileName, int lineNumber, String line) {
+  /**
+   * Parses every line in contents[position, limit), numbering them from firstLine.  Lines end at a \n, a \r or a
+   * \r\n, just as they do for {@link BufferedReader#readLine()}.
+   *
+   * @return the number of lines
+   */
+  protected int parseLines(final String fileName, final int firstLine, final ByteBuffer contents) {
+    final ByteBuffer bytes = contents.duplicate();
+    final int limit = bytes.limit();
+    int lines = 0;
+    int pos = bytes.position();
+    while (pos < limit) {
+      int end = pos;
+      boolean ascii = true;
+      boolean hasColon = false;
+      byte b = 0;
+      while (end < limit && (b = bytes.get(end)) != '\n' && b != '\r') {
+        if (b < 0) {
+          ascii = false;
+        } else if (b == ':') {
+          //No multi-byte UTF-8 sequence contains a byte below 0x80, so this is exact even for non ASCII lines
+          hasColon = true;
+        }
+        end++;
+      }
 
-    final LogFilePosition logFilePosition = new LogFilePosition(fileName, lineNumber);
+      if (hasColon) {
+        parseLine(fileName, firstLine + lines, lineString(bytes, pos, end, ascii));
+      }
+      lines++;
+
+      pos = end + 1;
+      if (b == '\r' && pos < limit && bytes.get(pos) == '\n') {
+        pos++;
+      }
+    }
+    return lines;
+  }
+
+  private String lineString(ByteBuffer bytes, int start, int end, boolean ascii) {
+    final int length = end - start;
+    if (lineBytes.length < length) {
+      lineBytes = new byte[Math.max(length, lineBytes.length * 2)];
+    }
+    bytes.position(start);
+    bytes.get(lineBytes, 0, length);
+
+    return new String(lineBytes, 0, length, ascii ? StandardCharsets.US_ASCII : StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Splits a single log line into its prelude, action and arguments, and processes the action.  Lines that do
+   * not look like log lines are ignored.
+   */
+  protected void parseLine(final String fileName, final int lineNumber, final String line) {
+    final Matcher fullLineMatcher = LOG_LINE_PATTERN.matcher(line);
+    if (fullLineMatcher.matches()) {
+
+      final String preludeString = fullLineMatcher.group(1);
+      final String action = fullLineMatcher.group(2);
+      final String actionParams = fullLineMatcher.group(3);
+
+      parseAction(fileName, lineNumber, preludeString, action, actionParams);
+    }
+  }
+
+  public LogLineContext parseLogLineContext(String fileName, int lineNumber, String line) {
 
     LogLineInfo logLineInfo = null;
     try {
-      logLineInfo = parseLogLineInfo(line);
+      logLineInfo = parseLogLineInfo(line, infoCache);
     } catch (NumberFormatException e) {
       final String errorString = String.format("%s : %d - Invalid number in log info. Line=%s, Error=%s", fileName,
         lineNumber, line, e.getMessage());
       logger.error(errorString);
     }
 
-    return new LogLineContext(logLineInfo, logFilePosition, context);
+    return new LogLineContext(logLineInfo, new LogFilePosition(fileName, lineNumber), context);
+  }
+
+  /**
+   * Creates the info for a line.  With a cache, it is shared with the last line when they have the same values.
+   */
+  static LogLineInfo newLogLineInfo(@Nullable LogLineInfoCache cache, short rotation, short cycle, short period,
+                                    short dayOfPeriod, int hourOfPeriod, int minuteOfPeriod, int secondOfPeriod,
+                                    double highestVoltage, double steadyStateVoltage, double lowestVoltage) {
+    if (cache != null) {
+      return cache.get(rotation, cycle, period, dayOfPeriod, hourOfPeriod, minuteOfPeriod, secondOfPeriod,
+        highestVoltage, steadyStateVoltage, lowestVoltage);
+    }
+    return new LogLineInfo(rotation, cycle, period, dayOfPeriod,
+      new LocalTime(hourOfPeriod, minuteOfPeriod, secondOfPeriod), highestVoltage, steadyStateVoltage, lowestVoltage);
   }
 
+  /**
+   * @return a new LogLineInfo for the prelude of a line, or null if it is not one
+   */
   public LogLineInfo parseLogLineInfo(String line) throws NumberFormatException {
+    return parseLogLineInfo(line, null);
+  }
+
+  /**
+   * Same as {@link #parseLogLineInfo(String)}, but the info may be shared through the cache.
+   */
+  LogLineInfo parseLogLineInfo(String line, @Nullable LogLineInfoCache cache) throws NumberFormatException {
 
     //The line pattern seems to have changed to include a 0p at the beginning.
     //This catches that.
@@ -244,26 +397,32 @@ public class LogFileParser {
     dayOfPeriod += hourOfPeriod / 24;
     hourOfPeriod = hourOfPeriod % 24;
 
-    final LocalTime periodTime = new LocalTime(hourOfPeriod, minuteOfPeriod, secondOfPeriod);
-
-    return new LogLineInfo(rotation, cycle, period, dayOfPeriod, periodTime, highestVoltage, steadyStateVoltage,
-      lowestVoltage);
+    return newLogLineInfo(cache, rotation, cycle, period, dayOfPeriod, hourOfPeriod, minuteOfPeriod, secondOfPeriod,
+      highestVoltage, steadyStateVoltage, lowestVoltage);
   }
 
   public void parseAction(final String fileName, final int lineNumber, final String preludeString, final String action,
                           final String actionParams) {
 
     final LogLineContext logLineContext = parseLogLineContext(fileName, lineNumber, preludeString);
-    final Matcher voltageMatcher = VOLTAGE_DROP.matcher(actionParams);
-    final boolean isVoltageDrop = voltageMatcher.matches();
     final LogAction logAction = LogAction.lookup(action);
 
     if (logAction == null) {
-      logger.debug("Invalid action " + action);
+      if (logger.isDebugEnabled()) {
+        logger.debug("Invalid action " + action);
+      }
       return;
     }
 
-    if (!isVoltageDrop) {
+    processAction(logLineContext, logAction, actionParams);
+  }
+
+  /**
+   * Sends an action that has already been identified to the right processing function.
+   */
+  protected void processAction(final LogLineContext logLineContext, final LogAction logAction, final String actionParams) {
+
+    if (!processVoltageDrop(logLineContext, logAction, actionParams)) {
 
       switch (logAction) {
 
@@ -314,16 +473,34 @@ public class LogFileParser {
           break;
       }
 
-    } else {
-      final double voltsDropped = Double.parseDouble(voltageMatcher.group(1));
-      final int time = Integer.parseInt(voltageMatcher.group(2));
-      for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
-        eventCallback.onVoltageDrop(logLineContext, logAction, voltsDropped, time);
-      }
     }
 
   }
 
+  /**
+   * Checks whether the arguments describe a VOLTAGE DROP, and if so, sends it to the callbacks.
+   *
+   * @return true if this was a voltage drop and has been processed, false if the action should be processed normally.
+   */
+  protected boolean processVoltageDrop(LogLineContext logLineContext, LogAction logAction, String args) {
+    //Almost no lines are voltage drops, so don't run the regex unless it could match
+    if (!args.startsWith(VOLTAGE_PREFIX)) {
+      return false;
+    }
+
+    final Matcher voltageMatcher = VOLTAGE_DROP.matcher(args);
+    if (!voltageMatcher.matches()) {
+      return false;
+    }
+
+    final double voltsDropped = Double.parseDouble(voltageMatcher.group(1));
+    final int time = Integer.parseInt(voltageMatcher.group(2));
+    for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+      eventCallback.onVoltageDrop(logLineContext, logAction, voltsDropped, time);
+    }
+    return true;
+  }
+
   protected void processPlay(LogLineContext logLineContext, String args) {
     final Matcher matcher = REST_OF_PLAY.matcher(args);
     if (!checkForMatch("Play", args, logLineContext.logFilePosition, matcher)) {
@@ -331,7 +508,7 @@ public class LogFileParser {
     }
 
 
-    final String contentId = matcher.group(1);
+    final String contentId = symbols.canonical(matcher.group(1));
     contentLastPlayed = contentId;
 
     try {
@@ -356,7 +533,7 @@ public class LogFileParser {
     }
 
 
-    final String contentId = matcher.group(1);
+    final String contentId = symbols.canonical(matcher.group(1));
     contentLastPlayed = contentId;
 
     try {
@@ -402,7 +579,7 @@ public class LogFileParser {
     }
 
 
-    final String contentId = matcher.group(1);
+    final String contentId = symbols.canonical(matcher.group(1));
 
     try {
       final int unknownId = Integer.parseInt(matcher.group(2));
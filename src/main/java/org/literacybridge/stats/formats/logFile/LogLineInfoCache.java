@@ -0,0 +1,40 @@
+package org.literacybridge.stats.formats.logFile;
+
+import org.joda.time.LocalTime;
+
+/**
+ * The LogLineInfo, and period time, of the last line a parser built a context for.  Consecutive lines are very often
+ * in the same second, and often have exactly the same prelude, so the next line can share them instead of allocating
+ * its own.  Both are immutable, so sharing them is safe whatever the callbacks keep.
+ * <p/>
+ * Only the parser that owns it sees this, and like the parser it is not thread-safe.
+ */
+class LogLineInfoCache {
+  private int lastPeriodSeconds = -1;
+  private LocalTime lastPeriodTime;
+  private LogLineInfo lastInfo;
+
+  /**
+   * @return the info of the last line if it had the same values, or a new one that becomes the last
+   */
+  LogLineInfo get(short rotation, short cycle, short period, short dayOfPeriod,
+                  int hourOfPeriod, int minuteOfPeriod, int secondOfPeriod,
+                  double highestVoltage, double steadyStateVoltage, double lowestVoltage) {
+    final int periodSeconds = (hourOfPeriod * 60 + minuteOfPeriod) * 60 + secondOfPeriod;
+    if (periodSeconds != lastPeriodSeconds) {
+      lastPeriodTime = new LocalTime(hourOfPeriod, minuteOfPeriod, secondOfPeriod);
+      lastPeriodSeconds = periodSeconds;
+      lastInfo = null;
+    }
+
+    if (lastInfo == null || lastInfo.householdRotation != rotation || lastInfo.cycle != cycle ||
+      lastInfo.period != period || lastInfo.dayOfPeriod != dayOfPeriod ||
+      Double.compare(lastInfo.maxVolts, highestVoltage) != 0 ||
+      Double.compare(lastInfo.steadyStateVolts, steadyStateVoltage) != 0 ||
+      Double.compare(lastInfo.minVolts, lowestVoltage) != 0) {
+      lastInfo = new LogLineInfo(rotation, cycle, period, dayOfPeriod, lastPeriodTime, highestVoltage,
+        steadyStateVoltage, lowestVoltage);
+    }
+    return lastInfo;
+  }
+}
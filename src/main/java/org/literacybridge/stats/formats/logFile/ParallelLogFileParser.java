@@ -0,0 +1,220 @@
+package org.literacybridge.stats.formats.logFile;
+
+import com.google.common.util.concurrent.Futures;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.processors.RecordingDataProcessor;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Parses a whole log file that is already in memory (or memory mapped) by splitting it into chunks at line
+ * boundaries and parsing the chunks in parallel, while making exactly the same callbacks, in exactly the same order,
+ * as {@link LogFileParser#parse} would.
+ * <p/>
+ * Each chunk is parsed on the executor by a parser of the same kind as the one given (see
+ * {@link LogFileParser#createChunkParser}), with its line numbers counted from the start of the file.  Its callbacks
+ * are recorded by a {@link RecordingDataProcessor}, and replayed to the real processors on the calling thread, chunk
+ * by chunk, as soon as each chunk and all the chunks before it are done.  So the processors see every event in line
+ * order, on one thread, as usual.  Only a few chunks are parsed ahead of the one being replayed, so the recorded
+ * events stay bounded however big the file is.
+ * <p/>
+ * The only state carried from one line to the next is the content last played, which PAUSED, UNPAUSED and SURVEY
+ * events refer to.  A chunk does not know it until the chunks before it are parsed, so each chunk starts with a
+ * placeholder, and any event that was given the placeholder gets the real content id when it is replayed.  The
+ * given parser is left with the same content last played and line count as if it had parsed the file itself.
+ * <p/>
+ * Files no bigger than one chunk are parsed directly on the calling thread.  Like LogFileParser, instances are not
+ * thread-safe, but the executor can be shared.
+ */
+public class ParallelLogFileParser {
+  public static final int DEFAULT_CHUNK_BYTES = 4 * 1024 * 1024;
+  public static final int DEFAULT_CHUNKS_IN_FLIGHT = 2 * Runtime.getRuntime().availableProcessors();
+
+  //Stands in for the content last played before a chunk.  Compared by identity, so it can never be a real content id.
+  private static final String UNKNOWN_CONTENT = new String("");
+
+  public final LogFileParser parser;
+  public final int chunkBytes;
+  public final int chunksInFlight;
+  private final ExecutorService executor;
+
+  public ParallelLogFileParser(@Nonnull LogFileParser parser, @Nonnull ExecutorService executor) {
+    this(parser, executor, DEFAULT_CHUNK_BYTES);
+  }
+
+  /**
+   * @param parser     the parser whose callbacks, context and kind of parsing are used
+   * @param executor   where the chunks are parsed
+   * @param chunkBytes roughly how big each chunk is.  Chunks are extended to the end of a line.
+   */
+  public ParallelLogFileParser(@Nonnull LogFileParser parser, @Nonnull ExecutorService executor, int chunkBytes) {
+    this(parser, executor, chunkBytes, DEFAULT_CHUNKS_IN_FLIGHT);
+  }
+
+  /**
+   * @param parser         the parser whose callbacks, context and kind of parsing are used
+   * @param executor       where the chunks are parsed
+   * @param chunkBytes     roughly how big each chunk is.  Chunks are extended to the end of a line.
+   * @param chunksInFlight how many chunks can be parsed, or waiting to be replayed, at once
+   */
+  public ParallelLogFileParser(@Nonnull LogFileParser parser, @Nonnull ExecutorService executor, int chunkBytes,
+                               int chunksInFlight) {
+    if (chunkBytes <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkBytes);
+    }
+    if (chunksInFlight <= 0) {
+      throw new IllegalArgumentException("Chunks in flight must be positive: " + chunksInFlight);
+    }
+    this.parser = parser;
+    this.executor = executor;
+    this.chunkBytes = chunkBytes;
+    this.chunksInFlight = chunksInFlight;
+  }
+
+  /**
+   * Parses a log file, making the same calls to the parser's callbacks as {@link LogFileParser#parse} does.
+   *
+   * @param fileName the name of the file, for the {@link LogFilePosition}s
+   * @param contents the whole file, from its position to its limit.  The buffer itself is not modified.
+   */
+  public void parse(final String fileName, final ByteBuffer contents) throws IOException {
+
+    parser.clearParseState();
+    for (TalkingBookDataProcessor eventCallback : parser.eventCallbacks) {
+      eventCallback.onLogFileStart(fileName);
+    }
+
+    final Deque<Future<Chunk>> chunks = new ArrayDeque<>();
+    try {
+      int start = contents.position();
+      int firstLine = 1;
+      while (start < contents.limit()) {
+        if (chunks.size() >= chunksInFlight) {
+          replay(chunks.remove().get());
+        }
+        final int end = chunkEnd(contents, start);
+        final ByteBuffer slice = contents.duplicate();
+        slice.position(start);
+        slice.limit(end);
+        final Chunk chunk = new Chunk(fileName, slice.slice(), firstLine);
+        if (start == contents.position() && end == contents.limit()) {
+          //The whole file is one chunk, so there is nothing to gain by going to another thread
+          chunks.add(Futures.immediateFuture(chunk.call()));
+        } else {
+          chunks.add(executor.submit(chunk));
+        }
+
+        firstLine += countLines(contents, start, end);
+        start = end;
+      }
+
+      while (!chunks.isEmpty()) {
+        replay(chunks.remove().get());
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while parsing " + fileName, e);
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof RuntimeException) {
+        throw (RuntimeException) e.getCause();
+      }
+      if (e.getCause() instanceof Error) {
+        throw (Error) e.getCause();
+      }
+      throw new IOException("Could not parse " + fileName, e.getCause());
+    } finally {
+      for (Future<Chunk> future : chunks) {
+        future.cancel(true);
+      }
+      for (TalkingBookDataProcessor eventCallback : parser.eventCallbacks) {
+        eventCallback.onLogFileEnd();
+      }
+    }
+  }
+
+  /**
+   * @return the end of the chunk that starts at start:  just after the first newline at or beyond the chunk size, or
+   * the end of the buffer
+   */
+  private int chunkEnd(ByteBuffer contents, int start) {
+    final int limit = contents.limit();
+    if (limit - start <= chunkBytes) {
+      return limit;
+    }
+    int end = start + chunkBytes;
+    while (end < limit && contents.get(end - 1) != '\n') {
+      end++;
+    }
+    return end;
+  }
+
+  /**
+   * Counts lines the way {@link BufferedReader#readLine()} does:  a line ends at a \n, a \r, or a \r\n.
+   */
+  static int countLines(ByteBuffer contents, int start, int end) {
+    int lines = 0;
+    for (int i = start; i < end; i++) {
+      final byte b = contents.get(i);
+      if (b == '\n' || (b == '\r' && (i + 1 == end || contents.get(i + 1) != '\n'))) {
+        lines++;
+      }
+    }
+    return lines;
+  }
+
+  /**
+   * Replays the calls recorded for a chunk to the real callbacks, filling in the content last played where the
+   * chunk did not know it.
+   */
+  private void replay(Chunk chunk) throws IOException {
+    chunk.recorder.replaceContentId(UNKNOWN_CONTENT, parser.contentLastPlayed);
+    chunk.recorder.replayTo(new ArrayList<>(parser.eventCallbacks));
+
+    if (chunk.contentLastPlayed != UNKNOWN_CONTENT) {
+      parser.contentLastPlayed = chunk.contentLastPlayed;
+    }
+    parser.linesParsed += chunk.lines;
+  }
+
+  /**
+   * One chunk of a log file, which parses itself and records the callbacks it would make.
+   */
+  private class Chunk implements Callable<Chunk> {
+    final String fileName;
+    final ByteBuffer bytes;
+    final int firstLine;
+
+    final RecordingDataProcessor recorder = new RecordingDataProcessor();
+    String contentLastPlayed;
+    int lines = 0;
+
+    Chunk(String fileName, ByteBuffer bytes, int firstLine) {
+      this.fileName = fileName;
+      this.bytes = bytes;
+      this.firstLine = firstLine;
+    }
+
+    @Override
+    public Chunk call() {
+      final LogFileParser chunkParser =
+        parser.createChunkParser(Collections.<TalkingBookDataProcessor>singletonList(recorder));
+      chunkParser.contentLastPlayed = UNKNOWN_CONTENT;
+
+      lines = chunkParser.parseLines(fileName, firstLine, bytes);
+      contentLastPlayed = chunkParser.contentLastPlayed;
+      return this;
+    }
+  }
+}
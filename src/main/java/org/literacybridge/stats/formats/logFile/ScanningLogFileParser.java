@@ -0,0 +1,555 @@
+package org.literacybridge.stats.formats.logFile;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.model.SyncProcessingContext;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * A LogFileParser that tokenizes log lines with a hand written, single pass scanner instead of the regular
+ * expressions in LogFileParser.
+ * <p/>
+ * It accepts exactly the same grammar as {@link #LOG_LINE_PATTERN}, {@link #NEW_LINE_PATTERN},
+ * {@link #LOG_LINE_START_PATTERN}, {@link #VOLTAGE_DROP} and the REST_OF_* patterns, and makes the same callbacks and
+ * logs the same errors.  The difference is that it does not create Matchers, and parses numbers straight out of the
+ * line instead of out of a substring per capture group.  Numbers that are too long to be converted in place fall
+ * back to the JDK parsers, so overflows fail with the same exceptions and messages as before.
+ * <p/>
+ * Like LogFileParser, instances are not thread-safe.
+ */
+public class ScanningLogFileParser extends LogFileParser {
+
+  private static final String VOLTAGE_DROP_PREFIX = "VOLTAGE DROP:";
+  private static final String RECORDED_PREFIX = "RECORDED";
+
+  //Start and end offsets of each number in the log line prelude.  Reused between lines.
+  private final int[] preludeGroups = new int[20];
+
+  public ScanningLogFileParser(TalkingBookDataProcessor eventCallbacks, SyncProcessingContext context,
+                               Map<String, String> categoryMap) {
+    super(eventCallbacks, context, categoryMap);
+  }
+
+  public ScanningLogFileParser(Collection<TalkingBookDataProcessor> eventCallbacks, SyncProcessingContext context,
+                               Map<String, String> categoryMap) {
+    super(eventCallbacks, context, categoryMap);
+  }
+
+  @Override
+  protected LogFileParser createChunkParser(Collection<TalkingBookDataProcessor> chunkCallbacks) {
+    final LogFileParser retVal = new ScanningLogFileParser(chunkCallbacks, context, categoryMap);
+    retVal.setSymbolTable(symbols);
+    return retVal;
+  }
+
+  /**
+   * Equivalent of matching {@link #LOG_LINE_PATTERN}:  ([^:]*):(\w+):*\s*(.*)
+   */
+  @Override
+  protected void parseLine(final String fileName, final int lineNumber, final String line) {
+    final int end = line.length();
+    final int colon = line.indexOf(':');
+    if (colon < 0) {
+      return;
+    }
+
+    final int actionStart = colon + 1;
+    int pos = actionStart;
+    while (pos < end && isWordChar(line.charAt(pos))) {
+      pos++;
+    }
+    if (pos == actionStart) {
+      return;
+    }
+
+    final int actionEnd = pos;
+    while (pos < end && line.charAt(pos) == ':') {
+      pos++;
+    }
+    while (pos < end && isWhitespace(line.charAt(pos))) {
+      pos++;
+    }
+    if (hasLineTerminator(line, pos, end)) {
+      return;
+    }
+
+    final LogLineContext logLineContext = parseLogLineContext(fileName, lineNumber, line, 0, colon);
+    final LogAction logAction = LogAction.lookup(line, actionStart, actionEnd);
+
+    if (logAction == null) {
+      if (logger.isDebugEnabled()) {
+        logger.debug("Invalid action " + line.substring(actionStart, actionEnd));
+      }
+      return;
+    }
+
+    processAction(logLineContext, logAction, line.substring(pos));
+  }
+
+  /**
+   * Same as {@link #parseLogLineContext(String, int, String)}, but only looks at line[start, end), so the caller
+   * does not need to cut out the prelude.
+   */
+  protected LogLineContext parseLogLineContext(String fileName, int lineNumber, String line, int start, int end) {
+
+    LogLineInfo logLineInfo = null;
+    try {
+      logLineInfo = parseLogLineInfo(line, start, end, infoCache);
+    } catch (NumberFormatException e) {
+      final String errorString = String.format("%s : %d - Invalid number in log info. Line=%s, Error=%s", fileName,
+        lineNumber, line.substring(start, end), e.getMessage());
+      logger.error(errorString);
+    }
+
+    return new LogLineContext(logLineInfo, new LogFilePosition(fileName, lineNumber), context);
+  }
+
+  @Override
+  public LogLineInfo parseLogLineInfo(String line) throws NumberFormatException {
+    return parseLogLineInfo(line, 0, line.length());
+  }
+
+  @Override
+  LogLineInfo parseLogLineInfo(String line, @Nullable LogLineInfoCache cache) throws NumberFormatException {
+    return parseLogLineInfo(line, 0, line.length(), cache);
+  }
+
+  /**
+   * Equivalent of {@link #NEW_LINE_PATTERN} followed by {@link #LOG_LINE_START_PATTERN}, over line[start, end).
+   * The whole prelude is validated before any number is converted, so a malformed line returns null rather than
+   * throwing, just like the regex version.
+   */
+  public LogLineInfo parseLogLineInfo(String line, int start, int end) throws NumberFormatException {
+    return parseLogLineInfo(line, start, end, null);
+  }
+
+  LogLineInfo parseLogLineInfo(String line, int start, int end, @Nullable LogLineInfoCache cache)
+    throws NumberFormatException {
+
+    //The line pattern seems to have changed to include a 0p at the beginning.
+    //This catches that.
+    int pos = skipDigits(line, start, end);
+    if (pos > start && pos < end && line.charAt(pos) == 'p' && !hasLineTerminator(line, pos + 1, end)) {
+      start = pos + 1;
+    }
+
+    final int[] groups = preludeGroups;
+
+    //(0|(\d+)r)
+    pos = skipDigits(line, start, end);
+    if (pos == start || pos == end) {
+      return null;
+    }
+    final boolean hasRotation = line.charAt(pos) == 'r';
+    if (hasRotation) {
+      groups[0] = start;
+      groups[1] = pos;
+      pos++;
+    } else if (line.charAt(start) == '0') {
+      pos = start + 1;
+    } else {
+      return null;
+    }
+
+    //(\d+)c(\d+)p\D*(\d+)d(\d+)h(\d+)m(\d+)s(\d+)/(\d+)/(\d+)V
+    pos = scanGroup(line, pos, end, 'c', groups, 2);
+    pos = scanGroup(line, pos, end, 'p', groups, 4);
+    while (pos >= 0 && pos < end && !isDigit(line.charAt(pos))) {
+      pos++;
+    }
+    pos = scanGroup(line, pos, end, 'd', groups, 6);
+    pos = scanGroup(line, pos, end, 'h', groups, 8);
+    pos = scanGroup(line, pos, end, 'm', groups, 10);
+    pos = scanGroup(line, pos, end, 's', groups, 12);
+    pos = scanGroup(line, pos, end, '/', groups, 14);
+    pos = scanGroup(line, pos, end, '/', groups, 16);
+    pos = scanGroup(line, pos, end, 'V', groups, 18);
+    if (pos != end) {
+      return null;
+    }
+
+    short rotation = 0;
+    if (hasRotation) {
+      rotation = parseShort(line, groups[0], groups[1]);
+    }
+
+    final short cycle = parseShort(line, groups[2], groups[3]);
+    final short period = parseShort(line, groups[4], groups[5]);
+
+    short dayOfPeriod = parseShort(line, groups[6], groups[7]);
+    int hourOfPeriod = parseInt(line, groups[8], groups[9]);
+    int minuteOfPeriod = parseInt(line, groups[10], groups[11]);
+    int secondOfPeriod = parseInt(line, groups[12], groups[13]);
+    final double highestVoltage = parseDouble(line, groups[14], groups[15]) / 100;
+    final double steadyStateVoltage = parseDouble(line, groups[16], groups[17]) / 100;
+    final double lowestVoltage = parseDouble(line, groups[18], groups[19]) / 100;
+
+    //Somehow, there appear to be log messages with hour of day > 24 and minutes > 60
+
+    minuteOfPeriod += secondOfPeriod / 60;
+    secondOfPeriod = secondOfPeriod % 60;
+    hourOfPeriod += minuteOfPeriod / 60;
+    minuteOfPeriod = minuteOfPeriod % 60;
+    dayOfPeriod += hourOfPeriod / 24;
+    hourOfPeriod = hourOfPeriod % 24;
+
+    return newLogLineInfo(cache, rotation, cycle, period, dayOfPeriod, hourOfPeriod, minuteOfPeriod, secondOfPeriod,
+      highestVoltage, steadyStateVoltage, lowestVoltage);
+  }
+
+  /**
+   * Equivalent of {@link #VOLTAGE_DROP}:  VOLTAGE DROP:\s*([0-9.]+)v\s*in\s*(\d+)\s+sec
+   */
+  @Override
+  protected boolean processVoltageDrop(LogLineContext logLineContext, LogAction logAction, String args) {
+    if (!args.startsWith(VOLTAGE_DROP_PREFIX)) {
+      return false;
+    }
+
+    final int end = args.length();
+    int pos = skipWhitespace(args, VOLTAGE_DROP_PREFIX.length(), end);
+    final int voltsStart = pos;
+    while (pos < end && (isDigit(args.charAt(pos)) || args.charAt(pos) == '.')) {
+      pos++;
+    }
+    final int voltsEnd = pos;
+    if (voltsEnd == voltsStart) {
+      return false;
+    }
+
+    pos = scanLiteral(args, pos, "v");
+    pos = scanLiteral(args, pos < 0 ? pos : skipWhitespace(args, pos, end), "in");
+    final int timeStart = pos < 0 ? pos : skipWhitespace(args, pos, end);
+    final int timeEnd = scanDigits(args, timeStart);
+    pos = scanWhitespace(args, timeEnd);
+    pos = scanLiteral(args, pos, "sec");
+    if (pos != end) {
+      return false;
+    }
+
+    final double voltsDropped = Double.parseDouble(args.substring(voltsStart, voltsEnd));
+    final int time = parseInt(args, timeStart, timeEnd);
+    for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+      eventCallback.onVoltageDrop(logLineContext, logAction, voltsDropped, time);
+    }
+    return true;
+  }
+
+  /**
+   * Equivalent of {@link #REST_OF_PLAY}:  (\S+)\s+@VOL=(\d+)\s+@Volt=(\S+)\s*
+   */
+  @Override
+  protected void processPlay(LogLineContext logLineContext, String args) {
+    final int contentIdEnd = scanNonWhitespace(args, 0);
+    int pos = scanLiteral(args, scanWhitespace(args, contentIdEnd), "@VOL=");
+    final int volumeStart = pos;
+    final int volumeEnd = scanDigits(args, volumeStart);
+    pos = scanLiteral(args, scanWhitespace(args, volumeEnd), "@Volt=");
+    final int voltageStart = pos;
+    final int voltageEnd = scanNonWhitespace(args, voltageStart);
+    if (!checkForMatch("Play", args, logLineContext.logFilePosition, isRestWhitespace(args, voltageEnd))) {
+      return;
+    }
+
+
+    final String contentId = symbols.canonical(args, 0, contentIdEnd);
+    contentLastPlayed = contentId;
+
+    try {
+      final int volume = parseInt(args, volumeStart, volumeEnd);
+      final double voltage = parseDouble(args, voltageStart, voltageEnd) / 100;
+      for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+        eventCallback.onPlay(logLineContext, contentId, volume, voltage);
+      }
+    } catch (NumberFormatException e) {
+      final String errorString = String.format("%s : %d - Invalid number in Play action. Args=%s, Error=%s",
+        logLineContext.logFilePosition.fileName,
+        logLineContext.logFilePosition.lineNumber, args, e.getMessage());
+      logger.error(errorString);
+    }
+
+  }
+
+  /**
+   * Equivalent of {@link #REST_OF_PLAYED}:  (\S+)\s+(\d+)/(\d+)sec\s+@VOL=(\d+)\s+@Volt=(\S+)\s*
+   */
+  @Override
+  protected void processPlayed(LogLineContext logLineContext, String args) {
+    final int contentIdEnd = scanNonWhitespace(args, 0);
+    final int timePlayedStart = scanWhitespace(args, contentIdEnd);
+    final int timePlayedEnd = scanDigits(args, timePlayedStart);
+    final int timeSomethingStart = scanLiteral(args, timePlayedEnd, "/");
+    final int timeSomethingEnd = scanDigits(args, timeSomethingStart);
+    int pos = scanLiteral(args, scanWhitespace(args, scanLiteral(args, timeSomethingEnd, "sec")), "@VOL=");
+    final int volumeStart = pos;
+    final int volumeEnd = scanDigits(args, volumeStart);
+    pos = scanLiteral(args, scanWhitespace(args, volumeEnd), "@Volt=");
+    final int voltageStart = pos;
+    final int voltageEnd = scanNonWhitespace(args, voltageStart);
+    if (!checkForMatch("Played", args, logLineContext.logFilePosition, isRestWhitespace(args, voltageEnd))) {
+      return;
+    }
+
+
+    final String contentId = symbols.canonical(args, 0, contentIdEnd);
+    contentLastPlayed = contentId;
+
+    try {
+      final short timePlayed = parseShort(args, timePlayedStart, timePlayedEnd);
+      final short timeSomething = parseShort(args, timeSomethingStart, timeSomethingEnd);
+      final int volume = parseInt(args, volumeStart, volumeEnd);
+
+      final double voltage;
+      final boolean isEnded;
+      final int dash = args.indexOf('-', voltageStart);
+      if (dash < 0 || dash >= voltageEnd) {
+        voltage = parseDouble(args, voltageStart, voltageEnd) / 100;
+        isEnded = false;
+      } else if (dash > voltageStart && args.indexOf('-', dash + 1) < 0) {
+        voltage = parseDouble(args, voltageStart, dash) / 100;
+        isEnded = (voltageEnd - dash - 1 == 5) && args.regionMatches(true, dash + 1, "ended", 0, 5);
+      } else {
+        //Unusual voltage strings take the slow path, so they behave exactly as String.split would.
+        final String[] voltageParts = args.substring(voltageStart, voltageEnd).split("-");
+        voltage = Double.parseDouble(voltageParts[0]) / 100;
+        isEnded = (voltageParts.length == 2) && (voltageParts[1].equalsIgnoreCase("ended"));
+      }
+
+      for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+        eventCallback.onPlayed(logLineContext, contentId, timePlayed, timeSomething, volume, voltage, isEnded);
+      }
+    } catch (NumberFormatException e) {
+      final String errorString = String.format("%s : %d - Invalid number in Played action. Args=%s, Error=%s",
+        logLineContext.logFilePosition.fileName,
+        logLineContext.logFilePosition.lineNumber, args, e.getMessage());
+      logger.error(errorString);
+    }
+
+  }
+
+  /**
+   * Equivalent of {@link #REST_OF_RECORD}:  (\S+)\s+->\s+(\d+)\s*
+   */
+  @Override
+  protected void processRecord(LogLineContext logLineContext, String args) {
+
+    //There are several "record" messages that don't have args.  Not much we
+    //can do with them.
+    if (args.isEmpty()) {
+      return;
+    }
+
+    final int contentIdEnd = scanNonWhitespace(args, 0);
+    final int idStart = scanWhitespace(args, scanLiteral(args, scanWhitespace(args, contentIdEnd), "->"));
+    final int idEnd = scanDigits(args, idStart);
+    if (!checkForMatch("Record", args, logLineContext.logFilePosition, isRestWhitespace(args, idEnd))) {
+      return;
+    }
+
+
+    final String contentId = symbols.canonical(args, 0, contentIdEnd);
+
+    try {
+      final int unknownId = parseInt(args, idStart, idEnd);
+      for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+        eventCallback.onRecord(logLineContext, contentId, unknownId);
+      }
+    } catch (NumberFormatException e) {
+      final String errorString = String.format("%s : %d - Invalid number in Record action. Args=%s, Error=%s",
+        logLineContext.logFilePosition.fileName,
+        logLineContext.logFilePosition.lineNumber, args, e.getMessage());
+      logger.error(errorString);
+    }
+
+  }
+
+  /**
+   * Equivalent of {@link #REST_OF_RECORDED}:  RECORDED\s+\(secs\):\s*(\d+)\s*
+   */
+  @Override
+  protected void processRecorded(LogLineContext logLineContext, String args) {
+    int pos = scanLiteral(args, scanWhitespace(args, scanLiteral(args, 0, RECORDED_PREFIX)), "(secs):");
+    final int timeStart = pos < 0 ? pos : skipWhitespace(args, pos, args.length());
+    final int timeEnd = scanDigits(args, timeStart);
+    if (!checkForMatch("Recorded", args, logLineContext.logFilePosition, isRestWhitespace(args, timeEnd))) {
+      return;
+    }
+
+    try {
+      final int time = parseInt(args, timeStart, timeEnd);
+      for (TalkingBookDataProcessor eventCallback : eventCallbacks) {
+        eventCallback.onRecorded(logLineContext, time);
+      }
+    } catch (NumberFormatException e) {
+      final String errorString = String.format("%s : %d - Invalid number in Record action. Args=%s, Error=%s",
+        logLineContext.logFilePosition.fileName,
+        logLineContext.logFilePosition.lineNumber, args, e.getMessage());
+      logger.error(errorString);
+    }
+  }
+
+  //+++++++++++++++ Character classes ++++++++++++++++++//
+
+  /**
+   * The {@code \d} character class.
+   */
+  static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  /**
+   * The {@code \w} character class.
+   */
+  static boolean isWordChar(char c) {
+    return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || isDigit(c) || c == '_';
+  }
+
+  /**
+   * The {@code \s} character class.
+   */
+  static boolean isWhitespace(char c) {
+    return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+  }
+
+  /**
+   * Characters that {@code .} will not match, when the pattern has no flags.
+   */
+  static boolean isLineTerminator(char c) {
+    return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+  }
+
+  static boolean hasLineTerminator(String s, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (isLineTerminator(s.charAt(i))) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //+++++++++++++++ Scanning ++++++++++++++++++//
+  //The scan* functions implement one regex element each.  They return the position after the element, or -1 if
+  //it does not match.  They also take -1 as a position, so they can be chained without checking each step.
+
+  static int skipDigits(String s, int pos, int end) {
+    while (pos < end && isDigit(s.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  static int skipWhitespace(String s, int pos, int end) {
+    while (pos < end && isWhitespace(s.charAt(pos))) {
+      pos++;
+    }
+    return pos;
+  }
+
+  /**
+   * (\d+) followed by {@code terminator}.  Records the start and end of the digits in groups[index], groups[index + 1].
+   */
+  static int scanGroup(String s, int pos, int end, char terminator, int[] groups, int index) {
+    if (pos < 0) {
+      return -1;
+    }
+    final int digitsEnd = skipDigits(s, pos, end);
+    if (digitsEnd == pos || digitsEnd == end || s.charAt(digitsEnd) != terminator) {
+      return -1;
+    }
+    groups[index] = pos;
+    groups[index + 1] = digitsEnd;
+    return digitsEnd + 1;
+  }
+
+  /**
+   * \d+
+   */
+  static int scanDigits(String s, int pos) {
+    if (pos < 0) {
+      return -1;
+    }
+    final int end = skipDigits(s, pos, s.length());
+    return end > pos ? end : -1;
+  }
+
+  /**
+   * \s+
+   */
+  static int scanWhitespace(String s, int pos) {
+    if (pos < 0) {
+      return -1;
+    }
+    final int end = skipWhitespace(s, pos, s.length());
+    return end > pos ? end : -1;
+  }
+
+  /**
+   * \S+
+   */
+  static int scanNonWhitespace(String s, int pos) {
+    if (pos < 0) {
+      return -1;
+    }
+    int end = pos;
+    while (end < s.length() && !isWhitespace(s.charAt(end))) {
+      end++;
+    }
+    return end > pos ? end : -1;
+  }
+
+  static int scanLiteral(String s, int pos, String literal) {
+    if (pos < 0 || !s.startsWith(literal, pos)) {
+      return -1;
+    }
+    return pos + literal.length();
+  }
+
+  /**
+   * \s* to the end of the string.
+   */
+  static boolean isRestWhitespace(String s, int pos) {
+    return pos >= 0 && skipWhitespace(s, pos, s.length()) == s.length();
+  }
+
+  //+++++++++++++++ Number conversion ++++++++++++++++++//
+  //These are only ever called on runs of ASCII digits.  Short runs can not overflow, so they are converted in place.
+  //Longer ones go through the JDK so out of range values throw the same NumberFormatException as before.
+
+  static int digitsValue(String s, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      value = value * 10 + (s.charAt(i) - '0');
+    }
+    return value;
+  }
+
+  static short parseShort(String s, int start, int end) {
+    if (end - start <= 4) {
+      return (short) digitsValue(s, start, end);
+    }
+    return Short.parseShort(s.substring(start, end));
+  }
+
+  static int parseInt(String s, int start, int end) {
+    if (end - start <= 9) {
+      return digitsValue(s, start, end);
+    }
+    return Integer.parseInt(s.substring(start, end));
+  }
+
+  /**
+   * Unlike the other conversions, this can be called on any \S+ run, so it checks for digits first.
+   */
+  static double parseDouble(String s, int start, int end) {
+    if (end > start && end - start <= 15 && skipDigits(s, start, end) == end) {
+      long value = 0;
+      for (int i = start; i < end; i++) {
+        value = value * 10 + (s.charAt(i) - '0');
+      }
+      return (double) value;
+    }
+    return Double.parseDouble(s.substring(start, end));
+  }
+}
@@ -2,7 +2,9 @@ package org.literacybridge.stats.formats.statsFile;
 
 import org.apache.commons.io.IOUtils;
 import org.literacybridge.stats.formats.exceptions.CorruptFileException;
+import org.literacybridge.utils.SymbolTable;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
@@ -43,6 +45,13 @@ public class StatsFile {
   }
 
   public static StatsFile read(InputStream is) throws IOException {
+    return read(is, null);
+  }
+
+  /**
+   * @param symbols the table to canonicalize the message ID through, or null to leave it as decoded
+   */
+  public static StatsFile read(InputStream is, @Nullable SymbolTable symbols) throws IOException {
 
     try {
       final byte[] byteStream = IOUtils.toByteArray(is);
@@ -62,7 +71,8 @@ public class StatsFile {
 
       final byte[] msgIdArray = new byte[MsgIDLength * SizeOfChar];
       byteBuffer.get(msgIdArray);
-      final String msgId = decodeString(msgIdArray);
+      final String decodedMsgId = decodeString(msgIdArray);
+      final String msgId = symbols != null ? symbols.canonical(decodedMsgId) : decodedMsgId;
 
       int offsetToStats = byteStream.length - (NumberOfStatsPerMsg * SizeOfInt);
       byteBuffer.position(offsetToStats);
@@ -0,0 +1,133 @@
+package org.literacybridge.stats.formats.syncDirectory;
+
+import javax.annotation.Nonnull;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A sync directory with some of its files, and the listings used to find them, held in memory.
+ * <p/>
+ * Files are buffered ahead of time with {@link #buffer(String)} and {@link #listFiles(String, Pattern)}, typically on
+ * an I/O thread, and then read from memory.  Anything that was not buffered is read from the underlying directory, so
+ * this always answers exactly as the underlying directory would.
+ * <p/>
+ * This is not thread-safe:  it should be filled on one thread, and then handed over (for instance through a Future)
+ * to be read on another.
+ */
+public class BufferedSyncDirectory implements SyncDirectory {
+
+  private final SyncDirectory source;
+  private final Map<String, ByteBuffer> buffers = new HashMap<>();
+  private final Map<List<String>, List<String>> listings = new HashMap<>();
+  private long bufferedBytes = 0;
+
+  /**
+   * @param source the directory to buffer.  It is closed when this is.
+   */
+  public BufferedSyncDirectory(@Nonnull SyncDirectory source) {
+    this.source = source;
+  }
+
+  /**
+   * Reads a file into memory, if it is not already.  The contents are copied onto the heap, so all the I/O happens
+   * in this call, even if the source memory maps its files.
+   *
+   * @param path path relative to the sync directory
+   * @throws IOException if the file can not be read
+   */
+  public void buffer(String path) throws IOException {
+    if (!buffers.containsKey(path)) {
+      final ByteBuffer contents = source.read(path).duplicate();
+      final ByteBuffer copy = ByteBuffer.allocate(contents.remaining());
+      copy.put(contents);
+      copy.flip();
+      buffers.put(path, copy);
+      bufferedBytes += copy.remaining();
+    }
+  }
+
+  public boolean isBuffered(String path) {
+    return buffers.containsKey(path);
+  }
+
+  /**
+   * @return the total size of the files held in memory
+   */
+  public long getBufferedBytes() {
+    return bufferedBytes;
+  }
+
+  @Override
+  public String getName() {
+    return source.getName();
+  }
+
+  @Override
+  public String describe(String path) {
+    return source.describe(path);
+  }
+
+  @Override
+  public boolean isFile(String path) {
+    return buffers.containsKey(path) || source.isFile(path);
+  }
+
+  @Override
+  public boolean isDirectory(String path) {
+    return !buffers.containsKey(path) && source.isDirectory(path);
+  }
+
+  @Override
+  public long length(String path) {
+    final ByteBuffer buffer = buffers.get(path);
+    return buffer != null ? buffer.remaining() : source.length(path);
+  }
+
+  /**
+   * Lists the files in a directory.  The listing is remembered, so asking again with the same pattern does not go
+   * back to the source.
+   */
+  @Override
+  public List<String> listFiles(String directory, Pattern namePattern) {
+    final List<String> key = Arrays.asList(directory, namePattern.pattern(), String.valueOf(namePattern.flags()));
+    List<String> listing = listings.get(key);
+    if (listing == null) {
+      listing = source.listFiles(directory, namePattern);
+      listings.put(key, listing);
+    }
+    return listing;
+  }
+
+  @Override
+  public InputStream open(String path) throws IOException {
+    final ByteBuffer buffer = buffers.get(path);
+    if (buffer == null) {
+      return source.open(path);
+    }
+    return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+  }
+
+  @Override
+  public ByteBuffer read(String path) throws IOException {
+    final ByteBuffer buffer = buffers.get(path);
+    return buffer != null ? buffer.asReadOnlyBuffer() : source.read(path);
+  }
+
+  @Override
+  public void close() throws IOException {
+    buffers.clear();
+    source.close();
+  }
+
+  @Override
+  public String toString() {
+    return source.toString();
+  }
+}
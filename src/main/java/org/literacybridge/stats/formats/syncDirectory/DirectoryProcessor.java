@@ -2,39 +2,56 @@ package org.literacybridge.stats.formats.syncDirectory;
 
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.IOUtils;
-import org.apache.commons.io.filefilter.FalseFileFilter;
-import org.apache.commons.io.filefilter.RegexFileFilter;
-import org.apache.commons.io.filefilter.WildcardFileFilter;
 import org.apache.commons.lang.StringUtils;
+import org.literacybridge.stats.api.DirectoryCallbacks;
+import org.literacybridge.stats.api.ParallelDirectoryCallbacks;
+import org.literacybridge.stats.api.ParallelTalkingBookDataProcessor;
+import org.literacybridge.stats.api.PrefetchingSyncDirectoryCallbacks;
 import org.literacybridge.stats.api.TalkingBookDataProcessor;
 import org.literacybridge.stats.formats.exceptions.CorruptFileException;
 import org.literacybridge.stats.formats.flashData.FlashData;
 import org.literacybridge.stats.formats.flashData.SystemData;
 import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.logFile.ParallelLogFileParser;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
 import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.formats.tbData.TbDataLineHandler;
 import org.literacybridge.stats.formats.tbData.TbDataParser;
+import org.literacybridge.stats.metrics.PipelineMetrics;
+import org.literacybridge.stats.metrics.TimedDataProcessor;
 import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.ProcessingProgress;
 import org.literacybridge.stats.model.SyncDirId;
 import org.literacybridge.stats.model.SyncProcessingContext;
 import org.literacybridge.stats.model.TbDataLine;
 import org.literacybridge.stats.processors.AbstractDirectoryProcessor;
-import org.literacybridge.utils.FsUtils;
+import org.literacybridge.stats.processors.DeferredDataProcessor;
+import org.literacybridge.utils.SymbolTable;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
 import java.io.File;
-import java.io.FileFilter;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.regex.Pattern;
 
 /**
+ * Turns the files in a stats package into events for a list of {@link TalkingBookDataProcessor}s.
+ * <p/>
+ * All the state for a walk (the current talking book, its processing context, and the log files already seen) is
+ * held per instance, so when a DirectoryIterator runs talking books in parallel, each one gets its own
+ * {@link #fork()} with its own state.  How the registered processors see the events of a fork depends on whether
+ * they are a {@link ParallelTalkingBookDataProcessor}; either way each one sees every talking book as one
+ * onTalkingBookStart/onTalkingBookEnd bracket, in the same order as a serial walk.
+ * <p/>
+ * Subclasses that add state must override {@link #fork()}.
  */
-public class DirectoryProcessor extends AbstractDirectoryProcessor {
+public class DirectoryProcessor extends AbstractDirectoryProcessor implements PrefetchingSyncDirectoryCallbacks, ParallelDirectoryCallbacks {
   public static final Map<String, String> CATEGORY_MAP = ImmutableMap.<String, String>builder()
     .put("1", "AGRIC")
     .put("1-2", "LIVESTOCK")
@@ -44,26 +61,173 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
     .put("$0-1", "TB")
     .build();
   public static final Pattern ARCHIVED_LOG_PATTERN = Pattern.compile("log_(.*).txt");
+  public static final Pattern PACKAGE_FILE_PATTERN = Pattern.compile(".*\\.pkg");
+  public static final String FLASH_DATA_PATH = "statistics/flashData.bin";
+  public static final String LOG_FILE_PATH = "log/log.txt";
+  public static final String LOG_ARCHIVE_DIR = "log-archive";
+  public static final String STATISTICS_DIR = "statistics";
   protected static final Logger logger = LoggerFactory.getLogger(DirectoryProcessor.class);
   private static final String statExtension = ".stat";
 
   //Stats files don't have any "."s in them (because they have no file extensions)
   public static final Pattern STATS_FILE_PATTERN = Pattern.compile("(.*)" + statExtension);
-  final List<TalkingBookDataProcessor> dataProcessorEventListeners;
+  //The registered listeners, wrapped in TimedDataProcessors while metrics are being collected
+  List<TalkingBookDataProcessor> dataProcessorEventListeners;
+  private final List<TalkingBookDataProcessor> registeredEventListeners;
   final Map<String, String> categoryMap;
+  //Canonical content IDs, talking books and villages for this run.  Shared with forks, and dropped with the processor.
+  private final SymbolTable symbols;
+  //Keeps the tbData layouts it has seen, so each fork has its own
+  private final TbDataParser tbDataParser = new TbDataParser();
   private ProcessingContext currProcessingContext;
   private Set<String> processedLogFiles = new HashSet<>();
+  private boolean useScanningLogParser = false;
+  private ExecutorService logChunkExecutor;
+  private int logChunkBytes = ParallelLogFileParser.DEFAULT_CHUNK_BYTES;
+  private ProcessingProgress progress;
+  private PipelineMetrics metrics;
+  private File metricsReportFile;
+
+  //Only set on forks:  for each registered listener, the recording of its events, or null if it was forked
+  private final List<DeferredDataProcessor> deferredEventListeners;
 
   public DirectoryProcessor(TalkingBookDataProcessor dataProcessorEventListeners, Map<String, String> categoryMap) {
-    this.dataProcessorEventListeners = Lists.newArrayList(dataProcessorEventListeners);
+    this.registeredEventListeners = Lists.newArrayList(dataProcessorEventListeners);
+    this.dataProcessorEventListeners = registeredEventListeners;
     this.categoryMap = categoryMap;
+    this.symbols = new SymbolTable();
+    this.deferredEventListeners = null;
   }
 
 
   public DirectoryProcessor(List<TalkingBookDataProcessor> dataProcessorEventListeners,
                             Map<String, String> categoryMap) {
+    this.registeredEventListeners = dataProcessorEventListeners;
     this.dataProcessorEventListeners = dataProcessorEventListeners;
     this.categoryMap = categoryMap;
+    this.symbols = new SymbolTable();
+    this.deferredEventListeners = null;
+  }
+
+  private DirectoryProcessor(DirectoryProcessor parent, List<TalkingBookDataProcessor> registeredEventListeners,
+                             List<TalkingBookDataProcessor> dataProcessorEventListeners,
+                             List<DeferredDataProcessor> deferredEventListeners) {
+    this.registeredEventListeners = registeredEventListeners;
+    this.dataProcessorEventListeners = dataProcessorEventListeners;
+    this.deferredEventListeners = deferredEventListeners;
+    this.categoryMap = parent.categoryMap;
+    this.symbols = parent.symbols;
+    this.useScanningLogParser = parent.useScanningLogParser;
+    this.logChunkExecutor = parent.logChunkExecutor;
+    this.logChunkBytes = parent.logChunkBytes;
+    this.progress = parent.progress;
+    this.metrics = parent.metrics;
+  }
+
+  /**
+   * Creates a processor for one talking book, for use on a worker thread.  Registered processors that are a
+   * {@link ParallelTalkingBookDataProcessor} are forked too.  All others get a {@link DeferredDataProcessor} that
+   * records their events, to be replayed by {@link #join(DirectoryCallbacks)}.  The progress counters and metrics
+   * are shared, since they are thread-safe.
+   */
+  @Override
+  public DirectoryCallbacks fork() {
+    final List<TalkingBookDataProcessor> forkedRegistered = new ArrayList<>(registeredEventListeners.size());
+    final List<TalkingBookDataProcessor> forkedActive = new ArrayList<>(registeredEventListeners.size());
+    final List<DeferredDataProcessor> deferred = new ArrayList<>(registeredEventListeners.size());
+
+    for (int i = 0; i < registeredEventListeners.size(); i++) {
+      final TalkingBookDataProcessor listener = registeredEventListeners.get(i);
+      if (listener instanceof ParallelTalkingBookDataProcessor) {
+        final TalkingBookDataProcessor forked = ((ParallelTalkingBookDataProcessor) listener).fork();
+        forkedRegistered.add(forked);
+        forkedActive.add(metrics != null ? new TimedDataProcessor(forked, metrics) : forked);
+        deferred.add(null);
+      } else {
+        //Replays go to the active listener, so they are still timed if metrics are on
+        final DeferredDataProcessor recording = new DeferredDataProcessor(dataProcessorEventListeners.get(i));
+        forkedRegistered.add(listener);
+        forkedActive.add(recording.getRecorder());
+        deferred.add(recording);
+      }
+    }
+
+    return new DirectoryProcessor(this, forkedRegistered, forkedActive, deferred);
+  }
+
+  @Override
+  public void join(DirectoryCallbacks forked) {
+    final DirectoryProcessor other = (DirectoryProcessor) forked;
+    for (int i = 0; i < registeredEventListeners.size(); i++) {
+      final DeferredDataProcessor recording = other.deferredEventListeners.get(i);
+      if (recording != null) {
+        recording.replay();
+      } else {
+        ((ParallelTalkingBookDataProcessor) registeredEventListeners.get(i)).join(other.registeredEventListeners.get(i));
+      }
+    }
+  }
+
+  public boolean isUseScanningLogParser() {
+    return useScanningLogParser;
+  }
+
+  public ProcessingProgress getProgress() {
+    return progress;
+  }
+
+  /**
+   * Sets the counters that log lines and bytes read are added to, usually those of the DirectoryIterator driving
+   * this processor (see {@link org.literacybridge.stats.DirectoryIterator#getProgress()}).
+   *
+   * @param progress the counters, or null to not count
+   */
+  public void setProgress(@Nullable ProcessingProgress progress) {
+    this.progress = progress;
+  }
+
+  public PipelineMetrics getMetrics() {
+    return metrics;
+  }
+
+  /**
+   * Turns on collecting per-stage timings.  The flashData, log file, stats file and tbData stages are timed, and
+   * every registered {@link TalkingBookDataProcessor} is wrapped in a {@link TimedDataProcessor}.
+   *
+   * @param metrics    where to record the timings, or null to stop collecting them
+   * @param reportFile if not null, the report is written here as JSON at {@link #endProcessing()}
+   */
+  public void setMetrics(@Nullable PipelineMetrics metrics, @Nullable File reportFile) {
+    this.metrics = metrics;
+    this.metricsReportFile = reportFile;
+    this.dataProcessorEventListeners = metrics != null ? TimedDataProcessor.wrapAll(registeredEventListeners, metrics) :
+      registeredEventListeners;
+  }
+
+  /**
+   * Selects which parser is used for log files.  The {@link ScanningLogFileParser} makes exactly the same callbacks as
+   * the regex based {@link LogFileParser}, but is considerably cheaper per line.
+   *
+   * @param useScanningLogParser true to use the {@link ScanningLogFileParser}
+   */
+  public void setUseScanningLogParser(boolean useScanningLogParser) {
+    this.useScanningLogParser = useScanningLogParser;
+  }
+
+  /**
+   * Turns on parsing large log files in chunks, in parallel, with a {@link ParallelLogFileParser}.  The callbacks are
+   * still made in line order on the processing thread.  Log files no bigger than one chunk are parsed as usual.
+   *
+   * @param executor   where chunks are parsed, or null to parse every log file serially.  It is not shut down by
+   *                   this processor.
+   * @param chunkBytes roughly how big each chunk is
+   */
+  public void setLogChunkExecutor(@Nullable ExecutorService executor, int chunkBytes) {
+    if (chunkBytes <= 0) {
+      throw new IllegalArgumentException("Chunk size must be positive: " + chunkBytes);
+    }
+    this.logChunkExecutor = executor;
+    this.logChunkBytes = chunkBytes;
   }
 
   static public void runCallbacksOnLogFile(File file, LogFileParser parser) throws IOException {
@@ -76,6 +240,10 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
 
   }
 
+  static public void runCallbacksOnLogFile(SyncDirectory syncDir, String path, LogFileParser parser) throws IOException {
+    parser.parse(syncDir.describe(path), syncDir.read(path));
+  }
+
   /**
    * Loads a FlashData file from a given sync directory.  This file was introduced
    * in a more recent update, so will not be around for all updates.
@@ -85,37 +253,38 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
    * @throws java.io.IOException
    */
   static public FlashData loadFlashDataFile(File syncDir) throws IOException {
-    final File flashDataFile = new File(syncDir, FsUtils.FsAgnostify("statistics/flashData.bin"));
+    return loadFlashDataFile(new FileSyncDirectory(syncDir));
+  }
+
+  static public FlashData loadFlashDataFile(SyncDirectory syncDir) throws IOException {
+    return loadFlashDataFile(syncDir, null);
+  }
 
+  /**
+   * @param symbols the table to canonicalize content IDs through, or null to leave them as decoded
+   */
+  static public FlashData loadFlashDataFile(SyncDirectory syncDir, @Nullable SymbolTable symbols) throws IOException {
     FlashData retVal = null;
-    FileInputStream fis = null;
-    try {
-      if (flashDataFile.exists() && flashDataFile.length() == 6708) {
-        fis = new FileInputStream(flashDataFile);
-        retVal = FlashData.parseFromStream(fis);
+    if (syncDir.length(FLASH_DATA_PATH) == FlashData.FLASH_DATA_SIZE) {
+      retVal = FlashData.wrap(syncDir.read(FLASH_DATA_PATH), symbols);
 
-        LinkedList<String> errors = new LinkedList<>();
-        if (!retVal.isValid(errors)) {
-          logger.error("Flashdata file look possibly corrupt.  Errors=" + StringUtils.join(errors, "; ") + "Path=" + flashDataFile.getCanonicalPath() + " FlashData=" + retVal.toString());
-        }
+      LinkedList<String> errors = new LinkedList<>();
+      if (!retVal.isValid(errors)) {
+        logger.error("Flashdata file look possibly corrupt.  Errors=" + StringUtils.join(errors, "; ") + "Path=" + syncDir.describe(FLASH_DATA_PATH) + " FlashData=" + retVal.toString());
       }
-    } finally {
-      IOUtils.closeQuietly(fis);
     }
 
     return retVal;
   }
 
   static public String findContentIdByPackage(File syncDir, String defaultContentId) {
-    File systemDir = new File(syncDir, "system");
+    return findContentIdByPackage(new FileSyncDirectory(syncDir), defaultContentId);
+  }
 
+  static public String findContentIdByPackage(SyncDirectory syncDir, String defaultContentId) {
     String bestContentId = defaultContentId;
-    if (systemDir.exists()) {
-      FileFilter fileFilter = new WildcardFileFilter("*.pkg");
-      File[] files = systemDir.listFiles(fileFilter);
-      for (File file : files) {
-        bestContentId = file.getName().substring(0, file.getName().length() - 4);
-      }
+    for (String fileName : syncDir.listFiles("system", PACKAGE_FILE_PATTERN)) {
+      bestContentId = fileName.substring(0, fileName.length() - 4);
     }
     return bestContentId;
   }
@@ -145,6 +314,24 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
    */
   static public SyncProcessingContext determineProcessingContext(String syncDevice, File syncDir, String talkingBookId,
                                                                  String contentUpdate, String villageName, @Nullable FlashData flashData) {
+    return determineProcessingContext(syncDevice, new FileSyncDirectory(syncDir), talkingBookId, contentUpdate,
+      villageName, flashData);
+  }
+
+  static public SyncProcessingContext determineProcessingContext(String syncDevice, SyncDirectory syncDir,
+                                                                 String talkingBookId, String contentUpdate,
+                                                                 String villageName, @Nullable FlashData flashData) {
+    return determineProcessingContext(syncDevice, syncDir, talkingBookId, contentUpdate, villageName, flashData,
+      null);
+  }
+
+  /**
+   * @param symbols the table to canonicalize the context's names through, or null to leave them as they are
+   */
+  static public SyncProcessingContext determineProcessingContext(String syncDevice, SyncDirectory syncDir,
+                                                                 String talkingBookId, String contentUpdate,
+                                                                 String villageName, @Nullable FlashData flashData,
+                                                                 @Nullable SymbolTable symbols) {
 
     //First, find the best content ID
     String bestContentPackage = contentUpdate;
@@ -161,10 +348,18 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
     }
 
 
+    bestContentPackage = StringUtils.defaultIfEmpty(bestContentPackage, contentUpdate);
+    if (symbols != null) {
+      talkingBookId = symbols.canonical(talkingBookId);
+      villageName = symbols.canonical(villageName);
+      bestContentPackage = symbols.canonical(bestContentPackage);
+      syncDevice = symbols.canonical(syncDevice);
+    }
+
     SyncProcessingContext retVal = new SyncProcessingContext(syncDir.getName(),
       talkingBookId,
       villageName,
-      StringUtils.defaultIfEmpty(bestContentPackage, contentUpdate),
+      bestContentPackage,
       contentUpdate,
       syncDevice);
 
@@ -178,13 +373,29 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
 
   @Override
   public void processTbDataFile(File tbdataFile, boolean includesHeaders) throws IOException {
-    TbDataParser parser = new TbDataParser();
-    List<TbDataLine> lines = parser.parseTbDataFile(tbdataFile, true);
-    for (TbDataLine line : lines) {
-      for (TalkingBookDataProcessor processor : dataProcessorEventListeners) {
-        processor.processTbDataLine(line);
+    final long start = System.nanoTime();
+    final int[] lines = new int[1];
+    tbDataParser.parseTbDataFile(tbdataFile, true, new TbDataLineHandler() {
+      @Override
+      public void onTbDataLine(TbDataLine tbDataLine, int lineNumber) {
+        lines[0]++;
+        for (TalkingBookDataProcessor processor : dataProcessorEventListeners) {
+          processor.processTbDataLine(tbDataLine);
+        }
       }
+    });
+
+    if (metrics != null) {
+      metrics.record(PipelineMetrics.TB_DATA, start, tbdataFile.length(), lines[0], tbdataFile.getPath());
+    }
+  }
+
+  @Override
+  public void endProcessing() throws Exception {
+    if (metrics != null && metricsReportFile != null) {
+      metrics.writeReport(metricsReportFile);
     }
+    super.endProcessing();
   }
 
   @Override
@@ -193,7 +404,8 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
 
     currTalkingBook = talkingBook;
 
-    currProcessingContext = new ProcessingContext(currTalkingBook, currVillage, currDeploymentPerDevice.deployment, currDeploymentPerDevice.device);
+    currProcessingContext = new ProcessingContext(symbols.canonical(currTalkingBook), symbols.canonical(currVillage),
+      currDeploymentPerDevice.deployment, symbols.canonical(currDeploymentPerDevice.device));
     for (TalkingBookDataProcessor processor : dataProcessorEventListeners) {
       processor.onTalkingBookStart(currProcessingContext);
     }
@@ -215,8 +427,18 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
 
   @Override
   public void processSyncDir(SyncDirId syncDirId, File syncDir) throws Exception {
-    final FlashData flashData = loadFlashDataFile(syncDir);
-    final SyncProcessingContext syncProcessingContext = determineProcessingContext(currDeploymentPerDevice.device, syncDir, currTalkingBook, currDeploymentPerDevice.deployment, currVillage, flashData);
+    processSyncDir(syncDirId, new FileSyncDirectory(syncDir));
+  }
+
+  @Override
+  public void processSyncDir(SyncDirId syncDirId, SyncDirectory syncDir) throws Exception {
+    final long start = System.nanoTime();
+    final FlashData flashData = loadFlashDataFile(syncDir, symbols);
+    if (metrics != null) {
+      metrics.record(PipelineMetrics.FLASH_DATA, start, flashData != null ? FlashData.FLASH_DATA_SIZE : 0, 0,
+        syncDir.describe(FLASH_DATA_PATH));
+    }
+    final SyncProcessingContext syncProcessingContext = determineProcessingContext(currDeploymentPerDevice.device, syncDir, currTalkingBook, currDeploymentPerDevice.deployment, currVillage, flashData, symbols);
 
     if (flashData != null) {
       processFlashData(syncProcessingContext, flashData);
@@ -260,63 +482,144 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
   public void processSyncDir(final File syncDir, final SyncProcessingContext syncProcessingContext,
                              final Set<String> processedFiles, final boolean processInProcessLog) throws
     IOException {
+    processSyncDir(new FileSyncDirectory(syncDir), syncProcessingContext, processedFiles, processInProcessLog);
+  }
+
+  /**
+   * Version of {@link #processSyncDir(File, SyncProcessingContext, Set, boolean)} that reads through a
+   * {@link SyncDirectory}, so the sync directory can still be zipped.
+   */
+  public void processSyncDir(final SyncDirectory syncDir, final SyncProcessingContext syncProcessingContext,
+                             final Set<String> processedFiles, final boolean processInProcessLog) throws
+    IOException {
 
 
     //Create a list of LogFileParsers that take the callback interfaces and the syncProcessingContexts.
-    LogFileParser parser = new LogFileParser(dataProcessorEventListeners, syncProcessingContext, categoryMap);
+    LogFileParser parser = createLogFileParser(syncProcessingContext);
 
     //Process the current log and the flashData files, if this is the latest dir
     if (processInProcessLog) {
-      final File logFile = new File(new File(syncDir, "log"), "log.txt");
-      if (logFile.canRead()) {
-        processLogFile(logFile, parser, processedFiles);
+      if (syncDir.isFile(LOG_FILE_PATH)) {
+        processLogFile(syncDir, LOG_FILE_PATH, parser, processedFiles);
       }
     }
 
     //Process all the Archive Files
-    final File logArchives = new File(syncDir, "log-archive");
-    if (logArchives.isDirectory()) {
-      final Iterator<File> archivedLogFiles = FileUtils.iterateFiles(logArchives,
-        new RegexFileFilter(ARCHIVED_LOG_PATTERN),
-        FalseFileFilter.FALSE);
-      while (archivedLogFiles.hasNext()) {
-        final File archivedFile = archivedLogFiles.next();
-        processLogFile(archivedFile, parser, processedFiles);
-      }
+    for (String archivedFile : syncDir.listFiles(LOG_ARCHIVE_DIR, ARCHIVED_LOG_PATTERN)) {
+      processLogFile(syncDir, LOG_ARCHIVE_DIR + "/" + archivedFile, parser, processedFiles);
     }
 
     //Process all the Stats files
-    final File statDir = new File(syncDir, "statistics");
+    final String statDir = STATISTICS_DIR;
     // TODO: replace the line above with the line below after processing 2014-3
     // (The stats folder is no longer used on TB; all stats in statistics.
     //  TB Loader has been compensating by copying into a stats subdirectory
     //  just for backward compatibilty; but that compensation appears not to
     //  have happened in first MEDA update).
     //final File statDir = new File(syncDir, "statistics");
-    if (statDir.canRead()) {
-      if (statDir.isDirectory()) {
-        final Iterator<File> statsFiles = FileUtils.iterateFiles(statDir, new RegexFileFilter(STATS_FILE_PATTERN),
-          FalseFileFilter.FALSE);
-        while (statsFiles.hasNext()) {
-          runCallbacksOnStatsFile(syncProcessingContext, statsFiles.next());
-        }
-      } else {
-        logger.error(statDir.getAbsolutePath() + " is NOT a directory.");
+    if (syncDir.isDirectory(statDir)) {
+      for (String statsFile : syncDir.listFiles(statDir, STATS_FILE_PATTERN)) {
+        runCallbacksOnStatsFile(syncProcessingContext, syncDir, statDir + "/" + statsFile);
       }
+    } else if (syncDir.isFile(statDir)) {
+      logger.error(syncDir.describe(statDir) + " is NOT a directory.");
     } else {
-      logger.error("Cannot read " + statDir.getAbsolutePath());
+      logger.error("Cannot read " + syncDir.describe(statDir));
     }
   }
 
+  /**
+   * Buffers everything {@link #processSyncDir(SyncDirId, SyncDirectory)} will read, see
+   * {@link #bufferSyncDir(SyncDirectory)}.
+   */
+  @Override
+  public SyncDirectory prefetch(SyncDirectory syncDir) throws IOException {
+    return bufferSyncDir(syncDir);
+  }
+
+  /**
+   * Reads everything processing a sync directory reads into memory:  flashData.bin, the package listing, the current
+   * and archived logs, and the stats files.  Files that can not be read are left unbuffered, so the error shows up
+   * (and is handled) when they are processed, just as it would without buffering.
+   *
+   * @param syncDir the sync directory.  It is closed when the returned directory is.
+   * @return the buffered directory
+   */
+  static public BufferedSyncDirectory bufferSyncDir(SyncDirectory syncDir) {
+    final BufferedSyncDirectory retVal = new BufferedSyncDirectory(syncDir);
+    final List<String> paths = new ArrayList<>();
+
+    if (retVal.length(FLASH_DATA_PATH) == FlashData.FLASH_DATA_SIZE) {
+      paths.add(FLASH_DATA_PATH);
+    }
+    retVal.listFiles("system", PACKAGE_FILE_PATTERN);
+    if (retVal.isFile(LOG_FILE_PATH)) {
+      paths.add(LOG_FILE_PATH);
+    }
+    for (String archivedFile : retVal.listFiles(LOG_ARCHIVE_DIR, ARCHIVED_LOG_PATTERN)) {
+      paths.add(LOG_ARCHIVE_DIR + "/" + archivedFile);
+    }
+    if (retVal.isDirectory(STATISTICS_DIR)) {
+      for (String statsFile : retVal.listFiles(STATISTICS_DIR, STATS_FILE_PATTERN)) {
+        paths.add(STATISTICS_DIR + "/" + statsFile);
+      }
+    }
+
+    for (String path : paths) {
+      try {
+        retVal.buffer(path);
+      } catch (IOException e) {
+        logger.debug("Could not buffer " + syncDir.describe(path) + ", it will be read when processed", e);
+      }
+    }
+    return retVal;
+  }
+
+  /**
+   * Creates the parser used for all the log files in a single sync directory.
+   *
+   * @param syncProcessingContext context the log files are parsed in
+   * @return a new parser
+   */
+  protected LogFileParser createLogFileParser(final SyncProcessingContext syncProcessingContext) {
+    final LogFileParser retVal = useScanningLogParser
+      ? new ScanningLogFileParser(dataProcessorEventListeners, syncProcessingContext, categoryMap)
+      : new LogFileParser(dataProcessorEventListeners, syncProcessingContext, categoryMap);
+    retVal.setSymbolTable(symbols);
+    return retVal;
+  }
+
   public void processLogFile(File file, LogFileParser parser, Set<String> processedFiles) {
+    processLogFile(new FileSyncDirectory(file.getParentFile()), file.getName(), parser, processedFiles);
+  }
 
-    final String fileProcessingName = file.getParent() + "/" + file.getName();
+  public void processLogFile(SyncDirectory syncDir, String path, LogFileParser parser, Set<String> processedFiles) {
+
+    final String fileProcessingName = syncDir.describe(path);
     if (!processedFiles.contains(fileProcessingName)) {
       try {
-        runCallbacksOnLogFile(file, parser);
+        final long start = System.nanoTime();
+        final long linesBefore = parser.getLinesParsed();
+        if (logChunkExecutor != null && syncDir.length(path) > logChunkBytes) {
+          new ParallelLogFileParser(parser, logChunkExecutor, logChunkBytes).parse(fileProcessingName,
+            syncDir.read(path));
+        } else {
+          runCallbacksOnLogFile(syncDir, path, parser);
+        }
         processedFiles.add(fileProcessingName);
+        if (progress != null || metrics != null) {
+          final long lines = parser.getLinesParsed() - linesBefore;
+          final long bytes = syncDir.length(path);
+          if (progress != null) {
+            progress.addLogLines(lines);
+            progress.addBytesRead(bytes);
+          }
+          if (metrics != null) {
+            metrics.record(PipelineMetrics.LOG_FILE, start, bytes, lines, fileProcessingName);
+          }
+        }
       } catch (IOException ioe) {
-        final String errorString = String.format("Unable to process %s.  Error=%s", file.getAbsolutePath(),
+        final String errorString = String.format("Unable to process %s.  Error=%s", fileProcessingName,
           ioe.getMessage());
         logger.error(errorString, ioe);
       }
@@ -325,21 +628,36 @@ public class DirectoryProcessor extends AbstractDirectoryProcessor {
   }
 
   public void runCallbacksOnStatsFile(final SyncProcessingContext syncProcessingContext, final File file) {
+    runCallbacksOnStatsFile(syncProcessingContext, new FileSyncDirectory(file.getParentFile()), file.getName());
+  }
 
-    try {
-      FileInputStream fis = new FileInputStream(file);
+  public void runCallbacksOnStatsFile(final SyncProcessingContext syncProcessingContext, final SyncDirectory syncDir,
+                                      final String path) {
+
+    final long start = System.nanoTime();
+    final String fileName = path.substring(path.lastIndexOf('/') + 1);
+    try (InputStream is = syncDir.open(path)) {
 
       try {
-        StatsFile statsFile = StatsFile.read(fis);
+        StatsFile statsFile = StatsFile.read(is, symbols);
         for (TalkingBookDataProcessor callbacks : dataProcessorEventListeners) {
-          int delimeterPosition = file.getName().indexOf('^');
-          String contentId = file.getName().substring(delimeterPosition + 1, file.getName().length() - statExtension.length());
-          String packageName = file.getName().substring(0, delimeterPosition);  // not used right now but should be checked against processing context
+          int delimeterPosition = fileName.indexOf('^');
+          String contentId = fileName.substring(delimeterPosition + 1, fileName.length() - statExtension.length());
+          String packageName = fileName.substring(0, delimeterPosition);  // not used right now but should be checked against processing context
           callbacks.processStatsFile(syncProcessingContext, contentId, statsFile);
         }
       } catch (CorruptFileException e) {
         for (TalkingBookDataProcessor callbacks : dataProcessorEventListeners) {
-          callbacks.markStatsFileAsCorrupted(syncProcessingContext, file.getName(), e.getMessage());
+          callbacks.markStatsFileAsCorrupted(syncProcessingContext, fileName, e.getMessage());
+        }
+      }
+      if (progress != null || metrics != null) {
+        final long bytes = syncDir.length(path);
+        if (progress != null) {
+          progress.addBytesRead(bytes);
+        }
+        if (metrics != null) {
+          metrics.record(PipelineMetrics.STATS_FILE, start, bytes, 0, syncDir.describe(path));
         }
       }
     } catch (IOException e) {
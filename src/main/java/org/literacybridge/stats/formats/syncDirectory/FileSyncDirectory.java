@@ -0,0 +1,131 @@
+package org.literacybridge.stats.formats.syncDirectory;
+
+import org.literacybridge.utils.DirectoryTreeSnapshot;
+import org.literacybridge.utils.FsUtils;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A sync directory that has been extracted onto the file system.
+ * <p/>
+ * If it is given a snapshot of the tree, questions about what files exist are answered from the snapshot instead of
+ * the file system.  Reading files always goes to the file system.
+ */
+public class FileSyncDirectory implements SyncDirectory {
+
+  /**
+   * Files at least this big are memory mapped by {@link #read(String)}.  Anything smaller is copied onto the heap, so
+   * the thousands of small flashData.bin and log files in a run do not each hold a mapping open.
+   */
+  public static final long MAP_THRESHOLD_BYTES = 1024 * 1024;
+
+  public final File root;
+  private final DirectoryTreeSnapshot snapshot;
+
+  public FileSyncDirectory(@Nonnull File root) {
+    this(root, null);
+  }
+
+  public FileSyncDirectory(@Nonnull File root, @Nullable DirectoryTreeSnapshot snapshot) {
+    this.root = root;
+    this.snapshot = snapshot;
+  }
+
+  public File getFile(String path) {
+    return path.isEmpty() ? root : new File(root, FsUtils.FsAgnostify(path));
+  }
+
+  @Override
+  public String getName() {
+    return root.getName();
+  }
+
+  @Override
+  public String describe(String path) {
+    return getFile(path).getAbsolutePath();
+  }
+
+  @Override
+  public boolean isFile(String path) {
+    final File file = getFile(path);
+    return snapshot != null ? snapshot.isFile(file) : file.isFile();
+  }
+
+  @Override
+  public boolean isDirectory(String path) {
+    final File file = getFile(path);
+    return snapshot != null ? snapshot.isDirectory(file) : file.isDirectory();
+  }
+
+  @Override
+  public long length(String path) {
+    if (!isFile(path)) {
+      return -1;
+    }
+    final File file = getFile(path);
+    return snapshot != null ? snapshot.length(file) : file.length();
+  }
+
+  @Override
+  public List<String> listFiles(String directory, Pattern namePattern) {
+    final File dir = getFile(directory);
+    final File[] files = snapshot != null ? snapshot.listFiles(dir) : dir.listFiles();
+    if (files == null) {
+      return Collections.emptyList();
+    }
+
+    final List<String> retVal = new ArrayList<>();
+    for (File file : files) {
+      if (namePattern.matcher(file.getName()).matches() && (snapshot != null ? snapshot.isFile(file) : file.isFile())) {
+        retVal.add(file.getName());
+      }
+    }
+    return retVal;
+  }
+
+  @Override
+  public InputStream open(String path) throws FileNotFoundException {
+    return new FileInputStream(getFile(path));
+  }
+
+  @Override
+  public ByteBuffer read(String path) throws IOException {
+    try (RandomAccessFile file = new RandomAccessFile(getFile(path), "r")) {
+      final FileChannel channel = file.getChannel();
+      final long size = channel.size();
+      if (size >= MAP_THRESHOLD_BYTES) {
+        return channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+      }
+
+      final ByteBuffer buffer = ByteBuffer.allocate((int) size);
+      int read = 0;
+      while (buffer.hasRemaining() && read != -1) {
+        read = channel.read(buffer);
+      }
+      buffer.flip();
+      return buffer;
+    }
+  }
+
+  @Override
+  public void close() {
+  }
+
+  @Override
+  public String toString() {
+    return root.getPath();
+  }
+}
@@ -0,0 +1,62 @@
+package org.literacybridge.stats.formats.syncDirectory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * A read-only view of the contents of a single sync directory, wherever they are actually stored.
+ * <p/>
+ * A sync directory is either a real directory ({@link FileSyncDirectory}), or a zip archive of one that is read in
+ * place ({@link ZipSyncDirectory}).  All paths are relative to the root of the sync directory, and always use '/' as
+ * the separator, for instance "log-archive/log_TB0002FE_0003_0000.txt".
+ */
+public interface SyncDirectory extends Closeable {
+
+  /**
+   * @return the name of the sync directory, for instance "8m30d17h9m8s".  This is what a
+   * {@link org.literacybridge.stats.model.SyncDirId} is parsed from.
+   */
+  String getName();
+
+  /**
+   * Describes where a path really lives, for use in logs and error messages.
+   *
+   * @param path path relative to the sync directory
+   * @return an absolute description of the path.  Unique for every path in every sync directory.
+   */
+  String describe(String path);
+
+  boolean isFile(String path);
+
+  boolean isDirectory(String path);
+
+  /**
+   * @param path path relative to the sync directory
+   * @return the length of the file, or -1 if there is no such file
+   */
+  long length(String path);
+
+  /**
+   * Lists the files directly within a directory.
+   *
+   * @param directory   path of the directory, relative to the sync directory
+   * @param namePattern pattern the file names must match
+   * @return the matching file names (not paths).  Empty if the directory does not exist.
+   */
+  List<String> listFiles(String directory, Pattern namePattern);
+
+  InputStream open(String path) throws IOException;
+
+  /**
+   * Reads a whole file into a buffer.  Implementations may memory map large files rather than copy them.
+   *
+   * @param path path relative to the sync directory
+   * @return a buffer holding the complete file
+   * @throws IOException
+   */
+  ByteBuffer read(String path) throws IOException;
+}
@@ -0,0 +1,191 @@
+package org.literacybridge.stats.formats.syncDirectory;
+
+import org.apache.commons.io.IOUtils;
+
+import javax.annotation.Nonnull;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * A zipped sync directory, read straight out of the archive without extracting it.
+ * <p/>
+ * A sync zip normally holds a single top level folder with the same name as the zip (8m30d17h9m8s.zip holds
+ * 8m30d17h9m8s/...).  If it does, paths are relative to that folder.  A zip that was renamed still holds the folder
+ * under its old name, so if everything in the zip is under any one folder, other than the folders a sync directory
+ * itself holds, paths are relative to that folder instead.  Otherwise they are relative to the root of the zip.
+ * <p/>
+ * The zip file is held open until {@link #close()} is called.
+ */
+public class ZipSyncDirectory implements SyncDirectory {
+
+  public static final String ZIP_EXTENSION = ".zip";
+
+  //The top level folders of a sync directory, which are never the folder the sync directory was zipped in
+  private static final Set<String> SYNC_DIR_FOLDERS = new HashSet<>(Arrays.asList(DirectoryProcessor.STATISTICS_DIR,
+    "log", DirectoryProcessor.LOG_ARCHIVE_DIR, "system"));
+
+  public final File zipFile;
+  private final String name;
+  private final ZipFile zip;
+  private final Map<String, ZipEntry> files = new LinkedHashMap<>();
+  private final Set<String> directories = new HashSet<>();
+
+  /**
+   * Opens a sync zip and indexes its entries.
+   *
+   * @param zipFile the zip to open
+   * @throws java.util.zip.ZipException if the zip is corrupt
+   * @throws IOException                if the zip can not be read
+   */
+  public ZipSyncDirectory(@Nonnull File zipFile) throws IOException {
+    this.zipFile = zipFile;
+    this.name = syncDirName(zipFile);
+    this.zip = new ZipFile(zipFile);
+
+    try {
+      final String prefix = findPrefix();
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        final String entryName = entry.getName().replace('\\', '/');
+        if (!entryName.startsWith(prefix)) {
+          continue;
+        }
+
+        final String path = entryName.substring(prefix.length());
+        if (entry.isDirectory()) {
+          addDirectories(path.endsWith("/") ? path.substring(0, path.length() - 1) : path);
+        } else if (!path.isEmpty()) {
+          files.put(path, entry);
+          addDirectories(parentOf(path));
+        }
+      }
+    } catch (RuntimeException e) {
+      IOUtils.closeQuietly(zip);
+      throw e;
+    }
+  }
+
+  /**
+   * @param zipFile a sync zip
+   * @return the name of the sync directory the zip holds:  the file name without its ".zip" extension
+   */
+  public static String syncDirName(File zipFile) {
+    final String fileName = zipFile.getName();
+    if (fileName.toLowerCase().endsWith(ZIP_EXTENSION)) {
+      return fileName.substring(0, fileName.length() - ZIP_EXTENSION.length());
+    }
+    return fileName;
+  }
+
+  private String findPrefix() {
+    final String folder = name + "/";
+    //The one folder everything is in, or "" once there is an entry outside of it
+    String topLevelFolder = null;
+    final Enumeration<? extends ZipEntry> entries = zip.entries();
+    while (entries.hasMoreElements()) {
+      final String entryName = entries.nextElement().getName().replace('\\', '/');
+      if (entryName.startsWith(folder)) {
+        return folder;
+      }
+
+      final int slash = entryName.indexOf('/');
+      final String entryFolder = slash < 0 ? "" : entryName.substring(0, slash + 1);
+      if (topLevelFolder == null) {
+        topLevelFolder = entryFolder;
+      } else if (!topLevelFolder.equals(entryFolder)) {
+        topLevelFolder = "";
+      }
+    }
+
+    if (topLevelFolder == null || topLevelFolder.isEmpty() ||
+      SYNC_DIR_FOLDERS.contains(topLevelFolder.substring(0, topLevelFolder.length() - 1).toLowerCase())) {
+      return "";
+    }
+    return topLevelFolder;
+  }
+
+  private void addDirectories(String directory) {
+    while (!directory.isEmpty() && directories.add(directory)) {
+      directory = parentOf(directory);
+    }
+  }
+
+  private static String parentOf(String path) {
+    final int lastSlash = path.lastIndexOf('/');
+    return lastSlash < 0 ? "" : path.substring(0, lastSlash);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public String describe(String path) {
+    return zipFile.getAbsolutePath() + "!/" + path;
+  }
+
+  @Override
+  public boolean isFile(String path) {
+    return files.containsKey(path);
+  }
+
+  @Override
+  public boolean isDirectory(String path) {
+    return path.isEmpty() || directories.contains(path);
+  }
+
+  @Override
+  public long length(String path) {
+    final ZipEntry entry = files.get(path);
+    return entry == null ? -1 : entry.getSize();
+  }
+
+  @Override
+  public List<String> listFiles(String directory, Pattern namePattern) {
+    final List<String> retVal = new ArrayList<>();
+    for (String path : files.keySet()) {
+      if (parentOf(path).equals(directory)) {
+        final String fileName = path.substring(path.lastIndexOf('/') + 1);
+        if (namePattern.matcher(fileName).matches()) {
+          retVal.add(fileName);
+        }
+      }
+    }
+    return retVal;
+  }
+
+  @Override
+  public InputStream open(String path) throws IOException {
+    final ZipEntry entry = files.get(path);
+    if (entry == null) {
+      throw new FileNotFoundException(describe(path));
+    }
+    return zip.getInputStream(entry);
+  }
+
+  @Override
+  public ByteBuffer read(String path) throws IOException {
+    try (InputStream is = open(path)) {
+      return ByteBuffer.wrap(IOUtils.toByteArray(is));
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    zip.close();
+  }
+
+  @Override
+  public String toString() {
+    return zipFile.getPath();
+  }
+}
@@ -0,0 +1,259 @@
+package org.literacybridge.stats.formats.tbData;
+
+import com.google.common.collect.ImmutableMap;
+import org.apache.commons.lang.WordUtils;
+import org.literacybridge.stats.model.TbDataLine;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * Binds the columns of one tbData header layout to the setters of {@link TbDataLine}.
+ * <p/>
+ * Working out which setter goes with which column is done once per layout, so binding a row is just a loop of typed
+ * setter calls.  The setters are held as MethodHandles adapted to their exact type, so int columns are parsed
+ * straight into an int with no boxing.  The setters of TbDataLine itself are only looked up once; those of
+ * subclasses are looked up for each binder.
+ * <p/>
+ * Binders are immutable, so they are safe to share between threads.  Callers that see many files keep the binders of
+ * the layouts they have seen, as {@link TbDataParser} does.
+ */
+public class TbDataColumnBinder {
+
+  protected static final Logger logger = LoggerFactory.getLogger(TbDataColumnBinder.class);
+
+  private static final Map<String, ColumnSetter> LINE_SETTERS = createSetters(TbDataLine.class);
+
+  //Bounds the number of distinct date strings remembered while parsing a single file
+  private static final int MAX_CACHED_DATES = 1024;
+
+  private final ColumnSetter[] setters;
+  private final int[] indexes;
+
+  private TbDataColumnBinder(ColumnSetter[] setters, int[] indexes) {
+    this.setters = setters;
+    this.indexes = indexes;
+  }
+
+  /**
+   * Works out the binder for a header layout.
+   *
+   * @param headerToIndex map from the header names in {@link TbDataParser#V3_FIELD_NAMES} to column indexes
+   * @param lineClass     the class being bound to
+   * @return a new binder
+   */
+  public static TbDataColumnBinder forLayout(Map<String, Integer> headerToIndex, Class<? extends TbDataLine> lineClass) {
+    final Map<String, ColumnSetter> classSetters = settersFor(lineClass);
+    final List<ColumnSetter> setters = new ArrayList<>();
+    final List<Integer> indexes = new ArrayList<>();
+
+    for (String fieldName : TbDataParser.V3_FIELD_NAMES) {
+      if (headerToIndex.containsKey(fieldName)) {
+        final ColumnSetter setter = classSetters.get(fieldName);
+        if (setter == null) {
+          logger.warn("No setter for " + javaSetterName(fieldName));
+        } else {
+          setters.add(setter);
+          indexes.add(headerToIndex.get(fieldName));
+        }
+      }
+    }
+
+    final int[] indexArray = new int[indexes.size()];
+    for (int i = 0; i < indexArray.length; i++) {
+      indexArray[i] = indexes.get(i);
+    }
+    return new TbDataColumnBinder(setters.toArray(new ColumnSetter[setters.size()]), indexArray);
+  }
+
+  /**
+   * Gets the setter that a tbData column maps to.
+   *
+   * @param propertyName the column name, as it appears in a V3 header
+   * @param lineClass    the class being bound to
+   * @return the setter, or {@code null} if the class has no setter for that column
+   */
+  public static ColumnSetter setterFor(String propertyName, Class<? extends TbDataLine> lineClass) {
+    return settersFor(lineClass).get(propertyName);
+  }
+
+  /**
+   * Sets every bound column of a row onto a TbDataLine.
+   *
+   * @param line        the row, as split by the CSV reader
+   * @param target      the TbDataLine to fill in
+   * @param parsedDates cache of date strings already parsed.  Rows in a tbData file share a handful of dates, so
+   *                    callers should reuse one map for all the rows of a file.
+   * @throws InvocationTargetException if a setter throws
+   */
+  public void bind(String[] line, TbDataLine target, Map<String, Date> parsedDates) throws InvocationTargetException {
+    for (int i = 0; i < setters.length; i++) {
+      if (line.length > indexes[i]) {
+        setters[i].set(target, line[indexes[i]], parsedDates);
+      }
+    }
+  }
+
+  private static Map<String, ColumnSetter> settersFor(Class<? extends TbDataLine> lineClass) {
+    return lineClass.equals(TbDataLine.class) ? LINE_SETTERS : createSetters(lineClass);
+  }
+
+  private static Map<String, ColumnSetter> createSetters(Class<? extends TbDataLine> lineClass) {
+    final Method[] methods = lineClass.getMethods();
+    final ImmutableMap.Builder<String, ColumnSetter> builder = ImmutableMap.builder();
+
+    for (String fieldName : TbDataParser.V3_FIELD_NAMES) {
+      final String javaSetterName = javaSetterName(fieldName);
+      for (Method method : methods) {
+        if (method.getName().equals(javaSetterName)) {
+          builder.put(fieldName, createSetter(fieldName, method));
+          break;
+        }
+      }
+    }
+
+    return builder.build();
+  }
+
+  private static ColumnSetter createSetter(String fieldName, Method method) {
+    final Class<?> type = method.getParameterTypes()[0];
+    final MethodHandle handle;
+    try {
+      handle = MethodHandles.publicLookup().unreflect(method);
+    } catch (IllegalAccessException e) {
+      throw new IllegalStateException("Cannot access " + method, e);
+    }
+
+    if (type.equals(Date.class)) {
+      return new DateSetter(fieldName, handle.asType(MethodType.methodType(void.class, TbDataLine.class, Date.class)));
+    } else if (type.equals(int.class)) {
+      return new IntSetter(fieldName, handle.asType(MethodType.methodType(void.class, TbDataLine.class, int.class)));
+    }
+    return new StringSetter(fieldName, handle.asType(MethodType.methodType(void.class, TbDataLine.class, String.class)));
+  }
+
+  /**
+   * Builds the name of the setter for a tbData column.  For example, "IN-LAST-UPDATED" becomes "setInLastUpdated"
+   * and "CHKDSK CORRUPTION?" becomes "setChkdskCorruption".
+   */
+  static String javaSetterName(String propertyName) {
+    String[] propertyNameParts = propertyName.toLowerCase().split("[? _-]");
+
+    StringBuilder javaSetterNameBuilder = new StringBuilder("set");
+    for (String propertyNamePart : propertyNameParts) {
+      javaSetterNameBuilder.append(WordUtils.capitalize(propertyNamePart, TbDataParser.FIELD_DELIMITERS));
+    }
+    return javaSetterNameBuilder.toString();
+  }
+
+  //+++++++++++++++ Setters ++++++++++++++++++//
+
+  /**
+   * Converts a single column value, and sets it on a TbDataLine.  Values that can not be converted are logged and
+   * skipped, leaving the field unset.
+   */
+  public static abstract class ColumnSetter {
+    public final String propertyName;
+    protected final MethodHandle handle;
+
+    protected ColumnSetter(String propertyName, MethodHandle handle) {
+      this.propertyName = propertyName;
+      this.handle = handle;
+    }
+
+    public abstract void set(TbDataLine target, String value, Map<String, Date> parsedDates) throws
+      InvocationTargetException;
+  }
+
+  static class StringSetter extends ColumnSetter {
+    StringSetter(String propertyName, MethodHandle handle) {
+      super(propertyName, handle);
+    }
+
+    @Override
+    public void set(TbDataLine target, String value, Map<String, Date> parsedDates) throws InvocationTargetException {
+      try {
+        handle.invokeExact(target, value);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+
+  static class IntSetter extends ColumnSetter {
+    IntSetter(String propertyName, MethodHandle handle) {
+      super(propertyName, handle);
+    }
+
+    @Override
+    public void set(TbDataLine target, String value, Map<String, Date> parsedDates) throws InvocationTargetException {
+      final int intValue;
+      try {
+        intValue = Integer.parseInt(value);
+      } catch (NumberFormatException e) {
+        logger.error("Invalid integer value " + value + ".  Ignoring field " + propertyName + ".");
+        return;
+      }
+
+      try {
+        handle.invokeExact(target, intValue);
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+  }
+
+  static class DateSetter extends ColumnSetter {
+    DateSetter(String propertyName, MethodHandle handle) {
+      super(propertyName, handle);
+    }
+
+    @Override
+    public void set(TbDataLine target, String value, Map<String, Date> parsedDates) throws InvocationTargetException {
+      Date date = parsedDates.get(value);
+      if (date == null) {
+        if (parsedDates.containsKey(value)) {
+          logger.error("Invalid date value " + value + ".  Ignoring field " + propertyName + ".");
+          return;
+        }
+
+        try {
+          date = parseDate(value);
+        } catch (IllegalArgumentException e) {
+          logger.error("Invalid date value " + value + ".  Ignoring field " + propertyName + ".");
+          date = null;
+        }
+
+        if (parsedDates.size() >= MAX_CACHED_DATES) {
+          parsedDates.clear();
+        }
+        parsedDates.put(value, date);
+        if (date == null) {
+          return;
+        }
+      }
+
+      try {
+        //Dates are mutable, so every line gets its own copy
+        handle.invokeExact(target, new Date(date.getTime()));
+      } catch (Throwable t) {
+        throw new InvocationTargetException(t);
+      }
+    }
+
+    /**
+     * The TB-Loader writes dates with Date.toString, so this still uses the (deprecated) Date.parse rules to read
+     * them back.  It is only called once per distinct date string in a file.
+     */
+    @SuppressWarnings("deprecation")
+    static Date parseDate(String value) {
+      return new Date(value);
+    }
+  }
+}
@@ -0,0 +1,20 @@
+package org.literacybridge.stats.formats.tbData;
+
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.io.IOException;
+
+/**
+ * Receives the lines of a tbData file, one at a time, as {@link TbDataParser} reads them.
+ */
+public interface TbDataLineHandler {
+
+  /**
+   * Called once per data line.  The header line, if there is one, is not passed in.
+   *
+   * @param tbDataLine the parsed line
+   * @param lineNumber the line's 1-based position in the file, counting the header
+   * @throws IOException to stop parsing the file
+   */
+  void onTbDataLine(TbDataLine tbDataLine, int lineNumber) throws IOException;
+}
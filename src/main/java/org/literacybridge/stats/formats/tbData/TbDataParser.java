@@ -2,7 +2,7 @@ package org.literacybridge.stats.formats.tbData;
 
 import au.com.bytecode.opencsv.CSVReader;
 import com.google.common.collect.ImmutableMap;
-import org.apache.commons.lang.WordUtils;
+import org.apache.commons.io.IOUtils;
 import org.literacybridge.stats.model.TbDataLine;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -11,11 +11,14 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.util.*;
 
 /**
  * Parses a tbData file.  Does some work to try to work for older formats.
+ * <p/>
+ * Columns are mapped onto {@link TbDataLine} by a {@link TbDataColumnBinder}, which is worked out once per header
+ * layout rather than once per row.  A parser keeps the binders of the last few layouts it has seen, so reuse one
+ * parser for the files of a run.  Like the processors, it is not thread-safe.
  */
 public class TbDataParser {
 
@@ -128,6 +131,11 @@ public class TbDataParser {
 
   protected static final char[] FIELD_DELIMITERS = new char[]{'-'};
 
+  //Files almost always share one of a handful of layouts, so this is only a bound for odd headers
+  private static final int MAX_CACHED_LAYOUTS = 16;
+
+  private final Map<Map<String, Integer>, TbDataColumnBinder> bindersByLayout = new HashMap<>();
+
   private static <T, E> T getKeyByValue(Map<T, E> map, E value) {
     for (Map.Entry<T, E> entry : map.entrySet()) {
       if (Objects.equals(value, entry.getValue())) {
@@ -137,104 +145,115 @@ public class TbDataParser {
     return null;
   }
 
+  /**
+   * Parses a whole tbData file into memory.  For large files, prefer
+   * {@link #parseTbDataFile(File, boolean, TbDataLineHandler)}, which only holds one line at a time.
+   *
+   * @param tbdataFile      the file to parse
+   * @param includesHeaders true if the first line may be a header.  If it does not look like one, it is parsed as data.
+   * @return all the lines in the file
+   * @throws IOException
+   */
   public List<TbDataLine> parseTbDataFile(File tbdataFile, boolean includesHeaders) throws IOException {
+    final List<TbDataLine> retVal = new ArrayList<>();
+    parseTbDataFile(tbdataFile, includesHeaders, new TbDataLineHandler() {
+      @Override
+      public void onTbDataLine(TbDataLine tbDataLine, int lineNumber) {
+        retVal.add(tbDataLine);
+      }
+    });
+    return retVal;
+  }
 
-    System.out.println(" reading " + tbdataFile.getName());
-    List<TbDataLine> retVal = new ArrayList<>();
-    FileReader fileReader = new FileReader(tbdataFile);
-    CSVReader csvReader = new CSVReader(fileReader);
-
-    int lineNumber = 1;
-    List<String[]> lines = csvReader.readAll();
-
-    Map<String, Integer> headerMap = V3_TB_MAP;
-    if (getTBdataVersion(tbdataFile) == 1) {
-      headerMap = V1_TB_MAP;
-    } else if (getTBdataVersion(tbdataFile) == 0) {
-      headerMap = V0_TB_MAP;
-    }
-
-    for (String[] line : lines) {
+  /**
+   * Parses a tbData file, handing each line to {@code handler} as soon as it is read.  Nothing is kept once the
+   * handler returns, so memory use does not depend on the size of the file.
+   *
+   * @param tbdataFile      the file to parse
+   * @param includesHeaders true if the first line may be a header.  If it does not look like one, it is parsed as data.
+   * @param handler         called once per data line, in file order
+   * @throws IOException if the file can not be read, or the handler throws
+   */
+  public void parseTbDataFile(File tbdataFile, boolean includesHeaders, TbDataLineHandler handler) throws IOException {
+
+    logger.debug("Reading " + tbdataFile.getName());
+    CSVReader csvReader = new CSVReader(new FileReader(tbdataFile));
+
+    try {
+      int lineNumber = 1;
+
+      Map<String, Integer> headerMap = V3_TB_MAP;
+      if (getTBdataVersion(tbdataFile) == 1) {
+        headerMap = V1_TB_MAP;
+      } else if (getTBdataVersion(tbdataFile) == 0) {
+        headerMap = V0_TB_MAP;
+      }
 
-      if (lineNumber == 1 && includesHeaders) {
-        String firstHeaderDefined = getKeyByValue(headerMap,0);
-        String firstHeaderActual = line[0];
-        if (firstHeaderActual.equalsIgnoreCase(firstHeaderDefined)) {
-          headerMap = processHeader(line);
-        } else {
-          includesHeaders = false;
+      //Resolved once the header has been read, since that decides the layout
+      TbDataColumnBinder binder = null;
+      final Map<String, Date> parsedDates = new HashMap<>();
+
+      String[] line;
+      while ((line = csvReader.readNext()) != null) {
+
+        if (lineNumber == 1 && includesHeaders) {
+          String firstHeaderDefined = getKeyByValue(headerMap,0);
+          String firstHeaderActual = line[0];
+          if (firstHeaderActual.equalsIgnoreCase(firstHeaderDefined)) {
+            headerMap = processHeader(line);
+          } else {
+            includesHeaders = false;
+          }
         }
-      }
-      if (!(lineNumber == 1 && includesHeaders)) {
-        try {
-          retVal.add(processLine(line, headerMap));
-          processLine(line, headerMap);
-        } catch (NoSuchMethodException e) {
-          throw new IOException(e);
-        } catch (IllegalAccessException e) {
-          throw new IOException(e);
-        } catch (InvocationTargetException e) {
-          throw new IOException(e);
+        if (!(lineNumber == 1 && includesHeaders)) {
+          if (binder == null) {
+            binder = binderFor(headerMap);
+          }
+          try {
+            TbDataLine tbDataLine = new TbDataLine();
+            binder.bind(line, tbDataLine, parsedDates);
+            handler.onTbDataLine(tbDataLine, lineNumber);
+          } catch (InvocationTargetException e) {
+            throw new IOException(e);
+          }
+
         }
 
+        lineNumber++;
       }
-
-      lineNumber++;
+    } finally {
+      IOUtils.closeQuietly(csvReader);
     }
-    return retVal;
   }
 
   public TbDataLine processLine(String[] line, Map<String, Integer> headerToIndex) throws NoSuchMethodException, IllegalAccessException, InvocationTargetException {
     TbDataLine retVal = new TbDataLine();
-    Map<String, String> lineValues = buildLineMap(line, headerToIndex);
+    binderFor(headerToIndex).bind(line, retVal, new HashMap<String, Date>());
+    return retVal;
+  }
 
-    for (String fieldName : V3_FIELD_NAMES) {
-      setProperty(fieldName, lineValues, retVal);
+  private TbDataColumnBinder binderFor(Map<String, Integer> headerToIndex) {
+    TbDataColumnBinder binder = bindersByLayout.get(headerToIndex);
+    if (binder == null) {
+      binder = TbDataColumnBinder.forLayout(headerToIndex, TbDataLine.class);
+      if (bindersByLayout.size() >= MAX_CACHED_LAYOUTS) {
+        bindersByLayout.clear();
+      }
+      bindersByLayout.put(ImmutableMap.copyOf(headerToIndex), binder);
     }
-    return retVal;
+    return binder;
   }
 
   protected void setProperty(String propertyName, Map<String, String> lineValues, TbDataLine line) throws NoSuchMethodException, InvocationTargetException, IllegalAccessException {
 
     if (lineValues.containsKey(propertyName)) {
-      String[] propertyNameParts = propertyName.toLowerCase().split("[? _-]");
-
-      StringBuilder javaSetterNameBuilder = new StringBuilder("set");
-      for (String propertyNamePart : propertyNameParts) {
-        javaSetterNameBuilder.append(WordUtils.capitalize(propertyNamePart, FIELD_DELIMITERS));
-      }
-
-      Method setter = null;
-      Method[] methods = line.getClass().getMethods();
-      String javaSetterName = javaSetterNameBuilder.toString();
-      for (Method method : methods) {
-        if (method.getName().equals(javaSetterName)) {
-          setter = method;
-          break;
-        }
-      }
-
+      TbDataColumnBinder.ColumnSetter setter = TbDataColumnBinder.setterFor(propertyName, line.getClass());
       if (setter == null) {
-        logger.warn("No setter for " + javaSetterName);
+        logger.warn("No setter for " + TbDataColumnBinder.javaSetterName(propertyName));
         return;
       }
 
-      Class type = setter.getParameterTypes()[0];
-      if (type.equals(Date.class)) {
-        try {
-          setter.invoke(line, new Date(lineValues.get(propertyName)));
-        } catch (IllegalArgumentException e) {
-          logger.error("Invalid date value " + lineValues.get(propertyName) + ".  Ignoring field " + propertyName + ".");
-        }
-      } else if (type.equals(int.class) || type.equals(Integer.TYPE)) {
-        try {
-          setter.invoke(line, new Integer(lineValues.get(propertyName)));
-        } catch (NumberFormatException e) {
-          logger.error("Invalid integer value " + lineValues.get(propertyName) + ".  Ignoring field " + propertyName + ".");
-        }
-      } else {
-        setter.invoke(line, lineValues.get(propertyName));
-      }
+      setter.set(line, lineValues.get(propertyName), new HashMap<String, Date>());
     }
   }
 
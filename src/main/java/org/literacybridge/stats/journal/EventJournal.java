@@ -0,0 +1,50 @@
+package org.literacybridge.stats.journal;
+
+import org.joda.time.DateTimeZone;
+import org.joda.time.LocalDateTime;
+
+/**
+ * The constants of the journal format shared by {@link EventJournalWriter} and {@link EventJournalReader}.
+ */
+final class EventJournal {
+  static final int MAGIC = 0x4C42454A; // "LBEJ"
+  static final short VERSION = 1;
+
+  static final int NO_STRING = -1;
+  static final long NO_TIME = Long.MIN_VALUE;
+
+  //Flags of a log line header
+  static final int HAS_POSITION = 1;
+  static final int HAS_INFO = 2;
+
+  //Record types
+  static final byte STRING = 1;
+  static final byte PROCESSING_CONTEXT = 2;
+  static final byte SYNC_CONTEXT = 3;
+  static final byte TALKING_BOOK_START = 4;
+  static final byte TALKING_BOOK_END = 5;
+  static final byte LOG_FILE_START = 6;
+  static final byte LOG_FILE_END = 7;
+  static final byte PLAY = 8;
+  static final byte PLAYED = 9;
+  static final byte RECORD = 10;
+  static final byte RECORDED = 11;
+  static final byte CATEGORY = 12;
+  static final byte PAUSE = 13;
+  static final byte UNPAUSE = 14;
+  static final byte SURVEY = 15;
+  static final byte SURVEY_COMPLETED = 16;
+  static final byte SHUTTING_DOWN = 17;
+  static final byte VOLTAGE_DROP = 18;
+
+  private EventJournal() {
+  }
+
+  static long toMillis(LocalDateTime time) {
+    return time != null ? time.toDateTime(DateTimeZone.UTC).getMillis() : NO_TIME;
+  }
+
+  static LocalDateTime fromMillis(long millis) {
+    return millis != NO_TIME ? new LocalDateTime(millis, DateTimeZone.UTC) : null;
+  }
+}
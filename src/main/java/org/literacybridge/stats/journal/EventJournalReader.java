@@ -0,0 +1,213 @@
+package org.literacybridge.stats.journal;
+
+import org.joda.time.LocalTime;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogFilePosition;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.logFile.LogLineInfo;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+
+import javax.annotation.Nonnull;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replays a journal written by {@link EventJournalWriter} to a TalkingBookDataProcessor, making the same log file
+ * and talking book calls, in the same order, as the run that wrote it.  Those are the only calls it makes:  flash
+ * data, stats files and tbData lines are not in the journal.
+ * <p/>
+ * Each string is read once, where the journal defines it, so every event that uses it shares the same instance.  Every
+ * event between two context records shares the same context instance too, as they would when parsing.
+ */
+public class EventJournalReader implements Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+  private static final LogAction[] ACTIONS = LogAction.values();
+
+  private final DataInputStream in;
+  private final List<String> strings = new ArrayList<>();
+  private ProcessingContext context;
+
+  public EventJournalReader(@Nonnull File journal) throws IOException {
+    this(new FileInputStream(journal));
+  }
+
+  public EventJournalReader(@Nonnull InputStream in) throws IOException {
+    this.in = new DataInputStream(new BufferedInputStream(in, BUFFER_SIZE));
+    if (this.in.readInt() != EventJournal.MAGIC) {
+      throw new IOException("Not an event journal");
+    }
+    final short version = this.in.readShort();
+    if (version != EventJournal.VERSION) {
+      throw new IOException("Unsupported event journal version " + version);
+    }
+  }
+
+  /**
+   * Replays a whole journal file.
+   *
+   * @return the number of event records replayed
+   */
+  static public long replay(File journal, TalkingBookDataProcessor processor) throws IOException {
+    try (EventJournalReader reader = new EventJournalReader(journal)) {
+      return reader.replay(processor);
+    }
+  }
+
+  /**
+   * Replays the rest of the journal.
+   *
+   * @return the number of event records replayed
+   */
+  public long replay(TalkingBookDataProcessor processor) throws IOException {
+    long records = 0;
+    int type;
+    while ((type = in.read()) != -1) {
+      switch (type) {
+        case EventJournal.STRING:
+          strings.add(in.readUTF());
+          continue;
+        case EventJournal.PROCESSING_CONTEXT:
+          context = new ProcessingContext(string(), string(), string(), string());
+          continue;
+        case EventJournal.SYNC_CONTEXT:
+          readSyncContext();
+          continue;
+        case EventJournal.TALKING_BOOK_START:
+          processor.onTalkingBookStart(context);
+          break;
+        case EventJournal.TALKING_BOOK_END:
+          processor.onTalkingBookEnd(context);
+          break;
+        case EventJournal.LOG_FILE_START:
+          processor.onLogFileStart(string());
+          break;
+        case EventJournal.LOG_FILE_END:
+          processor.onLogFileEnd();
+          break;
+        case EventJournal.PLAY: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onPlay(lineContext, string(), in.readInt(), in.readDouble());
+          break;
+        }
+        case EventJournal.PLAYED: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onPlayed(lineContext, string(), in.readShort(), in.readShort(), in.readInt(), in.readDouble(),
+            in.readBoolean());
+          break;
+        }
+        case EventJournal.RECORD: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onRecord(lineContext, string(), in.readInt());
+          break;
+        }
+        case EventJournal.RECORDED: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onRecorded(lineContext, in.readInt());
+          break;
+        }
+        case EventJournal.CATEGORY: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onCategory(lineContext, string());
+          break;
+        }
+        case EventJournal.PAUSE: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onPause(lineContext, string());
+          break;
+        }
+        case EventJournal.UNPAUSE: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onUnPause(lineContext, string());
+          break;
+        }
+        case EventJournal.SURVEY: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onSurvey(lineContext, string());
+          break;
+        }
+        case EventJournal.SURVEY_COMPLETED: {
+          final LogLineContext lineContext = readLineContext();
+          processor.onSurveyCompleted(lineContext, string(), in.readBoolean());
+          break;
+        }
+        case EventJournal.SHUTTING_DOWN:
+          processor.onShuttingDown(readLineContext());
+          break;
+        case EventJournal.VOLTAGE_DROP: {
+          final LogLineContext lineContext = readLineContext();
+          final byte action = in.readByte();
+          processor.onVoltageDrop(lineContext, action >= 0 ? ACTIONS[action] : null, in.readDouble(), in.readInt());
+          break;
+        }
+        default:
+          throw new IOException("Unknown record type " + type + " in event journal");
+      }
+      records++;
+    }
+    return records;
+  }
+
+  @Override
+  public void close() throws IOException {
+    in.close();
+  }
+
+  private String string() throws IOException {
+    final int code = in.readInt();
+    if (code == EventJournal.NO_STRING) {
+      return null;
+    }
+    if (code < 0 || code >= strings.size()) {
+      throw new IOException("Undefined string " + code + " in event journal");
+    }
+    return strings.get(code);
+  }
+
+  private void readSyncContext() throws IOException {
+    final long syncTime = in.readLong();
+    final String contentPackage = string();
+    final String talkingBook = string();
+    final String village = string();
+    final String deployment = string();
+    final String device = string();
+    context = new SyncProcessingContext(EventJournal.fromMillis(syncTime), talkingBook, village, contentPackage,
+      deployment, device);
+  }
+
+  private LogLineContext readLineContext() throws IOException {
+    if (!(context instanceof SyncProcessingContext)) {
+      throw new IOException("Log event without a sync context in event journal");
+    }
+
+    final int flags = in.readByte();
+    final String fileName = string();
+    final int lineNumber = in.readInt();
+    final short rotation = in.readShort();
+    final short cycle = in.readShort();
+    final short period = in.readShort();
+    final short dayOfPeriod = in.readShort();
+    final int millisOfDay = in.readInt();
+    final double maxVolts = in.readDouble();
+    final double steadyStateVolts = in.readDouble();
+    final double minVolts = in.readDouble();
+
+    final LogLineInfo info = (flags & EventJournal.HAS_INFO) != 0
+      ? new LogLineInfo(rotation, cycle, period, dayOfPeriod,
+                        millisOfDay >= 0 ? LocalTime.fromMillisOfDay(millisOfDay) : null,
+                        maxVolts, steadyStateVolts, minVolts)
+      : null;
+    final LogFilePosition position = (flags & EventJournal.HAS_POSITION) != 0
+      ? new LogFilePosition(fileName, lineNumber)
+      : null;
+    return new LogLineContext(info, position, (SyncProcessingContext) context);
+  }
+}
@@ -0,0 +1,337 @@
+package org.literacybridge.stats.journal;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.logFile.LogLineInfo;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A TalkingBookDataProcessor that appends the events it is given to a binary journal, so they can be replayed by
+ * {@link EventJournalReader} without unzipping or parsing the logs again.  Register it with the DirectoryProcessor
+ * next to the other processors to write the journal as part of a normal run.
+ * <p/>
+ * The journal is a header (a magic number and a version) followed by records, each a type byte and a payload.  The
+ * payload of every record type is fixed width, except for string definitions:
+ * <ul>
+ * <li>A string is written once, the first time it is used, as a definition that gives it the next code.  After that
+ * every use is a 4 byte code, so content ids, file names, villages and talking book ids cost 4 bytes per event.</li>
+ * <li>A context record is written whenever the context changes, and applies to the records after it.</li>
+ * <li>Each log event carries the fields of its {@link org.literacybridge.stats.model.events.EventUniqueId} (the
+ * rotation, cycle, period, day and time from the log line, with the talking book and deployment from the
+ * context), the voltages, its position in the log file and its own primitive arguments.</li>
+ * </ul>
+ * Only the talking book and log file callbacks are journaled.  Flash data, stats files and tbData lines are cheap to
+ * read again, and are dropped, so {@link EventJournalReader} never replays them.
+ * <p/>
+ * Like the other processors, this is not thread-safe.  Call {@link #close()} once processing is done.
+ */
+public class EventJournalWriter implements TalkingBookDataProcessor, Closeable {
+  private static final int BUFFER_SIZE = 64 * 1024;
+
+  private final DataOutputStream out;
+  private final Map<String, Integer> stringCodes = new HashMap<>();
+  private ProcessingContext lastContext;
+  private long records = 0;
+
+  public EventJournalWriter(@Nonnull File journal) throws IOException {
+    this(new FileOutputStream(journal));
+  }
+
+  public EventJournalWriter(@Nonnull OutputStream out) throws IOException {
+    this.out = new DataOutputStream(new BufferedOutputStream(out, BUFFER_SIZE));
+    this.out.writeInt(EventJournal.MAGIC);
+    this.out.writeShort(EventJournal.VERSION);
+  }
+
+  /**
+   * @return the number of event records written, not counting string and context definitions
+   */
+  public long getRecords() {
+    return records;
+  }
+
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    out.close();
+  }
+
+  //+++++++++++++++Encoding ++++++++++++++++++//
+
+  private int code(@Nullable String value) throws IOException {
+    if (value == null) {
+      return EventJournal.NO_STRING;
+    }
+    Integer code = stringCodes.get(value);
+    if (code == null) {
+      code = stringCodes.size();
+      stringCodes.put(value, code);
+      out.writeByte(EventJournal.STRING);
+      out.writeUTF(value);
+    }
+    return code;
+  }
+
+  private void writeContext(ProcessingContext context) throws IOException {
+    if (context == lastContext) {
+      return;
+    }
+
+    //Define the strings before the record that uses them
+    final int talkingBook = code(context.talkingBookId);
+    final int village = code(context.village);
+    final int deployment = code(context.deploymentId != null ? context.deploymentId.id : null);
+    final int device = code(context.deviceSyncedFrom);
+    if (context instanceof SyncProcessingContext) {
+      final SyncProcessingContext syncContext = (SyncProcessingContext) context;
+      final int contentPackage = code(syncContext.contentPackage);
+      out.writeByte(EventJournal.SYNC_CONTEXT);
+      out.writeLong(EventJournal.toMillis(syncContext.syncTime));
+      out.writeInt(contentPackage);
+    } else {
+      out.writeByte(EventJournal.PROCESSING_CONTEXT);
+    }
+    out.writeInt(talkingBook);
+    out.writeInt(village);
+    out.writeInt(deployment);
+    out.writeInt(device);
+    lastContext = context;
+  }
+
+  /**
+   * Writes the type and common header of a log event record.  The caller writes the payload.
+   */
+  private void startEvent(byte type, LogLineContext context) throws IOException {
+    writeContext(context.context);
+    final int fileName = context.logFilePosition != null ? code(context.logFilePosition.fileName) : EventJournal.NO_STRING;
+    final LogLineInfo info = context.logLineInfo;
+
+    out.writeByte(type);
+    out.writeByte((context.logFilePosition != null ? EventJournal.HAS_POSITION : 0) |
+                    (info != null ? EventJournal.HAS_INFO : 0));
+    out.writeInt(fileName);
+    out.writeInt(context.logFilePosition != null ? context.logFilePosition.lineNumber : 0);
+    if (info != null) {
+      out.writeShort(info.householdRotation);
+      out.writeShort(info.cycle);
+      out.writeShort(info.period);
+      out.writeShort(info.dayOfPeriod);
+      out.writeInt(info.timeInPeriod != null ? info.timeInPeriod.getMillisOfDay() : -1);
+      out.writeDouble(info.maxVolts);
+      out.writeDouble(info.steadyStateVolts);
+      out.writeDouble(info.minVolts);
+    } else {
+      out.writeLong(0);
+      out.writeInt(-1);
+      out.writeDouble(0);
+      out.writeDouble(0);
+      out.writeDouble(0);
+    }
+    records++;
+  }
+
+  private void writeIdEvent(byte type, LogLineContext context, String id) {
+    try {
+      final int code = code(id);
+      startEvent(type, context);
+      out.writeInt(code);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  //+++++++++++++++Directory Processing ++++++++++++++++++//
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+    try {
+      writeContext(context);
+      out.writeByte(EventJournal.TALKING_BOOK_START);
+      records++;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+    try {
+      writeContext(context);
+      out.writeByte(EventJournal.TALKING_BOOK_END);
+      records++;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  //+++++++++++++++Processing Log Files ++++++++++++++++++//
+
+  @Override
+  public void onLogFileStart(String fileName) {
+    try {
+      final int code = code(fileName);
+      out.writeByte(EventJournal.LOG_FILE_START);
+      out.writeInt(code);
+      records++;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    try {
+      out.writeByte(EventJournal.LOG_FILE_END);
+      records++;
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+    try {
+      final int code = code(contentId);
+      startEvent(EventJournal.PLAY, context);
+      out.writeInt(code);
+      out.writeInt(volume);
+      out.writeDouble(voltage);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    try {
+      final int code = code(contentId);
+      startEvent(EventJournal.PLAYED, context);
+      out.writeInt(code);
+      out.writeShort(secondsPlayed);
+      out.writeShort(secondsSomething);
+      out.writeInt(volume);
+      out.writeDouble(voltage);
+      out.writeBoolean(ended);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    try {
+      final int code = code(contentId);
+      startEvent(EventJournal.RECORD, context);
+      out.writeInt(code);
+      out.writeInt(unknownNumber);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    try {
+      startEvent(EventJournal.RECORDED, context);
+      out.writeInt(secondsRecorded);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+    writeIdEvent(EventJournal.CATEGORY, context, categoryId);
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+    writeIdEvent(EventJournal.PAUSE, context, contentId);
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+    writeIdEvent(EventJournal.UNPAUSE, context, contentId);
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    writeIdEvent(EventJournal.SURVEY, context, contentId);
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    try {
+      final int code = code(contentId);
+      startEvent(EventJournal.SURVEY_COMPLETED, context);
+      out.writeInt(code);
+      out.writeBoolean(useful);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+    try {
+      startEvent(EventJournal.SHUTTING_DOWN, context);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+    try {
+      startEvent(EventJournal.VOLTAGE_DROP, context);
+      out.writeByte(action != null ? action.ordinal() : -1);
+      out.writeDouble(voltageDropped);
+      out.writeInt(time);
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  //+++++++++++++++Not journaled, see the class comment ++++++++++++++++++//
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) {
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+  }
+}
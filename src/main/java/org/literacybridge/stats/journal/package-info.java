@@ -0,0 +1,8 @@
+package org.literacybridge.stats.journal;
+
+/**
+ * A compact binary journal of the talking book and log file events produced while processing talking books, which can
+ * be replayed to a {@link org.literacybridge.stats.api.TalkingBookDataProcessor} without unzipping or parsing the logs
+ * again.  Flash data, stats files and tbData lines are not journaled, so a processor that needs them still has to
+ * run over the sync directories.  See {@link org.literacybridge.stats.journal.EventJournalWriter} for the format.
+ **/
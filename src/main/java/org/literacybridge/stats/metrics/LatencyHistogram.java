@@ -0,0 +1,80 @@
+package org.literacybridge.stats.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A fixed size histogram of non-negative values, such as latencies in nanoseconds.
+ * <p/>
+ * Like HdrHistogram, values are bucketed by their power of two, with each power of two split into
+ * {@value #SUB_BUCKETS} linear sub-buckets.  So every value is recorded to within 1/{@value #SUB_BUCKETS} of itself,
+ * whatever its magnitude, in a few hundred counters.  Recording is a couple of shifts and an atomic increment, so
+ * it is cheap enough to do per event and safe to do from several threads.
+ */
+public class LatencyHistogram {
+  private static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  private static final int BUCKET_COUNT = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+  private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+
+  public void record(long value) {
+    counts.incrementAndGet(bucketIndex(Math.max(0, value)));
+  }
+
+  public long getTotalCount() {
+    long total = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      total += counts.get(i);
+    }
+    return total;
+  }
+
+  /**
+   * Gets the value at a percentile.  The value returned is the largest that falls in the same bucket as the actual
+   * value, so it is never an underestimate.
+   *
+   * @param percentile the percentile, from 0 to 100
+   * @return the value, or 0 if nothing has been recorded
+   */
+  public long getValueAtPercentile(double percentile) {
+    final long total = getTotalCount();
+    if (total == 0) {
+      return 0;
+    }
+
+    final long rank = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+    long seen = 0;
+    for (int i = 0; i < counts.length(); i++) {
+      seen += counts.get(i);
+      if (seen >= rank) {
+        return highestEquivalentValue(i);
+      }
+    }
+    return highestEquivalentValue(counts.length() - 1);
+  }
+
+  static int bucketIndex(long value) {
+    if (value < SUB_BUCKETS) {
+      return (int) value;
+    }
+    final int exponent = 63 - Long.numberOfLeadingZeros(value);
+    final int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+  }
+
+  static long lowestEquivalentValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    return (long) (SUB_BUCKETS + index % SUB_BUCKETS) << shift;
+  }
+
+  static long highestEquivalentValue(int index) {
+    if (index < SUB_BUCKETS) {
+      return index;
+    }
+    final int shift = index / SUB_BUCKETS - 1;
+    return lowestEquivalentValue(index) + (1L << shift) - 1;
+  }
+}
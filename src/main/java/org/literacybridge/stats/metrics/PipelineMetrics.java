@@ -0,0 +1,90 @@
+package org.literacybridge.stats.metrics;
+
+import org.codehaus.jackson.map.ObjectMapper;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects {@link StageMetrics} for each stage of a run over a stats package, so it can be seen where the time goes.
+ * <p/>
+ * The stages recorded by this library are:
+ * <ul>
+ * <li>{@link #UNZIP}: extracting zipped sync directories, when they are not read in place</li>
+ * <li>{@link #SYNC_DIR}: everything done for one sync directory, including all the stages below</li>
+ * <li>{@link #FLASH_DATA}: loading flashData.bin</li>
+ * <li>{@link #LOG_FILE}: reading and parsing one log file, including the callbacks it makes</li>
+ * <li>{@link #STATS_FILE}: reading one stats file, including the callbacks it makes</li>
+ * <li>{@link #TB_DATA}: reading and parsing one tbData file, including the callbacks it makes</li>
+ * <li>{@link #CALLBACK_PREFIX} followed by a class name: every call made to one registered
+ * TalkingBookDataProcessor (see {@link TimedDataProcessor})</li>
+ * </ul>
+ * <p/>
+ * One instance can be shared by everything in a run, on any number of threads.
+ */
+public class PipelineMetrics {
+  public static final String UNZIP = "unzip";
+  public static final String SYNC_DIR = "syncDir";
+  public static final String FLASH_DATA = "flashData";
+  public static final String LOG_FILE = "logFile";
+  public static final String STATS_FILE = "statsFile";
+  public static final String TB_DATA = "tbData";
+  public static final String CALLBACK_PREFIX = "callback.";
+
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  private final ConcurrentMap<String, StageMetrics> stages = new ConcurrentHashMap<>();
+  private final long startNanos = System.nanoTime();
+
+  /**
+   * Gets the metrics for a stage, creating them the first time.
+   */
+  public StageMetrics stage(String name) {
+    StageMetrics stage = stages.get(name);
+    if (stage == null) {
+      stage = new StageMetrics(name);
+      final StageMetrics existing = stages.putIfAbsent(name, stage);
+      if (existing != null) {
+        stage = existing;
+      }
+    }
+    return stage;
+  }
+
+  /**
+   * Records a run of a stage over a file, from a start time taken with {@link System#nanoTime()}.
+   */
+  public void record(String stage, long startNanos, long bytes, long lines, @Nullable String file) {
+    stage(stage).record(System.nanoTime() - startNanos, bytes, lines, file);
+  }
+
+  /**
+   * @return the report, as a tree of maps with the stages in name order
+   */
+  public Map<String, Object> toReport() {
+    final Map<String, Object> stageReports = new TreeMap<>();
+    for (StageMetrics stage : stages.values()) {
+      stageReports.put(stage.name, stage.toReport());
+    }
+
+    final Map<String, Object> retVal = new LinkedHashMap<>();
+    retVal.put("elapsedMillis", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
+    retVal.put("stages", stageReports);
+    return retVal;
+  }
+
+  public String toJson() throws IOException {
+    return mapper.defaultPrettyPrintingWriter().writeValueAsString(toReport());
+  }
+
+  public void writeReport(File file) throws IOException {
+    mapper.defaultPrettyPrintingWriter().writeValue(file, toReport());
+  }
+}
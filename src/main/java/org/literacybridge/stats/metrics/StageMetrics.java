@@ -0,0 +1,166 @@
+package org.literacybridge.stats.metrics;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Timing and throughput for one stage of the pipeline:  how many times it ran, a histogram of how long each run took,
+ * the bytes and lines it got through, and the slowest files it ran on.
+ * <p/>
+ * Everything but the slowest file list is lock free, so stages that run per event (like the callbacks) can be
+ * recorded from several threads without contention.
+ */
+public class StageMetrics {
+  public static final int SLOWEST_FILES = 10;
+
+  private static final Comparator<FileTiming> FASTEST_FIRST = new Comparator<FileTiming>() {
+    @Override
+    public int compare(FileTiming o1, FileTiming o2) {
+      return Long.compare(o1.nanos, o2.nanos);
+    }
+  };
+
+  public final String name;
+  private final LatencyHistogram histogram = new LatencyHistogram();
+  private final AtomicLong count = new AtomicLong();
+  private final AtomicLong totalNanos = new AtomicLong();
+  private final AtomicLong maxNanos = new AtomicLong();
+  private final AtomicLong bytes = new AtomicLong();
+  private final AtomicLong lines = new AtomicLong();
+
+  //Min-heap, so the fastest of the slowest files is the one that gets dropped
+  private final PriorityQueue<FileTiming> slowestFiles = new PriorityQueue<>(SLOWEST_FILES + 1, FASTEST_FIRST);
+  private volatile long slowestFilesThreshold = 0;
+
+  public StageMetrics(String name) {
+    this.name = name;
+  }
+
+  /**
+   * Records a run that is not tied to a file, such as a single callback.
+   */
+  public void record(long nanos) {
+    count.incrementAndGet();
+    totalNanos.addAndGet(nanos);
+    histogram.record(nanos);
+
+    long max = maxNanos.get();
+    while (nanos > max && !maxNanos.compareAndSet(max, nanos)) {
+      max = maxNanos.get();
+    }
+  }
+
+  /**
+   * Records a run over a file.
+   *
+   * @param nanos     how long it took
+   * @param byteCount bytes read, or 0 if not known
+   * @param lineCount lines read, or 0 if not known
+   * @param file      the file, for the slowest file list.  May be null.
+   */
+  public void record(long nanos, long byteCount, long lineCount, @Nullable String file) {
+    record(nanos);
+    bytes.addAndGet(byteCount);
+    lines.addAndGet(lineCount);
+
+    if (file != null && nanos > slowestFilesThreshold) {
+      synchronized (slowestFiles) {
+        slowestFiles.add(new FileTiming(file, nanos));
+        if (slowestFiles.size() > SLOWEST_FILES) {
+          slowestFiles.poll();
+        }
+        if (slowestFiles.size() == SLOWEST_FILES) {
+          slowestFilesThreshold = slowestFiles.peek().nanos;
+        }
+      }
+    }
+  }
+
+  public long getCount() {
+    return count.get();
+  }
+
+  public long getTotalNanos() {
+    return totalNanos.get();
+  }
+
+  public long getMaxNanos() {
+    return maxNanos.get();
+  }
+
+  public long getBytes() {
+    return bytes.get();
+  }
+
+  public long getLines() {
+    return lines.get();
+  }
+
+  public LatencyHistogram getHistogram() {
+    return histogram;
+  }
+
+  /**
+   * @return the slowest files, slowest first
+   */
+  public List<FileTiming> getSlowestFiles() {
+    final List<FileTiming> retVal;
+    synchronized (slowestFiles) {
+      retVal = new ArrayList<>(slowestFiles);
+    }
+    Collections.sort(retVal, Collections.reverseOrder(FASTEST_FIRST));
+    return retVal;
+  }
+
+  /**
+   * @return the metrics as a tree of maps, ready to be written out as JSON
+   */
+  public Map<String, Object> toReport() {
+    final long runs = getCount();
+    final Map<String, Object> retVal = new LinkedHashMap<>();
+    retVal.put("count", runs);
+    retVal.put("totalMillis", TimeUnit.NANOSECONDS.toMillis(getTotalNanos()));
+    retVal.put("meanMicros", runs > 0 ? TimeUnit.NANOSECONDS.toMicros(getTotalNanos() / runs) : 0);
+    retVal.put("p50Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(50)));
+    retVal.put("p90Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(90)));
+    retVal.put("p99Micros", TimeUnit.NANOSECONDS.toMicros(histogram.getValueAtPercentile(99)));
+    retVal.put("maxMicros", TimeUnit.NANOSECONDS.toMicros(getMaxNanos()));
+    if (getBytes() > 0) {
+      retVal.put("bytes", getBytes());
+    }
+    if (getLines() > 0) {
+      retVal.put("lines", getLines());
+    }
+
+    final List<FileTiming> slowest = getSlowestFiles();
+    if (!slowest.isEmpty()) {
+      final List<Map<String, Object>> files = new ArrayList<>();
+      for (FileTiming timing : slowest) {
+        final Map<String, Object> file = new LinkedHashMap<>();
+        file.put("file", timing.file);
+        file.put("millis", TimeUnit.NANOSECONDS.toMillis(timing.nanos));
+        files.add(file);
+      }
+      retVal.put("slowest", files);
+    }
+    return retVal;
+  }
+
+  public static class FileTiming {
+    public final String file;
+    public final long nanos;
+
+    public FileTiming(String file, long nanos) {
+      this.file = file;
+      this.nanos = nanos;
+    }
+  }
+}
@@ -0,0 +1,248 @@
+package org.literacybridge.stats.metrics;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wraps a TalkingBookDataProcessor, timing every call made to it into the stage
+ * {@link PipelineMetrics#CALLBACK_PREFIX} + the simple name of its class.  The count of the stage is the number of
+ * events the processor was given.
+ */
+public class TimedDataProcessor implements TalkingBookDataProcessor {
+  private final TalkingBookDataProcessor delegate;
+  private final StageMetrics stage;
+
+  public TimedDataProcessor(TalkingBookDataProcessor delegate, PipelineMetrics metrics) {
+    this.delegate = delegate;
+    this.stage = metrics.stage(PipelineMetrics.CALLBACK_PREFIX + delegate.getClass().getSimpleName());
+  }
+
+  /**
+   * Wraps each of a list of processors.
+   *
+   * @return a new list, in the same order
+   */
+  public static List<TalkingBookDataProcessor> wrapAll(List<TalkingBookDataProcessor> processors,
+                                                       PipelineMetrics metrics) {
+    final List<TalkingBookDataProcessor> retVal = new ArrayList<>(processors.size());
+    for (TalkingBookDataProcessor processor : processors) {
+      retVal.add(new TimedDataProcessor(processor, metrics));
+    }
+    return retVal;
+  }
+
+  public TalkingBookDataProcessor getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onTalkingBookStart(context);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onTalkingBookEnd(context);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) throws IOException {
+    final long start = System.nanoTime();
+    try {
+      delegate.processFlashData(context, flashData);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+    final long start = System.nanoTime();
+    try {
+      delegate.processCorruptFlashData(context, flashDataPath, errorMessage);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onPlay(context, contentId, volume, voltage);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onPlayed(context, contentId, secondsPlayed, secondsSomething, volume, voltage, ended);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onCategory(context, categoryId);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onRecord(context, contentId, unknownNumber);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onRecorded(context, secondsRecorded);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onPause(context, contentId);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onUnPause(context, contentId);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onSurvey(context, contentId);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onSurveyCompleted(context, contentId, useful);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onShuttingDown(context);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onVoltageDrop(context, action, voltageDropped, time);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onLogFileStart(String fileName) {
+    final long start = System.nanoTime();
+    try {
+      delegate.onLogFileStart(fileName);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    final long start = System.nanoTime();
+    try {
+      delegate.onLogFileEnd();
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+    final long start = System.nanoTime();
+    try {
+      delegate.processStatsFile(context, contentId, statsFile);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+    final long start = System.nanoTime();
+    try {
+      delegate.markStatsFileAsCorrupted(context, contentId, errorMessage);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+    final long start = System.nanoTime();
+    try {
+      delegate.processTbDataLine(tbDataLine);
+    } finally {
+      stage.record(System.nanoTime() - start);
+    }
+  }
+}
@@ -0,0 +1,6 @@
+package org.literacybridge.stats.metrics;
+
+/**
+ * Timing and throughput metrics for a run over a stats package, broken down by stage, and written out as a JSON
+ * report so slow stages and slow files can be found.
+ **/
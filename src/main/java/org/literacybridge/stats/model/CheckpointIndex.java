@@ -0,0 +1,111 @@
+package org.literacybridge.stats.model;
+
+import org.codehaus.jackson.annotate.JsonCreator;
+import org.codehaus.jackson.annotate.JsonProperty;
+import org.codehaus.jackson.map.ObjectMapper;
+
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * A record of what has already been processed from a stats package, and what its contents were when it was.
+ * <p/>
+ * Each entry maps a key (such as device/deployment/village/talkingBook/syncDir) to a fingerprint of the contents
+ * it had when it was processed.  The index is saved as JSON, so a later run can skip anything whose fingerprint has
+ * not changed.
+ * <p/>
+ * This is safe to update from several threads at once.
+ */
+public class CheckpointIndex {
+
+  public static final int CURRENT_VERSION = 1;
+  private static final ObjectMapper mapper = new ObjectMapper();
+
+  public final int version;
+  private final ConcurrentMap<String, String> fingerprints = new ConcurrentHashMap<>();
+
+  public CheckpointIndex() {
+    this(CURRENT_VERSION, null);
+  }
+
+  @JsonCreator
+  public CheckpointIndex(@JsonProperty(value = "version") int version,
+                         @JsonProperty(value = "fingerprints") Map<String, String> fingerprints) {
+    this.version = version;
+    if (fingerprints != null) {
+      this.fingerprints.putAll(fingerprints);
+    }
+  }
+
+  /**
+   * Loads an index.
+   *
+   * @param indexFile the saved index
+   * @return the index, or an empty index if the file does not exist or was saved by a different version
+   * @throws IOException if the file exists but can not be read
+   */
+  public static CheckpointIndex load(File indexFile) throws IOException {
+    if (!indexFile.exists()) {
+      return new CheckpointIndex();
+    }
+
+    final CheckpointIndex index = mapper.readValue(indexFile, CheckpointIndex.class);
+    return index.version == CURRENT_VERSION ? index : new CheckpointIndex();
+  }
+
+  /**
+   * Saves the index.  The index is written to a temporary file first, so a failure part way through never leaves a
+   * truncated index behind.
+   *
+   * @param indexFile where to save the index
+   * @throws IOException
+   */
+  public void save(File indexFile) throws IOException {
+    final File tempFile = new File(indexFile.getPath() + ".tmp");
+    mapper.writeValue(tempFile, this);
+    Files.move(tempFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * @return every entry, sorted by key so the saved index is stable between runs
+   */
+  @JsonProperty(value = "fingerprints")
+  public Map<String, String> getFingerprints() {
+    return new TreeMap<>(fingerprints);
+  }
+
+  /**
+   * @param key         what is being checked
+   * @param fingerprint its current fingerprint.  Null if it could not be fingerprinted.
+   * @return true if key was recorded with exactly this fingerprint
+   */
+  public boolean isUnchanged(String key, @Nullable String fingerprint) {
+    return fingerprint != null && fingerprint.equals(fingerprints.get(key));
+  }
+
+  /**
+   * Records that key has been processed.
+   *
+   * @param key         what was processed
+   * @param fingerprint its fingerprint.  If this is null, any previous entry is removed instead, so it will always be
+   *                    processed again.
+   */
+  public void record(String key, @Nullable String fingerprint) {
+    if (fingerprint != null) {
+      fingerprints.put(key, fingerprint);
+    } else {
+      fingerprints.remove(key);
+    }
+  }
+
+  public int size() {
+    return fingerprints.size();
+  }
+}
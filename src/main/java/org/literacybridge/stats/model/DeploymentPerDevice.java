@@ -1,8 +1,10 @@
 package org.literacybridge.stats.model;
 
 import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.utils.DirectoryTreeSnapshot;
 import org.literacybridge.utils.FsUtils;
 
+import javax.annotation.Nullable;
 import java.io.File;
 import java.util.Comparator;
 
@@ -51,15 +53,27 @@ public class DeploymentPerDevice {
   }
 
   public File getRoot(File basePath, DirectoryFormat format) {
-    return format == DirectoryFormat.Archive ? getArchiveRoot(basePath) : getSyncRoot(basePath);
+    return getRoot(basePath, format, null);
+  }
+
+  public File getRoot(File basePath, DirectoryFormat format, @Nullable DirectoryTreeSnapshot snapshot) {
+    return format == DirectoryFormat.Archive ? getArchiveRoot(basePath, snapshot) : getSyncRoot(basePath, snapshot);
   }
 
   public File getSyncRoot(File basePath) {
-    return FsUtils.FileIgnoreCase(basePath, DirectoryIterator.UPDATE_ROOT_V1, deployment);
+    return getSyncRoot(basePath, null);
+  }
+
+  public File getSyncRoot(File basePath, @Nullable DirectoryTreeSnapshot snapshot) {
+    return FsUtils.FileIgnoreCase(snapshot, basePath, DirectoryIterator.UPDATE_ROOT_V1, deployment);
   }
 
   public File getArchiveRoot(File basePath) {
-    return FsUtils.FileIgnoreCase(basePath, DirectoryIterator.TALKING_BOOK_ROOT_V2, deployment, device);
+    return getArchiveRoot(basePath, null);
+  }
+
+  public File getArchiveRoot(File basePath, @Nullable DirectoryTreeSnapshot snapshot) {
+    return FsUtils.FileIgnoreCase(snapshot, basePath, DirectoryIterator.TALKING_BOOK_ROOT_V2, deployment, device);
   }
 
 
@@ -0,0 +1,131 @@
+package org.literacybridge.stats.model;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Running counters for a pass over a stats package:  talking books and sync directories visited by the
+ * DirectoryIterator, and log lines and bytes read by whoever processes them.
+ * <p/>
+ * The expected number of sync directories is only known when it comes for free, that is when the iterator had to
+ * list the package to generate a manifest.  Until then, {@link #getEtaMillis()} returns -1.  No extra scan of the
+ * package is ever made just to estimate its size.
+ * <p/>
+ * All the counters are atomic, so one instance can be shared by callbacks running on several threads.
+ */
+public class ProcessingProgress {
+
+  private final AtomicLong talkingBooks = new AtomicLong();
+  private final AtomicLong syncDirs = new AtomicLong();
+  private final AtomicLong logLines = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private volatile long expectedSyncDirs = -1;
+  private volatile long startNanos = System.nanoTime();
+
+  /**
+   * Resets all the counters, and starts the clock again.
+   */
+  public void start() {
+    talkingBooks.set(0);
+    syncDirs.set(0);
+    logLines.set(0);
+    bytesRead.set(0);
+    expectedSyncDirs = -1;
+    startNanos = System.nanoTime();
+  }
+
+  public void addTalkingBook() {
+    talkingBooks.incrementAndGet();
+  }
+
+  public void addSyncDir() {
+    syncDirs.incrementAndGet();
+  }
+
+  public void addLogLines(long lines) {
+    logLines.addAndGet(lines);
+  }
+
+  public void addBytesRead(long bytes) {
+    bytesRead.addAndGet(bytes);
+  }
+
+  /**
+   * Adds to the number of sync directories that are expected in total.
+   *
+   * @param count number of sync directories found
+   */
+  public void addExpectedSyncDirs(long count) {
+    synchronized (this) {
+      expectedSyncDirs = expectedSyncDirs < 0 ? count : expectedSyncDirs + count;
+    }
+  }
+
+  public long getTalkingBooks() {
+    return talkingBooks.get();
+  }
+
+  public long getSyncDirs() {
+    return syncDirs.get();
+  }
+
+  public long getLogLines() {
+    return logLines.get();
+  }
+
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  /**
+   * @return the number of sync directories expected in total, or -1 if it is not known
+   */
+  public long getExpectedSyncDirs() {
+    return expectedSyncDirs;
+  }
+
+  public long getElapsedMillis() {
+    return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos);
+  }
+
+  public double getSyncDirsPerSecond() {
+    return perSecond(getSyncDirs());
+  }
+
+  public double getLogLinesPerSecond() {
+    return perSecond(getLogLines());
+  }
+
+  public double getBytesPerSecond() {
+    return perSecond(getBytesRead());
+  }
+
+  /**
+   * Estimates the time left from the rate sync directories have been processed at so far.
+   *
+   * @return the estimated milliseconds left, or -1 if the total is not known or nothing has been processed yet
+   */
+  public long getEtaMillis() {
+    final long expected = getExpectedSyncDirs();
+    final long done = getSyncDirs();
+    if (expected < 0 || done == 0) {
+      return -1;
+    }
+    return Math.max(0, (expected - done) * getElapsedMillis() / done);
+  }
+
+  private double perSecond(long count) {
+    final long elapsed = getElapsedMillis();
+    return elapsed > 0 ? count * 1000.0 / elapsed : 0;
+  }
+
+  @Override
+  public String toString() {
+    final long expected = getExpectedSyncDirs();
+    final long eta = getEtaMillis();
+    return String.format("%d talking books, %d%s sync dirs (%.1f/s), %d log lines (%.0f/s), %dMB (%.1fMB/s), ETA %s",
+      getTalkingBooks(), getSyncDirs(), expected >= 0 ? "/" + expected : "", getSyncDirsPerSecond(), getLogLines(),
+      getLogLinesPerSecond(), getBytesRead() >> 20, getBytesPerSecond() / (1 << 20),
+      eta >= 0 ? TimeUnit.MILLISECONDS.toSeconds(eta) + "s" : "unknown");
+  }
+}
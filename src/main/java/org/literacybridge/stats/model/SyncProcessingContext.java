@@ -22,6 +22,16 @@ public class SyncProcessingContext extends ProcessingContext {
 
   }
 
+  /**
+   * Creates a context for a sync whose time is already known, rather than parsed from a sync directory name.
+   */
+  public SyncProcessingContext(LocalDateTime syncTime, String talkingBookId, String village, String contentPackage,
+                               String contentUpdate, String deviceSyncedFrom) {
+    super(talkingBookId, village, contentUpdate, deviceSyncedFrom);
+    this.syncTime = syncTime;
+    this.contentPackage = contentPackage;
+  }
+
   @Override
   public boolean equals(Object o) {
     if (this == o) return true;
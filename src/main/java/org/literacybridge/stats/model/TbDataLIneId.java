@@ -33,4 +33,27 @@ public class TbDataLIneId implements Serializable {
   public void setOutSn(String outSn) {
     this.outSn = outSn;
   }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) return true;
+    if (!(o instanceof TbDataLIneId)) return false;
+
+    TbDataLIneId that = (TbDataLIneId) o;
+
+    if (outSn != null ? !outSn.equals(that.outSn) : that.outSn != null) return false;
+    if (project != null ? !project.equals(that.project) : that.project != null) return false;
+    if (updateDateTime != null ? !updateDateTime.equals(that.updateDateTime) : that.updateDateTime != null)
+      return false;
+
+    return true;
+  }
+
+  @Override
+  public int hashCode() {
+    int result = project != null ? project.hashCode() : 0;
+    result = 31 * result + (updateDateTime != null ? updateDateTime.hashCode() : 0);
+    result = 31 * result + (outSn != null ? outSn.hashCode() : 0);
+    return result;
+  }
 }
@@ -0,0 +1,263 @@
+package org.literacybridge.stats.persistence;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLIneId;
+import org.literacybridge.stats.model.TbDataLine;
+import org.literacybridge.stats.model.events.Event;
+import org.literacybridge.stats.model.events.EventUniqueId;
+import org.literacybridge.stats.model.events.PlayedEvent;
+import org.literacybridge.stats.model.events.RecordEvent;
+import org.literacybridge.stats.model.events.SurveyEvent;
+
+import javax.annotation.Nonnull;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Converts the log and tbData callbacks into {@link PlayedEvent}s, {@link RecordEvent}s, {@link SurveyEvent}s and
+ * {@link TbDataLine}s, and writes them to an {@link EventWriter} in batches.
+ * <p/>
+ * Entities are held per type, keyed by their id, so an event logged twice (for instance, a log that was archived and
+ * also left in place) is written once.  A type's batch is written when it reaches the batch size, and everything is
+ * written at the end of each talking book, and by {@link #flush()}.  Since the tbData is processed outside of any
+ * talking book, call {@link #flush()} once processing is done.
+ * <p/>
+ * A RECORD event is held until the RECORDED event that follows it, so it is written with its length.  Log lines
+ * whose prelude could not be parsed have no id, and are counted in {@link #getSkippedEvents()} rather than written.
+ * <p/>
+ * Like the other processors, this is not thread-safe.
+ */
+public class EventPersistenceProcessor implements TalkingBookDataProcessor {
+  public static final int DEFAULT_BATCH_SIZE = 1000;
+
+  public final EventWriter writer;
+  public final int batchSize;
+
+  private final Map<EventUniqueId, PlayedEvent> playedEvents = new LinkedHashMap<>();
+  private final Map<EventUniqueId, RecordEvent> recordEvents = new LinkedHashMap<>();
+  private final Map<EventUniqueId, SurveyEvent> surveyEvents = new LinkedHashMap<>();
+  private final Map<TbDataLIneId, TbDataLine> tbDataLines = new LinkedHashMap<>();
+
+  private RecordEvent pendingRecord;
+  private long skippedEvents = 0;
+
+  public EventPersistenceProcessor(@Nonnull EventWriter writer) {
+    this(writer, DEFAULT_BATCH_SIZE);
+  }
+
+  public EventPersistenceProcessor(@Nonnull EventWriter writer, int batchSize) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("Batch size must be positive: " + batchSize);
+    }
+    this.writer = writer;
+    this.batchSize = batchSize;
+  }
+
+  /**
+   * Writes everything that is being held.
+   */
+  public void flush() {
+    addPendingRecord();
+    flushPlayed();
+    flushRecord();
+    flushSurvey();
+    flushTbData();
+  }
+
+  /**
+   * @return the number of log events that were not written because their log line had no usable prelude
+   */
+  public long getSkippedEvents() {
+    return skippedEvents;
+  }
+
+  /**
+   * Fills in the fields common to all events.
+   *
+   * @return false if the event has no id, and so can not be stored
+   */
+  private boolean populate(LogLineContext context, Event event) {
+    Event.populateEvent(context, event);
+    if (event.getIdFields() == null) {
+      skippedEvents++;
+      return false;
+    }
+    return true;
+  }
+
+  private void addPendingRecord() {
+    if (pendingRecord != null) {
+      recordEvents.put(pendingRecord.getIdFields(), pendingRecord);
+      pendingRecord = null;
+      if (recordEvents.size() >= batchSize) {
+        flushRecord();
+      }
+    }
+  }
+
+  private void flushPlayed() {
+    if (!playedEvents.isEmpty()) {
+      writer.writePlayedEvents(new ArrayList<>(playedEvents.values()));
+      playedEvents.clear();
+    }
+  }
+
+  private void flushRecord() {
+    if (!recordEvents.isEmpty()) {
+      writer.writeRecordEvents(new ArrayList<>(recordEvents.values()));
+      recordEvents.clear();
+    }
+  }
+
+  private void flushSurvey() {
+    if (!surveyEvents.isEmpty()) {
+      writer.writeSurveyEvents(new ArrayList<>(surveyEvents.values()));
+      surveyEvents.clear();
+    }
+  }
+
+  private void flushTbData() {
+    if (!tbDataLines.isEmpty()) {
+      writer.writeTbDataLines(new ArrayList<>(tbDataLines.values()));
+      tbDataLines.clear();
+    }
+  }
+
+  private void addSurvey(LogLineContext context, String contentId, Boolean useful) {
+    final SurveyEvent event = new SurveyEvent();
+    if (populate(context, event)) {
+      event.setContentId(contentId);
+      event.setIsUseful(useful);
+      surveyEvents.put(event.getIdFields(), event);
+      if (surveyEvents.size() >= batchSize) {
+        flushSurvey();
+      }
+    }
+  }
+
+  //+++++++++++++++Directory Processing ++++++++++++++++++//
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+    flush();
+  }
+
+  //+++++++++++++++Processing Log Files ++++++++++++++++++//
+
+  @Override
+  public void onLogFileStart(String fileName) {
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    addPendingRecord();
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    final double percentDone = secondsSomething > 0 ? (double) secondsPlayed / secondsSomething : 0;
+    final PlayedEvent event = new PlayedEvent(contentId, volume, secondsPlayed, secondsSomething, percentDone, ended);
+    if (populate(context, event)) {
+      playedEvents.put(event.getIdFields(), event);
+      if (playedEvents.size() >= batchSize) {
+        flushPlayed();
+      }
+    }
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    addPendingRecord();
+    final RecordEvent event = new RecordEvent();
+    if (populate(context, event)) {
+      event.setContentId(contentId);
+      pendingRecord = event;
+    }
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    if (pendingRecord != null) {
+      pendingRecord.setSecondsRecorded(secondsRecorded);
+      addPendingRecord();
+    }
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    addSurvey(context, contentId, null);
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    addSurvey(context, contentId, useful);
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+  }
+
+  //+++++++++++++++Processing TbData ++++++++++++++++++//
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+    final TbDataLIneId id = new TbDataLIneId();
+    id.setProject(tbDataLine.getProject());
+    id.setUpdateDateTime(tbDataLine.getUpdateDateTime());
+    id.setOutSn(tbDataLine.getOutSn());
+    tbDataLines.put(id, tbDataLine);
+    if (tbDataLines.size() >= batchSize) {
+      flushTbData();
+    }
+  }
+
+  //+++++++++++++++Not persisted ++++++++++++++++++//
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) {
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+  }
+}
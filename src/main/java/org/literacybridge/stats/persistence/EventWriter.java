@@ -0,0 +1,30 @@
+package org.literacybridge.stats.persistence;
+
+import org.literacybridge.stats.model.TbDataLine;
+import org.literacybridge.stats.model.events.PlayedEvent;
+import org.literacybridge.stats.model.events.RecordEvent;
+import org.literacybridge.stats.model.events.SurveyEvent;
+
+import java.util.Collection;
+
+/**
+ * Stores batches of entities for an {@link EventPersistenceProcessor}.
+ * <p/>
+ * Writes must be idempotent:  an entity whose id (its {@link org.literacybridge.stats.model.events.EventUniqueId}, or
+ * {@link org.literacybridge.stats.model.TbDataLIneId} for tbData lines) is already stored replaces the stored one, so
+ * that processing the same stats package twice stores everything once.  With JDBC this is an upsert (MERGE, or
+ * INSERT ... ON CONFLICT) run as a single batch per call.
+ * <p/>
+ * A batch never holds two entities with the same id.  Failures should be thrown as
+ * {@link javax.persistence.PersistenceException}.
+ */
+public interface EventWriter {
+
+  void writePlayedEvents(Collection<PlayedEvent> events);
+
+  void writeRecordEvents(Collection<RecordEvent> events);
+
+  void writeSurveyEvents(Collection<SurveyEvent> events);
+
+  void writeTbDataLines(Collection<TbDataLine> lines);
+}
@@ -0,0 +1,8 @@
+package org.literacybridge.stats.persistence;
+
+/**
+ * Turns the processing callbacks into the JPA entities in the model, and hands them to a store in batches.
+ * <p/>
+ * This jar has no database dependencies, so the store itself (JDBC batches, COPY, an EntityManager...) is an
+ * {@link org.literacybridge.stats.persistence.EventWriter} provided by a layer above this one.
+ **/
@@ -0,0 +1,235 @@
+package org.literacybridge.stats.processors;
+
+import org.literacybridge.stats.api.*;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import javax.annotation.Nonnull;
+
+/**
+ * Adapts a {@link LogEventBatchProcessor} to the per-event {@link TalkingBookDataProcessor} callbacks.
+ * <p/>
+ * Log events are copied into typed, columnar batches, which are handed to the batch processor whenever one fills up
+ * and at the end of every log file.  The batches are allocated once, up front, and reused for the life of this
+ * processor.
+ * <p/>
+ * Only the log file callbacks are batched.  The flash data, stats file and tbData callbacks are ignored, so register
+ * another TalkingBookDataProcessor next to this one if they are needed.
+ * <p/>
+ * Like the other processors, this is not thread-safe.
+ */
+public class BatchingDataProcessor implements TalkingBookDataProcessor {
+
+  public static final int DEFAULT_BATCH_SIZE = 1024;
+
+  public final LogEventBatchProcessor batchProcessor;
+
+  private final PlayEventBatch playBatch;
+  private final PlayedEventBatch playedBatch;
+  private final RecordEventBatch recordBatch;
+  private final ActionEventBatch actionBatch;
+  private final VoltageDropEventBatch voltageDropBatch;
+
+  public BatchingDataProcessor(@Nonnull LogEventBatchProcessor batchProcessor) {
+    this(batchProcessor, DEFAULT_BATCH_SIZE);
+  }
+
+  public BatchingDataProcessor(@Nonnull LogEventBatchProcessor batchProcessor, int batchSize) {
+    this.batchProcessor = batchProcessor;
+    playBatch = new PlayEventBatch(batchSize);
+    playedBatch = new PlayedEventBatch(batchSize);
+    recordBatch = new RecordEventBatch(batchSize);
+    actionBatch = new ActionEventBatch(batchSize);
+    voltageDropBatch = new VoltageDropEventBatch(batchSize);
+  }
+
+  /**
+   * Hands every non-empty batch to the batch processor.
+   */
+  public void flush() {
+    flushPlay();
+    flushPlayed();
+    flushRecord();
+    flushAction();
+    flushVoltageDrop();
+  }
+
+  //+++++++++++++++Processing Log Files ++++++++++++++++++//
+
+  @Override
+  public void onLogFileStart(String fileName) {
+    batchProcessor.onLogFileStart(fileName);
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    flush();
+    batchProcessor.onLogFileEnd();
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+    playBatch.add(context, contentId, volume, voltage);
+    if (playBatch.isFull()) {
+      flushPlay();
+    }
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    playedBatch.add(context, contentId, secondsPlayed, secondsSomething, volume, voltage, ended);
+    if (playedBatch.isFull()) {
+      flushPlayed();
+    }
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    recordBatch.addRecord(context, contentId, unknownNumber);
+    if (recordBatch.isFull()) {
+      flushRecord();
+    }
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    recordBatch.addRecorded(context, secondsRecorded);
+    if (recordBatch.isFull()) {
+      flushRecord();
+    }
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+    addAction(context, LogAction.category, categoryId);
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+    addAction(context, LogAction.paused, contentId);
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+    addAction(context, LogAction.unpaused, contentId);
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    addAction(context, LogAction.survey, contentId);
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    actionBatch.addSurveyCompleted(context, contentId, useful);
+    if (actionBatch.isFull()) {
+      flushAction();
+    }
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+    addAction(context, LogAction.shuttingDown, null);
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+    voltageDropBatch.add(context, action, voltageDropped, time);
+    if (voltageDropBatch.isFull()) {
+      flushVoltageDrop();
+    }
+  }
+
+  private void addAction(LogLineContext context, LogAction action, String id) {
+    actionBatch.add(context, action, id);
+    if (actionBatch.isFull()) {
+      flushAction();
+    }
+  }
+
+  private void flushPlay() {
+    if (!playBatch.isEmpty()) {
+      try {
+        batchProcessor.onPlayBatch(playBatch);
+      } finally {
+        playBatch.clear();
+      }
+    }
+  }
+
+  private void flushPlayed() {
+    if (!playedBatch.isEmpty()) {
+      try {
+        batchProcessor.onPlayedBatch(playedBatch);
+      } finally {
+        playedBatch.clear();
+      }
+    }
+  }
+
+  private void flushRecord() {
+    if (!recordBatch.isEmpty()) {
+      try {
+        batchProcessor.onRecordBatch(recordBatch);
+      } finally {
+        recordBatch.clear();
+      }
+    }
+  }
+
+  private void flushAction() {
+    if (!actionBatch.isEmpty()) {
+      try {
+        batchProcessor.onActionBatch(actionBatch);
+      } finally {
+        actionBatch.clear();
+      }
+    }
+  }
+
+  private void flushVoltageDrop() {
+    if (!voltageDropBatch.isEmpty()) {
+      try {
+        batchProcessor.onVoltageDropBatch(voltageDropBatch);
+      } finally {
+        voltageDropBatch.clear();
+      }
+    }
+  }
+
+  //+++++++++++++++Not Batched ++++++++++++++++++//
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+  }
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) {
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+  }
+}
@@ -0,0 +1,254 @@
+package org.literacybridge.stats.processors;
+
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.hash.HashingInputStream;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.io.FileUtils;
+import org.literacybridge.stats.api.DirectoryCallbacks;
+import org.literacybridge.stats.api.SyncDirectoryCallbacks;
+import org.literacybridge.stats.formats.syncDirectory.FileSyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.ZipSyncDirectory;
+import org.literacybridge.stats.model.*;
+import org.literacybridge.utils.FsUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A processor that wraps another processor, and only passes on the sync directories and tbData files that have
+ * changed since the last run.
+ * <p/>
+ * Everything that is passed on is fingerprinted with a SHA-256 of its contents, and recorded in a
+ * {@link CheckpointIndex}.  Sync directories are keyed by device/deployment/village/talkingBook/syncDir, and tbData
+ * files by their path within the stats package.  The index is saved when processing ends, so if a run fails part way
+ * through, the next run will redo all of it.
+ * <p/>
+ * Everything else, including the start and end calls for devices, villages and talking books, is always passed on.
+ * <p/>
+ * Zipped sync directories are fingerprinted by the zip itself.  If the wrapped callbacks can not read a
+ * {@link SyncDirectory}, changed zips are extracted in place (and the zip deleted) exactly as the DirectoryIterator
+ * does for them, and the extracted directory is what gets fingerprinted.
+ */
+public class CheckpointingProcessor extends AbstractDirectoryProcessor implements SyncDirectoryCallbacks {
+
+  protected static final Logger logger = LoggerFactory.getLogger(CheckpointingProcessor.class);
+
+  public final DirectoryCallbacks callbacks;
+  public final CheckpointIndex index;
+  public final File indexFile;
+  private int skippedSyncDirs = 0;
+  private int skippedTbDataFiles = 0;
+
+  /**
+   * Creates a processor that loads its index from indexFile, and saves it back there when processing ends.
+   */
+  public CheckpointingProcessor(@Nonnull DirectoryCallbacks callbacks, @Nonnull File indexFile) throws IOException {
+    this(callbacks, CheckpointIndex.load(indexFile), indexFile);
+  }
+
+  /**
+   * @param callbacks callbacks to pass changed data on to
+   * @param index     the index of what has already been processed.  This is updated as processing goes.
+   * @param indexFile where to save the index when processing ends, or null if it should not be saved
+   */
+  public CheckpointingProcessor(@Nonnull DirectoryCallbacks callbacks, @Nonnull CheckpointIndex index,
+                                @Nullable File indexFile) {
+    this.callbacks = callbacks;
+    this.index = index;
+    this.indexFile = indexFile;
+  }
+
+  public int getSkippedSyncDirs() {
+    return skippedSyncDirs;
+  }
+
+  public int getSkippedTbDataFiles() {
+    return skippedTbDataFiles;
+  }
+
+  @Override
+  public boolean startProcessing(File root, StatsPackageManifest manifest, DirectoryFormat format) throws Exception {
+    super.startProcessing(root, manifest, format);
+    return callbacks.startProcessing(root, manifest, format);
+  }
+
+  @Override
+  public void endProcessing() throws Exception {
+    callbacks.endProcessing();
+    if (indexFile != null) {
+      index.save(indexFile);
+    }
+    logger.info("Skipped " + skippedSyncDirs + " unchanged sync directories and " + skippedTbDataFiles +
+      " unchanged tbData files.");
+    super.endProcessing();
+  }
+
+  @Override
+  public boolean startDeviceOperationalData(String device) {
+    return callbacks.startDeviceOperationalData(device);
+  }
+
+  @Override
+  public void endDeviceOperationalData() {
+    callbacks.endDeviceOperationalData();
+  }
+
+  @Override
+  public void processTbDataFile(File tbdataFile, boolean includesHeaders) throws IOException {
+    final String key = "tbData/" + currRoot.toURI().relativize(tbdataFile.toURI()).getPath();
+    final String fingerprint = fingerprint(tbdataFile);
+    if (index.isUnchanged(key, fingerprint)) {
+      skippedTbDataFiles++;
+      logger.debug("Skipping unchanged " + key);
+      return;
+    }
+
+    callbacks.processTbDataFile(tbdataFile, includesHeaders);
+    index.record(key, fingerprint);
+  }
+
+  @Override
+  public void processTbLoaderLogFile(File logFile) throws IOException {
+    callbacks.processTbLoaderLogFile(logFile);
+  }
+
+  @Override
+  public boolean startDeviceDeployment(DeploymentPerDevice deploymentPerDevice) throws Exception {
+    super.startDeviceDeployment(deploymentPerDevice);
+    return callbacks.startDeviceDeployment(deploymentPerDevice);
+  }
+
+  @Override
+  public void endDeviceDeployment() throws Exception {
+    callbacks.endDeviceDeployment();
+    super.endDeviceDeployment();
+  }
+
+  @Override
+  public boolean startVillage(String village) throws Exception {
+    super.startVillage(village);
+    return callbacks.startVillage(village);
+  }
+
+  @Override
+  public void endVillage() throws Exception {
+    callbacks.endVillage();
+    super.endVillage();
+  }
+
+  @Override
+  public boolean startTalkingBook(String talkingBook) throws Exception {
+    super.startTalkingBook(talkingBook);
+    return callbacks.startTalkingBook(talkingBook);
+  }
+
+  @Override
+  public void endTalkingBook() {
+    callbacks.endTalkingBook();
+    super.endTalkingBook();
+  }
+
+  @Override
+  public void processSyncDir(SyncDirId syncDirId, File syncDir) throws Exception {
+    final String key = syncDirKey(syncDirId);
+    final String fingerprint = fingerprint(new FileSyncDirectory(syncDir));
+    if (!skipSyncDir(key, fingerprint)) {
+      callbacks.processSyncDir(syncDirId, syncDir);
+      index.record(key, fingerprint);
+    }
+  }
+
+  @Override
+  public void processSyncDir(SyncDirId syncDirId, SyncDirectory syncDir) throws Exception {
+    if (!(callbacks instanceof SyncDirectoryCallbacks)) {
+      processSyncDir(syncDirId, syncDir instanceof ZipSyncDirectory ?
+        extract((ZipSyncDirectory) syncDir) : ((FileSyncDirectory) syncDir).root);
+      return;
+    }
+
+    final String key = syncDirKey(syncDirId);
+    final String fingerprint = fingerprint(syncDir);
+    if (!skipSyncDir(key, fingerprint)) {
+      ((SyncDirectoryCallbacks) callbacks).processSyncDir(syncDirId, syncDir);
+      index.record(key, fingerprint);
+    }
+  }
+
+  private boolean skipSyncDir(String key, String fingerprint) {
+    if (index.isUnchanged(key, fingerprint)) {
+      skippedSyncDirs++;
+      logger.debug("Skipping unchanged " + key);
+      return true;
+    }
+    return false;
+  }
+
+  protected String syncDirKey(SyncDirId syncDirId) {
+    return currDeploymentPerDevice.device + "/" + currDeploymentPerDevice.deployment + "/" + currVillage + "/" +
+      currTalkingBook + "/" + syncDirId.dirName;
+  }
+
+  /**
+   * Fingerprints a sync directory.  Subclasses can override this to use something cheaper than hashing the
+   * contents, such as sizes and modification times.
+   *
+   * @param syncDir the sync directory
+   * @return the fingerprint, or null if this kind of sync directory can not be fingerprinted (in which case it will
+   * always be processed)
+   * @throws IOException
+   */
+  @Nullable
+  protected String fingerprint(SyncDirectory syncDir) throws IOException {
+    if (syncDir instanceof ZipSyncDirectory) {
+      return fingerprint(((ZipSyncDirectory) syncDir).zipFile);
+    } else if (syncDir instanceof FileSyncDirectory) {
+      final File root = ((FileSyncDirectory) syncDir).root;
+      final List<File> files = new ArrayList<>(FileUtils.listFiles(root, null, true));
+      Collections.sort(files);
+
+      final Hasher hasher = Hashing.sha256().newHasher();
+      for (File file : files) {
+        hasher.putString(root.toURI().relativize(file.toURI()).getPath(), Charsets.UTF_8);
+        hasher.putString(fingerprint(file), Charsets.UTF_8);
+      }
+      return hasher.hash().toString();
+    }
+    return null;
+  }
+
+  protected String fingerprint(File file) throws IOException {
+    try (HashingInputStream his = FsUtils.createSHAStream(new BufferedInputStream(new FileInputStream(file)))) {
+      ByteStreams.copy(his, ByteStreams.nullOutputStream());
+      return his.hash().toString();
+    }
+  }
+
+  /**
+   * Extracts a sync zip next to itself and deletes the zip, the same way the DirectoryIterator does for callbacks
+   * that can not read zips in place.
+   */
+  private static File extract(ZipSyncDirectory syncZip) throws IOException {
+    final File talkingBookDir = syncZip.zipFile.getParentFile();
+    final File folder = new File(talkingBookDir, syncZip.getName());
+    if (folder.isDirectory()) {
+      FileUtils.deleteDirectory(folder);
+    }
+
+    syncZip.close();
+    FsUtils.unzip(syncZip.zipFile, talkingBookDir);
+    syncZip.zipFile.delete();
+    return folder;
+  }
+}
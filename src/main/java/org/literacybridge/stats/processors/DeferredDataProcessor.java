@@ -0,0 +1,57 @@
+package org.literacybridge.stats.processors;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+
+import java.io.IOException;
+
+/**
+ * Records the calls made to a TalkingBookDataProcessor, so they can be replayed to the real processor later, on
+ * another thread.  This is how processors that are not thread-safe are given the events of talking books that were
+ * processed in parallel.
+ * <p/>
+ * The calls are recorded by a {@link RecordingDataProcessor}, so each one is kept as a typed event and replayed with
+ * a direct call.
+ */
+public class DeferredDataProcessor {
+
+  private final TalkingBookDataProcessor target;
+  private final RecordingDataProcessor recorder = new RecordingDataProcessor();
+
+  /**
+   * @param target the processor the calls will eventually be replayed to
+   */
+  public DeferredDataProcessor(TalkingBookDataProcessor target) {
+    this.target = target;
+  }
+
+  public TalkingBookDataProcessor getTarget() {
+    return target;
+  }
+
+  /**
+   * @return the processor to hand out in place of the target.  Every call made to it is recorded.
+   */
+  public TalkingBookDataProcessor getRecorder() {
+    return recorder;
+  }
+
+  public int size() {
+    return recorder.size();
+  }
+
+  /**
+   * Makes all the recorded calls on the target, in the order they were recorded, and forgets them.
+   *
+   * @throws IllegalStateException if the target throws a checked exception, which is only possible from
+   *                               processFlashData
+   */
+  public void replay() {
+    try {
+      recorder.replayTo(target);
+    } catch (IOException e) {
+      throw new IllegalStateException("Could not replay event to " + target, e);
+    } finally {
+      recorder.clear();
+    }
+  }
+}
@@ -0,0 +1,23 @@
+package org.literacybridge.stats.processors;
+
+import org.literacybridge.stats.api.ProgressListener;
+import org.literacybridge.stats.model.ProcessingProgress;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes progress reports to the log at info level.
+ */
+public class LoggingProgressListener implements ProgressListener {
+  protected static final Logger logger = LoggerFactory.getLogger(LoggingProgressListener.class);
+
+  @Override
+  public void onProgress(ProcessingProgress progress) {
+    logger.info("Progress: " + progress);
+  }
+
+  @Override
+  public void onFinished(ProcessingProgress progress) {
+    logger.info("Finished in " + progress.getElapsedMillis() / 1000 + "s: " + progress);
+  }
+}
@@ -0,0 +1,290 @@
+package org.literacybridge.stats.processors;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Records every callback made to it as a typed event, so the same calls can be made on other processors later, in
+ * the same order.  Each event keeps its arguments as fields, so nothing is boxed and replaying is a direct call.
+ * <p/>
+ * All the event arguments (contexts, FlashData, StatsFiles, TbDataLines) are immutable once they are handed out, so
+ * they are kept as they are, without copying.  Like the other processors, this is not thread-safe.
+ */
+public class RecordingDataProcessor implements TalkingBookDataProcessor {
+
+  private final List<Event> events = new ArrayList<>();
+
+  public int size() {
+    return events.size();
+  }
+
+  public void clear() {
+    events.clear();
+  }
+
+  /**
+   * Replaces a content id in every recorded event that has one.  The placeholder is compared by identity.
+   *
+   * @param placeholder the content id that was recorded
+   * @param contentId   the content id to replay in its place
+   */
+  public void replaceContentId(String placeholder, String contentId) {
+    for (Event event : events) {
+      if (event instanceof ContentEvent && ((ContentEvent) event).contentId == placeholder) {
+        ((ContentEvent) event).contentId = contentId;
+      }
+    }
+  }
+
+  /**
+   * Makes all the recorded calls on a processor, in the order they were recorded.
+   */
+  public void replayTo(TalkingBookDataProcessor target) throws IOException {
+    replayTo(Collections.singletonList(target));
+  }
+
+  /**
+   * Makes all the recorded calls on each of the processors.  Each event is given to every processor before the next
+   * event is, just as if they had all been called directly.
+   */
+  public void replayTo(List<TalkingBookDataProcessor> targets) throws IOException {
+    for (Event event : events) {
+      for (TalkingBookDataProcessor target : targets) {
+        event.replayTo(target);
+      }
+    }
+  }
+
+  @Override
+  public void onTalkingBookStart(final ProcessingContext context) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onTalkingBookStart(context);
+      }
+    });
+  }
+
+  @Override
+  public void onTalkingBookEnd(final ProcessingContext context) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onTalkingBookEnd(context);
+      }
+    });
+  }
+
+  @Override
+  public void processFlashData(final SyncProcessingContext context, final FlashData flashData) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) throws IOException {
+        target.processFlashData(context, flashData);
+      }
+    });
+  }
+
+  @Override
+  public void processCorruptFlashData(final SyncProcessingContext context, final String flashDataPath,
+                                      final String errorMessage) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.processCorruptFlashData(context, flashDataPath, errorMessage);
+      }
+    });
+  }
+
+  @Override
+  public void onPlay(final LogLineContext context, String contentId, final int volume, final double voltage) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onPlay(context, this.contentId, volume, voltage);
+      }
+    });
+  }
+
+  @Override
+  public void onPlayed(final LogLineContext context, String contentId, final short secondsPlayed,
+                       final short secondsSomething, final int volume, final double voltage, final boolean ended) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onPlayed(context, this.contentId, secondsPlayed, secondsSomething, volume, voltage, ended);
+      }
+    });
+  }
+
+  @Override
+  public void onCategory(final LogLineContext context, final String categoryId) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onCategory(context, categoryId);
+      }
+    });
+  }
+
+  @Override
+  public void onRecord(final LogLineContext context, String contentId, final int unknownNumber) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onRecord(context, this.contentId, unknownNumber);
+      }
+    });
+  }
+
+  @Override
+  public void onRecorded(final LogLineContext context, final int secondsRecorded) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onRecorded(context, secondsRecorded);
+      }
+    });
+  }
+
+  @Override
+  public void onPause(final LogLineContext context, String contentId) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onPause(context, this.contentId);
+      }
+    });
+  }
+
+  @Override
+  public void onUnPause(final LogLineContext context, String contentId) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onUnPause(context, this.contentId);
+      }
+    });
+  }
+
+  @Override
+  public void onSurvey(final LogLineContext context, String contentId) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onSurvey(context, this.contentId);
+      }
+    });
+  }
+
+  @Override
+  public void onSurveyCompleted(final LogLineContext context, String contentId, final boolean useful) {
+    events.add(new ContentEvent(contentId) {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onSurveyCompleted(context, this.contentId, useful);
+      }
+    });
+  }
+
+  @Override
+  public void onShuttingDown(final LogLineContext context) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onShuttingDown(context);
+      }
+    });
+  }
+
+  @Override
+  public void onVoltageDrop(final LogLineContext context, final LogAction action, final double voltageDropped,
+                            final int time) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onVoltageDrop(context, action, voltageDropped, time);
+      }
+    });
+  }
+
+  @Override
+  public void onLogFileStart(final String fileName) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onLogFileStart(fileName);
+      }
+    });
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.onLogFileEnd();
+      }
+    });
+  }
+
+  @Override
+  public void processStatsFile(final SyncProcessingContext context, final String contentId, final StatsFile statsFile) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.processStatsFile(context, contentId, statsFile);
+      }
+    });
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(final SyncProcessingContext context, final String contentId,
+                                       final String errorMessage) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.markStatsFileAsCorrupted(context, contentId, errorMessage);
+      }
+    });
+  }
+
+  @Override
+  public void processTbDataLine(final TbDataLine tbDataLine) {
+    events.add(new Event() {
+      @Override
+      void replayTo(TalkingBookDataProcessor target) {
+        target.processTbDataLine(tbDataLine);
+      }
+    });
+  }
+
+  /**
+   * One recorded callback, with its arguments.
+   */
+  private static abstract class Event {
+    abstract void replayTo(TalkingBookDataProcessor target) throws IOException;
+  }
+
+  /**
+   * A recorded log event about a piece of content, whose content id can be filled in after it was recorded.
+   */
+  private static abstract class ContentEvent extends Event {
+    String contentId;
+
+    ContentEvent(String contentId) {
+      this.contentId = contentId;
+    }
+  }
+}
@@ -3,6 +3,7 @@ package org.literacybridge.stats.processors;
 import com.google.common.collect.Sets;
 import org.apache.commons.io.FileUtils;
 import org.joda.time.LocalDateTime;
+import org.literacybridge.stats.formats.tbData.TbDataLineHandler;
 import org.literacybridge.stats.formats.tbData.TbDataParser;
 import org.literacybridge.stats.model.*;
 import org.literacybridge.stats.model.validation.*;
@@ -44,15 +45,15 @@ public class ValidatingProcessor extends AbstractDirectoryProcessor {
 
 
   @Override
-  public void processTbDataFile(File tbdataFile, boolean includesHeaders) throws IOException {
+  public void processTbDataFile(final File tbdataFile, boolean includesHeaders) throws IOException {
 
-    int lineNumber = 1;
-    List<IncorrectFilePropertyValue> incorrectFilePropertyValues = new ArrayList<>();
-    final List<TbDataLine> tbDataLines = tbDataParser.parseTbDataFile(tbdataFile, includesHeaders);
-
-    for (TbDataLine tbDataLine : tbDataLines) {
-      processLine(tbDataLine, tbdataFile, lineNumber, incorrectFilePropertyValues);
-    }
+    final List<IncorrectFilePropertyValue> incorrectFilePropertyValues = new ArrayList<>();
+    tbDataParser.parseTbDataFile(tbdataFile, includesHeaders, new TbDataLineHandler() {
+      @Override
+      public void onTbDataLine(TbDataLine tbDataLine, int lineNumber) {
+        processLine(tbDataLine, tbdataFile, lineNumber, incorrectFilePropertyValues);
+      }
+    });
 
     if (!incorrectFilePropertyValues.isEmpty()) {
       validationErrors.add(new TbDataHasInvalidProperties(tbdataFile, incorrectFilePropertyValues));
@@ -0,0 +1,192 @@
+package org.literacybridge.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+
+/**
+ * A snapshot of the names, types and sizes of everything under a directory, taken with a single walk of the tree.
+ * <p/>
+ * Answering exists/isDirectory/listFiles from the snapshot avoids repeating the same metadata calls over and over,
+ * which is where most of the time goes when the tree is on network storage.  The methods mirror their
+ * {@link File} equivalents.  Files outside the snapshot's root are passed straight through to the file system, so
+ * it is always safe to ask.
+ * <p/>
+ * The snapshot is not updated, so it must not be used for parts of the tree that are changed after it is taken.
+ * Once taken, it is safe to share between threads.
+ */
+public class DirectoryTreeSnapshot {
+
+  private final File root;
+  private final String rootPath;
+  private final Map<String, Entry> entries = new HashMap<>();
+
+  private DirectoryTreeSnapshot(File root) {
+    this.root = root;
+    this.rootPath = root.getAbsolutePath();
+  }
+
+  /**
+   * Takes a snapshot of a directory tree.  Symbolic links are followed, as they would be by {@link File}.
+   *
+   * @param root the directory to take a snapshot of
+   * @return the snapshot
+   * @throws IOException if the tree can not be walked
+   */
+  public static DirectoryTreeSnapshot walk(File root) throws IOException {
+    final DirectoryTreeSnapshot snapshot = new DirectoryTreeSnapshot(root);
+    Files.walkFileTree(root.toPath(), EnumSet.of(FileVisitOption.FOLLOW_LINKS), Integer.MAX_VALUE,
+      new SimpleFileVisitor<Path>() {
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+          snapshot.add(dir.toFile(), attrs);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+          snapshot.add(file.toFile(), attrs);
+          return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) {
+          //Unreadable entries are left out, just as listFiles would leave out the contents of an unreadable directory
+          return FileVisitResult.CONTINUE;
+        }
+      });
+    return snapshot;
+  }
+
+  private void add(File file, BasicFileAttributes attrs) {
+    final String path = file.getAbsolutePath();
+    entries.put(path, new Entry(attrs.isDirectory(), attrs.size()));
+
+    if (!path.equals(rootPath)) {
+      final Entry parent = entries.get(file.getParentFile().getAbsolutePath());
+      if (parent != null) {
+        parent.addChild(file);
+      }
+    }
+  }
+
+  public File getRoot() {
+    return root;
+  }
+
+  /**
+   * @return true if the snapshot knows about this file, that is if it is the root or somewhere under it
+   */
+  public boolean covers(File file) {
+    final String path = file.getAbsolutePath();
+    return path.startsWith(rootPath) &&
+      (path.length() == rootPath.length() || path.charAt(rootPath.length()) == File.separatorChar);
+  }
+
+  public boolean exists(File file) {
+    return covers(file) ? entries.containsKey(file.getAbsolutePath()) : file.exists();
+  }
+
+  public boolean isDirectory(File file) {
+    if (!covers(file)) {
+      return file.isDirectory();
+    }
+    final Entry entry = entries.get(file.getAbsolutePath());
+    return entry != null && entry.directory;
+  }
+
+  public boolean isFile(File file) {
+    if (!covers(file)) {
+      return file.isFile();
+    }
+    final Entry entry = entries.get(file.getAbsolutePath());
+    return entry != null && !entry.directory;
+  }
+
+  /**
+   * @return the length of the file, or 0 if it does not exist
+   */
+  public long length(File file) {
+    if (!covers(file)) {
+      return file.length();
+    }
+    final Entry entry = entries.get(file.getAbsolutePath());
+    return entry != null ? entry.size : 0;
+  }
+
+  /**
+   * @return the files directly within dir, in the order they were found, or null if dir is not a directory
+   */
+  public File[] listFiles(File dir) {
+    if (!covers(dir)) {
+      return dir.listFiles();
+    }
+    final Entry entry = entries.get(dir.getAbsolutePath());
+    if (entry == null || !entry.directory) {
+      return null;
+    }
+
+    final File[] retVal = new File[entry.children.size()];
+    int i = 0;
+    for (String name : entry.children) {
+      retVal[i++] = new File(dir, name);
+    }
+    return retVal;
+  }
+
+  /**
+   * The snapshot version of {@link FsUtils#FileIgnoreCase(File, String...)}.  Each path component is used as is if
+   * it exists, and otherwise replaced by the first entry whose name matches it ignoring case.
+   */
+  public File fileIgnoreCase(File parent, String... pathToChild) {
+    File file = parent;
+    for (String child : pathToChild) {
+      file = fileIgnoreCase(file, child);
+    }
+    return file;
+  }
+
+  private File fileIgnoreCase(File parent, String child) {
+    final File retVal = new File(parent, child);
+    if (!covers(parent)) {
+      return FsUtils.FileIgnoreCase(parent, child);
+    }
+
+    final Entry entry = entries.get(parent.getAbsolutePath());
+    if (entry == null || entry.children.contains(child)) {
+      return retVal;
+    }
+
+    final String match = entry.foldedChildren.get(fold(child));
+    return match != null ? new File(parent, match) : retVal;
+  }
+
+  private static String fold(String name) {
+    return name.toLowerCase(Locale.ROOT);
+  }
+
+  private static class Entry {
+    final boolean directory;
+    final long size;
+    final Set<String> children;
+    final Map<String, String> foldedChildren;
+
+    Entry(boolean directory, long size) {
+      this.directory = directory;
+      this.size = size;
+      this.children = directory ? new LinkedHashSet<String>() : Collections.<String>emptySet();
+      this.foldedChildren = directory ? new HashMap<String, String>() : Collections.<String, String>emptyMap();
+    }
+
+    void addChild(File child) {
+      final String name = child.getName();
+      children.add(name);
+      final String folded = fold(name);
+      if (!foldedChildren.containsKey(folded)) {
+        foldedChildren.put(folded, name);
+      }
+    }
+  }
+}
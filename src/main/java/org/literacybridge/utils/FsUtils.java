@@ -3,16 +3,21 @@ package org.literacybridge.utils;
 import com.google.common.hash.Hashing;
 import com.google.common.hash.HashingInputStream;
 import com.google.common.io.CountingInputStream;
-import org.apache.commons.compress.utils.IOUtils;
 
+import javax.annotation.Nullable;
 import java.io.*;
 import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.Set;
 import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
 import java.util.zip.ZipFile;
 
 /**
  */
 public class FsUtils {
+  static final int UNZIP_BUFFER_SIZE = 64 * 1024;
+
   public static final String FsAgnostify(String fsPath) {
     return fsPath.replace('/', File.separatorChar);
   }
@@ -67,6 +72,14 @@ public class FsUtils {
         return file;
     }
 
+    /**
+     * Like {@link #FileIgnoreCase(File, String...)}, but answered from a snapshot of the tree if there is one.
+     * @param snapshot Snapshot of the tree, or null to go to the file system.
+     */
+    public static final File FileIgnoreCase(@Nullable DirectoryTreeSnapshot snapshot, File parent, String... pathToChild) {
+        return snapshot != null ? snapshot.fileIgnoreCase(parent, pathToChild) : FileIgnoreCase(parent, pathToChild);
+    }
+
   public static HashingInputStream createSHAStream(InputStream is) {
     return new HashingInputStream(Hashing.sha256(), is);
   }
@@ -76,28 +89,79 @@ public class FsUtils {
   }
 
 
+  /**
+   * Extracts every file in a zip under a directory, keeping the modification times of the entries.
+   */
   public static void unzip(File zipFile, File rootDir) throws IOException {
-    ZipFile zip = new ZipFile(zipFile);
-    Enumeration<ZipEntry> entries = (Enumeration<ZipEntry>) zip.entries();
-    while (entries.hasMoreElements()) {
-      ZipEntry entry = entries.nextElement();
-      java.io.File f = new java.io.File(rootDir, entry.getName());
-      if (entry.isDirectory()) {
-        continue;
-      }
+    unzipCountingBytes(zipFile, rootDir);
+  }
 
-      File parentFile = f.getParentFile();
-      if (!parentFile.exists()) {
-        parentFile.mkdirs();
+  /**
+   * Same as {@link #unzip(File, File)}, for callers that keep track of how much was extracted.
+   *
+   * @return the number of bytes extracted
+   */
+  public static long unzipCountingBytes(File zipFile, File rootDir) throws IOException {
+    final byte[] buffer = new byte[UNZIP_BUFFER_SIZE];
+    final Set<File> createdDirs = new HashSet<>();
+    final String rootPath = rootPath(rootDir);
+    long bytes = 0;
+    try (ZipFile zip = new ZipFile(zipFile)) {
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        final File f = unzippedFile(rootDir, rootPath, entry, createdDirs);
+        bytes += unzipEntry(zip, entry, f, buffer);
       }
+    }
+    return bytes;
+  }
+
+  /**
+   * @return the canonical path every file extracted under a directory has to start with
+   */
+  static String rootPath(File rootDir) throws IOException {
+    return rootDir.getCanonicalPath() + File.separator;
+  }
+
+  /**
+   * Works out where an entry is extracted to, and makes sure its directory exists.
+   *
+   * @param rootPath    the {@link #rootPath(File)} of the root directory, worked out once per extraction
+   * @param createdDirs the directories already made for this extraction, so each is only checked once
+   * @throws IOException if the entry's name would put it outside of the root directory
+   */
+  static File unzippedFile(File rootDir, String rootPath, ZipEntry entry, Set<File> createdDirs) throws IOException {
+    final File f = new File(rootDir, entry.getName());
+    if (!f.getCanonicalPath().startsWith(rootPath)) {
+      throw new ZipException("Entry " + entry.getName() + " is outside of " + rootDir);
+    }
 
-      BufferedInputStream bis = new BufferedInputStream(zip.getInputStream(entry)); // get the input stream
-      BufferedOutputStream bos = new BufferedOutputStream(new FileOutputStream(f));
-      IOUtils.copy(bis, bos);
+    final File parentFile = f.getParentFile();
+    if (createdDirs.add(parentFile) && !parentFile.isDirectory() && !parentFile.mkdirs()) {
+      throw new IOException("Could not create " + parentFile);
+    }
+    return f;
+  }
 
-      f.setLastModified(entry.getTime());
-      bos.close();
-      bis.close();
+  /**
+   * Copies one entry of a zip to a file, through the given buffer.
+   *
+   * @return the number of bytes extracted
+   */
+  static long unzipEntry(ZipFile zip, ZipEntry entry, File f, byte[] buffer) throws IOException {
+    long bytes = 0;
+    try (InputStream in = zip.getInputStream(entry); OutputStream out = new FileOutputStream(f)) {
+      int read;
+      while ((read = in.read(buffer)) != -1) {
+        out.write(buffer, 0, read);
+        bytes += read;
+      }
     }
+    f.setLastModified(entry.getTime());
+    return bytes;
   }
 }
@@ -0,0 +1,276 @@
+package org.literacybridge.utils;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Extracts several zips at once on a fixed number of threads.
+ * <p/>
+ * Each zip is split into tasks:  one for every entry of at least {@link #LARGE_ENTRY_BYTES}, and one for all of its
+ * smaller entries, so a zip with a single large log does not hold up the rest.  The directories of a zip are created
+ * once, before its tasks are queued, and each zip is closed as soon as its last task is done.  If the waiting thread
+ * is interrupted, the tasks that have not started are dropped, and their zips closed and failed, on that thread.
+ * <p/>
+ * One instance can be shared by any number of threads, and the number of threads bounds the extraction going on
+ * across all of them.
+ */
+public class ParallelUnzipper implements Closeable {
+  protected static final Logger logger = LoggerFactory.getLogger(ParallelUnzipper.class);
+
+  public static final long LARGE_ENTRY_BYTES = 1024 * 1024;
+
+  public final int threads;
+  private final ExecutorService executor;
+
+  /**
+   * @param threads the number of zips, or large entries, to extract at once
+   */
+  public ParallelUnzipper(int threads) {
+    if (threads < 1) {
+      throw new IllegalArgumentException("Threads must be at least 1, but was " + threads);
+    }
+    this.threads = threads;
+    executor = Executors.newFixedThreadPool(threads,
+      new ThreadFactoryBuilder().setNameFormat("unzip-%d").setDaemon(true).build());
+  }
+
+  /**
+   * Extracts every file of every zip under a directory, as {@link FsUtils#unzip} would, and waits until they are all
+   * done.  A zip that can not be read does not stop the others:  its failure is in its {@link Extraction}.
+   *
+   * @return an extraction for each zip, in the same order
+   */
+  public List<Extraction> unzip(Collection<File> zips, File rootDir) throws InterruptedException {
+    final long start = System.nanoTime();
+    final Set<File> createdDirs = new HashSet<>();
+    final List<Extraction> extractions = new ArrayList<>(zips.size());
+    final List<ExtractTask> tasks = new ArrayList<>();
+    final List<Future<?>> futures = new ArrayList<>();
+    for (File zip : zips) {
+      final Extraction extraction = new Extraction(zip);
+      extractions.add(extraction);
+      try {
+        submit(extraction, rootDir, createdDirs, tasks, futures);
+      } catch (IOException e) {
+        extraction.fail(e);
+        extraction.done();
+      }
+    }
+
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      //Failures are caught by the tasks, so this is an Error or a bug
+      throw new IllegalStateException(e.getCause());
+    } finally {
+      for (int i = 0; i < futures.size(); i++) {
+        futures.get(i).cancel(true);
+        tasks.get(i).cancel();
+      }
+    }
+
+    if (logger.isDebugEnabled()) {
+      long bytes = 0;
+      for (Extraction extraction : extractions) {
+        bytes += extraction.getBytes();
+      }
+      logger.debug("Unzipped " + zips.size() + " zips into " + rootDir + ", " + bytes + " bytes at " +
+        bytesPerSecond(bytes, System.nanoTime() - start) + " bytes/sec");
+    }
+    return extractions;
+  }
+
+  private void submit(final Extraction extraction, File rootDir, Set<File> createdDirs, List<ExtractTask> tasks,
+                      List<Future<?>> futures) throws IOException {
+    final String rootPath = FsUtils.rootPath(rootDir);
+    final ZipFile zip = new ZipFile(extraction.zipFile);
+    final List<ZipEntry> smallEntries = new ArrayList<>();
+    final List<File> smallFiles = new ArrayList<>();
+    final List<ZipEntry> largeEntries = new ArrayList<>();
+    final List<File> largeFiles = new ArrayList<>();
+    try {
+      final Enumeration<? extends ZipEntry> entries = zip.entries();
+      while (entries.hasMoreElements()) {
+        final ZipEntry entry = entries.nextElement();
+        if (entry.isDirectory()) {
+          continue;
+        }
+        final File file = FsUtils.unzippedFile(rootDir, rootPath, entry, createdDirs);
+        if (entry.getSize() >= LARGE_ENTRY_BYTES) {
+          largeEntries.add(entry);
+          largeFiles.add(file);
+        } else {
+          smallEntries.add(entry);
+          smallFiles.add(file);
+        }
+      }
+    } catch (IOException e) {
+      zip.close();
+      throw e;
+    }
+
+    //The zip is closed by whichever task finishes last
+    final AtomicInteger pending = new AtomicInteger(largeEntries.size() + 1);
+    for (int i = 0; i < largeEntries.size(); i++) {
+      submit(new ExtractTask(extraction, zip, largeEntries.subList(i, i + 1), largeFiles.subList(i, i + 1), pending),
+        tasks, futures);
+    }
+    submit(new ExtractTask(extraction, zip, smallEntries, smallFiles, pending), tasks, futures);
+  }
+
+  private void submit(ExtractTask task, List<ExtractTask> tasks, List<Future<?>> futures) {
+    tasks.add(task);
+    futures.add(executor.submit(task));
+  }
+
+  /**
+   * Stops the threads.  Extractions still running are interrupted.
+   */
+  @Override
+  public void close() {
+    executor.shutdownNow();
+  }
+
+  static public long bytesPerSecond(long bytes, long nanos) {
+    return nanos > 0 ? (long) (bytes * 1e9 / nanos) : 0;
+  }
+
+  static class ExtractTask implements Runnable {
+    private final Extraction extraction;
+    private final ZipFile zip;
+    private final List<ZipEntry> entries;
+    private final List<File> files;
+    private final AtomicInteger pending;
+    //Set by whichever of run() and cancel() gets to the task first
+    private final AtomicBoolean claimed = new AtomicBoolean();
+
+    ExtractTask(Extraction extraction, ZipFile zip, List<ZipEntry> entries, List<File> files, AtomicInteger pending) {
+      this.extraction = extraction;
+      this.zip = zip;
+      this.entries = entries;
+      this.files = files;
+      this.pending = pending;
+    }
+
+    @Override
+    public void run() {
+      if (!claimed.compareAndSet(false, true)) {
+        return;
+      }
+      try {
+        final byte[] buffer = new byte[FsUtils.UNZIP_BUFFER_SIZE];
+        for (int i = 0; i < entries.size() && !extraction.isFailed(); i++) {
+          extraction.addBytes(FsUtils.unzipEntry(zip, entries.get(i), files.get(i), buffer));
+        }
+      } catch (IOException e) {
+        extraction.fail(e);
+      } finally {
+        finish();
+      }
+    }
+
+    /**
+     * Gives up on the task if it has not started, so it still counts towards closing its zip.
+     */
+    void cancel() {
+      if (claimed.compareAndSet(false, true)) {
+        extraction.fail(new InterruptedIOException("Cancelled before " + entries.size() + " entries were extracted"));
+        finish();
+      }
+    }
+
+    private void finish() {
+      if (pending.decrementAndGet() == 0) {
+        try {
+          zip.close();
+        } catch (IOException e) {
+          logger.warn("Could not close " + extraction.zipFile, e);
+        }
+        extraction.done();
+      }
+    }
+  }
+
+  /**
+   * The outcome of extracting one zip.
+   */
+  public static class Extraction {
+    public final File zipFile;
+    private final long startNanos = System.nanoTime();
+    private final AtomicLong bytes = new AtomicLong();
+    private volatile IOException failure;
+    private volatile long nanos;
+
+    Extraction(File zipFile) {
+      this.zipFile = zipFile;
+    }
+
+    void addBytes(long count) {
+      bytes.addAndGet(count);
+    }
+
+    synchronized void fail(IOException e) {
+      if (failure == null) {
+        failure = e;
+      }
+    }
+
+    boolean isFailed() {
+      return failure != null;
+    }
+
+    void done() {
+      nanos = System.nanoTime() - startNanos;
+    }
+
+    /**
+     * @return the number of bytes extracted
+     */
+    public long getBytes() {
+      return bytes.get();
+    }
+
+    /**
+     * @return the time from when the zip was queued until its last file was written
+     */
+    public long getNanos() {
+      return nanos;
+    }
+
+    public long getBytesPerSecond() {
+      return bytesPerSecond(getBytes(), nanos);
+    }
+
+    /**
+     * @return why the zip could not be extracted, or null if it was.  Files written before the failure are left.
+     */
+    @Nullable
+    public IOException getFailure() {
+      return failure;
+    }
+  }
+}
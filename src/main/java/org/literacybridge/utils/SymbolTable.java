@@ -0,0 +1,198 @@
+package org.literacybridge.utils;
+
+import javax.annotation.Nullable;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A dictionary of strings that repeat a lot, such as content IDs, villages and talking book IDs.  Each distinct
+ * string gets one canonical instance and a dense int id, so the same few hundred IDs seen millions of times take the
+ * memory of a few hundred, and compare with == when they come from the same table.
+ * <p/>
+ * Lookups are lock free, and {@link #canonical(CharSequence, int, int)} looks a string up straight out of a larger one,
+ * so a parser can find a known ID without creating a substring.  Only the first sighting of a string takes a lock.
+ * <p/>
+ * A table is never cleared, so it should live only as long as the strings it is given.  Each
+ * {@link org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor} has one for its run, and hands it to the
+ * parsers and readers it creates, so callbacks can key on its ids or canonical instances within that run.
+ */
+public class SymbolTable {
+
+  private volatile AtomicReferenceArray<Symbol> slots = new AtomicReferenceArray<>(256);
+  private volatile AtomicReferenceArray<Symbol> byId = new AtomicReferenceArray<>(128);
+  private int size = 0;
+
+  /**
+   * @return the canonical instance of a string, or null for null
+   */
+  public String canonical(@Nullable String value) {
+    return value != null ? symbol(value, 0, value.length()).value : null;
+  }
+
+  /**
+   * Gets the canonical instance of part of a string, creating a new string only if it has never been seen.
+   *
+   * @param chars the characters to look in
+   * @param start the start of the string, inclusive
+   * @param end   the end of the string, exclusive
+   */
+  public String canonical(CharSequence chars, int start, int end) {
+    return symbol(chars, start, end).value;
+  }
+
+  /**
+   * @return the id of a string, from 0 up, in the order strings were first seen
+   */
+  public int id(String value) {
+    return symbol(value, 0, value.length()).id;
+  }
+
+  public int id(CharSequence chars, int start, int end) {
+    return symbol(chars, start, end).id;
+  }
+
+  /**
+   * @return the id of a string, or -1 if it has never been seen.  Never adds it.
+   */
+  public int find(String value) {
+    final Symbol found = find(slots, hash(value, 0, value.length()), value, 0, value.length());
+    return found != null ? found.id : -1;
+  }
+
+  /**
+   * @return the string with an id
+   */
+  public String get(int id) {
+    final AtomicReferenceArray<Symbol> symbols = byId;
+    final Symbol symbol = id >= 0 && id < symbols.length() ? symbols.get(id) : null;
+    if (symbol == null) {
+      throw new IndexOutOfBoundsException("No symbol with id " + id);
+    }
+    return symbol.value;
+  }
+
+  /**
+   * Gets the canonical upper case version of a string.  The conversion is remembered, so it is only done once per
+   * distinct string.
+   *
+   * @return the upper case string, or null for null
+   */
+  public String upperCase(@Nullable String value) {
+    if (value == null) {
+      return null;
+    }
+    final Symbol symbol = symbol(value, 0, value.length());
+    String upper = symbol.upperCase;
+    if (upper == null) {
+      upper = canonical(symbol.value.toUpperCase());
+      symbol.upperCase = upper;
+    }
+    return upper;
+  }
+
+  public synchronized int size() {
+    return size;
+  }
+
+  private Symbol symbol(CharSequence chars, int start, int end) {
+    final int hash = hash(chars, start, end);
+    final Symbol found = find(slots, hash, chars, start, end);
+    return found != null ? found : add(hash, chars, start, end);
+  }
+
+  private synchronized Symbol add(int hash, CharSequence chars, int start, int end) {
+    //Someone else may have added it since the lock free lookup
+    final Symbol found = find(slots, hash, chars, start, end);
+    if (found != null) {
+      return found;
+    }
+
+    final String value = chars.subSequence(start, end).toString();
+    final Symbol symbol = new Symbol(value, hash, size);
+    if (size == byId.length()) {
+      byId = copy(byId, byId.length() * 2);
+    }
+    byId.set(size, symbol);
+    size++;
+
+    if (size * 2 > slots.length()) {
+      final AtomicReferenceArray<Symbol> grown = new AtomicReferenceArray<>(slots.length() * 2);
+      for (int id = 0; id < size; id++) {
+        insert(grown, byId.get(id));
+      }
+      slots = grown;
+    } else {
+      insert(slots, symbol);
+    }
+    return symbol;
+  }
+
+  private static Symbol find(AtomicReferenceArray<Symbol> slots, int hash, CharSequence chars, int start, int end) {
+    final int mask = slots.length() - 1;
+    for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+      final Symbol symbol = slots.get(slot);
+      if (symbol == null) {
+        return null;
+      }
+      if (symbol.hash == hash && symbol.matches(chars, start, end)) {
+        return symbol;
+      }
+    }
+  }
+
+  private static void insert(AtomicReferenceArray<Symbol> slots, Symbol symbol) {
+    final int mask = slots.length() - 1;
+    int slot = symbol.hash & mask;
+    while (slots.get(slot) != null) {
+      slot = (slot + 1) & mask;
+    }
+    slots.set(slot, symbol);
+  }
+
+  private static AtomicReferenceArray<Symbol> copy(AtomicReferenceArray<Symbol> symbols, int length) {
+    final AtomicReferenceArray<Symbol> retVal = new AtomicReferenceArray<>(length);
+    for (int i = 0; i < symbols.length(); i++) {
+      retVal.set(i, symbols.get(i));
+    }
+    return retVal;
+  }
+
+  /**
+   * Same as {@link String#hashCode()} over the range, with the bits spread for the power of two table.
+   */
+  private static int hash(CharSequence chars, int start, int end) {
+    int h = 0;
+    for (int i = start; i < end; i++) {
+      h = 31 * h + chars.charAt(i);
+    }
+    h *= 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+
+  private static class Symbol {
+    final String value;
+    final int hash;
+    final int id;
+    volatile String upperCase;
+
+    Symbol(String value, int hash, int id) {
+      this.value = value;
+      this.hash = hash;
+      this.id = id;
+    }
+
+    boolean matches(CharSequence chars, int start, int end) {
+      if (value.length() != end - start) {
+        return false;
+      }
+      if (value == chars) {
+        return true;
+      }
+      for (int i = 0; i < value.length(); i++) {
+        if (value.charAt(i) != chars.charAt(start + i)) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+}
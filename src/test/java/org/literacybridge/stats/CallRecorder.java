@@ -0,0 +1,158 @@
+package org.literacybridge.stats;
+
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.flashData.FlashData;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.statsFile.StatsFile;
+import org.literacybridge.stats.model.ProcessingContext;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Records every call made to it as [methodName, args...], so tests can compare the calls two runs made.
+ * <p/>
+ * Tests that can not compare some arguments directly override {@link #recordsArguments(String)} to drop them, or
+ * {@link #addArgument(List, Object)} to record them some other way.
+ */
+public class CallRecorder implements TalkingBookDataProcessor {
+
+  public final List<List<Object>> calls;
+
+  public CallRecorder(List<List<Object>> calls) {
+    this.calls = calls;
+  }
+
+  /**
+   * @return false to record calls to this method by name only
+   */
+  protected boolean recordsArguments(String method) {
+    return true;
+  }
+
+  protected void addArgument(List<Object> call, Object arg) {
+    call.add(arg);
+  }
+
+  /**
+   * @return the list one call is recorded as
+   */
+  protected List<Object> describe(String method, Object... args) {
+    final List<Object> call = new ArrayList<>();
+    call.add(method);
+    if (recordsArguments(method)) {
+      for (Object arg : args) {
+        addArgument(call, arg);
+      }
+    }
+    return call;
+  }
+
+  private void record(String method, Object... args) {
+    calls.add(describe(method, args));
+  }
+
+  @Override
+  public void onTalkingBookStart(ProcessingContext context) {
+    record("onTalkingBookStart", context);
+  }
+
+  @Override
+  public void onTalkingBookEnd(ProcessingContext context) {
+    record("onTalkingBookEnd", context);
+  }
+
+  @Override
+  public void processFlashData(SyncProcessingContext context, FlashData flashData) {
+    record("processFlashData", context, flashData);
+  }
+
+  @Override
+  public void processCorruptFlashData(SyncProcessingContext context, String flashDataPath, String errorMessage) {
+    record("processCorruptFlashData", context, flashDataPath, errorMessage);
+  }
+
+  @Override
+  public void onPlay(LogLineContext context, String contentId, int volume, double voltage) {
+    record("onPlay", context, contentId, volume, voltage);
+  }
+
+  @Override
+  public void onPlayed(LogLineContext context, String contentId, short secondsPlayed, short secondsSomething,
+                       int volume, double voltage, boolean ended) {
+    record("onPlayed", context, contentId, secondsPlayed, secondsSomething, volume, voltage, ended);
+  }
+
+  @Override
+  public void onCategory(LogLineContext context, String categoryId) {
+    record("onCategory", context, categoryId);
+  }
+
+  @Override
+  public void onRecord(LogLineContext context, String contentId, int unknownNumber) {
+    record("onRecord", context, contentId, unknownNumber);
+  }
+
+  @Override
+  public void onRecorded(LogLineContext context, int secondsRecorded) {
+    record("onRecorded", context, secondsRecorded);
+  }
+
+  @Override
+  public void onPause(LogLineContext context, String contentId) {
+    record("onPause", context, contentId);
+  }
+
+  @Override
+  public void onUnPause(LogLineContext context, String contentId) {
+    record("onUnPause", context, contentId);
+  }
+
+  @Override
+  public void onSurvey(LogLineContext context, String contentId) {
+    record("onSurvey", context, contentId);
+  }
+
+  @Override
+  public void onSurveyCompleted(LogLineContext context, String contentId, boolean useful) {
+    record("onSurveyCompleted", context, contentId, useful);
+  }
+
+  @Override
+  public void onShuttingDown(LogLineContext context) {
+    record("onShuttingDown", context);
+  }
+
+  @Override
+  public void onVoltageDrop(LogLineContext context, LogAction action, double voltageDropped, int time) {
+    record("onVoltageDrop", context, action, voltageDropped, time);
+  }
+
+  @Override
+  public void onLogFileStart(String fileName) {
+    record("onLogFileStart", fileName);
+  }
+
+  @Override
+  public void onLogFileEnd() {
+    record("onLogFileEnd");
+  }
+
+  @Override
+  public void processStatsFile(SyncProcessingContext context, String contentId, StatsFile statsFile) {
+    record("processStatsFile", context, contentId, statsFile);
+  }
+
+  @Override
+  public void markStatsFileAsCorrupted(SyncProcessingContext context, String contentId, String errorMessage) {
+    record("markStatsFileAsCorrupted", context, contentId, errorMessage);
+  }
+
+  @Override
+  public void processTbDataLine(TbDataLine tbDataLine) {
+    record("processTbDataLine", tbDataLine);
+  }
+}
@@ -0,0 +1,58 @@
+package org.literacybridge.stats;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.LocalDateTime;
+import org.junit.Test;
+import org.literacybridge.stats.model.DirectoryFormat;
+import org.literacybridge.stats.model.StatsPackageManifest;
+import org.literacybridge.stats.processors.ManifestCreationCallbacks;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ */
+public class TestManifestGeneration {
+
+  @Test
+  public void testMatchesManifestFromFullWalk() throws Exception {
+    final File root = TestDirectoryIterator.TEST1_ARCHIVE;
+    final DirectoryIterator iterator = new DirectoryIterator(root, DirectoryFormat.Archive, false);
+
+    final ManifestCreationCallbacks callbacks = new ManifestCreationCallbacks();
+    iterator.process(root, null, callbacks);
+    final StatsPackageManifest walked = callbacks.generateManifest(DirectoryFormat.Archive);
+
+    final Map<File, DirectoryIterator.DirectoryListing> listings = new HashMap<>();
+    final StatsPackageManifest listed = iterator.generateManifest(root, DirectoryFormat.Archive, listings);
+
+    TestCase.assertFalse(listings.isEmpty());
+    TestCase.assertEquals(walked.formatVersion, listed.formatVersion);
+    TestCase.assertEquals(walked.devices.keySet(), listed.devices.keySet());
+    for (String device : walked.devices.keySet()) {
+      TestCase.assertEquals(walked.devices.get(device).getStartTime(), listed.devices.get(device).getStartTime());
+      TestCase.assertEquals(walked.devices.get(device).getEndTime(), listed.devices.get(device).getEndTime());
+    }
+  }
+
+  @Test
+  public void testZipsAreNotOpened() throws Exception {
+    final File root = File.createTempFile("manifest", "");
+    root.delete();
+    try {
+      FileUtils.copyDirectory(TestDirectoryIterator.TEST1_ARCHIVE, root);
+      final File notAZip = new File(root, "TalkingBookData/2013-04/device1/village2/TB2/2013y09m01d18h01m50s-device1.zip");
+      FileUtils.writeStringToFile(notAZip, "not a zip");
+
+      final StatsPackageManifest manifest = new DirectoryIterator(root, DirectoryFormat.Archive, false)
+        .generateManifest(root, DirectoryFormat.Archive);
+
+      TestCase.assertEquals(new LocalDateTime(2013, 9, 1, 18, 1, 50).toDate(), manifest.devices.get("device1").getEndTime());
+      TestCase.assertTrue(notAZip.exists());
+    } finally {
+      FileUtils.deleteDirectory(root);
+    }
+  }
+}
@@ -0,0 +1,126 @@
+package org.literacybridge.stats;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.literacybridge.stats.api.DirectoryCallbacks;
+import org.literacybridge.stats.api.ParallelDirectoryCallbacks;
+import org.literacybridge.stats.model.DirectoryFormat;
+import org.literacybridge.stats.model.StatsPackageManifest;
+import org.literacybridge.stats.model.SyncDirId;
+import org.literacybridge.stats.processors.AbstractDirectoryProcessor;
+import org.literacybridge.utils.FsUtils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ */
+public class TestParallelDirectoryIterator {
+
+  /**
+   * Manifests are generated from directory listings alone, so the parallelism makes no difference to them.
+   */
+  @Test
+  public void testManifestDoesNotDependOnParallelism() throws Exception {
+    DirectoryIterator serial = new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false);
+    DirectoryIterator parallel = new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false, 4);
+
+    StatsPackageManifest serialManifest = serial.generateManifest(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive);
+    StatsPackageManifest parallelManifest = parallel.generateManifest(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive);
+
+    TestCase.assertEquals(serialManifest.devices.keySet(), parallelManifest.devices.keySet());
+    for (String device : serialManifest.devices.keySet()) {
+      TestCase.assertEquals(serialManifest.devices.get(device).getStartTime(), parallelManifest.devices.get(device).getStartTime());
+      TestCase.assertEquals(serialManifest.devices.get(device).getEndTime(), parallelManifest.devices.get(device).getEndTime());
+    }
+  }
+
+  @Test
+  public void testJoinOrderIsDeterministic() throws Exception {
+    RecordingCallbacks serialCallbacks = new RecordingCallbacks();
+    new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false).process(serialCallbacks);
+
+    for (int i = 0; i < 5; i++) {
+      RecordingCallbacks parallelCallbacks = new RecordingCallbacks();
+      new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false, 4).process(parallelCallbacks);
+      TestCase.assertEquals(serialCallbacks.syncDirs, parallelCallbacks.syncDirs);
+    }
+  }
+
+  @Test
+  public void testSerialDeliveryForNonParallelCallbacks() throws Exception {
+    final Thread caller = Thread.currentThread();
+    final List<String> syncDirs = new ArrayList<>();
+
+    AbstractDirectoryProcessor callbacks = new AbstractDirectoryProcessor() {
+      @Override
+      public void processSyncDir(SyncDirId syncDirId, File syncDir) throws Exception {
+        TestCase.assertSame(caller, Thread.currentThread());
+        syncDirs.add(currVillage + "/" + currTalkingBook + "/" + syncDirId.dirName);
+      }
+    };
+
+    new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false, 4).process(callbacks);
+
+    RecordingCallbacks serialCallbacks = new RecordingCallbacks();
+    new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false).process(serialCallbacks);
+    TestCase.assertEquals(serialCallbacks.syncDirs, syncDirs);
+  }
+
+  @Test
+  public void testTalkingBooksInFlightAreBounded() throws Exception {
+    final File root = File.createTempFile("inFlight", "");
+    root.delete();
+    try {
+      final File village = new File(root, FsUtils.FsAgnostify("TalkingBookData/2013-03/device1/village1"));
+      for (int i = 0; i < 10; i++) {
+        TestCase.assertTrue(new File(village, "TB" + i + "/2013y07m15d1" + i + "h01m50s-device1").mkdirs());
+      }
+
+      final int[] inFlight = new int[2];
+      RecordingCallbacks callbacks = new RecordingCallbacks() {
+        @Override
+        public DirectoryCallbacks fork() {
+          inFlight[1] = Math.max(inFlight[1], ++inFlight[0]);
+          return super.fork();
+        }
+
+        @Override
+        public void join(DirectoryCallbacks forked) {
+          inFlight[0]--;
+          super.join(forked);
+        }
+      };
+      new DirectoryIterator(root, DirectoryFormat.Archive, false, 2).process(callbacks);
+
+      RecordingCallbacks serialCallbacks = new RecordingCallbacks();
+      new DirectoryIterator(root, DirectoryFormat.Archive, false).process(serialCallbacks);
+      TestCase.assertEquals(10, serialCallbacks.syncDirs.size());
+      TestCase.assertEquals(serialCallbacks.syncDirs, callbacks.syncDirs);
+      TestCase.assertEquals(2 * DirectoryIterator.TALKING_BOOKS_IN_FLIGHT_PER_THREAD, inFlight[1]);
+    } finally {
+      FileUtils.deleteDirectory(root);
+    }
+  }
+
+  static class RecordingCallbacks extends AbstractDirectoryProcessor implements ParallelDirectoryCallbacks {
+    final List<String> syncDirs = new ArrayList<>();
+
+    @Override
+    public void processSyncDir(SyncDirId syncDirId, File syncDir) throws Exception {
+      syncDirs.add(currVillage + "/" + currTalkingBook + "/" + syncDirId.dirName);
+    }
+
+    @Override
+    public DirectoryCallbacks fork() {
+      return new RecordingCallbacks();
+    }
+
+    @Override
+    public void join(DirectoryCallbacks forked) {
+      syncDirs.addAll(((RecordingCallbacks) forked).syncDirs);
+    }
+  }
+}
@@ -0,0 +1,96 @@
+package org.literacybridge.stats;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ */
+public class TestSyncDirPrefetcher {
+
+  private File root;
+  private ExecutorService executor;
+  private final List<DirectoryIterator.SyncDirSource> sources = new ArrayList<>();
+  private final List<String> loaded = Collections.synchronizedList(new ArrayList<String>());
+
+  @Before
+  public void setUp() throws IOException {
+    root = File.createTempFile("prefetch", "");
+    root.delete();
+    for (int i = 0; i < 6; i++) {
+      final File dir = new File(root, "sync" + i);
+      dir.mkdirs();
+      sources.add(new DirectoryIterator.SyncDirSource(null, dir.getName(), dir, false));
+    }
+    executor = Executors.newSingleThreadExecutor();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    executor.shutdownNow();
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Test
+  public void testSkipsPastDepth() throws Exception {
+    try (SyncDirPrefetcher prefetcher = new SyncDirPrefetcher(executor, new LoadRecorder(), null, 2, sources)) {
+      take(prefetcher, 0);
+      //1 and 2 are queued, so 3 and 4 are never loaded
+      take(prefetcher, 5);
+      TestCase.assertNull(prefetcher.take(sources.get(4)));
+    }
+
+    executor.shutdown();
+    TestCase.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    TestCase.assertEquals(Arrays.asList("sync0", "sync1", "sync2", "sync5"), loaded);
+  }
+
+  @Test
+  public void testSkipsWithinDepth() throws Exception {
+    try (SyncDirPrefetcher prefetcher = new SyncDirPrefetcher(executor, new LoadRecorder(), null, 2, sources)) {
+      take(prefetcher, 1);
+      take(prefetcher, 3);
+    }
+
+    executor.shutdown();
+    TestCase.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    TestCase.assertEquals(Arrays.asList("sync0", "sync1", "sync2", "sync3", "sync4", "sync5"), loaded);
+  }
+
+  private void take(SyncDirPrefetcher prefetcher, int source) throws IOException {
+    try (SyncDirectory syncDir = prefetcher.take(sources.get(source))) {
+      TestCase.assertNotNull(syncDir);
+      TestCase.assertEquals(sources.get(source).file.getName(), syncDir.getName());
+    }
+  }
+
+  /**
+   * Remembers every sync directory it is asked to load.
+   */
+  private class LoadRecorder extends DirectoryProcessor {
+    LoadRecorder() {
+      super(new ArrayList<TalkingBookDataProcessor>(), DirectoryProcessor.CATEGORY_MAP);
+    }
+
+    @Override
+    public SyncDirectory prefetch(SyncDirectory syncDir) throws IOException {
+      loaded.add(syncDir.getName());
+      return super.prefetch(syncDir);
+    }
+  }
+}
@@ -0,0 +1,114 @@
+package org.literacybridge.stats.aggregation;
+
+import au.com.bytecode.opencsv.CSVReader;
+import junit.framework.TestCase;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.model.DeploymentId;
+import org.literacybridge.stats.model.SyncProcessingContext;
+
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ */
+public class TestPlayStatsProcessor {
+
+  private static LogLineContext context(String talkingBook, String village) {
+    return new LogLineContext(null, null,
+      new SyncProcessingContext("8m30d17h9m8s", talkingBook, village, "pkg", "2013-03", "device"));
+  }
+
+  private static void playEvents(PlayStatsProcessor processor, LogLineContext context) {
+    processor.onLogFileStart("log.txt");
+    processor.onPlay(context, "content1", 5, 2.5);
+    processor.onPlayed(context, "content1", (short) 30, (short) 0, 5, 2.5, true);
+    processor.onPlay(context, "content1", 5, 2.5);
+    processor.onPlayed(context, "content1", (short) 10, (short) 0, 5, 2.5, false);
+    processor.onSurvey(context, "content2");
+    processor.onSurveyCompleted(context, "content2", true);
+    processor.onRecord(context, "content3", 0);
+    processor.onRecorded(context, 12);
+    processor.onLogFileEnd();
+  }
+
+  @Test
+  public void testAggregates() {
+    final PlayStatsProcessor processor = new PlayStatsProcessor();
+    playEvents(processor, context("tb1", "village1"));
+    playEvents(processor, context("tb1", "village1"));
+    playEvents(processor, context("tb2", "village1"));
+
+    final PlayStatsTable table = processor.getTable();
+    final DeploymentId deployment = DeploymentId.parseContentUpdate("2013-03");
+    TestCase.assertEquals(6, table.size());
+
+    final int row = table.find("tb1", "village1", deployment, "content1");
+    TestCase.assertEquals(4, table.getPlays(row));
+    TestCase.assertEquals(4, table.getPlayed(row));
+    TestCase.assertEquals(2, table.getCompletions(row));
+    TestCase.assertEquals(80, table.getSecondsPlayed(row));
+
+    final int surveyRow = table.find("tb2", "village1", deployment, "content2");
+    TestCase.assertEquals(1, table.getSurveys(surveyRow));
+    TestCase.assertEquals(1, table.getSurveysUseful(surveyRow));
+    TestCase.assertEquals(0, table.getSurveysNotUseful(surveyRow));
+
+    final int recordRow = table.find("tb1", "village1", deployment, "content3");
+    TestCase.assertEquals(2, table.getRecordings(recordRow));
+    TestCase.assertEquals(24, table.getSecondsRecorded(recordRow));
+
+    TestCase.assertEquals(-1, table.find("tb3", "village1", deployment, "content1"));
+  }
+
+  @Test
+  public void testJoinMatchesSerial() {
+    final PlayStatsProcessor serial = new PlayStatsProcessor();
+    final PlayStatsProcessor parallel = new PlayStatsProcessor();
+    for (int i = 0; i < 200; i++) {
+      final LogLineContext context = context("tb" + i % 50, "village" + i % 7);
+      playEvents(serial, context);
+
+      final PlayStatsProcessor fork = (PlayStatsProcessor) parallel.fork();
+      playEvents(fork, context);
+      parallel.join(fork);
+    }
+
+    final PlayStatsTable expected = serial.getTable();
+    final PlayStatsTable actual = parallel.getTable();
+    TestCase.assertEquals(expected.size(), actual.size());
+    for (int row = 0; row < expected.size(); row++) {
+      final int other = actual.find(expected.getTalkingBook(row), expected.getVillage(row), expected.getDeployment(row),
+        expected.getContentId(row));
+      TestCase.assertEquals(expected.getPlays(row), actual.getPlays(other));
+      TestCase.assertEquals(expected.getSecondsPlayed(row), actual.getSecondsPlayed(other));
+      TestCase.assertEquals(expected.getSecondsRecorded(row), actual.getSecondsRecorded(other));
+    }
+  }
+
+  @Test
+  public void testExport() throws Exception {
+    final PlayStatsProcessor processor = new PlayStatsProcessor();
+    playEvents(processor, context("tb1", "village1"));
+    final PlayStatsTable table = processor.getTable();
+
+    final StringWriter csv = new StringWriter();
+    table.writeCsv(csv);
+    final List<String[]> lines = new CSVReader(new StringReader(csv.toString())).readAll();
+    TestCase.assertEquals(table.size() + 1, lines.size());
+    TestCase.assertEquals(Arrays.asList(PlayStatsTable.COLUMNS), Arrays.asList(lines.get(0)));
+    TestCase.assertEquals(Arrays.asList("tb1", "village1", "2013-03", "content1", "2", "2", "1", "40", "0", "0", "0", "0", "0"),
+      Arrays.asList(lines.get(1)));
+
+    final StringWriter json = new StringWriter();
+    table.writeJson(json);
+    final JsonNode rows = new ObjectMapper().readValue(json.toString(), JsonNode.class);
+    TestCase.assertEquals(table.size(), rows.size());
+    TestCase.assertEquals("content3", rows.get(2).get("contentId").getTextValue());
+    TestCase.assertEquals(12, rows.get(2).get("secondsRecorded").getIntValue());
+  }
+}
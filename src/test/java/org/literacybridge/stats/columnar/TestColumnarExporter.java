@@ -0,0 +1,139 @@
+package org.literacybridge.stats.columnar;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+/**
+ */
+public class TestColumnarExporter {
+
+  private static final SyncProcessingContext CONTEXT =
+    new SyncProcessingContext("8m30d17h9m8s", "tb1", "village", "pkg", "2013-03", "device");
+
+  private static final String LOG =
+    "0r0039c012pS18d14h27m59s305/221/221V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221\n" +
+      "2r0096c008p023d18h18m53s401/314/314V:PLAYED TB000248_372AB558 0006/0012sec @VOL=03 @Volt=314-Ended\n" +
+      "2r0096c008p023d18h18m54s401/314/314V:PLAYED TB000248_372AB558 0003/0012sec @VOL=03 @Volt=314\n" +
+      "2r0096c008p023d18h18m55s401/314/314V:PLAYED TB0003a2_2156B516 0012/0012sec @VOL=04 @Volt=314-Ended\n" +
+      "0r0035c012pS18d14h17m12s311/217/217V:RECORD 00037a_9_3DCBA2D0 -> 9\n" +
+      "0r0035c012pS18d14h17m32s311/217/217V:TIME RECORDED (secs): 0005\n" +
+      "0r0145c079p009d18h33m00s340/291/291V:SURVEY:apply\n";
+
+  private File root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = File.createTempFile("columnar", "");
+    root.delete();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Test
+  public void testLogEvents() throws Exception {
+    final ColumnarExportProcessor processor = new ColumnarExportProcessor(new ColumnarExporter(root, 2));
+    new ScanningLogFileParser(processor, CONTEXT, Collections.<String, String>emptyMap())
+      .parse("log.txt", new ByteArrayInputStream(LOG.getBytes("UTF-8")));
+    processor.close();
+
+    final ColumnarReader played =
+      new ColumnarReader(ColumnarExporter.tableDir(root, "2013-03", "device", ColumnarExporter.PLAYED_TABLE));
+    TestCase.assertEquals(3, played.rows);
+    TestCase.assertEquals(ColumnType.STRING, played.getColumns().get("contentId"));
+    TestCase.assertEquals(Arrays.asList("TB000248_372AB558", "TB0003a2_2156B516"), played.readDictionary("contentId"));
+    TestCase.assertTrue(Arrays.equals(new int[]{0, 0, 1}, played.readCodes("contentId")));
+    TestCase.assertTrue(Arrays.equals(new int[]{6, 3, 12}, played.readInts("secondsPlayed")));
+    TestCase.assertTrue(Arrays.equals(new int[]{3, 3, 4}, played.readInts("volume")));
+    TestCase.assertTrue(Arrays.equals(new boolean[]{true, false, true}, played.readBooleans("ended")));
+    TestCase.assertTrue(Arrays.equals(new int[]{2, 3, 4}, played.readInts("lineNumber")));
+    TestCase.assertEquals(Collections.singletonList("village"), played.readDictionary("village"));
+
+    final String[] talkingBooks = played.readStrings("talkingBook");
+    TestCase.assertEquals("tb1", talkingBooks[0]);
+    TestCase.assertSame(talkingBooks[0], talkingBooks[2]);
+
+    final ColumnarReader record =
+      new ColumnarReader(ColumnarExporter.tableDir(root, "2013-03", "device", ColumnarExporter.RECORD_TABLE));
+    TestCase.assertTrue(Arrays.equals(new String[]{"00037a_9_3DCBA2D0", null}, record.readStrings("contentId")));
+    TestCase.assertTrue(Arrays.equals(new int[]{9, 5}, record.readInts("number")));
+
+    final ColumnarReader action =
+      new ColumnarReader(ColumnarExporter.tableDir(root, "2013-03", "device", ColumnarExporter.ACTION_TABLE));
+    TestCase.assertTrue(Arrays.equals(new boolean[]{true}, action.readBooleans("useful")));
+
+    TestCase.assertEquals(1,
+      new ColumnarReader(ColumnarExporter.tableDir(root, "2013-03", "device", ColumnarExporter.PLAY_TABLE)).rows);
+    TestCase.assertFalse(
+      ColumnarExporter.tableDir(root, "2013-03", "device", ColumnarExporter.VOLTAGE_DROP_TABLE).exists());
+  }
+
+  @Test
+  public void testPartitionChanges() throws Exception {
+    final SyncProcessingContext otherDevice =
+      new SyncProcessingContext("8m30d17h9m8s", "tb2", "village", "pkg", "2013-03", "otherDevice");
+    final ColumnarExportProcessor processor = new ColumnarExportProcessor(new ColumnarExporter(root));
+    for (SyncProcessingContext context : new SyncProcessingContext[]{CONTEXT, otherDevice, CONTEXT}) {
+      new ScanningLogFileParser(processor, context, Collections.<String, String>emptyMap())
+        .parse("log.txt", new ByteArrayInputStream(LOG.getBytes("UTF-8")));
+    }
+    processor.close();
+
+    final ColumnarReader played =
+      new ColumnarReader(ColumnarExporter.tableDir(root, "2013-03", "device", ColumnarExporter.PLAYED_TABLE));
+    TestCase.assertEquals(6, played.rows);
+    TestCase.assertTrue(Arrays.equals(new int[]{0, 0, 1, 0, 0, 1}, played.readCodes("contentId")));
+
+    final ColumnarReader otherPlayed =
+      new ColumnarReader(ColumnarExporter.tableDir(root, "2013-03", "otherDevice", ColumnarExporter.PLAYED_TABLE));
+    TestCase.assertEquals(3, otherPlayed.rows);
+    TestCase.assertEquals(Collections.singletonList("tb2"), otherPlayed.readDictionary("talkingBook"));
+  }
+
+  @Test
+  public void testTbDataLines() throws Exception {
+    final ColumnarExporter exporter = new ColumnarExporter(root);
+    for (String outSn : new String[]{"a", "b"}) {
+      final TbDataLine line = new TbDataLine();
+      line.setOutSn(outSn);
+      line.setOutDeployment("2014-02");
+      line.setLocation("Wa office");
+      line.setFlashMsgs(7);
+      line.setInLastUpdated(new Date(1000));
+      line.setFlashVoltR4(9);
+      exporter.addTbDataLine(line);
+    }
+    exporter.close();
+
+    final ColumnarReader tbData = new ColumnarReader(ColumnarExporter.tbDataTableDir(root, "2014-02", "Wa office"));
+    TestCase.assertEquals("location=Wa_office", tbData.tableDir.getParentFile().getName());
+    TestCase.assertTrue(Arrays.equals(new String[]{"a", "b"}, tbData.readStrings("outSn")));
+    TestCase.assertTrue(Arrays.equals(new int[]{7, 7}, tbData.readInts("flashMsgs")));
+    TestCase.assertTrue(Arrays.equals(new long[]{1000, 1000}, tbData.readLongs("inLastUpdated")));
+    TestCase.assertTrue(Arrays.equals(new long[]{Long.MIN_VALUE, Long.MIN_VALUE}, tbData.readLongs("outRotationDate")));
+    TestCase.assertTrue(Arrays.equals(new int[]{9, 9}, tbData.readInts("flashVoltR4")));
+
+    //One column per field of TbDataLine, always in declaration order
+    final List<String> columns = new ArrayList<>(tbData.getColumns().keySet());
+    TestCase.assertEquals(61, columns.size());
+    TestCase.assertEquals("project", columns.get(0));
+    TestCase.assertEquals("flashVoltR4", columns.get(columns.size() - 1));
+  }
+}
@@ -3,19 +3,42 @@ package org.literacybridge.stats.formats.formats.flashData;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Collections2;
 import junit.framework.TestCase;
+import org.apache.commons.io.IOUtils;
 import org.junit.Test;
 import org.literacybridge.stats.formats.flashData.FlashData;
 import org.literacybridge.stats.formats.flashData.NORmsgStats;
 
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
+
+import static org.literacybridge.stats.formats.FirmwareConstants.*;
 
 /**
  * @author willpugh
  */
 public class TestFlashData {
 
+  //Offsets of the fields the tests change in flashData.bin.  The NOR image is SystemData, SystemCounts, NORmsgMap,
+  //NORallMsgStats and then the NORmsgStats, see FlashData.
+  private static final int SYSTEM_DATA_SIZE = 5 * SizeOfShort +
+    (FIXED_SERIAL_NUMBER_SIZE + FIXED_UPDATE_NUMBER_SIZE + FIXED_LOCATION_SIZE + FIXED_IMAGE_NAME_SIZE) * SizeOfChar;
+  private static final int SYSTEM_COUNTS_SIZE = 6 * SizeOfShort + MAX_ROTATIONS * 5 * SizeOfShort;
+  private static final int MSG_STATS_SIZE = MAX_TRACKED_MESSAGES * MAX_ROTATIONS * 12 * SizeOfShort;
+
+  //NORmsgMap.totalMessages, after its struct id
+  private static final int MSG_MAP_TOTAL_MESSAGES_OFFSET = SYSTEM_DATA_SIZE + SYSTEM_COUNTS_SIZE + SizeOfShort;
+
+  //NORallMsgStats.totalRotations, the last field before the NORmsgStats
+  private static final int ALL_MSGS_TOTAL_ROTATIONS_OFFSET = FlashData.FLASH_DATA_SIZE - MSG_STATS_SIZE - SizeOfShort;
+
   @Test
   public void testLoadingFlashData() throws IOException {
     final int NUM_MSGS_TEST_FLASHDATA = 8;
@@ -38,6 +61,53 @@ public class TestFlashData {
 
   }
 
+  @Test
+  public void testLazyViewMatchesEagerParse() throws IOException {
+    final byte[] bytes;
+    try (InputStream is = getClass().getResourceAsStream("/flashDatas/flashData.bin")) {
+      bytes = IOUtils.toByteArray(is);
+    }
+    assertLazyMatchesEager(bytes);
+
+    //Messages with no content ID
+    final ByteBuffer noContentIds = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+    noContentIds.putShort(MSG_MAP_TOTAL_MESSAGES_OFFSET, (short) 2);
+    assertLazyMatchesEager(noContentIds.array());
+
+    //No rotations
+    final ByteBuffer noRotations = ByteBuffer.wrap(bytes.clone()).order(ByteOrder.LITTLE_ENDIAN);
+    noRotations.putShort(ALL_MSGS_TOTAL_ROTATIONS_OFFSET, (short) 0);
+    assertLazyMatchesEager(noRotations.array());
+  }
+
+  @Test
+  public void testParseFromFile() throws IOException, URISyntaxException {
+    final File file = new File(getClass().getResource("/flashDatas/flashData.bin").toURI());
+    final FlashData mapped = FlashData.parseFromFile(file);
+    final FlashData streamed;
+    try (InputStream is = new FileInputStream(file)) {
+      streamed = FlashData.parseFromStream(is);
+    }
+
+    TestCase.assertEquals(streamed.allStats(), mapped.allStats());
+    TestCase.assertEquals(streamed.getMsgMap().getMsgIdMap(), mapped.getMsgMap().getMsgIdMap());
+  }
+
+  private void assertLazyMatchesEager(byte[] bytes) {
+    final FlashData eager = FlashData.parseFromBuffer(ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN), new FlashData());
+
+    final List<String> eagerErrors = new ArrayList<>();
+    final List<String> lazyErrors = new ArrayList<>();
+    TestCase.assertEquals(eager.isValid(eagerErrors), FlashData.wrap(ByteBuffer.wrap(bytes)).isValid(lazyErrors));
+    TestCase.assertEquals(eagerErrors, lazyErrors);
+
+    TestCase.assertEquals(eager.allStats(), FlashData.wrap(ByteBuffer.wrap(bytes)).allStats());
+    TestCase.assertEquals(eager.allStatsPerRotation(), FlashData.wrap(ByteBuffer.wrap(bytes)).allStatsPerRotation());
+    TestCase.assertEquals(eager.getMsgMap().getMsgIdMap(), FlashData.wrap(ByteBuffer.wrap(bytes)).getMsgMap().getMsgIdMap());
+    TestCase.assertEquals(eager.getSystemData().toString().replaceAll("@\\w+", ""),
+      FlashData.wrap(ByteBuffer.wrap(bytes)).getSystemData().toString().replaceAll("@\\w+", ""));
+  }
+
   /*
   @Test
   public void testLoading2() throws IOException {
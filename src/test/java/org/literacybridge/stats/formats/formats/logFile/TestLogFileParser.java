@@ -5,6 +5,7 @@ import org.easymock.EasyMock;
 import org.joda.time.LocalTime;
 import org.junit.Test;
 import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.logFile.LogAction;
 import org.literacybridge.stats.formats.logFile.LogFileParser;
 import org.literacybridge.stats.formats.logFile.LogFilePosition;
 import org.literacybridge.stats.formats.logFile.LogLineContext;
@@ -208,6 +209,34 @@ public class TestLogFileParser {
     EasyMock.verify(eventInterface);
   }
 
+  @Test
+  public void testActionsIgnoreCase() throws IOException {
+
+    final String testline = "0r0039c012pS18d14h27m59s305/221/221V:Paused\n" +
+      "0r0039c012pS18d14h27m59s305/221/221V:pLaY TB0003a2_2156B516 @VOL=03 @Volt=221\n" +
+      "0r0039c012pS18d14h27m59s305/221/221V:PAUSED VOLTAGE DROP: 0.12v in 30 sec\n" +
+      "0r0039c012pS18d14h27m59s305/221/221V:played\n" +
+      "0r0039c012pS18d14h27m59s305/221/221V:pausez";
+    final InputStream is = new ByteArrayInputStream(testline.getBytes());
+
+    final LogLineInfo expectedLogLineInfo = new LogLineInfo((byte) 0, (byte) 39, (short) 12, (short) 18, new LocalTime(14, 27, 59), 3.05, 2.21, 2.21);
+    final LogLineContext contextPaused = new LogLineContext(expectedLogLineInfo, TEST_FILE_POSITION, TEST_FILE_CONTEXT);
+    final LogLineContext contextPlayed = new LogLineContext(expectedLogLineInfo, TEST_FILE_POSITION_2, TEST_FILE_CONTEXT);
+    final LogLineContext contextVoltageDrop = new LogLineContext(expectedLogLineInfo, TEST_FILE_POSITION_3, TEST_FILE_CONTEXT);
+
+    final TalkingBookDataProcessor eventInterface = EasyMock.createMock(TalkingBookDataProcessor.class);
+    eventInterface.onLogFileStart(TEST_FILE_NAME);
+    eventInterface.onPause(contextPaused, "");
+    eventInterface.onPlay(contextPlayed, "TB0003a2_2156B516", 3, 2.21);
+    eventInterface.onVoltageDrop(contextVoltageDrop, LogAction.paused, 0.12, 30);
+    eventInterface.onLogFileEnd();
+    EasyMock.replay(eventInterface);
+
+    final LogFileParser logFileParser = new LogFileParser(eventInterface, TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP);
+    logFileParser.parse(TEST_FILE_NAME, is);
+    EasyMock.verify(eventInterface);
+  }
+
   @Test
   public void testPaused() throws IOException {
 
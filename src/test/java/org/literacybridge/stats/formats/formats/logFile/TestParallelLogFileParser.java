@@ -0,0 +1,127 @@
+package org.literacybridge.stats.formats.formats.logFile;
+
+import junit.framework.TestCase;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.literacybridge.stats.CallRecorder;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.logFile.ParallelLogFileParser;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+
+import java.io.ByteArrayInputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Checks that parsing a log in parallel chunks makes exactly the same callbacks as parsing it serially.
+ */
+public class TestParallelLogFileParser {
+
+  private ExecutorService executor;
+
+  @Before
+  public void setUp() {
+    executor = Executors.newFixedThreadPool(4);
+  }
+
+  @After
+  public void tearDown() {
+    executor.shutdownNow();
+  }
+
+  @Test
+  public void testMatchesSerialParse() throws Exception {
+    final byte[] logText = createLogText();
+    for (int chunkBytes : new int[]{1, 100, 1000, logText.length, logText.length * 2}) {
+      assertSameCallbacks(logText, chunkBytes, false);
+      assertSameCallbacks(logText, chunkBytes, true);
+    }
+  }
+
+  @Test
+  public void testFewChunksInFlight() throws Exception {
+    final byte[] logText = createLogText();
+    for (int chunksInFlight : new int[]{1, 2}) {
+      assertSameCallbacks(logText, 100, chunksInFlight, false);
+      assertSameCallbacks(logText, 100, chunksInFlight, true);
+    }
+  }
+
+  @Test
+  public void testNoTrailingNewline() throws Exception {
+    final byte[] logText = ("0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221\n" +
+      "0r0039c012pS18d14h27m59s305/221/221V:PAUSED").getBytes("UTF-8");
+    assertSameCallbacks(logText, 10, true);
+  }
+
+  @Test
+  public void testEmptyFile() throws Exception {
+    assertSameCallbacks(new byte[0], 10, true);
+  }
+
+  private static byte[] createLogText() throws Exception {
+    final StringBuilder allLines = new StringBuilder();
+    for (int i = 0; i < 20; i++) {
+      for (String line : TestScanningLogFileParser.TEST_LINES) {
+        allLines.append(line).append(i % 2 == 0 ? "\n" : "\r\n");
+      }
+      //Pauses and surveys that will often be the first line of a chunk, and need the content played before it
+      allLines.append("0r0039c012pS18d14h27m59s305/221/221V:PAUSED\n");
+      allLines.append("0r0145c079p009d18h33m00s340/291/291V:SURVEY:apply\n");
+      allLines.append("0r0032c012pS15d02h44m41s297/221/209V:PLAY TB000" + i + "_2156B516 @VOL=03 @Volt=221\n");
+    }
+    return allLines.toString().getBytes("UTF-8");
+  }
+
+  private void assertSameCallbacks(byte[] logText, int chunkBytes, boolean scanning) throws Exception {
+    assertSameCallbacks(logText, chunkBytes, ParallelLogFileParser.DEFAULT_CHUNKS_IN_FLIGHT, scanning);
+  }
+
+  private void assertSameCallbacks(byte[] logText, int chunkBytes, int chunksInFlight, boolean scanning)
+    throws Exception {
+    final List<List<Object>> expected = new ArrayList<>();
+    final List<List<Object>> actual = new ArrayList<>();
+    final LogFileParser serialParser = createParser(expected, scanning);
+    final LogFileParser parallelParser = createParser(actual, scanning);
+
+    //Twice, to check the state carried over from one file to the next
+    for (int i = 0; i < 2; i++) {
+      serialParser.parse(TestLogFileParser.TEST_FILE_NAME, new ByteArrayInputStream(logText));
+      new ParallelLogFileParser(parallelParser, executor, chunkBytes, chunksInFlight).parse(TestLogFileParser.TEST_FILE_NAME,
+        ByteBuffer.wrap(logText));
+    }
+
+    final String description = "chunkBytes=" + chunkBytes + ", chunksInFlight=" + chunksInFlight + ", scanning=" +
+      scanning;
+    TestCase.assertEquals(description, expected, actual);
+    TestCase.assertEquals(description, serialParser.getContentLastPlayed(), parallelParser.getContentLastPlayed());
+    TestCase.assertEquals(description, serialParser.getLinesParsed(), parallelParser.getLinesParsed());
+  }
+
+  private static LogFileParser createParser(List<List<Object>> calls, boolean scanning) {
+    return scanning
+      ? new ScanningLogFileParser(recorder(calls), TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP)
+      : new LogFileParser(recorder(calls), TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP);
+  }
+
+  /**
+   * Records every call as [threadName, methodName, args...], so the test also checks that every callback is made on
+   * the calling thread.
+   */
+  private static TalkingBookDataProcessor recorder(final List<List<Object>> calls) {
+    return new CallRecorder(calls) {
+      @Override
+      protected List<Object> describe(String method, Object... args) {
+        final List<Object> call = super.describe(method, args);
+        call.add(0, Thread.currentThread().getName());
+        return call;
+      }
+    };
+  }
+}
@@ -0,0 +1,182 @@
+package org.literacybridge.stats.formats.formats.logFile;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.literacybridge.stats.CallRecorder;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.logFile.LogLineInfo;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Checks that the ScanningLogFileParser makes exactly the same callbacks as the regex based LogFileParser.
+ */
+public class TestScanningLogFileParser {
+
+  public static final String[] TEST_LINES = {
+    //The TestLogFileParser fixtures
+    "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221",
+    "0r0032c012pS15d02h45m47s295/214/214V:PLAYED H_0172_FC0929CA 0002/0753sec @VOL=02 @Volt=214",
+    "0r0032c012pS15d02h44m27s302/228/222V:PLAYED TB000248_AA94FE16 0732/0732sec @VOL=03 @Volt=228-Ended",
+    "0r0033c012pS18d03h09m25s315/229/229V:Category: $0-1",
+    "0r0039c012pS18d14h27m59s305/221/221V:PAUSED",
+    "0r0039c012pS18d14h28m01s303/221/221V:UNPAUSED",
+    "0r0039c012pS18d14h27m59s305/221/221V:INVALID",
+    "0r0035c012pS18d14h17m12s311/217/217V:RECORD 00037a_9_3DCBA2D0 -> 9",
+    "0r0035c012pS18d14h17m32s311/217/217V:TIME RECORDED (secs): 0005",
+    "0r0027c011pS85d00h00m01s329/279/279V:SHUTTING DOWN",
+    "0r0145c079p009d18h33m00s340/291/291V:SURVEY:taken",
+    "0r0145c079p009d18h33m00s340/291/291V:SURVEY:apply",
+    "0r0145c079p009d18h33m00s340/291/291V:SURVEY:useless",
+    "2r0096c008p023d18h18m53s401/314/314V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221",
+
+    //Edge cases
+    "0p2r0096c008p023d18h18m53s401/314/314V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221",
+    "ar0035c012pS18d14h22m59s306/217/216V:PAUSED",
+    "99999999999r0096c008p023d18h18m53s401/314/314V:PAUSED",
+    "0r0096c008p023d99h99m99s401/314/314V:PAUSED",
+    "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=99999999999 @Volt=221",
+    "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=2.5e1",
+    "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=abc",
+    "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03",
+    "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221   ",
+    "0r0032c012pS15d02h45m47s295/214/214V:PLAYED H_0172_FC0929CA 99999/0753sec @VOL=02 @Volt=214",
+    "0r0032c012pS15d02h44m27s302/228/222V:PLAYED TB000248_AA94FE16 0732/0732sec @VOL=03 @Volt=228-ended",
+    "0r0032c012pS15d02h44m27s302/228/222V:PLAYED TB000248_AA94FE16 0732/0732sec @VOL=03 @Volt=228-Stopped",
+    "0r0032c012pS15d02h44m27s302/228/222V:PLAYED TB000248_AA94FE16 0732/0732sec @VOL=03 @Volt=228-Ended-Twice",
+    "0r0032c012pS15d02h44m27s302/228/222V:PLAYED TB000248_AA94FE16 0732/0732sec @VOL=03 @Volt=-228",
+    "0r0032c012pS15d02h44m27s302/228/222V:PLAYED TB000248_AA94FE16 0732/0732sec @VOL=03 @Volt=228-",
+    "0r0035c012pS18d14h17m12s311/217/217V:RECORD",
+    "0r0035c012pS18d14h17m12s311/217/217V:RECORD 00037a_9_3DCBA2D0 => 9",
+    "0r0035c012pS18d14h17m32s311/217/217V:TIME RECORDED (secs):",
+    "0r0035c012pS18d14h17m32s311/217/217V:TIME RECORDED (secs): 99999999999",
+    "0r0035c012pS18d14h17m32s311/217/217V:TIME RECORDED(secs):5",
+    "0r0035c012pS18d14h17m32s311/217/217V:Feedback: 9-0",
+    "0r0035c012pS18d14h17m32s311/217/217V:Category: 1-2",
+    "0r0035c012pS18d14h17m32s311/217/217V:Category: 42",
+    "0r0035c012pS18d14h17m32s311/217/217V:VOLTAGE DROP: 0.12v in 30 sec",
+    "0r0035c012pS18d14h17m32s311/217/217V:VOLTAGE DROP: 0.12v in 30sec",
+    "0r0035c012pS18d14h17m32s311/217/217V:PAUSED VOLTAGE DROP: 0.12v in 30 sec",
+    "0r0035c012pS18d14h17m32s311/217/217V:SHUTTING VOLTAGE DROP: 0.12v in 30 sec",
+    "0r0035c012pS18d14h17m32s311/217/217V:PAUSED VOLTAGE: 0.12v in 30 sec",
+    "0r0039c012pS18d14h27m59s305/221/221V:Paused",
+    "0r0039c012pS18d14h27m59s305/221/221V:pLaYeD H_0172_FC0929CA 0002/0753sec @VOL=02 @Volt=214",
+    "0r0039c012pS18d14h27m59s305/221/221V:PAUSER",
+    "0r0039c012pS18d14h27m59s305/221/221V:PLAYINGS",
+    "0r0039c012pS18d14h27m59s305/221/221V:_",
+    "0r0035c012pS18d14h17m32s311/217/217V::::PAUSED",
+    "0r0035c012pS18d14h17m32s311/217/217V:\u2028PAUSED",
+    "0r0035c012pS18d14h17m32s311/217/217V:PAUSED\u2028",
+    "0r0035c012pS18d14h17m32s311/217/217V:",
+    "no prelude:PAUSED",
+    ":PAUSED",
+    "garbage",
+    "",
+  };
+
+  @Test
+  public void testMatchesLogFileParserOnFixtures() throws Exception {
+    for (String line : TEST_LINES) {
+      assertSameCallbacks(line, line);
+    }
+
+    StringBuilder allLines = new StringBuilder();
+    for (String line : TEST_LINES) {
+      allLines.append(line).append('\n');
+    }
+    assertSameCallbacks("all lines", allLines.toString());
+  }
+
+  @Test
+  public void testLineEndings() throws Exception {
+    final String play = "0r0032c012pS15d02h44m41s297/221/209V:PLAY TB0003a2_2156B516 @VOL=03 @Volt=221";
+    final String pause = "0r0039c012pS18d14h27m59s305/221/221V:PAUSED";
+    assertSameCallbacks("\\r\\n", play + "\r\n" + pause + "\r\n");
+    assertSameCallbacks("\\r", play + "\r" + pause + "\r\r" + play);
+    assertSameCallbacks("blank lines", "\n\n" + play + "\n\r\n" + pause);
+    assertSameCallbacks("no newline", play);
+    assertSameCallbacks("empty", "");
+  }
+
+  @Test
+  public void testMatchesLogFileParserOnSyncDir() throws Exception {
+    final Collection<File> logFiles = FileUtils.listFiles(new File("src/test/resources/testSyncDir"),
+      new String[]{"txt"}, true);
+    int parsed = 0;
+    for (File logFile : logFiles) {
+      if (logFile.getName().startsWith("log")) {
+        assertSameCallbacks(logFile.getPath(), FileUtils.readFileToString(logFile));
+        parsed++;
+      }
+    }
+    TestCase.assertTrue(parsed > 0);
+  }
+
+  @Test
+  public void testParseLogLineInfo() {
+    final LogFileParser regexParser = new LogFileParser(new ArrayList<TalkingBookDataProcessor>(),
+      TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP);
+    final LogFileParser scanningParser = new ScanningLogFileParser(new ArrayList<TalkingBookDataProcessor>(),
+      TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP);
+
+    final String[] infos = {
+      "2r0096c008p023d18h18m53s401/314/314V",
+      "0096c008p023d18h18m53s401/314/314V",
+      "0r0015c003p004d14h09m42s339/289/289V",
+      "0r0035c012pS18d14h22m59s306/217/216V",
+      "ar0035c012pS18d14h22m59s306/217/216V",
+      "0p0r0035c012pS18d14h22m59s306/217/216V",
+      "0r0035c012pS18d14h22m59s306/217/216",
+      "0r0035c012pS18d14h22m59s306/217/216Vx",
+      "1096c008p023d18h18m53s401/314/314V",
+    };
+    for (String info : infos) {
+      TestCase.assertEquals(info, regexParser.parseLogLineInfo(info), scanningParser.parseLogLineInfo(info));
+    }
+  }
+
+  private void assertSameCallbacks(String description, String logText) throws Exception {
+    final List<List<Object>> expected = new ArrayList<>();
+    final List<List<Object>> actual = new ArrayList<>();
+
+    final LogFileParser regexParser = new LogFileParser(new CallRecorder(expected), TestLogFileParser.TEST_FILE_CONTEXT,
+      DirectoryProcessor.CATEGORY_MAP);
+    final LogFileParser scanningParser = new ScanningLogFileParser(new CallRecorder(actual), TestLogFileParser.TEST_FILE_CONTEXT,
+      DirectoryProcessor.CATEGORY_MAP);
+
+    regexParser.parse(TestLogFileParser.TEST_FILE_NAME, new ByteArrayInputStream(logText.getBytes("UTF-8")));
+    scanningParser.parse(TestLogFileParser.TEST_FILE_NAME, new ByteArrayInputStream(logText.getBytes("UTF-8")));
+
+    TestCase.assertEquals(description, expected, actual);
+    TestCase.assertEquals(description, regexParser.getContentLastPlayed(), scanningParser.getContentLastPlayed());
+
+    //Parsing the bytes directly has to make the same callbacks as going through a Reader, for both parsers
+    for (boolean scanning : new boolean[]{false, true}) {
+      final List<List<Object>> fromBytes = new ArrayList<>();
+      final LogFileParser byteParser = scanning
+        ? new ScanningLogFileParser(new CallRecorder(fromBytes), TestLogFileParser.TEST_FILE_CONTEXT,
+                                    DirectoryProcessor.CATEGORY_MAP)
+        : new LogFileParser(new CallRecorder(fromBytes), TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP);
+      byteParser.parse(TestLogFileParser.TEST_FILE_NAME, ByteBuffer.wrap(logText.getBytes("UTF-8")));
+
+      TestCase.assertEquals(description, expected, fromBytes);
+      TestCase.assertEquals(description, regexParser.getContentLastPlayed(), byteParser.getContentLastPlayed());
+      TestCase.assertEquals(description, regexParser.getLinesParsed(), byteParser.getLinesParsed());
+
+      //The parser may share infos between its own lines, but every parseLogLineInfo returns a new one
+      final String prelude = "0r0039c012pS18d14h27m59s305/221/221V";
+      final LogLineInfo info = byteParser.parseLogLineInfo(prelude);
+      TestCase.assertNotNull(description, info);
+      TestCase.assertNotSame(description, info, byteParser.parseLogLineInfo(prelude));
+    }
+  }
+}
@@ -0,0 +1,49 @@
+package org.literacybridge.stats.formats.formats.syncDirectory;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.literacybridge.stats.formats.syncDirectory.BufferedSyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.formats.syncDirectory.FileSyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+
+import java.io.File;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.regex.Pattern;
+
+/**
+ * Checks that a buffered sync directory answers exactly like the one it buffers.
+ */
+public class TestBufferedSyncDirectory {
+
+  @Test
+  public void testAnswersLikeSource() throws Exception {
+    final File syncDir = new File(TestZipSyncDirectory.TEST_TALKING_BOOK, TestZipSyncDirectory.TEST_SYNC_DIR);
+
+    try (SyncDirectory files = new FileSyncDirectory(syncDir);
+         BufferedSyncDirectory buffered = DirectoryProcessor.bufferSyncDir(new FileSyncDirectory(syncDir))) {
+      TestCase.assertTrue(buffered.isBuffered(DirectoryProcessor.LOG_FILE_PATH));
+      TestCase.assertTrue(buffered.getBufferedBytes() > 0);
+
+      for (String path : Arrays.asList("", "log", "statistics", "missing", DirectoryProcessor.LOG_FILE_PATH,
+        DirectoryProcessor.FLASH_DATA_PATH)) {
+        TestCase.assertEquals(path, files.isDirectory(path), buffered.isDirectory(path));
+        TestCase.assertEquals(path, files.isFile(path), buffered.isFile(path));
+        TestCase.assertEquals(path, files.length(path), buffered.length(path));
+        TestCase.assertEquals(path, files.listFiles(path, Pattern.compile(".*")),
+          buffered.listFiles(path, Pattern.compile(".*")));
+      }
+
+      final byte[] expected = FileUtils.readFileToByteArray(new File(syncDir, DirectoryProcessor.LOG_FILE_PATH));
+      try (InputStream is = buffered.open(DirectoryProcessor.LOG_FILE_PATH)) {
+        TestCase.assertTrue(Arrays.equals(expected, IOUtils.toByteArray(is)));
+      }
+      final byte[] read = new byte[expected.length];
+      buffered.read(DirectoryProcessor.LOG_FILE_PATH).get(read);
+      TestCase.assertTrue(Arrays.equals(expected, read));
+    }
+  }
+}
@@ -0,0 +1,175 @@
+package org.literacybridge.stats.formats.formats.syncDirectory;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.DirectoryFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.literacybridge.stats.CallRecorder;
+import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.stats.TestDirectoryIterator;
+import org.literacybridge.stats.api.ParallelTalkingBookDataProcessor;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.model.DirectoryFormat;
+import org.literacybridge.stats.model.ProcessingContext;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Checks that a DirectoryProcessor run in parallel, or with prefetching, gives its processors exactly the events of a
+ * plain serial run.
+ */
+public class TestParallelDirectoryProcessor {
+
+  private File root;
+
+  /**
+   * Copies the archive test package, and fills each of its sync directories with a real one, so there are log and
+   * stats files to process.
+   */
+  @Before
+  public void setUp() throws IOException {
+    root = File.createTempFile("parallel", "");
+    root.delete();
+    FileUtils.copyDirectory(TestDirectoryIterator.TEST1_ARCHIVE, root);
+
+    final File source = new File(TestZipSyncDirectory.TEST_TALKING_BOOK, TestZipSyncDirectory.TEST_SYNC_DIR);
+    for (File dir : FileUtils.listFilesAndDirs(new File(root, DirectoryIterator.TALKING_BOOK_ROOT_V2),
+      DirectoryFileFilter.DIRECTORY, TrueFileFilter.INSTANCE)) {
+      if (DirectoryIterator.SYNC_TIME_PATTERN_V2.matcher(dir.getName()).matches()) {
+        FileUtils.copyDirectory(source, dir);
+      }
+    }
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Test
+  public void testDeferredProcessorsSeeSerialOrder() throws Exception {
+    final List<List<Object>> expected = run(1);
+    TestCase.assertTrue(expected.size() > 100);
+
+    for (int i = 0; i < 3; i++) {
+      final List<List<Object>> actual = run(4);
+      TestCase.assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < expected.size(); j++) {
+        TestCase.assertEquals(String.valueOf(j), expected.get(j), actual.get(j));
+      }
+    }
+  }
+
+  @Test
+  public void testPrefetchingSeesSerialOrder() throws Exception {
+    final List<List<Object>> expected = run(1);
+
+    for (int readAhead : new int[]{1, 3}) {
+      final List<List<Object>> actual = new ArrayList<>();
+      final DirectoryIterator iterator = new DirectoryIterator(root, DirectoryFormat.Archive, false);
+      iterator.setReadAhead(readAhead);
+      iterator.process(new DirectoryProcessor(recorder(actual), DirectoryProcessor.CATEGORY_MAP));
+
+      TestCase.assertEquals(expected.size(), actual.size());
+      for (int j = 0; j < expected.size(); j++) {
+        TestCase.assertEquals(String.valueOf(j), expected.get(j), actual.get(j));
+      }
+    }
+  }
+
+  @Test
+  public void testParallelProcessorsAreForked() throws Exception {
+    final CountingProcessor serial = new CountingProcessor();
+    new DirectoryIterator(root, DirectoryFormat.Archive, false).process(
+      new DirectoryProcessor(serial.proxy(), DirectoryProcessor.CATEGORY_MAP));
+
+    final CountingProcessor parallel = new CountingProcessor();
+    new DirectoryIterator(root, DirectoryFormat.Archive, false, 4).process(
+      new DirectoryProcessor(parallel.proxy(), DirectoryProcessor.CATEGORY_MAP));
+
+    TestCase.assertEquals(0, serial.forks.get());
+    TestCase.assertTrue(parallel.forks.get() > 0);
+    TestCase.assertEquals(serial.events.get(), parallel.events.get());
+  }
+
+  private List<List<Object>> run(int parallelism) throws Exception {
+    final List<List<Object>> calls = new ArrayList<>();
+    new DirectoryIterator(root, DirectoryFormat.Archive, false, parallelism).process(
+      new DirectoryProcessor(recorder(calls), DirectoryProcessor.CATEGORY_MAP));
+    return calls;
+  }
+
+  /**
+   * Records every call as [methodName, args...].  Stats files and tbData lines have no equals, so those calls are
+   * recorded by name only.
+   */
+  private static TalkingBookDataProcessor recorder(final List<List<Object>> calls) {
+    return new CallRecorder(calls) {
+      @Override
+      protected List<Object> describe(String method, Object... args) {
+        TestCase.assertFalse(Thread.currentThread().getName().startsWith("ForkJoinPool"));
+        return super.describe(method, args);
+      }
+
+      @Override
+      protected boolean recordsArguments(String method) {
+        return !method.equals("processStatsFile") && !method.equals("processTbDataLine");
+      }
+
+      @Override
+      protected void addArgument(List<Object> call, Object arg) {
+        //A plain ProcessingContext is never equal to another one, so it is compared by its fields
+        if (arg != null && arg.getClass() == ProcessingContext.class) {
+          final ProcessingContext context = (ProcessingContext) arg;
+          arg = Arrays.asList(context.deploymentId, context.village, context.talkingBookId, context.deviceSyncedFrom);
+        }
+        call.add(arg);
+      }
+    };
+  }
+
+  /**
+   * Counts events, forking a new counter for each talking book.
+   */
+  static class CountingProcessor implements InvocationHandler {
+    final AtomicInteger events;
+    final AtomicInteger forks;
+
+    CountingProcessor() {
+      this(new AtomicInteger(), new AtomicInteger());
+    }
+
+    CountingProcessor(AtomicInteger events, AtomicInteger forks) {
+      this.events = events;
+      this.forks = forks;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+      if (method.getName().equals("fork")) {
+        forks.incrementAndGet();
+        return new CountingProcessor(events, forks).proxy();
+      } else if (!method.getName().equals("join")) {
+        events.incrementAndGet();
+      }
+      return null;
+    }
+
+    ParallelTalkingBookDataProcessor proxy() {
+      return (ParallelTalkingBookDataProcessor) Proxy.newProxyInstance(getClass().getClassLoader(),
+        new Class[]{ParallelTalkingBookDataProcessor.class}, this);
+    }
+  }
+}
@@ -0,0 +1,171 @@
+package org.literacybridge.stats.formats.formats.syncDirectory;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.literacybridge.stats.CallRecorder;
+import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.stats.api.SyncDirectoryCallbacks;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.formats.syncDirectory.FileSyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+import org.literacybridge.stats.formats.syncDirectory.ZipSyncDirectory;
+import org.literacybridge.stats.model.DeploymentId;
+import org.literacybridge.stats.model.DirectoryFormat;
+import org.literacybridge.stats.model.SyncDirId;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.processors.AbstractDirectoryProcessor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Checks that a zipped sync directory read in place is processed exactly like the extracted one.
+ */
+public class TestZipSyncDirectory {
+
+  public static final File TEST_TALKING_BOOK = new File("src/test/resources/testSyncDir/testDevice/collected-data/2013-03/Baazu-Jirapa/TB0002FE");
+  public static final String TEST_SYNC_DIR = "8m30d17h9m8s";
+
+  private File tempDir;
+
+  @Before
+  public void setUp() throws IOException {
+    tempDir = File.createTempFile("zipSyncDir", "");
+    tempDir.delete();
+    tempDir.mkdirs();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(tempDir);
+  }
+
+  @Test
+  public void testListsLikeFileSyncDirectory() throws Exception {
+    final File syncDir = new File(TEST_TALKING_BOOK, TEST_SYNC_DIR);
+    final File zipFile = zip(syncDir, new File(tempDir, TEST_SYNC_DIR + ".zip"), true);
+
+    try (SyncDirectory files = new FileSyncDirectory(syncDir);
+         SyncDirectory zip = new ZipSyncDirectory(zipFile)) {
+      TestCase.assertEquals(TEST_SYNC_DIR, zip.getName());
+      for (String path : Arrays.asList("", "log", "log-archive", "statistics", "statistics/stats", "missing", "log/log.txt")) {
+        TestCase.assertEquals(path, files.isDirectory(path), zip.isDirectory(path));
+        TestCase.assertEquals(path, files.isFile(path), zip.isFile(path));
+        TestCase.assertEquals(path, files.length(path), zip.length(path));
+        TestCase.assertEquals(path, new TreeSet<>(files.listFiles(path, Pattern.compile(".*"))),
+          new TreeSet<>(zip.listFiles(path, Pattern.compile(".*"))));
+      }
+      TestCase.assertEquals(FileUtils.readFileToString(new File(syncDir, "log/log.txt")),
+        new String(zip.read("log/log.txt").array(), "ISO-8859-1"));
+    }
+
+    //Zips without the top level folder are read relative to their root
+    final File flatZipFile = zip(syncDir, new File(tempDir, "flat.zip"), false);
+    try (SyncDirectory zip = new ZipSyncDirectory(flatZipFile)) {
+      TestCase.assertEquals("flat", zip.getName());
+      TestCase.assertTrue(zip.isFile("log/log.txt"));
+    }
+
+    //Renamed zips are read relative to the one folder they hold
+    final File renamedZipFile = zip(syncDir, new File(tempDir, "renamed.zip"), true);
+    try (SyncDirectory zip = new ZipSyncDirectory(renamedZipFile)) {
+      TestCase.assertEquals("renamed", zip.getName());
+      TestCase.assertTrue(zip.isFile("log/log.txt"));
+      TestCase.assertTrue(zip.isDirectory("statistics"));
+      TestCase.assertFalse(zip.isDirectory(TEST_SYNC_DIR));
+    }
+  }
+
+  @Test
+  public void testProcessesLikeExtractedDirectory() throws Exception {
+    final File syncDir = new File(TEST_TALKING_BOOK, TEST_SYNC_DIR);
+    final File zipFile = zip(syncDir, new File(tempDir, TEST_SYNC_DIR + ".zip"), true);
+    final SyncProcessingContext context = new SyncProcessingContext(TEST_SYNC_DIR, "TB0002FE", "Baazu-Jirapa",
+      "2013-03", "2013-03", "testDevice");
+
+    final List<List<Object>> expected = new ArrayList<>();
+    new DirectoryProcessor(recorder(expected), DirectoryProcessor.CATEGORY_MAP)
+      .processSyncDir(syncDir, context, new HashSet<String>(), true);
+
+    final List<List<Object>> actual = new ArrayList<>();
+    try (SyncDirectory zip = new ZipSyncDirectory(zipFile)) {
+      new DirectoryProcessor(recorder(actual), DirectoryProcessor.CATEGORY_MAP)
+        .processSyncDir(zip, context, new HashSet<String>(), true);
+    }
+
+    TestCase.assertTrue(expected.size() > 10);
+    TestCase.assertEquals(expected, actual);
+  }
+
+  @Test
+  public void testIteratorLeavesZipsInPlace() throws Exception {
+    final File talkingBookDir = new File(tempDir, "TB0002FE");
+    talkingBookDir.mkdirs();
+    final File zipFile = zip(new File(TEST_TALKING_BOOK, TEST_SYNC_DIR), new File(talkingBookDir, TEST_SYNC_DIR + ".zip"), true);
+    FileUtils.copyDirectory(new File(TEST_TALKING_BOOK, "11m14d18h45m55s"), new File(talkingBookDir, "11m14d18h45m55s"));
+
+    final List<String> syncDirs = new ArrayList<>();
+    class RecordingCallbacks extends AbstractDirectoryProcessor implements SyncDirectoryCallbacks {
+      @Override
+      public void processSyncDir(SyncDirId syncDirId, SyncDirectory syncDir) throws Exception {
+        TestCase.assertEquals(syncDirId.dirName, syncDir.getName());
+        syncDirs.add(syncDir.getClass().getSimpleName() + ":" + syncDir.getName());
+      }
+    }
+
+    final DirectoryIterator iterator = new DirectoryIterator(tempDir, DirectoryFormat.Sync, true);
+    iterator.processTalkingBook(DeploymentId.parseContentUpdate("2013-03"), talkingBookDir, new RecordingCallbacks());
+
+    //In name order, whether zipped or not
+    TestCase.assertEquals(Arrays.asList("FileSyncDirectory:11m14d18h45m55s", "ZipSyncDirectory:" + TEST_SYNC_DIR), syncDirs);
+    TestCase.assertTrue(zipFile.exists());
+    TestCase.assertFalse(new File(talkingBookDir, TEST_SYNC_DIR).exists());
+  }
+
+  private static File zip(File dir, File zipFile, boolean includeFolder) throws IOException {
+    final String prefix = includeFolder ? dir.getName() + "/" : "";
+    try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile))) {
+      for (File file : FileUtils.listFiles(dir, null, true)) {
+        final String path = dir.toURI().relativize(file.toURI()).getPath();
+        zos.putNextEntry(new ZipEntry(prefix + path));
+        FileUtils.copyFile(file, zos);
+        zos.closeEntry();
+      }
+    }
+    return zipFile;
+  }
+
+  /**
+   * Records every call as [methodName, args...].  File names differ between the two directories, so log file names
+   * are dropped and contexts are reduced to their line number and log line info.
+   */
+  private static TalkingBookDataProcessor recorder(final List<List<Object>> calls) {
+    return new CallRecorder(calls) {
+      @Override
+      protected boolean recordsArguments(String method) {
+        return !method.equals("onLogFileStart");
+      }
+
+      @Override
+      protected void addArgument(List<Object> call, Object arg) {
+        if (arg instanceof LogLineContext) {
+          final LogLineContext context = (LogLineContext) arg;
+          call.add(context.logFilePosition.lineNumber);
+          call.add(context.logLineInfo);
+        } else {
+          call.add(arg);
+        }
+      }
+    };
+  }
+}
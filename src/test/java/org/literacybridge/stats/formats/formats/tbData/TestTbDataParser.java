@@ -0,0 +1,93 @@
+package org.literacybridge.stats.formats.formats.tbData;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.joda.time.DateTime;
+import org.joda.time.DateTimeZone;
+import org.junit.Test;
+import org.literacybridge.stats.formats.tbData.TbDataLineHandler;
+import org.literacybridge.stats.formats.tbData.TbDataParser;
+import org.literacybridge.stats.model.TbDataLine;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ */
+public class TestTbDataParser {
+
+  private static final Date AUG_19_2013 = new DateTime(2013, 8, 19, 0, 0, DateTimeZone.UTC).toDate();
+
+  @Test
+  public void testParseV0File() throws IOException {
+    File tbDataFile = new File("src/test/resources/testPackages/test1-archive/OperationalData/device1/tbdata/tbData-v00-2013y08m15d-device1.csv".replace('/', File.separatorChar));
+    List<TbDataLine> lines = new TbDataParser().parseTbDataFile(tbDataFile, true);
+
+    TestCase.assertEquals(4, lines.size());
+    TbDataLine line = lines.get(0);
+    TestCase.assertEquals("2013y08m15d17h01m50s", line.getUpdateDateTime());
+    TestCase.assertEquals("TB1", line.getOutSn());
+    TestCase.assertEquals("village1", line.getInCommunity());
+    TestCase.assertEquals(AUG_19_2013, line.getInLastUpdated());
+  }
+
+  @Test
+  public void testStreamingMatchesList() throws IOException {
+    File tbDataFile = new File("src/test/resources/testPackages/test1-archive/OperationalData/device1/tbdata/tbData-v00-2013y08m15d-device1.csv".replace('/', File.separatorChar));
+    final List<TbDataLine> expected = new TbDataParser().parseTbDataFile(tbDataFile, true);
+
+    final List<Integer> lineNumbers = new ArrayList<>();
+    final List<String> outSns = new ArrayList<>();
+    new TbDataParser().parseTbDataFile(tbDataFile, true, new TbDataLineHandler() {
+      @Override
+      public void onTbDataLine(TbDataLine tbDataLine, int lineNumber) {
+        lineNumbers.add(lineNumber);
+        outSns.add(tbDataLine.getOutSn());
+      }
+    });
+
+    TestCase.assertEquals(Arrays.asList(2, 3, 4, 5), lineNumbers);
+    TestCase.assertEquals(expected.size(), outSns.size());
+    for (int i = 0; i < expected.size(); i++) {
+      TestCase.assertEquals(expected.get(i).getOutSn(), outSns.get(i));
+    }
+  }
+
+  @Test
+  public void testParseV3File() throws IOException {
+    File dir = new File(FileUtils.getTempDirectory(), "TestTbDataParser-" + System.nanoTime());
+    File tbDataFile = new File(dir, "tbData-v03-2014y01m01d-device1.csv");
+    try {
+      FileUtils.writeLines(tbDataFile, Arrays.asList(
+        "PROJECT,UPDATE_DATE_TIME,DURATION_SEC,OUT-SN,IN-LAST-UPDATED,FLASH-CUM-DAYS",
+        "UWR,2014y01m01d10h00m00s,42,srn.a1,Mon Aug 19 00:00:00 GMT 2013,123",
+        "UWR,2014y01m01d11h00m00s,notANumber,srn.a2,notADate,7",
+        "UWR,2014y01m01d12h00m00s,5,srn.a3,Mon Aug 19 00:00:00 GMT 2013"));
+
+      List<TbDataLine> lines = new TbDataParser().parseTbDataFile(tbDataFile, true);
+      TestCase.assertEquals(3, lines.size());
+
+      TestCase.assertEquals("UWR", lines.get(0).getProject());
+      TestCase.assertEquals(42, lines.get(0).getDurationSec());
+      TestCase.assertEquals("srn.a1", lines.get(0).getOutSn());
+      TestCase.assertEquals(AUG_19_2013, lines.get(0).getInLastUpdated());
+      TestCase.assertEquals(123, lines.get(0).getFlashCumDays());
+
+      //Invalid values are skipped, but the rest of the line is still read
+      TestCase.assertEquals(0, lines.get(1).getDurationSec());
+      TestCase.assertNull(lines.get(1).getInLastUpdated());
+      TestCase.assertEquals(7, lines.get(1).getFlashCumDays());
+
+      //Short lines only set the columns they have.  Lines never share a Date instance.
+      TestCase.assertEquals(0, lines.get(2).getFlashCumDays());
+      TestCase.assertEquals(lines.get(0).getInLastUpdated(), lines.get(2).getInLastUpdated());
+      TestCase.assertNotSame(lines.get(0).getInLastUpdated(), lines.get(2).getInLastUpdated());
+    } finally {
+      FileUtils.deleteQuietly(dir);
+    }
+  }
+}
@@ -0,0 +1,99 @@
+package org.literacybridge.stats.journal;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.formats.logFile.TestLogFileParser;
+import org.literacybridge.stats.formats.formats.logFile.TestScanningLogFileParser;
+import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.model.ProcessingContext;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Checks that replaying a journal makes the same calls as parsing the logs it was written from.
+ */
+public class TestEventJournal {
+
+  @Test
+  public void testReplayMatchesParse() throws Exception {
+    StringBuilder allLines = new StringBuilder();
+    for (String line : TestScanningLogFileParser.TEST_LINES) {
+      allLines.append(line).append('\n');
+    }
+    final byte[] logText = allLines.toString().getBytes("UTF-8");
+    final ProcessingContext talkingBook = new ProcessingContext("tb1", "village", "2013-03", "device");
+
+    final List<List<Object>> expected = new ArrayList<>();
+    final TalkingBookDataProcessor recorder = callRecorder(expected);
+    final ByteArrayOutputStream journal = new ByteArrayOutputStream();
+    final EventJournalWriter writer = new EventJournalWriter(journal);
+    final List<TalkingBookDataProcessor> processors = Arrays.asList(recorder, writer);
+
+    for (TalkingBookDataProcessor processor : processors) {
+      processor.onTalkingBookStart(talkingBook);
+    }
+    //The same file twice, so strings and contexts are reused
+    for (int i = 0; i < 2; i++) {
+      new LogFileParser(processors, TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP)
+        .parse(TestLogFileParser.TEST_FILE_NAME, new ByteArrayInputStream(logText));
+    }
+    for (TalkingBookDataProcessor processor : processors) {
+      processor.onTalkingBookEnd(talkingBook);
+    }
+    writer.close();
+    TestCase.assertEquals(expected.size(), writer.getRecords());
+
+    final List<List<Object>> replayed = new ArrayList<>();
+    final long records = new EventJournalReader(new ByteArrayInputStream(journal.toByteArray()))
+      .replay(callRecorder(replayed));
+    TestCase.assertEquals(expected.size(), records);
+    TestCase.assertEquals(expected, replayed);
+
+    //Writing the replayed calls again gives the same journal
+    final ByteArrayOutputStream rewritten = new ByteArrayOutputStream();
+    try (EventJournalWriter rewriter = new EventJournalWriter(rewritten)) {
+      new EventJournalReader(new ByteArrayInputStream(journal.toByteArray())).replay(rewriter);
+    }
+    TestCase.assertTrue(Arrays.equals(journal.toByteArray(), rewritten.toByteArray()));
+  }
+
+  @Test(expected = IOException.class)
+  public void testRejectsOtherFiles() throws Exception {
+    new EventJournalReader(new ByteArrayInputStream("not a journal".getBytes("UTF-8")));
+  }
+
+  /**
+   * Records the calls made to a TalkingBookDataProcessor as [methodName, args...].  The talking book contexts are
+   * recorded by their fields, since ProcessingContext only equals a SyncProcessingContext.
+   */
+  private static TalkingBookDataProcessor callRecorder(final List<List<Object>> calls) {
+    return (TalkingBookDataProcessor) Proxy.newProxyInstance(
+      TalkingBookDataProcessor.class.getClassLoader(), new Class[]{TalkingBookDataProcessor.class},
+      new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          final List<Object> call = new ArrayList<>();
+          call.add(method.getName());
+          if (method.getName().startsWith("onTalkingBook")) {
+            final ProcessingContext context = (ProcessingContext) args[0];
+            call.addAll(Arrays.asList(context.talkingBookId, context.village, context.deploymentId,
+              context.deviceSyncedFrom));
+          } else if (args != null) {
+            call.addAll(Arrays.asList(args));
+          }
+          calls.add(call);
+          return null;
+        }
+      });
+  }
+}
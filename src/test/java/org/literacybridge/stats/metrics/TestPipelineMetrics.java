@@ -0,0 +1,100 @@
+package org.literacybridge.stats.metrics;
+
+import junit.framework.TestCase;
+import org.codehaus.jackson.JsonNode;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.stats.TestDirectoryIterator;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+import org.literacybridge.stats.model.DirectoryFormat;
+
+import java.io.File;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ */
+public class TestPipelineMetrics {
+
+  @Test
+  public void testHistogramPrecision() {
+    for (long value : new long[]{0, 1, 7, 8, 15, 16, 17, 1000, 123456789, Long.MAX_VALUE}) {
+      final int index = LatencyHistogram.bucketIndex(value);
+      TestCase.assertTrue(String.valueOf(value), LatencyHistogram.lowestEquivalentValue(index) <= value);
+      TestCase.assertTrue(String.valueOf(value), LatencyHistogram.highestEquivalentValue(index) >= value);
+      TestCase.assertTrue(String.valueOf(value),
+        LatencyHistogram.highestEquivalentValue(index) - value <= value / LatencyHistogram.SUB_BUCKETS);
+    }
+
+    LatencyHistogram histogram = new LatencyHistogram();
+    for (int i = 1; i <= 100; i++) {
+      histogram.record(i * 1000);
+    }
+    TestCase.assertEquals(100, histogram.getTotalCount());
+    TestCase.assertEquals(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(50000)),
+      histogram.getValueAtPercentile(50));
+    TestCase.assertEquals(LatencyHistogram.highestEquivalentValue(LatencyHistogram.bucketIndex(100000)),
+      histogram.getValueAtPercentile(100));
+  }
+
+  @Test
+  public void testSlowestFiles() {
+    StageMetrics stage = new StageMetrics("test");
+    for (int i = 0; i < 100; i++) {
+      stage.record(i, 1, 2, "file" + i);
+    }
+
+    final List<StageMetrics.FileTiming> slowest = stage.getSlowestFiles();
+    TestCase.assertEquals(StageMetrics.SLOWEST_FILES, slowest.size());
+    TestCase.assertEquals("file99", slowest.get(0).file);
+    TestCase.assertEquals("file90", slowest.get(StageMetrics.SLOWEST_FILES - 1).file);
+    TestCase.assertEquals(100, stage.getCount());
+    TestCase.assertEquals(100, stage.getBytes());
+    TestCase.assertEquals(200, stage.getLines());
+    TestCase.assertEquals(99, stage.getMaxNanos());
+  }
+
+  @Test
+  public void testReport() throws Exception {
+    final AtomicLong events = new AtomicLong();
+    final TalkingBookDataProcessor counter = (TalkingBookDataProcessor) Proxy.newProxyInstance(
+      TalkingBookDataProcessor.class.getClassLoader(), new Class[]{TalkingBookDataProcessor.class},
+      new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          events.incrementAndGet();
+          return null;
+        }
+      });
+
+    final File reportFile = File.createTempFile("metrics", ".json");
+    try {
+      final PipelineMetrics metrics = new PipelineMetrics();
+      final DirectoryProcessor processor = new DirectoryProcessor(counter, DirectoryProcessor.CATEGORY_MAP);
+      processor.setMetrics(metrics, reportFile);
+
+      final DirectoryIterator iterator = new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false);
+      iterator.setMetrics(metrics);
+      iterator.process(processor);
+
+      final JsonNode stages = new ObjectMapper().readValue(reportFile, JsonNode.class).get("stages");
+      //The test package has no log or stats files
+      for (String stage : new String[]{PipelineMetrics.SYNC_DIR, PipelineMetrics.FLASH_DATA, PipelineMetrics.TB_DATA}) {
+        TestCase.assertTrue(stage, stages.has(stage));
+      }
+      TestCase.assertEquals(iterator.getProgress().getSyncDirs(), metrics.stage(PipelineMetrics.SYNC_DIR).getCount());
+      TestCase.assertTrue(metrics.stage(PipelineMetrics.TB_DATA).getLines() > 0);
+
+      final String callbackStage = PipelineMetrics.CALLBACK_PREFIX + counter.getClass().getSimpleName();
+      TestCase.assertTrue(stages.has(callbackStage));
+      TestCase.assertEquals(events.get(), metrics.stage(callbackStage).getCount());
+    } finally {
+      reportFile.delete();
+    }
+  }
+}
@@ -0,0 +1,71 @@
+package org.literacybridge.stats.model;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.stats.TestDirectoryIterator;
+import org.literacybridge.stats.api.ProgressListener;
+import org.literacybridge.stats.processors.AbstractDirectoryProcessor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ */
+public class TestProcessingProgress {
+
+  @Test
+  public void testEta() {
+    ProcessingProgress progress = new ProcessingProgress();
+    TestCase.assertEquals(-1, progress.getEtaMillis());
+
+    progress.addSyncDir();
+    TestCase.assertEquals(-1, progress.getEtaMillis());
+
+    progress.addExpectedSyncDirs(3);
+    progress.addExpectedSyncDirs(1);
+    TestCase.assertEquals(4, progress.getExpectedSyncDirs());
+    TestCase.assertTrue(progress.getEtaMillis() >= 0);
+
+    progress.start();
+    TestCase.assertEquals(0, progress.getSyncDirs());
+    TestCase.assertEquals(-1, progress.getExpectedSyncDirs());
+  }
+
+  @Test
+  public void testIteratorCounts() throws Exception {
+    final List<String> syncDirs = new ArrayList<>();
+    final List<ProcessingProgress> reports = new ArrayList<>();
+    final List<ProcessingProgress> finished = new ArrayList<>();
+
+    DirectoryIterator iterator = new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false);
+    iterator.setProgressListener(new ProgressListener() {
+      @Override
+      public void onProgress(ProcessingProgress progress) {
+        reports.add(progress);
+      }
+
+      @Override
+      public void onFinished(ProcessingProgress progress) {
+        finished.add(progress);
+      }
+    }, 0);
+
+    iterator.process(new AbstractDirectoryProcessor() {
+      @Override
+      public void processSyncDir(SyncDirId syncDirId, File syncDir) throws Exception {
+        syncDirs.add(syncDirId.dirName);
+      }
+    });
+
+    final ProcessingProgress progress = iterator.getProgress();
+    TestCase.assertFalse(syncDirs.isEmpty());
+    TestCase.assertEquals(syncDirs.size(), progress.getSyncDirs());
+    TestCase.assertEquals(syncDirs.size(), progress.getExpectedSyncDirs());
+    TestCase.assertTrue(progress.getTalkingBooks() > 0);
+    TestCase.assertEquals(0, progress.getEtaMillis());
+    TestCase.assertFalse(reports.isEmpty());
+    TestCase.assertEquals(1, finished.size());
+  }
+}
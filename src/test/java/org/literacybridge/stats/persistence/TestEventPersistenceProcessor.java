@@ -0,0 +1,124 @@
+package org.literacybridge.stats.persistence;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
+import org.literacybridge.stats.model.SyncProcessingContext;
+import org.literacybridge.stats.model.TbDataLine;
+import org.literacybridge.stats.model.events.PlayedEvent;
+import org.literacybridge.stats.model.events.RecordEvent;
+import org.literacybridge.stats.model.events.SurveyEvent;
+
+import java.io.ByteArrayInputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ */
+public class TestEventPersistenceProcessor {
+
+  private static final SyncProcessingContext CONTEXT =
+    new SyncProcessingContext("8m30d17h9m8s", "tb1", "village", "pkg", "2013-03", "device");
+
+  private static final String LOG =
+    "2r0096c008p023d18h18m53s401/314/314V:PLAYED TB000248_372AB558 0006/0012sec @VOL=03 @Volt=314-Ended\n" +
+      "2r0096c008p023d18h18m54s401/314/314V:PLAYED TB000248_372AB558 0003/0012sec @VOL=03 @Volt=314\n" +
+      "2r0096c008p023d18h18m55s401/314/314V:PLAYED TB000248_372AB558 0012/0012sec @VOL=03 @Volt=314-Ended\n" +
+      "0r0035c012pS18d14h17m12s311/217/217V:RECORD 00037a_9_3DCBA2D0 -> 9\n" +
+      "0r0035c012pS18d14h17m32s311/217/217V:TIME RECORDED (secs): 0005\n" +
+      "0r0145c079p009d18h33m00s340/291/291V:SURVEY:apply\n";
+
+  @Test
+  public void testEventsAreKeyedById() throws Exception {
+    final RecordingWriter writer = new RecordingWriter();
+    final EventPersistenceProcessor processor = new EventPersistenceProcessor(writer);
+
+    //The same log twice, as when a log is both archived and current
+    parse(processor);
+    parse(processor);
+    TestCase.assertEquals(0, writer.playedBatches);
+
+    processor.onTalkingBookEnd(CONTEXT);
+    TestCase.assertEquals(1, writer.playedBatches);
+    TestCase.assertEquals(3, writer.played.size());
+    TestCase.assertEquals(0.5, writer.played.get(0).getPercentDone());
+    TestCase.assertTrue(writer.played.get(0).isFinished());
+    TestCase.assertEquals("VILLAGE", writer.played.get(0).getVillage());
+    TestCase.assertEquals("PKG", writer.played.get(0).getPackageId());
+
+    TestCase.assertEquals(1, writer.records.size());
+    TestCase.assertEquals("00037a_9_3DCBA2D0", writer.records.get(0).getContentId());
+    TestCase.assertEquals(5, writer.records.get(0).getSecondsRecorded());
+
+    TestCase.assertEquals(1, writer.surveys.size());
+    TestCase.assertEquals(Boolean.TRUE, writer.surveys.get(0).getIsUseful());
+    TestCase.assertEquals(0, processor.getSkippedEvents());
+  }
+
+  @Test
+  public void testBatchSize() throws Exception {
+    final RecordingWriter writer = new RecordingWriter();
+    final EventPersistenceProcessor processor = new EventPersistenceProcessor(writer, 2);
+
+    parse(processor);
+    TestCase.assertEquals(1, writer.playedBatches);
+    TestCase.assertEquals(2, writer.played.size());
+
+    processor.onTalkingBookEnd(CONTEXT);
+    TestCase.assertEquals(2, writer.playedBatches);
+    TestCase.assertEquals(3, writer.played.size());
+  }
+
+  @Test
+  public void testTbDataLinesAreKeyedById() {
+    final RecordingWriter writer = new RecordingWriter();
+    final EventPersistenceProcessor processor = new EventPersistenceProcessor(writer);
+    for (String outSn : new String[]{"a", "b", "a"}) {
+      final TbDataLine line = new TbDataLine();
+      line.setProject("project");
+      line.setUpdateDateTime("2015y03m01d");
+      line.setOutSn(outSn);
+      processor.processTbDataLine(line);
+    }
+
+    TestCase.assertEquals(0, writer.tbDataLines.size());
+    processor.flush();
+    TestCase.assertEquals(2, writer.tbDataLines.size());
+  }
+
+  private static void parse(EventPersistenceProcessor processor) throws Exception {
+    new ScanningLogFileParser(processor, CONTEXT, Collections.<String, String>emptyMap())
+      .parse("log.txt", new ByteArrayInputStream(LOG.getBytes("UTF-8")));
+  }
+
+  static class RecordingWriter implements EventWriter {
+    final List<PlayedEvent> played = new ArrayList<>();
+    final List<RecordEvent> records = new ArrayList<>();
+    final List<SurveyEvent> surveys = new ArrayList<>();
+    final List<TbDataLine> tbDataLines = new ArrayList<>();
+    int playedBatches = 0;
+
+    @Override
+    public void writePlayedEvents(Collection<PlayedEvent> events) {
+      playedBatches++;
+      played.addAll(events);
+    }
+
+    @Override
+    public void writeRecordEvents(Collection<RecordEvent> events) {
+      records.addAll(events);
+    }
+
+    @Override
+    public void writeSurveyEvents(Collection<SurveyEvent> events) {
+      surveys.addAll(events);
+    }
+
+    @Override
+    public void writeTbDataLines(Collection<TbDataLine> lines) {
+      tbDataLines.addAll(lines);
+    }
+  }
+}
@@ -0,0 +1,185 @@
+package org.literacybridge.stats.processors;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.literacybridge.stats.api.*;
+import org.literacybridge.stats.formats.formats.logFile.TestLogFileParser;
+import org.literacybridge.stats.formats.formats.logFile.TestScanningLogFileParser;
+import org.literacybridge.stats.formats.logFile.LogAction;
+import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.logFile.LogLineContext;
+import org.literacybridge.stats.formats.syncDirectory.DirectoryProcessor;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.*;
+
+/**
+ * Checks that the batches delivered by a BatchingDataProcessor hold exactly the events of the per-event callbacks.
+ */
+public class TestBatchingDataProcessor {
+
+  @Test
+  public void testBatchesMatchEvents() throws Exception {
+    StringBuilder allLines = new StringBuilder();
+    for (String line : TestScanningLogFileParser.TEST_LINES) {
+      allLines.append(line).append('\n');
+    }
+    //Repeat the lines, so every kind of batch fills up at least once
+    final byte[] logText = (allLines.toString() + allLines.toString()).getBytes("UTF-8");
+
+    final List<List<Object>> expected = new ArrayList<>();
+    new LogFileParser(eventRecorder(expected), TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP)
+      .parse(TestLogFileParser.TEST_FILE_NAME, new ByteArrayInputStream(logText));
+
+    final RecordingBatchProcessor batchProcessor = new RecordingBatchProcessor();
+    final BatchingDataProcessor batchingProcessor = new BatchingDataProcessor(batchProcessor, 2);
+    new LogFileParser(Collections.<TalkingBookDataProcessor>singletonList(batchingProcessor),
+      TestLogFileParser.TEST_FILE_CONTEXT, DirectoryProcessor.CATEGORY_MAP)
+      .parse(TestLogFileParser.TEST_FILE_NAME, new ByteArrayInputStream(logText));
+
+    TestCase.assertEquals(Arrays.asList("onLogFileStart", "onLogFileEnd"), batchProcessor.fileCalls);
+    TestCase.assertTrue(batchProcessor.batchesDelivered > 5);
+    TestCase.assertEquals(expected, batchProcessor.eventsInLineOrder());
+  }
+
+  @Test
+  public void testBatchesAreClearedAfterFlush() {
+    final RecordingBatchProcessor batchProcessor = new RecordingBatchProcessor();
+    final BatchingDataProcessor batchingProcessor = new BatchingDataProcessor(batchProcessor, 4);
+    final LogLineContext context = new LogLineContext(null, TestLogFileParser.TEST_FILE_POSITION,
+      TestLogFileParser.TEST_FILE_CONTEXT);
+
+    batchingProcessor.onPlay(context, "content", 3, 2.0);
+    TestCase.assertEquals(0, batchProcessor.batchesDelivered);
+
+    batchingProcessor.flush();
+    TestCase.assertEquals(1, batchProcessor.batchesDelivered);
+
+    batchingProcessor.flush();
+    TestCase.assertEquals(1, batchProcessor.batchesDelivered);
+  }
+
+  /**
+   * Records the log events made to a TalkingBookDataProcessor as [methodName, args...], skipping the file
+   * start and end calls.
+   */
+  private static List<TalkingBookDataProcessor> eventRecorder(final List<List<Object>> calls) {
+    return Collections.singletonList((TalkingBookDataProcessor) Proxy.newProxyInstance(
+      TalkingBookDataProcessor.class.getClassLoader(), new Class[]{TalkingBookDataProcessor.class},
+      new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if (!method.getName().startsWith("onLogFile")) {
+            List<Object> call = new ArrayList<>();
+            call.add(method.getName());
+            call.addAll(Arrays.asList(args));
+            calls.add(call);
+          }
+          return null;
+        }
+      }));
+  }
+
+  /**
+   * Turns every row of every batch back into the per-event call it came from.
+   */
+  static class RecordingBatchProcessor implements LogEventBatchProcessor {
+    final List<String> fileCalls = new ArrayList<>();
+    final List<List<Object>> events = new ArrayList<>();
+    int batchesDelivered = 0;
+
+    List<List<Object>> eventsInLineOrder() {
+      final List<List<Object>> sorted = new ArrayList<>(events);
+      Collections.sort(sorted, new Comparator<List<Object>>() {
+        @Override
+        public int compare(List<Object> o1, List<Object> o2) {
+          return Integer.compare(((LogLineContext) o1.get(1)).logFilePosition.lineNumber,
+            ((LogLineContext) o2.get(1)).logFilePosition.lineNumber);
+        }
+      });
+      return sorted;
+    }
+
+    @Override
+    public void onLogFileStart(String fileName) {
+      fileCalls.add("onLogFileStart");
+    }
+
+    @Override
+    public void onPlayBatch(PlayEventBatch batch) {
+      batchesDelivered++;
+      for (int i = 0; i < batch.size(); i++) {
+        events.add(Arrays.<Object>asList("onPlay", batch.contexts[i], batch.contentIds[i], batch.volumes[i],
+          batch.voltages[i]));
+      }
+    }
+
+    @Override
+    public void onPlayedBatch(PlayedEventBatch batch) {
+      batchesDelivered++;
+      for (int i = 0; i < batch.size(); i++) {
+        events.add(Arrays.<Object>asList("onPlayed", batch.contexts[i], batch.contentIds[i], batch.secondsPlayed[i],
+          batch.secondsSomething[i], batch.volumes[i], batch.voltages[i], batch.ended[i]));
+      }
+    }
+
+    @Override
+    public void onRecordBatch(RecordEventBatch batch) {
+      batchesDelivered++;
+      for (int i = 0; i < batch.size(); i++) {
+        if (batch.actions[i] == LogAction.record) {
+          events.add(Arrays.<Object>asList("onRecord", batch.contexts[i], batch.contentIds[i], batch.numbers[i]));
+        } else {
+          events.add(Arrays.<Object>asList("onRecorded", batch.contexts[i], batch.numbers[i]));
+        }
+      }
+    }
+
+    @Override
+    public void onActionBatch(ActionEventBatch batch) {
+      batchesDelivered++;
+      for (int i = 0; i < batch.size(); i++) {
+        switch (batch.actions[i]) {
+          case category:
+            events.add(Arrays.<Object>asList("onCategory", batch.contexts[i], batch.ids[i]));
+            break;
+          case paused:
+            events.add(Arrays.<Object>asList("onPause", batch.contexts[i], batch.ids[i]));
+            break;
+          case unpaused:
+            events.add(Arrays.<Object>asList("onUnPause", batch.contexts[i], batch.ids[i]));
+            break;
+          case survey:
+            if (batch.completed[i]) {
+              events.add(Arrays.<Object>asList("onSurveyCompleted", batch.contexts[i], batch.ids[i], batch.useful[i]));
+            } else {
+              events.add(Arrays.<Object>asList("onSurvey", batch.contexts[i], batch.ids[i]));
+            }
+            break;
+          case shuttingDown:
+            events.add(Arrays.<Object>asList("onShuttingDown", batch.contexts[i]));
+            break;
+          default:
+            TestCase.fail("Unexpected action " + batch.actions[i]);
+        }
+      }
+    }
+
+    @Override
+    public void onVoltageDropBatch(VoltageDropEventBatch batch) {
+      batchesDelivered++;
+      for (int i = 0; i < batch.size(); i++) {
+        events.add(Arrays.<Object>asList("onVoltageDrop", batch.contexts[i], batch.actions[i],
+          batch.voltagesDropped[i], batch.times[i]));
+      }
+    }
+
+    @Override
+    public void onLogFileEnd() {
+      fileCalls.add("onLogFileEnd");
+    }
+  }
+}
@@ -0,0 +1,108 @@
+package org.literacybridge.stats.processors;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.stats.TestDirectoryIterator;
+import org.literacybridge.stats.api.SyncDirectoryCallbacks;
+import org.literacybridge.stats.formats.syncDirectory.SyncDirectory;
+import org.literacybridge.stats.model.CheckpointIndex;
+import org.literacybridge.stats.model.DirectoryFormat;
+import org.literacybridge.stats.model.SyncDirId;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ */
+public class TestCheckpointingProcessor {
+
+  public static final String CHANGED_SYNC_DIR = "2013y08m15d18h01m50s-device1";
+  public static final String CHANGED_FILE = "TalkingBookData/2013-04/device1/village2/TB2/" + CHANGED_SYNC_DIR + "/notempty.txt";
+  public static final String CHANGED_TBDATA = "tbData-v00-2013y08m15d-device2.csv";
+
+  private File root;
+  private File indexFile;
+
+  @Before
+  public void setUp() throws IOException {
+    root = File.createTempFile("checkpoint", "");
+    root.delete();
+    FileUtils.copyDirectory(TestDirectoryIterator.TEST1_ARCHIVE, root);
+    indexFile = new File(root.getParentFile(), root.getName() + ".index.json");
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(root);
+    FileUtils.deleteQuietly(indexFile);
+  }
+
+  @Test
+  public void testSkipsUnchanged() throws Exception {
+    final List<String> firstRun = run();
+    TestCase.assertEquals(15, firstRun.size());
+    TestCase.assertTrue(indexFile.exists());
+    TestCase.assertEquals(firstRun.size(), CheckpointIndex.load(indexFile).size());
+
+    TestCase.assertEquals(Collections.<String>emptyList(), run());
+
+    FileUtils.writeStringToFile(new File(root, CHANGED_FILE), "changed");
+    FileUtils.writeStringToFile(new File(root, "OperationalData/device2/tbdata/" + CHANGED_TBDATA), "changed", true);
+    TestCase.assertEquals(Arrays.asList(CHANGED_SYNC_DIR, CHANGED_TBDATA), run());
+    TestCase.assertEquals(Collections.<String>emptyList(), run());
+  }
+
+  @Test
+  public void testIndexRoundTrip() throws Exception {
+    CheckpointIndex index = new CheckpointIndex();
+    index.record("a/b", "1234");
+    index.record("c", null);
+    index.save(indexFile);
+
+    CheckpointIndex loaded = CheckpointIndex.load(indexFile);
+    TestCase.assertEquals(index.getFingerprints(), loaded.getFingerprints());
+    TestCase.assertTrue(loaded.isUnchanged("a/b", "1234"));
+    TestCase.assertFalse(loaded.isUnchanged("a/b", "5678"));
+    TestCase.assertFalse(loaded.isUnchanged("c", null));
+
+    loaded.record("a/b", null);
+    TestCase.assertEquals(0, loaded.size());
+  }
+
+  /**
+   * Runs the test package through a CheckpointingProcessor, and returns the sync dirs and tbData files that were
+   * passed on.
+   */
+  private List<String> run() throws Exception {
+    final List<String> processed = new ArrayList<>();
+    class RecordingCallbacks extends AbstractDirectoryProcessor implements SyncDirectoryCallbacks {
+      @Override
+      public boolean startDeviceOperationalData(String device) {
+        return true;
+      }
+
+      @Override
+      public void processTbDataFile(File tbdataFile, boolean includesHeaders) {
+        processed.add(tbdataFile.getName());
+      }
+
+      @Override
+      public void processSyncDir(SyncDirId syncDirId, SyncDirectory syncDir) throws Exception {
+        processed.add(syncDir.getName());
+      }
+    }
+
+    new DirectoryIterator(root, DirectoryFormat.Archive, false).process(
+      new CheckpointingProcessor(new RecordingCallbacks(), indexFile));
+    Collections.sort(processed);
+    return processed;
+  }
+}
@@ -0,0 +1,96 @@
+package org.literacybridge.utils;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.junit.Test;
+import org.literacybridge.stats.DirectoryIterator;
+import org.literacybridge.stats.TestDirectoryIterator;
+import org.literacybridge.stats.model.DirectoryFormat;
+import org.literacybridge.stats.model.SyncDirId;
+import org.literacybridge.stats.processors.AbstractDirectoryProcessor;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+
+/**
+ */
+public class TestDirectoryTreeSnapshot {
+
+  @Test
+  public void testMatchesFileSystem() throws Exception {
+    final File root = TestDirectoryIterator.TEST1_ARCHIVE;
+    final DirectoryTreeSnapshot snapshot = DirectoryTreeSnapshot.walk(root);
+
+    final Collection<File> files = FileUtils.listFilesAndDirs(root, TrueFileFilter.INSTANCE, TrueFileFilter.INSTANCE);
+    TestCase.assertTrue(files.size() > 1);
+    for (File file : files) {
+      TestCase.assertTrue(file.getPath(), snapshot.exists(file));
+      TestCase.assertEquals(file.getPath(), file.isDirectory(), snapshot.isDirectory(file));
+      TestCase.assertEquals(file.getPath(), file.isFile(), snapshot.isFile(file));
+      TestCase.assertEquals(file.getPath(), file.length(), snapshot.length(file));
+      if (file.isDirectory()) {
+        TestCase.assertEquals(file.getPath(), new HashSet<>(Arrays.asList(file.listFiles())),
+          new HashSet<>(Arrays.asList(snapshot.listFiles(file))));
+      }
+    }
+
+    final File missing = new File(root, "missing");
+    TestCase.assertFalse(snapshot.exists(missing));
+    TestCase.assertNull(snapshot.listFiles(missing));
+    TestCase.assertEquals(0, snapshot.length(missing));
+  }
+
+  @Test
+  public void testFileIgnoreCase() throws Exception {
+    final File root = TestDirectoryIterator.TEST1_ARCHIVE;
+    final DirectoryTreeSnapshot snapshot = DirectoryTreeSnapshot.walk(root);
+
+    final String[][] paths = {
+      {"talkingbookdata"},
+      {"TALKINGBOOKDATA"},
+      {"OperationalData"},
+      {"operationaldata", "missing"},
+    };
+    for (String[] path : paths) {
+      TestCase.assertEquals(Arrays.toString(path), FsUtils.FileIgnoreCase(root, path),
+        snapshot.fileIgnoreCase(root, path));
+    }
+
+    //Outside the snapshot, it goes to the file system
+    final File parent = root.getParentFile();
+    TestCase.assertEquals(FsUtils.FileIgnoreCase(parent, "TEST1-ARCHIVE"), snapshot.fileIgnoreCase(parent, "TEST1-ARCHIVE"));
+  }
+
+  @Test
+  public void testIteratorMatchesWithoutSnapshot() throws Exception {
+    final RecordingCallbacks expected = new RecordingCallbacks();
+    new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false).process(expected);
+
+    final RecordingCallbacks actual = new RecordingCallbacks();
+    final DirectoryIterator iterator = new DirectoryIterator(TestDirectoryIterator.TEST1_ARCHIVE, DirectoryFormat.Archive, false);
+    iterator.setUseTreeSnapshot(true);
+    iterator.process(actual);
+
+    TestCase.assertFalse(expected.calls.isEmpty());
+    TestCase.assertEquals(expected.calls, actual.calls);
+  }
+
+  static class RecordingCallbacks extends AbstractDirectoryProcessor {
+    final List<String> calls = new ArrayList<>();
+
+    @Override
+    public void processTbDataFile(File tbdataFile, boolean includesHeaders) {
+      calls.add("tbData " + tbdataFile.getName());
+    }
+
+    @Override
+    public void processSyncDir(SyncDirId syncDirId, File syncDir) throws Exception {
+      calls.add(currVillage + "/" + currTalkingBook + "/" + syncDirId.dirName);
+    }
+  }
+}
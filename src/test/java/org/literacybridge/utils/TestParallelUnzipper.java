@@ -0,0 +1,121 @@
+package org.literacybridge.utils;
+
+import junit.framework.TestCase;
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+import java.util.zip.ZipOutputStream;
+
+/**
+ */
+public class TestParallelUnzipper {
+
+  private File root;
+
+  @Before
+  public void setUp() throws IOException {
+    root = File.createTempFile("unzip", "");
+    root.delete();
+    root.mkdirs();
+  }
+
+  @After
+  public void tearDown() throws IOException {
+    FileUtils.deleteDirectory(root);
+  }
+
+  @Test
+  public void testUnzipsAllZips() throws Exception {
+    final byte[] large = new byte[(int) ParallelUnzipper.LARGE_ENTRY_BYTES + 10];
+    Arrays.fill(large, (byte) 'x');
+    final File first = zip("first.zip", "first/log/log.txt", "small".getBytes("UTF-8"),
+      "first/log-archive/big.txt", large);
+    final File second = zip("second.zip", "second/flashData.bin", "flash".getBytes("UTF-8"),
+      "second/log/log.txt", "other".getBytes("UTF-8"));
+    final File corrupt = new File(root, "corrupt.zip");
+    FileUtils.writeStringToFile(corrupt, "not a zip");
+
+    final File out = new File(root, "out");
+    final List<ParallelUnzipper.Extraction> extractions;
+    try (ParallelUnzipper unzipper = new ParallelUnzipper(3)) {
+      extractions = unzipper.unzip(Arrays.asList(first, corrupt, second), out);
+    }
+
+    TestCase.assertEquals(3, extractions.size());
+    TestCase.assertSame(first, extractions.get(0).zipFile);
+    TestCase.assertNull(extractions.get(0).getFailure());
+    TestCase.assertEquals(large.length + 5, extractions.get(0).getBytes());
+    TestCase.assertTrue(extractions.get(1).getFailure() instanceof ZipException);
+    TestCase.assertNull(extractions.get(2).getFailure());
+
+    TestCase.assertEquals("small", FileUtils.readFileToString(new File(out, "first/log/log.txt")));
+    TestCase.assertEquals(large.length, new File(out, "first/log-archive/big.txt").length());
+    TestCase.assertEquals("flash", FileUtils.readFileToString(new File(out, "second/flashData.bin")));
+    TestCase.assertEquals("other", FileUtils.readFileToString(new File(out, "second/log/log.txt")));
+  }
+
+  @Test
+  public void testCancelledTaskClosesZip() throws Exception {
+    final File zipFile = zip("cancelled.zip", "cancelled/log/log.txt", "log".getBytes("UTF-8"));
+    final ZipFile zip = new ZipFile(zipFile);
+    final ZipEntry entry = zip.getEntry("cancelled/log/log.txt");
+    final ParallelUnzipper.Extraction extraction = new ParallelUnzipper.Extraction(zipFile);
+    final ParallelUnzipper.ExtractTask task = new ParallelUnzipper.ExtractTask(extraction, zip,
+      Collections.singletonList(entry), Collections.singletonList(new File(root, "log.txt")), new AtomicInteger(1));
+
+    task.cancel();
+    TestCase.assertTrue(extraction.getFailure() instanceof InterruptedIOException);
+    TestCase.assertTrue(extraction.getNanos() > 0);
+    try {
+      zip.entries();
+      TestCase.fail("The zip of a cancelled task was left open");
+    } catch (IllegalStateException e) {
+      //Expected
+    }
+
+    //A task that was cancelled before it started never runs
+    task.run();
+    TestCase.assertEquals(0, extraction.getBytes());
+    TestCase.assertFalse(new File(root, "log.txt").exists());
+  }
+
+  @Test
+  public void testRejectsEntriesOutsideRoot() throws Exception {
+    final File zip = zip("evil.zip", "../evil.txt", "evil".getBytes("UTF-8"));
+    final File out = new File(root, "out");
+    try {
+      FsUtils.unzip(zip, out);
+      TestCase.fail("Extracted an entry outside of the root");
+    } catch (ZipException e) {
+      TestCase.assertFalse(new File(root, "evil.txt").exists());
+    }
+  }
+
+  /**
+   * Writes a zip of alternating entry names and contents.
+   */
+  private File zip(String name, Object... entries) throws IOException {
+    final File zip = new File(root, name);
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      for (int i = 0; i < entries.length; i += 2) {
+        out.putNextEntry(new ZipEntry((String) entries[i]));
+        out.write((byte[]) entries[i + 1]);
+        out.closeEntry();
+      }
+    }
+    return zip;
+  }
+}
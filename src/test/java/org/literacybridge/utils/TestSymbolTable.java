@@ -0,0 +1,122 @@
+package org.literacybridge.utils;
+
+import junit.framework.TestCase;
+import org.junit.Test;
+import org.literacybridge.stats.api.TalkingBookDataProcessor;
+import org.literacybridge.stats.formats.logFile.LogFileParser;
+import org.literacybridge.stats.formats.logFile.ScanningLogFileParser;
+import org.literacybridge.stats.model.SyncProcessingContext;
+
+import java.io.ByteArrayInputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ */
+public class TestSymbolTable {
+
+  @Test
+  public void testCanonical() {
+    final SymbolTable symbols = new SymbolTable();
+    final String first = symbols.canonical(new String("content1"));
+    TestCase.assertSame(first, symbols.canonical(new String("content1")));
+    TestCase.assertSame(first, symbols.canonical("xxcontent1 yy", 2, 10));
+    TestCase.assertEquals(symbols.id(first), symbols.id("-content1-", 1, 9));
+    TestCase.assertSame(first, symbols.get(symbols.id(first)));
+    TestCase.assertNull(symbols.canonical(null));
+
+    TestCase.assertEquals("VILLAGE", symbols.upperCase("Village"));
+    TestCase.assertSame(symbols.upperCase("Village"), symbols.upperCase(new String("VILLAGE")));
+    TestCase.assertEquals(3, symbols.size());
+  }
+
+  @Test
+  public void testGrows() {
+    final SymbolTable symbols = new SymbolTable();
+    for (int i = 0; i < 1000; i++) {
+      TestCase.assertEquals(i, symbols.id("value" + i));
+    }
+    TestCase.assertEquals(1000, symbols.size());
+    TestCase.assertEquals(500, symbols.id("value500"));
+    TestCase.assertEquals(500, symbols.find("value500"));
+    TestCase.assertEquals("value999", symbols.get(999));
+    TestCase.assertEquals(-1, symbols.find("missing"));
+    TestCase.assertEquals(1000, symbols.size());
+  }
+
+  @Test
+  public void testConcurrentInterning() throws Exception {
+    final SymbolTable symbols = new SymbolTable();
+    final ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      final List<Future<List<String>>> results = new ArrayList<>();
+      for (int t = 0; t < 4; t++) {
+        results.add(executor.submit(new Callable<List<String>>() {
+          @Override
+          public List<String> call() {
+            final List<String> retVal = new ArrayList<>();
+            for (int i = 0; i < 5000; i++) {
+              retVal.add(symbols.canonical("symbol" + i));
+            }
+            return retVal;
+          }
+        }));
+      }
+
+      final List<String> expected = results.get(0).get();
+      for (Future<List<String>> result : results) {
+        final List<String> actual = result.get();
+        for (int i = 0; i < expected.size(); i++) {
+          TestCase.assertSame(expected.get(i), actual.get(i));
+        }
+      }
+      TestCase.assertEquals(5000, symbols.size());
+      for (int i = 0; i < 5000; i++) {
+        TestCase.assertEquals("symbol" + i, symbols.get(symbols.id("symbol" + i)));
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  @Test
+  public void testParsersShareContentIds() throws Exception {
+    final String log = "2r0096c008p023d18h18m53s401/314/314V:PLAY TB000248_372AB558 @VOL=03 @Volt=314\n" +
+      "2r0096c008p023d18h18m59s401/314/314V:PLAYED TB000248_372AB558 0006/0010sec @VOL=03 @Volt=314-Ended\n";
+    final List<String> contentIds = Collections.synchronizedList(new ArrayList<String>());
+    final TalkingBookDataProcessor processor = (TalkingBookDataProcessor) Proxy.newProxyInstance(
+      TalkingBookDataProcessor.class.getClassLoader(), new Class[]{TalkingBookDataProcessor.class},
+      new InvocationHandler() {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+          if (method.getName().startsWith("onPlay")) {
+            contentIds.add((String) args[1]);
+          }
+          return null;
+        }
+      });
+
+    final SyncProcessingContext context = new SyncProcessingContext("8m30d17h9m8s", "tb", "village", "pkg", "2013-03", "device");
+    final SymbolTable symbols = new SymbolTable();
+    final LogFileParser regexParser = new LogFileParser(processor, context, Collections.<String, String>emptyMap());
+    regexParser.setSymbolTable(symbols);
+    regexParser.parse("log.txt", new ByteArrayInputStream(log.getBytes("UTF-8")));
+    final LogFileParser scanningParser = new ScanningLogFileParser(processor, context,
+      Collections.<String, String>emptyMap());
+    scanningParser.setSymbolTable(symbols);
+    scanningParser.parse("log.txt", new ByteArrayInputStream(log.getBytes("UTF-8")));
+
+    TestCase.assertEquals(4, contentIds.size());
+    for (String contentId : contentIds) {
+      TestCase.assertSame(symbols.canonical("TB000248_372AB558"), contentId);
+    }
+  }
+}